@@ -0,0 +1,42 @@
+/*
+  Benchmark.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+/**
+ * A single measured operation. The runner calls run() repeatedly and consumes
+ * the returned value, so the JIT can't drop the work as dead code.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+    protected Benchmark(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Performs one operation.
+     * @return  any value that depends on the work done
+     */
+    public abstract Object run() throws Exception;
+}
@@ -0,0 +1,118 @@
+/*
+  BenchmarkData.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.util.*;
+
+/**
+ * Generates the input of the benchmarks. Everything is derived from a fixed seed,
+ * so each run measures the same data.
+ */
+public class BenchmarkData {
+
+    public static final long SEED = 0x46726f7374L;
+
+    private static final String[] WORDS = {
+        "freenet", "frost", "board", "message", "identity", "anonymous", "upload", "download",
+        "the", "a", "of", "and", "to", "in", "is", "that", "it", "for", "with", "on",
+        "network", "node", "key", "request", "file", "share", "search", "thread", "reply", "signature",
+    };
+
+    private static final String[] SMILEYS = { ":)", ";)", ":D", ":-(", "B-)", ":p", ":O" };
+
+    private static final String[] EXTENSIONS = { ".jpg", ".png", ".avi", ".mkv", ".zip", ".txt", ".pdf", ".mp3" };
+
+    private final Random random;
+
+    public BenchmarkData() {
+        random = new Random(SEED);
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    public String extension() {
+        return EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+    }
+
+    /**
+     * @return  a fake but well-formed CHK key with a file name
+     */
+    public String chkKey(final String fileName) {
+        return "CHK@" + base64(43) + "," + base64(43) + ",AAMC--8/" + fileName;
+    }
+
+    public String base64(final int len) {
+        final String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789~-";
+        final StringBuilder sb = new StringBuilder(len);
+        for( int i = 0; i < len; i++ ) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return  a subject of some words
+     */
+    public String subject() {
+        final StringBuilder sb = new StringBuilder();
+        final int words = 3 + random.nextInt(6);
+        for( int i = 0; i < words; i++ ) {
+            if( i > 0 ) {
+                sb.append(' ');
+            }
+            sb.append(word());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a message text of about the given length, with lines of words,
+     * some smileys and some keys, like a typical board message.
+     */
+    public String messageText(final int approxLength, final boolean withSmileysAndKeys) {
+        final StringBuilder sb = new StringBuilder(approxLength + 200);
+        int lineLength = 0;
+        while( sb.length() < approxLength ) {
+            final int r = random.nextInt(100);
+            if( withSmileysAndKeys && r < 3 ) {
+                sb.append(SMILEYS[random.nextInt(SMILEYS.length)]);
+            } else if( withSmileysAndKeys && r == 3 ) {
+                sb.append('\n').append(chkKey(word() + "_" + word() + extension())).append('\n');
+                lineLength = 0;
+                continue;
+            } else {
+                sb.append(word());
+            }
+            lineLength += 8;
+            if( lineLength > 70 ) {
+                sb.append('\n');
+                lineLength = 0;
+            } else {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+  BenchmarkRunner.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+
+import frost.*;
+
+/**
+ * Runs the micro benchmarks of the hot paths and prints the time per operation.
+ *
+ * Must be started in an empty working directory, because Frost reads its settings from
+ * config/frost.ini and creates the storages in store/, relative to the working directory.
+ * Use "ant benchmark", which does that. No Freenet node is needed, all input is generated
+ * from a fixed seed (see BenchmarkData).
+ *
+ * Usage: BenchmarkRunner [-warmup n] [-iterations n] [-time ms] [name prefix...]
+ */
+public class BenchmarkRunner {
+
+    private static int warmupIterations = 5;
+    private static int measureIterations = 10;
+    private static long iterationMillis = 1000;
+
+    // consumes the benchmark results
+    private static volatile int sink = 0;
+
+    private static final PrintStream out = System.out;
+    private static final PrintStream silentOut = new PrintStream(new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    });
+
+    public static void main(final String[] args) throws Exception {
+
+        final List<String> prefixes = new ArrayList<String>();
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals("-warmup") && i+1 < args.length ) {
+                warmupIterations = Integer.parseInt(args[++i]);
+            } else if( args[i].equals("-iterations") && i+1 < args.length ) {
+                measureIterations = Math.max(1, Integer.parseInt(args[++i]));
+            } else if( args[i].equals("-time") && i+1 < args.length ) {
+                iterationMillis = Math.max(10, Long.parseLong(args[++i]));
+            } else {
+                prefixes.add(args[i]);
+            }
+        }
+
+        // the tested code logs and prints a lot, we only want to see the results
+        Logger.getLogger("").setLevel(Level.SEVERE);
+
+        prepareSettings();
+
+        out.println("JVM: "+System.getProperty("java.vm.name")+" "+System.getProperty("java.version")
+                +", OS: "+System.getProperty("os.name")+" "+System.getProperty("os.arch")
+                +", CPUs: "+Runtime.getRuntime().availableProcessors()
+                +", max heap: "+(Runtime.getRuntime().maxMemory() / (1024L*1024L))+" MiB");
+        out.println("Warmup: "+warmupIterations+" x "+iterationMillis+" ms, measurement: "
+                +measureIterations+" x "+iterationMillis+" ms, seed: "+BenchmarkData.SEED);
+        out.println();
+        out.println(String.format("%-36s %14s %12s %14s", "Benchmark", "ns/op", "error", "ops/s"));
+
+        final List<BenchmarkSuite> suites = new ArrayList<BenchmarkSuite>();
+        suites.add(new CryptoBenchmarks());
+        suites.add(new MessageXmlBenchmarks());
+        suites.add(new NodeMessageBenchmarks());
+        suites.add(new TofBenchmarks());
+        suites.add(new MessageDecoderBenchmarks());
+        suites.add(new FileListBenchmarks());
+
+        for( final BenchmarkSuite suite : suites ) {
+            final List<Benchmark> selected = new ArrayList<Benchmark>();
+            for( final Benchmark b : suite.getBenchmarks() ) {
+                if( isSelected(b.getName(), prefixes) ) {
+                    selected.add(b);
+                }
+            }
+            if( selected.isEmpty() ) {
+                continue;
+            }
+            System.setOut(silentOut);
+            try {
+                suite.setUp();
+                for( final Benchmark b : selected ) {
+                    measure(b);
+                }
+            } finally {
+                suite.tearDown();
+                System.setOut(out);
+            }
+        }
+        out.println();
+        out.println("(sink="+sink+")");
+        System.exit(0);
+    }
+
+    /**
+     * Creates config/frost.ini with the defaults, and the directories the tested code expects.
+     */
+    private static void prepareSettings() {
+        Core.frostSettings.setValue(SettingsClass.DIR_STORE, "store" + File.separator);
+        new File("store").mkdirs();
+        new File("localdata").mkdirs();
+    }
+
+    private static boolean isSelected(final String name, final List<String> prefixes) {
+        if( prefixes.isEmpty() ) {
+            return true;
+        }
+        for( final String prefix : prefixes ) {
+            if( name.startsWith(prefix) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void measure(final Benchmark b) throws Exception {
+        // first find a batch size that keeps the clock reads out of the measurement
+        int batchSize = 1;
+        for( int i = 0; i < warmupIterations; i++ ) {
+            final double nsPerOp = runIteration(b, batchSize);
+            batchSize = (int) Math.max(1, Math.min(100000, 1000000.0 / nsPerOp)); // about 1 ms per batch
+        }
+
+        final double[] results = new double[measureIterations];
+        for( int i = 0; i < measureIterations; i++ ) {
+            results[i] = runIteration(b, batchSize);
+        }
+
+        double sum = 0;
+        for( final double r : results ) {
+            sum += r;
+        }
+        final double mean = sum / results.length;
+        double squares = 0;
+        for( final double r : results ) {
+            squares += (r - mean) * (r - mean);
+        }
+        final double stdDev = (results.length > 1) ? Math.sqrt(squares / (results.length - 1)) : 0;
+
+        System.setOut(out);
+        out.println(String.format("%-36s %14.1f %12s %14.1f",
+                b.getName(),
+                mean,
+                String.format("+- %.1f", stdDev),
+                1000000000.0 / mean));
+        System.setOut(silentOut);
+    }
+
+    /**
+     * Runs batches of operations for iterationMillis.
+     * @return  the mean time of one operation in nanoseconds
+     */
+    private static double runIteration(final Benchmark b, final int batchSize) throws Exception {
+        final long end = System.nanoTime() + iterationMillis * 1000000L;
+        final long start = System.nanoTime();
+        long ops = 0;
+        long now;
+        int localSink = 0;
+        do {
+            for( int i = 0; i < batchSize; i++ ) {
+                final Object result = b.run();
+                localSink ^= (result == null) ? 0 : System.identityHashCode(result);
+            }
+            ops += batchSize;
+            now = System.nanoTime();
+        } while( now < end );
+        sink ^= localSink;
+        return (double)(now - start) / ops;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+  BenchmarkSuite.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.util.*;
+
+/**
+ * A group of benchmarks sharing the same fixture, e.g. an opened storage.
+ * setUp() is only called if at least one of the benchmarks is selected.
+ */
+public abstract class BenchmarkSuite {
+
+    public void setUp() throws Exception {
+    }
+
+    public void tearDown() throws Exception {
+    }
+
+    public abstract List<Benchmark> getBenchmarks();
+}
@@ -0,0 +1,87 @@
+/*
+  CryptoBenchmarks.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.util.*;
+
+import frost.*;
+import frost.util.*;
+
+/**
+ * FrostCrypt sign, verify, encrypt and decrypt of a typical message of 4 KiB.
+ * The RSA key pair is generated once per run.
+ */
+public class CryptoBenchmarks extends BenchmarkSuite {
+
+    private FrostCrypt crypto;
+    private String privateKey;
+    private String publicKey;
+
+    private byte[] message;
+    private String signature;
+    private byte[] encrypted;
+
+    @Override
+    public void setUp() {
+        final BenchmarkData data = new BenchmarkData();
+        crypto = Core.getCrypto();
+
+        final String[] keys = crypto.generateKeys();
+        privateKey = keys[0];
+        publicKey = keys[1];
+
+        message = data.messageText(4096, true).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        signature = crypto.detachedSign(message, privateKey);
+        encrypted = crypto.encrypt(message, publicKey);
+
+        if( !crypto.detachedVerify(message, publicKey, signature) ) {
+            throw new IllegalStateException("Signature of the test message is invalid");
+        }
+    }
+
+    @Override
+    public List<Benchmark> getBenchmarks() {
+        final List<Benchmark> l = new ArrayList<Benchmark>();
+        l.add(new Benchmark("crypto.sign") {
+            @Override
+            public Object run() {
+                return crypto.detachedSign(message, privateKey);
+            }
+        });
+        l.add(new Benchmark("crypto.verify") {
+            @Override
+            public Object run() {
+                return Boolean.valueOf(crypto.detachedVerify(message, publicKey, signature));
+            }
+        });
+        l.add(new Benchmark("crypto.encrypt") {
+            @Override
+            public Object run() {
+                return crypto.encrypt(message, publicKey);
+            }
+        });
+        l.add(new Benchmark("crypto.decrypt") {
+            @Override
+            public Object run() {
+                return crypto.decrypt(encrypted, privateKey);
+            }
+        });
+        return l;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+  CryptoStressCheck.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import frost.util.*;
+
+/**
+ * Checks that one FrostCrypt instance gives the same results when it is used by many threads
+ * at once as when it is used by one thread.
+ *
+ * The reference results are computed single-threaded first. Then all threads run a seeded
+ * mix of sign, verify, encrypt, decrypt and digest on the same fixed inputs and keys.
+ * Verify, decrypt and the digests must return exactly the reference results. Signing and
+ * encryption are randomized (PSS salt, AES session key), so their outputs are checked
+ * single-threaded afterwards: each signature must verify and each ciphertext must decrypt
+ * to its input.
+ *
+ * Usage: CryptoStressCheck [-threads n] [-operations n]   (operations per thread)
+ * Exits with 1 if any result differs. Use "ant crypto-stress".
+ */
+public class CryptoStressCheck {
+
+    private static final int KEY_COUNT = 4;
+    private static final int INPUT_COUNT = 8;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private static final int OP_SIGN = 0;
+    private static final int OP_VERIFY = 1;
+    private static final int OP_ENCRYPT = 2;
+    private static final int OP_DECRYPT = 3;
+    private static final int OP_DIGEST = 4;
+    private static final int OP_COUNT = 5;
+
+    private final FrostCrypt crypto = new FrostCrypt();
+
+    private final String[] privateKeys = new String[KEY_COUNT];
+    private final String[] publicKeys = new String[KEY_COUNT];
+    private final String[] texts = new String[INPUT_COUNT];
+    private final byte[][] inputs = new byte[INPUT_COUNT][];
+
+    // reference results, computed by one thread
+    private final String[][] refSignatures = new String[KEY_COUNT][INPUT_COUNT];
+    private final byte[][][] refCiphertexts = new byte[KEY_COUNT][INPUT_COUNT][];
+    private final String[] refDigests = new String[INPUT_COUNT];
+    private final String[] refChecksums = new String[INPUT_COUNT];
+
+    // outputs of the randomized operations, checked after the run
+    private final Queue<Output> signatures = new ConcurrentLinkedQueue<Output>();
+    private final Queue<Output> ciphertexts = new ConcurrentLinkedQueue<Output>();
+
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicLong operationCount = new AtomicLong();
+
+    public static void main(final String[] args) throws Exception {
+        int threads = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+        int operations = 300;
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals("-threads") && i+1 < args.length ) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if( args[i].equals("-operations") && i+1 < args.length ) {
+                operations = Math.max(1, Integer.parseInt(args[++i]));
+            }
+        }
+        Logger.getLogger("").setLevel(Level.SEVERE);
+
+        final CryptoStressCheck check = new CryptoStressCheck();
+        check.computeReferenceResults();
+        final boolean ok = check.run(threads, operations);
+        System.exit(ok ? 0 : 1);
+    }
+
+    private void computeReferenceResults() {
+        final BenchmarkData data = new BenchmarkData();
+        for( int k = 0; k < KEY_COUNT; k++ ) {
+            final String[] keys = crypto.generateKeys();
+            privateKeys[k] = keys[0];
+            publicKeys[k] = keys[1];
+        }
+        for( int m = 0; m < INPUT_COUNT; m++ ) {
+            texts[m] = data.messageText(256 << (m % 5), true);
+            inputs[m] = texts[m].getBytes(StandardCharsets.UTF_8);
+            refDigests[m] = crypto.digest(texts[m]);
+            refChecksums[m] = crypto.computeChecksumSHA256(inputs[m]);
+            for( int k = 0; k < KEY_COUNT; k++ ) {
+                refSignatures[k][m] = crypto.detachedSign(inputs[m], privateKeys[k]);
+                refCiphertexts[k][m] = crypto.encrypt(inputs[m], publicKeys[k]);
+                if( !crypto.detachedVerify(inputs[m], publicKeys[k], refSignatures[k][m])
+                        || !Arrays.equals(inputs[m], crypto.decrypt(refCiphertexts[k][m], privateKeys[k])) )
+                {
+                    throw new IllegalStateException("Single-threaded reference results are inconsistent");
+                }
+            }
+        }
+    }
+
+    private boolean run(final int threadCount, final int operationsPerThread) throws InterruptedException {
+        System.out.println("FrostCrypt stress check: "+threadCount+" threads x "+operationsPerThread
+                +" operations, "+KEY_COUNT+" keys, "+INPUT_COUNT+" inputs, seed "+BenchmarkData.SEED);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for( int t = 0; t < threadCount; t++ ) {
+            final long seed = BenchmarkData.SEED + t;
+            final Thread thread = new Thread("CryptoStress-"+t) {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        runOperations(new Random(seed), operationsPerThread);
+                    } catch(final Throwable e) {
+                        error("Exception in "+getName()+": "+e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        final long startMillis = System.currentTimeMillis();
+        start.countDown();
+        for( final Thread thread : threads ) {
+            thread.join();
+        }
+        final long duration = System.currentTimeMillis() - startMillis;
+
+        // check the randomized outputs with one thread
+        for( final Output o : signatures ) {
+            if( !crypto.detachedVerify(inputs[o.input], publicKeys[o.key], (String)o.value) ) {
+                error("Concurrent signature does not verify (key "+o.key+", input "+o.input+")");
+            }
+        }
+        for( final Output o : ciphertexts ) {
+            if( !Arrays.equals(inputs[o.input], crypto.decrypt((byte[])o.value, privateKeys[o.key])) ) {
+                error("Concurrent ciphertext does not decrypt to its input (key "+o.key+", input "+o.input+")");
+            }
+        }
+
+        System.out.println(operationCount.get()+" operations in "+duration+" ms, "
+                +signatures.size()+" signatures and "+ciphertexts.size()+" ciphertexts checked afterwards, "
+                +errorCount.get()+" errors");
+        return errorCount.get() == 0;
+    }
+
+    private void runOperations(final Random random, final int operations) {
+        for( int n = 0; n < operations; n++ ) {
+            final int k = random.nextInt(KEY_COUNT);
+            final int m = random.nextInt(INPUT_COUNT);
+            switch( random.nextInt(OP_COUNT) ) {
+                case OP_SIGN:
+                    signatures.add(new Output(k, m, crypto.detachedSign(inputs[m], privateKeys[k])));
+                    break;
+                case OP_VERIFY:
+                    if( !crypto.detachedVerify(inputs[m], publicKeys[k], refSignatures[k][m]) ) {
+                        error("Valid signature failed to verify (key "+k+", input "+m+")");
+                    }
+                    // a signature of another key must not verify
+                    final int other = (k + 1) % KEY_COUNT;
+                    if( crypto.detachedVerify(inputs[m], publicKeys[other], refSignatures[k][m]) ) {
+                        error("Signature verified with the wrong key (key "+other+", input "+m+")");
+                    }
+                    break;
+                case OP_ENCRYPT:
+                    ciphertexts.add(new Output(k, m, crypto.encrypt(inputs[m], publicKeys[k])));
+                    break;
+                case OP_DECRYPT:
+                    if( !Arrays.equals(inputs[m], crypto.decrypt(refCiphertexts[k][m], privateKeys[k])) ) {
+                        error("Decrypt result differs (key "+k+", input "+m+")");
+                    }
+                    break;
+                case OP_DIGEST:
+                    if( !refDigests[m].equals(crypto.digest(texts[m]))
+                            || !refChecksums[m].equals(crypto.computeChecksumSHA256(inputs[m])) )
+                    {
+                        error("Digest differs (input "+m+")");
+                    }
+                    break;
+            }
+            operationCount.incrementAndGet();
+        }
+    }
+
+    private void error(final String message) {
+        if( errorCount.incrementAndGet() <= MAX_REPORTED_ERRORS ) {
+            System.out.println("ERROR: "+message);
+        }
+    }
+
+    private static class Output {
+        final int key;
+        final int input;
+        final Object value;
+
+        Output(final int key, final int input, final Object value) {
+            this.key = key;
+            this.input = input;
+            this.value = value;
+        }
+    }
+}
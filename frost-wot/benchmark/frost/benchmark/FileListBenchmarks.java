@@ -0,0 +1,140 @@
+/*
+  FileListBenchmarks.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import frost.*;
+import frost.fileTransfer.*;
+import frost.storage.*;
+import frost.storage.perst.filelist.*;
+
+/**
+ * FileListStorage.retrieveFiles on a new synthetic file list database, searching
+ * by name, extension, comment, keyword and owner.
+ */
+public class FileListBenchmarks extends BenchmarkSuite {
+
+    private static final int FILE_COUNT = 20000;
+    private static final int OWNER_COUNT = 200;
+
+    private final List<String> owners = new ArrayList<String>();
+
+    @Override
+    public void setUp() throws Exception {
+        final BenchmarkData data = new BenchmarkData();
+
+        final File dbFile = new File(Core.frostSettings.getValue(SettingsClass.DIR_STORE) + "filelist.dbs");
+        if( dbFile.isFile() && !dbFile.delete() ) {
+            throw new IOException("Could not delete "+dbFile.getPath());
+        }
+        FileListStorage.inst().initStorage();
+
+        for( int i = 0; i < OWNER_COUNT; i++ ) {
+            owners.add(data.word() + "@" + data.base64(27));
+        }
+
+        if( !FileListStorage.inst().beginExclusiveThreadTransaction() ) {
+            throw new IllegalStateException("No transaction");
+        }
+        final long now = 1451606400000L;
+        for( int i = 0; i < FILE_COUNT; i++ ) {
+            final String name = data.word() + "_" + data.word() + "_" + i + data.extension();
+            final FrostFileListFileObject fof = new FrostFileListFileObject(
+                    data.base64(64), 1024L + data.getRandom().nextInt(100000000), data.chkKey(name),
+                    0, now, now, now, 0, 0, 0, 0);
+            // most files are shared by one identity, some by more
+            final int sharers = (i % 10 == 0) ? 3 : 1;
+            for( int s = 0; s < sharers; s++ ) {
+                fof.addFrostFileListFileObjectOwner(new FrostFileListFileObjectOwner(
+                        name,
+                        owners.get(data.getRandom().nextInt(OWNER_COUNT)),
+                        (i % 3 == 0) ? data.subject() : null,
+                        (i % 5 == 0) ? data.word() + " " + data.word() : null,
+                        0,
+                        now,
+                        now,
+                        fof.getKey()));
+            }
+            FileListStorage.inst().insertOrUpdateFileListFileObject(fof);
+        }
+        FileListStorage.inst().endThreadTransaction();
+    }
+
+    @Override
+    public void tearDown() {
+        FileListStorage.inst().silentClose();
+    }
+
+    @Override
+    public List<Benchmark> getBenchmarks() {
+        final List<Benchmark> l = new ArrayList<Benchmark>();
+        l.add(new SearchBenchmark("fileList.retrieveFiles.name",
+                Arrays.asList("network"), null, null, null, null));
+        l.add(new SearchBenchmark("fileList.retrieveFiles.extension",
+                null, null, null, null, new String[] { ".mkv", ".avi" }));
+        l.add(new SearchBenchmark("fileList.retrieveFiles.comment",
+                null, Arrays.asList("frost"), null, null, null));
+        l.add(new SearchBenchmark("fileList.retrieveFiles.keyword",
+                null, null, Arrays.asList("share"), null, null));
+        l.add(new SearchBenchmark("fileList.retrieveFiles.owner",
+                null, null, null, Arrays.asList("node@"), null));
+        return l;
+    }
+
+    private static class SearchBenchmark extends Benchmark {
+
+        private final List<String> names;
+        private final List<String> comments;
+        private final List<String> keywords;
+        private final List<String> owners;
+        private final String[] extensions;
+
+        public SearchBenchmark(
+                final String name,
+                final List<String> names,
+                final List<String> comments,
+                final List<String> keywords,
+                final List<String> owners,
+                final String[] extensions)
+        {
+            super(name);
+            this.names = names;
+            this.comments = comments;
+            this.keywords = keywords;
+            this.owners = owners;
+            this.extensions = extensions;
+        }
+
+        @Override
+        public Object run() {
+            final int[] count = new int[1];
+            FileListStorage.inst().retrieveFiles(
+                    new FileListCallback() {
+                        public boolean fileRetrieved(final FrostFileListFileObject fo) {
+                            count[0]++;
+                            return false;
+                        }
+                    },
+                    names, comments, keywords, owners, extensions);
+            return Integer.valueOf(count[0]);
+        }
+    }
+}
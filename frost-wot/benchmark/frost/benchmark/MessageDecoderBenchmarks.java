@@ -0,0 +1,65 @@
+/*
+  MessageDecoderBenchmarks.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.util.*;
+
+import javax.swing.*;
+
+import frost.util.gui.textpane.*;
+
+/**
+ * MessageDecoder decoding of smileys and Freenet keys into the document of a message text pane.
+ */
+public class MessageDecoderBenchmarks extends BenchmarkSuite {
+
+    private static final int MESSAGE_COUNT = 64;
+
+    private final List<String> messages = new ArrayList<String>();
+    private MessageDecoder decoder;
+    private JEditorPane editorPane;
+
+    private int next = 0;
+
+    @Override
+    public void setUp() {
+        final BenchmarkData data = new BenchmarkData();
+        for( int i = 0; i < MESSAGE_COUNT; i++ ) {
+            messages.add(data.messageText(512 + data.getRandom().nextInt(4096), true));
+        }
+        decoder = new MessageDecoder();
+        decoder.setSmileyDecode(true);
+        decoder.setFreenetKeysDecode(true);
+        editorPane = new JEditorPane();
+    }
+
+    @Override
+    public List<Benchmark> getBenchmarks() {
+        final List<Benchmark> l = new ArrayList<Benchmark>();
+        l.add(new Benchmark("messageDecoder.decode") {
+            @Override
+            public Object run() {
+                next = (next + 1) % MESSAGE_COUNT;
+                decoder.decode(messages.get(next), editorPane);
+                return editorPane.getDocument();
+            }
+        });
+        return l;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+  MessageXmlBenchmarks.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import org.joda.time.*;
+
+import frost.*;
+import frost.messaging.frost.*;
+import frost.util.*;
+
+/**
+ * MessageXmlFile parse and serialize of signed messages, in the format described in
+ * specs/SPEC1_xml_message_format.txt. Parsing is done from memory, like the MessageDownloader does.
+ */
+public class MessageXmlBenchmarks extends BenchmarkSuite {
+
+    private static final int MESSAGE_COUNT = 32;
+
+    private final List<byte[]> messageContents = new ArrayList<byte[]>();
+    private final List<MessageXmlFile> messages = new ArrayList<MessageXmlFile>();
+    private String publicKey;
+
+    private int next = 0;
+
+    @Override
+    public void setUp() throws Exception {
+        final BenchmarkData data = new BenchmarkData();
+        final String[] keys = Core.getCrypto().generateKeys();
+        publicKey = keys[1];
+
+        final long baseMillis = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        for( int i = 0; i < MESSAGE_COUNT; i++ ) {
+            final String template =
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<FrostMessage>" +
+                "<MessageId><![CDATA[" + UUID.nameUUIDFromBytes(Integer.toString(i).getBytes(StandardCharsets.UTF_8)) + "]]></MessageId>" +
+                "<From><![CDATA[benchmark@" + data.base64(27) + "]]></From>" +
+                "<Subject><![CDATA[" + data.subject() + "]]></Subject>" +
+                "<Date><![CDATA[2016.1.1]]></Date>" +
+                "<Time><![CDATA[0:0:0GMT]]></Time>" +
+                "<Body><![CDATA[" + data.messageText(512 + data.getRandom().nextInt(4096), true) + "]]></Body>" +
+                "<Board><![CDATA[frost]]></Board>" +
+                "</FrostMessage>";
+
+            final MessageXmlFile mxf = parse(template.getBytes(StandardCharsets.UTF_8));
+            mxf.setDateAndTime(new DateTime(baseMillis + i * 60000L, DateTimeZone.UTC));
+            mxf.setPublicKey(publicKey);
+            mxf.signMessageV2(keys[0]);
+
+            messages.add(mxf);
+            messageContents.add(serialize(mxf));
+
+            if( !parse(messageContents.get(i)).verifyMessageSignatureV2(publicKey) ) {
+                throw new IllegalStateException("Signature of the test message is invalid");
+            }
+        }
+    }
+
+    private static MessageXmlFile parse(final byte[] content) throws Exception {
+        try {
+            return new MessageXmlFile(content);
+        } catch(final Exception e) {
+            throw e;
+        } catch(final Throwable t) {
+            throw new Exception(t);
+        }
+    }
+
+    private static byte[] serialize(final MessageXmlFile mxf) throws XMLStreamException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        final XMLStreamWriter w = XMLTools.createXmlStreamWriter(out);
+        w.writeStartDocument("UTF-8", "1.0");
+        mxf.writeXMLStream(w);
+        w.writeEndDocument();
+        w.close();
+        return out.toByteArray();
+    }
+
+    @Override
+    public List<Benchmark> getBenchmarks() {
+        final List<Benchmark> l = new ArrayList<Benchmark>();
+        l.add(new Benchmark("messageXml.parse") {
+            @Override
+            public Object run() throws Exception {
+                return parse(messageContents.get(nextIndex()));
+            }
+        });
+        l.add(new Benchmark("messageXml.parseAndVerify") {
+            @Override
+            public Object run() throws Exception {
+                final MessageXmlFile mxf = parse(messageContents.get(nextIndex()));
+                return Boolean.valueOf(mxf.verifyMessageSignatureV2(publicKey));
+            }
+        });
+        l.add(new Benchmark("messageXml.serialize") {
+            @Override
+            public Object run() throws Exception {
+                return serialize(messages.get(nextIndex()));
+            }
+        });
+        return l;
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % MESSAGE_COUNT;
+        return next;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+  NodeMessageBenchmarks.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import frost.fcp.fcp07.*;
+
+/**
+ * NodeMessage.readMessage on a transcript of the node messages of a typical FCP session:
+ * the handshake, a message download with progress and data, a failed request and an insert.
+ */
+public class NodeMessageBenchmarks extends BenchmarkSuite {
+
+    private byte[] transcript;
+    private int messageCount;
+
+    @Override
+    public void setUp() throws IOException {
+        final BenchmarkData data = new BenchmarkData();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        messageCount = 0;
+
+        append(out,
+                "NodeHello\n" +
+                "CompressionCodecs=4 - GZIP(0), BZIP2(1), LZMA(2), LZMA_NEW(3)\n" +
+                "Revision=build01480\n" +
+                "Testnet=false\n" +
+                "Version=Fred,0.7,1.0,1480\n" +
+                "Build=1480\n" +
+                "ConnectionIdentifier=" + data.base64(32) + "\n" +
+                "Node=Fred\n" +
+                "ExtBuild=29\n" +
+                "FCPVersion=2.0\n" +
+                "NodeLanguage=ENGLISH\n" +
+                "ExtRevision=v29\n" +
+                "EndMessage\n");
+
+        for( int i = 0; i < 20; i++ ) {
+            final String id = "get-" + data.base64(12);
+            for( int p = 0; p < 4; p++ ) {
+                append(out,
+                        "SimpleProgress\n" +
+                        "Identifier=" + id + "\n" +
+                        "Total=" + (10 + p) + "\n" +
+                        "Required=" + (4 + p) + "\n" +
+                        "Failed=0\n" +
+                        "FatallyFailed=0\n" +
+                        "Succeeded=" + (p * 2) + "\n" +
+                        "LastProgress=" + (1451606400000L + p) + "\n" +
+                        "FinalizedTotal=true\n" +
+                        "MinSuccessFetchBlocks=4\n" +
+                        "EndMessage\n");
+            }
+            if( i % 4 == 3 ) {
+                append(out,
+                        "GetFailed\n" +
+                        "Identifier=" + id + "\n" +
+                        "Code=28\n" +
+                        "CodeDescription=All data not found\n" +
+                        "ShortCodeDescription=All data not found\n" +
+                        "Fatal=true\n" +
+                        "Global=false\n" +
+                        "EndMessage\n");
+                continue;
+            }
+            final byte[] payload = data.messageText(2048 + data.getRandom().nextInt(8192), true).getBytes(StandardCharsets.UTF_8);
+            append(out,
+                    "AllData\n" +
+                    "Identifier=" + id + "\n" +
+                    "CompletionTime=1451606400000\n" +
+                    "StartupTime=1451606300000\n" +
+                    "DataLength=" + payload.length + "\n" +
+                    "Global=false\n" +
+                    "Metadata.ContentType=text/xml\n" +
+                    "Data\n");
+            out.write(payload);
+        }
+
+        append(out,
+                "URIGenerated\n" +
+                "Identifier=put-1\n" +
+                "URI=" + data.chkKey("") + "\n" +
+                "EndMessage\n");
+        append(out,
+                "PutSuccessful\n" +
+                "Identifier=put-1\n" +
+                "URI=" + data.chkKey("") + "\n" +
+                "StartupTime=1451606300000\n" +
+                "CompletionTime=1451606400000\n" +
+                "Global=false\n" +
+                "EndMessage\n");
+
+        transcript = out.toByteArray();
+    }
+
+    private void append(final ByteArrayOutputStream out, final String message) throws IOException {
+        out.write(message.getBytes(StandardCharsets.UTF_8));
+        messageCount++;
+    }
+
+    @Override
+    public List<Benchmark> getBenchmarks() {
+        final List<Benchmark> l = new ArrayList<Benchmark>();
+        l.add(new Benchmark("nodeMessage.readTranscript") {
+            @Override
+            public Object run() throws IOException {
+                final BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(transcript));
+                int count = 0;
+                NodeMessage msg;
+                while( (msg = NodeMessage.readMessage(in)) != null ) {
+                    if( msg.getMessageEnd().equals("Data") ) {
+                        // skip the payload, like the FcpConnection reads it
+                        long toSkip = msg.getLongValue("DataLength");
+                        while( toSkip > 0 ) {
+                            toSkip -= in.skip(toSkip);
+                        }
+                    }
+                    count++;
+                }
+                if( count != messageCount ) {
+                    throw new IOException("Read "+count+" of "+messageCount+" messages");
+                }
+                return Integer.valueOf(count);
+            }
+        });
+        return l;
+    }
+}
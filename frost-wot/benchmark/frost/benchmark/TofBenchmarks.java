@@ -0,0 +1,85 @@
+/*
+  TofBenchmarks.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.benchmark;
+
+import java.util.*;
+
+import javax.swing.tree.*;
+
+import frost.*;
+import frost.messaging.frost.*;
+import frost.messaging.frost.boards.*;
+
+/**
+ * TOF.isBlocked with block words for subject, body and attached boards enabled,
+ * on unsigned messages, so all checks are done.
+ */
+public class TofBenchmarks extends BenchmarkSuite {
+
+    private static final int MESSAGE_COUNT = 1024;
+
+    private final List<FrostMessageObject> messages = new ArrayList<FrostMessageObject>();
+    private Board board;
+    private TOF tof;
+
+    private int next = 0;
+
+    @Override
+    public void setUp() {
+        final BenchmarkData data = new BenchmarkData();
+
+        Core.frostSettings.setValue(SettingsClass.SHOW_JUNK_MESSAGES, true);
+        Core.frostSettings.setValue(SettingsClass.MESSAGE_HIDE_UNSIGNED, false);
+        Core.frostSettings.setValue(SettingsClass.MESSAGE_HIDE_COUNT, 0);
+        Core.frostSettings.setValue(SettingsClass.MESSAGE_BLOCK_SUBJECT, "spam;advert;flood;xxx;casino");
+        Core.frostSettings.setValue(SettingsClass.MESSAGE_BLOCK_BODY, "buy now;click here;free money;viagra");
+        Core.frostSettings.setValue(SettingsClass.MESSAGE_BLOCK_BOARDNAME, "spam;flood");
+
+        TOF.initialize(new TofTreeModel(new DefaultMutableTreeNode()));
+        tof = TOF.getInstance();
+        board = new Board("frost", null);
+
+        for( int i = 0; i < MESSAGE_COUNT; i++ ) {
+            final FrostMessageObject mo = new FrostMessageObject();
+            mo.setBoard(board);
+            mo.setSubject(data.subject());
+            mo.setContent(data.messageText(256 + data.getRandom().nextInt(2048), true));
+            if( i % 8 == 0 ) {
+                final AttachmentList<Attachment> attachments = new AttachmentList<Attachment>();
+                attachments.add(new BoardAttachment(new Board(data.word() + "-" + data.word(), null)));
+                mo.setAttachmentList(attachments);
+                mo.setHasBoardAttachments(true);
+            }
+            messages.add(mo);
+        }
+    }
+
+    @Override
+    public List<Benchmark> getBenchmarks() {
+        final List<Benchmark> l = new ArrayList<Benchmark>();
+        l.add(new Benchmark("tof.isBlocked") {
+            @Override
+            public Object run() {
+                next = (next + 1) % MESSAGE_COUNT;
+                return Boolean.valueOf(tof.isBlocked(messages.get(next), board));
+            }
+        });
+        return l;
+    }
+}
@@ -83,6 +83,7 @@ public class Core {
     private MainFrame mainFrame;
     private BoardsManager boardsManager;
     private FileTransferManager fileTransferManager;
+    private MessageExpirationThread messageExpiration = null;
 
     private static FrostIdentities identities;
 
@@ -324,7 +325,7 @@ public class Core {
      * Enqueue a message that is shown at the end of the splashscreen, right before the mainframe
      * becomes visible. Alerts the user about problems during loading (e.g. missing files).
      */
-    public static void enqueueStartupMessage(final StartupMessage sm) {
+    public static synchronized void enqueueStartupMessage(final StartupMessage sm) {
         queuedStartupMessages.add( sm );
     }
 
@@ -355,6 +356,7 @@ public class Core {
             savedBytes += compactStorage(splashscreen, SharedFilesCHKKeyStorage.inst());
             savedBytes += compactStorage(splashscreen, MessageStorage.inst());
             savedBytes += compactStorage(splashscreen, MessageContentStorage.inst());
+            savedBytes += compactStorage(splashscreen, MessageSearchIndexStorage.inst());
             savedBytes += compactStorage(splashscreen, FileListStorage.inst());
             savedBytes += compactStorage(splashscreen, ArchiveMessageStorage.inst());
 
@@ -387,6 +389,7 @@ public class Core {
             exportStorage(splashscreen, SharedFilesCHKKeyStorage.inst());
             exportStorage(splashscreen, MessageStorage.inst());
             exportStorage(splashscreen, MessageContentStorage.inst());
+            exportStorage(splashscreen, MessageSearchIndexStorage.inst());
             exportStorage(splashscreen, FileListStorage.inst());
             exportStorage(splashscreen, ArchiveMessageStorage.inst());
             logger.warning("Finished export to XML");
@@ -605,17 +608,40 @@ public class Core {
             frostSettings.setValue(SettingsClass.PERST_EXPORT_STORAGES, false);
         }
 
-        // initialize perst storages
-        IndexSlotsStorage.inst().initStorage();
-        SharedFilesCHKKeyStorage.inst().initStorage();
-        FrostFilesStorage.inst().initStorage();
-        MessageStorage.inst().initStorage();
-        MessageContentStorage.inst().initStorage();
-        ArchiveMessageStorage.inst().initStorage();
-        IdentitiesStorage.inst().initStorage();
-        FileListStorage.inst().initStorage();
-        TrackDownloadKeysStorage.inst().initStorage();
-        HashBlocklistManager.getInstance().initStorage();
+        // initialize perst storages, the independent storages are opened concurrently
+        final StorageInitializer storageInitializer = new StorageInitializer();
+        storageInitializer.addStorage(IndexSlotsStorage.inst());
+        storageInitializer.addStorage(SharedFilesCHKKeyStorage.inst());
+        storageInitializer.addStorage(FrostFilesStorage.inst());
+        storageInitializer.addStorage(MessageContentStorage.inst());
+        storageInitializer.addStorage(MessageSearchIndexStorage.inst());
+        // the MessageStorage commits the content and search index storages too
+        storageInitializer.addStorage(
+                MessageStorage.inst(),
+                MessageContentStorage.inst().getStorageFilename(),
+                MessageSearchIndexStorage.inst().getStorageFilename());
+        storageInitializer.addStorage(IdentitiesStorage.inst());
+        storageInitializer.addStorage(FileListStorage.inst());
+        storageInitializer.addStorage(TrackDownloadKeysStorage.inst());
+        // rarely used storages are opened on their first access
+        ArchiveMessageStorage.inst().initStorageOnDemand();
+        if( frostSettings.getBoolValue(SettingsClass.HASHBLOCKLIST_ENABLED) ) {
+            storageInitializer.addStorage("hashblocklist.dbs", new Runnable() {
+                public void run() {
+                    HashBlocklistManager.getInstance().initStorage();
+                }
+            });
+        } else {
+            HashBlocklistManager.getInstance().initStorageOnDemand();
+        }
+        // sizes the page pools if the adaptive mode is enabled
+        PagePoolBudget.inst().initialize(AbstractFrostStorage.getAllStorages());
+        storageInitializer.openAll(new StorageInitializer.ProgressListener() {
+            public void storageOpened(final String name, final long millis, final int openedCount, final int totalCount) {
+                splashscreen.setText("Opened storage file '"+name+"' ("+millis+" ms)");
+                splashscreen.setProgress(20 + (20 * openedCount / totalCount));
+            }
+        });
 
         splashscreen.setText(language.getString("Splashscreen.message.2"));
         splashscreen.setProgress(40);
@@ -671,8 +697,9 @@ public class Core {
 
         // cleanup gets the expiration mode from settings, and the interval
         // NOTE: message expiration cleanup only happens at Frost startup, if enough days have passed
-        // or if they've checked the "cleanup during next startup" box
-        CleanUp.runExpirationTasks(splashscreen, MainFrame.getInstance().getFrostMessageTab().getTofTreeModel().getAllBoards());
+        // or if they've checked the "cleanup during next startup" box. the messages are expired in
+        // the background after the startup
+        messageExpiration = CleanUp.runExpirationTasks(splashscreen, MainFrame.getInstance().getFrostMessageTab().getTofTreeModel().getAllBoards());
 
         // now that the perst databases and mainframe are initialized, it's safe to import the
         // default "known boards" list (if the user hasn't been asked already)
@@ -758,6 +785,12 @@ public class Core {
         timer.schedule(cleaner, gcMinutes * 60L * 1000L, gcMinutes * 60L * 1000L);
         cleaner = null;
 
+        // periodically dump the storage instrumentation into the log and a CSV file
+        final long dumpMinutes = frostSettings.getLongValue(SettingsClass.PERST_STATISTICS_DUMP_INTERVAL);
+        if( dumpMinutes > 0 ) {
+            timer.schedule(new StorageInstrumentationDumpTask(), dumpMinutes * 60L * 1000L, dumpMinutes * 60L * 1000L);
+        }
+
         // initialize the task that saves data
         final StorageManager saver = new StorageManager(frostSettings);
 
@@ -771,14 +804,23 @@ public class Core {
         saver.addExitSavable(getBoardsManager().getTofTree());
         saver.addExitSavable(getFileTransferManager());
 
+        // stop the message expiration before its finished state is saved
+        if( messageExpiration != null ) {
+            saver.addExitSavable(messageExpiration);
+        }
+
         saver.addExitSavable(frostSettings);
 
+        // save the access rates of the storages for the adaptive page pool sizing
+        saver.addExitSavable(PagePoolBudget.inst());
+
         // close perst Storages
         saver.addExitSavable(IndexSlotsStorage.inst());
         saver.addExitSavable(SharedFilesCHKKeyStorage.inst());
         saver.addExitSavable(FrostFilesStorage.inst());
         saver.addExitSavable(MessageStorage.inst());
         saver.addExitSavable(MessageContentStorage.inst());
+        saver.addExitSavable(MessageSearchIndexStorage.inst());
         saver.addExitSavable(ArchiveMessageStorage.inst());
         saver.addExitSavable(IdentitiesStorage.inst());
         saver.addExitSavable(FileListStorage.inst());
@@ -791,6 +833,19 @@ public class Core {
         // start file attachment uploads
         FileAttachmentUploadThread.getInstance().start();
 
+        // compress the message contents of older versions in the background
+        MessageContentStorage.inst().startBackgroundMigration();
+
+        // archive or delete the expired messages
+        if( messageExpiration != null ) {
+            messageExpiration.start();
+        }
+
+        // compact the fragmented storages while we are running
+        if( frostSettings.getIntValue(SettingsClass.PERST_ONLINE_COMPACT_INTERVAL) > 0 ) {
+            new StorageCompactionThread(MessageContentStorage.inst(), MessageSearchIndexStorage.inst()).start();
+        }
+
         // start all filetransfer tickers
         getFileTransferManager().startTickers();
 
@@ -93,6 +93,7 @@ public class MainFrame extends JFrame implements SettingsUpdater, LanguageListen
     private final JMenuItem helpAboutMenuItem = new JMenuItem();
     private final JMenuItem helpHelpMenuItem = new JMenuItem();
     private final JMenuItem helpMemMonMenuItem = new JMenuItem();
+    private final JMenuItem helpStorageDiagnosticsMenuItem = new JMenuItem();
     private final JMenuItem helpKeyConversionUtilityMenuItem = new JMenuItem();
 
     //Help Menu
@@ -354,6 +355,12 @@ public class MainFrame extends JFrame implements SettingsUpdater, LanguageListen
                 }
             });
 
+            helpStorageDiagnosticsMenuItem.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent e) {
+                    new StorageDiagnosticsDialog(MainFrame.this).startDialog();
+                }
+            });
+
             helpKeyConversionUtilityMenuItem.setIcon(MiscToolkit.getScaledImage("/data/toolbar/key-utility.png", 16, 16));
             helpKeyConversionUtilityMenuItem.addActionListener(new ActionListener() {
                 public void actionPerformed(final ActionEvent e) {
@@ -387,6 +394,7 @@ public class MainFrame extends JFrame implements SettingsUpdater, LanguageListen
             LanguageGuiSupport.getInstance().buildInitialLanguageMenu(languageMenu);
             // Help Menu
             helpMenu.add(helpMemMonMenuItem);
+            helpMenu.add(helpStorageDiagnosticsMenuItem);
             helpMenu.add(helpKeyConversionUtilityMenuItem);
             helpMenu.add(helpHelpMenuItem);
             helpMenu.addSeparator();
@@ -865,10 +873,12 @@ public class MainFrame extends JFrame implements SettingsUpdater, LanguageListen
      * @param e
      */
     public void tofTree_actionPerformed(final TreeSelectionEvent e) {
+        TOF.getInstance().clearMessageTreeCache();
         getFrostMessageTab().boardTree_actionPerformed();
     }
 
     public void tofTree_actionPerformed(final TreeSelectionEvent e, final boolean reselectCurrentMessageFallback) {
+        TOF.getInstance().clearMessageTreeCache();
         getFrostMessageTab().boardTree_actionPerformed(reselectCurrentMessageFallback);
     }
 
@@ -889,6 +899,7 @@ public class MainFrame extends JFrame implements SettingsUpdater, LanguageListen
         languageMenu.setText(language.getString("MainFrame.menu.language"));
         helpMenu.setText(language.getString("MainFrame.menu.help"));
         helpMemMonMenuItem.setText(language.getString("MainFrame.menu.help.showMemoryMonitor"));
+        helpStorageDiagnosticsMenuItem.setText(language.getString("MainFrame.menu.help.showStorageDiagnostics"));
         helpKeyConversionUtilityMenuItem.setText(language.getString("MainFrame.menu.help.showKeyConversionUtility"));
         helpHelpMenuItem.setText(language.getString("MainFrame.menu.help.help"));
         helpAboutMenuItem.setText(language.getString("MainFrame.menu.help.aboutFrost"));
@@ -78,6 +78,13 @@ public class SettingsClass implements ExitSavable {
 
     public static final String PERST_COMPACT_STORAGES = "perst.compactStorages";
     public static final String PERST_EXPORT_STORAGES = "perst.exportStorages";
+    public static final String PERST_ONLINE_COMPACT_INTERVAL = "perst.onlineCompactIntervalMinutes"; // not in gui dialog!
+    public static final String PERST_ONLINE_COMPACT_MIN_FREE = "perst.onlineCompactMinFreeKiB"; // not in gui dialog!
+    public static final String PERST_ONLINE_COMPACT_MIN_FREE_PERCENT = "perst.onlineCompactMinFreePercent"; // not in gui dialog!
+    public static final String PERST_ONLINE_COMPACT_IO_LIMIT = "perst.onlineCompactIoLimitKiB"; // not in gui dialog!
+    public static final String PERST_PAGEPOOL_ADAPTIVE = "perst.pagepoolAdaptive"; // not in gui dialog!
+    public static final String PERST_PAGEPOOL_BUDGET_PERCENT = "perst.pagepoolAdaptiveBudgetPercent"; // not in gui dialog!
+    public static final String PERST_STATISTICS_DUMP_INTERVAL = "perst.statisticsDumpIntervalMinutes"; // not in gui dialog!
 
     public static final String DIR_CONFIG = "config.dir";
     public static final String DIR_DOWNLOAD = "downloadDirectory";
@@ -116,6 +123,7 @@ public class SettingsClass implements ExitSavable {
     public static final String PERST_PAGEPOOLSIZE_MESSAGEARCHIVE = "perst.pagepoolsizeKiB.messagearchive";
     public static final String PERST_PAGEPOOLSIZE_MESSAGES = "perst.pagepoolsizeKiB.messages";
     public static final String PERST_PAGEPOOLSIZE_MESSAGECONTENTS = "perst.pagepoolsizeKiB.messagecontents";
+    public static final String PERST_PAGEPOOLSIZE_MESSAGESEARCHINDEX = "perst.pagepoolsizeKiB.messagesearchindex";
 
     public static final String FREENET_FCP_ADDRESS = "availableNodes";
     public static final String FCP2_USE_DDA = "fcp2.useDDA";
@@ -209,6 +217,12 @@ public class SettingsClass implements ExitSavable {
     public static final String MESSAGE_UPLOAD_DISABLED = "messageUploadDisabled";
     public static final String MESSAGE_UPLOAD_QUICKSEND = "messageUploadQuicksend";
     public static final String MAX_MESSAGE_DOWNLOADDATE_FAILURES = "maxMessageDownloadDateFailures";
+    public static final String MESSAGE_DOWNLOAD_WINDOW_SIZE = "messageDownloadWindowSize"; // not in gui dialog!
+    public static final String MESSAGE_DOWNLOAD_FRONTIER_SEARCH = "messageDownloadFrontierSearch"; // not in gui dialog!
+    public static final String MESSAGE_DOWNLOAD_COMMIT_INTERVAL = "messageDownloadCommitInterval"; // not in gui dialog!
+    public static final String MESSAGE_TREE_CACHE_SIZE = "messageTreeCacheSize"; // not in gui dialog!
+    public static final String MSGTABLE_PAGED_LOADING_THRESHOLD = "messageTablePagedLoadingThreshold"; // not in gui dialog!
+    public static final String MSGTABLE_PAGE_SIZE = "messageTablePageSize"; // not in gui dialog!
 
     public static final String SEARCH_MAX_RESULTS = "maxSearchResults";
     public static final String SEARCH_HIDE_BAD = "hideBADFiles";
@@ -1041,6 +1055,12 @@ public class SettingsClass implements ExitSavable {
         defaults.put(MAX_MESSAGE_DISPLAY, "9999");
         defaults.put(MAX_MESSAGE_DOWNLOAD, "30");
         defaults.put(MAX_MESSAGE_DOWNLOADDATE_FAILURES, "2"); // stop grabbing a day's messages after 2 missing msgs
+        defaults.put(MESSAGE_DOWNLOAD_WINDOW_SIZE, "4"); // no. of message slots probed concurrently per board day
+        defaults.put(MESSAGE_DOWNLOAD_FRONTIER_SEARCH, "true"); // estimate the last used slot of never downloaded days
+        defaults.put(MESSAGE_DOWNLOAD_COMMIT_INTERVAL, "10"); // seconds between commits of received messages, 0 commits each message
+        defaults.put(MESSAGE_TREE_CACHE_SIZE, "3"); // no. of recently shown board message trees kept in memory, 0 disables
+        defaults.put(MSGTABLE_PAGED_LOADING_THRESHOLD, "20000"); // threaded boards with more msgs to show are loaded in pages, 0 disables
+        defaults.put(MSGTABLE_PAGE_SIZE, "250"); // no. of threads loaded per page
         defaults.put(ALWAYS_DOWNLOAD_MESSAGES_BACKLOAD, "false");
 
         defaults.put(MIN_DAYS_BEFORE_FILE_RESHARE, "5"); // reshare all 5 days
@@ -1185,9 +1205,17 @@ public class SettingsClass implements ExitSavable {
         defaults.put(PERST_PAGEPOOLSIZE_MESSAGEARCHIVE,     "2048"); // 1024
         defaults.put(PERST_PAGEPOOLSIZE_MESSAGES,           "12288"); // 6144 - extremely important for fast board re-opening
         defaults.put(PERST_PAGEPOOLSIZE_MESSAGECONTENTS,    "4096"); // 1024
+        defaults.put(PERST_PAGEPOOLSIZE_MESSAGESEARCHINDEX, "4096"); // New Frost-Next feature; trigram index of the messages
 
         defaults.put(PERST_COMPACT_STORAGES, "false");
         defaults.put(PERST_EXPORT_STORAGES,  "false");
+        defaults.put(PERST_ONLINE_COMPACT_INTERVAL, "60"); // minutes between the checks for fragmented storages, 0 disables
+        defaults.put(PERST_ONLINE_COMPACT_MIN_FREE, "16384"); // only storages with at least this much free space are compacted
+        defaults.put(PERST_ONLINE_COMPACT_MIN_FREE_PERCENT, "30"); // ... and with at least this percentage of free space
+        defaults.put(PERST_ONLINE_COMPACT_IO_LIMIT, "2048"); // KiB per second written by the online compaction
+        defaults.put(PERST_PAGEPOOL_ADAPTIVE, "false"); // true splits a global budget across the storages instead of the fixed pagepoolsizeKiB values
+        defaults.put(PERST_PAGEPOOL_BUDGET_PERCENT, "20"); // percent of the max. heap used for all page pools in the adaptive mode
+        defaults.put(PERST_STATISTICS_DUMP_INTERVAL, "30"); // minutes between the dumps of the storage statistics into storageStatistics.csv and publicKeyCacheStatistics.csv, 0 disables
 
         settingsHash.putAll(defaults);
     }
@@ -123,6 +123,20 @@ public abstract class FcpHandler {
             boolean createTempFile,
             FrostDownloadItem dlItem);
 
+    /**
+     * getData retrieves a small key (like a message) directly into memory, without any temp file.
+     * The received data is available with FcpResultGet.getData() if the result is successful.
+     * @param key The key to retrieve.
+     * @param maxSize The maximum allowed data size, must be greater than 0.
+     *
+     * @return null on error, or FcpResults
+     */
+    public abstract FcpResultGet getData(
+            int type,
+            String key,
+            int maxSize,
+            int maxRetries);
+
     /**
      * Inserts a file into freenet.
      * The maximum file size for a KSK/SSK direct insert is 32kb! (metadata + data!!!)
@@ -110,6 +110,51 @@ public class FcpHandler07 extends FcpHandler {
         return result;
     }
 
+    @Override
+    public FcpResultGet getData(
+            final int type,
+            String key,
+            final int maxSize,
+            final int maxRetries)
+    {
+        key = FcpConnection.stripSlashes(key);
+        final boolean doLogging = Logging.inst().doLogFcp2Messages();
+        final int cnt = count++;
+        final long l = System.currentTimeMillis();
+        final FcpResultGet result;
+        if( type == FcpHandler.TYPE_MESSAGE && msgTransferConnection != null ) {
+            // use the shared socket
+            if (doLogging) {
+                System.out.println("GETDATA_START(S)("+cnt+"):"+key);
+            }
+            final String id = "get-" + FcpSocket.getNextFcpId();
+            final FreenetPriority prio = FreenetPriority.getPriority(Core.frostSettings.getIntValue(SettingsClass.FCP2_DEFAULT_PRIO_MESSAGE_DOWNLOAD));
+            // a task without target file receives the data into memory
+            final MessageTransferTask task = new MessageTransferTask(id, key, null, prio, maxSize, maxRetries);
+
+            // enqueue task
+            msgTransferConnection.enqueueTask(task);
+            // wait for task to finish
+            task.waitForFinished();
+
+            result = task.getFcpResultGet();
+
+            if (doLogging) {
+                System.out.println("GETDATA_END(S)("+cnt+"):"+key+", duration="+(System.currentTimeMillis()-l));
+            }
+        } else {
+            // use a new socket
+            if (doLogging) {
+                System.out.println("GETDATA_START(N)("+cnt+"):"+key);
+            }
+            result = FcpRequest.getData(type, key, maxSize, maxRetries);
+            if (doLogging) {
+                System.out.println("GETDATA_END(N)("+cnt+"):"+key+", duration="+(System.currentTimeMillis()-l));
+            }
+        }
+        return result;
+    }
+
     int count = 0;
 
     @Override
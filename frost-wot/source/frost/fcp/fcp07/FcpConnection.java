@@ -44,6 +44,12 @@ public class FcpConnection {
 
     private final FcpSocket fcpSocket;
 
+    // the pool the socket was taken from, or null if this connection owns a private socket
+    private final FcpSocketPool socketPool;
+    // set when the last request reached a terminal node message, so the socket can be reused
+    private boolean isReusable = false;
+    private boolean isClosed = false;
+
     /**
      * Create a connection to a host using FCP
      *
@@ -53,14 +59,40 @@ public class FcpConnection {
      * @exception IOException if there is a problem with the connection to the FCP host.
      */
     public FcpConnection(final NodeAddress na) throws UnknownHostException, IOException {
-        fcpSocket = new FcpSocket(na);
+        this(new FcpSocket(na), null);
+    }
+
+    /**
+     * Create a connection using a socket from the given pool. The socket is returned
+     * to the pool by close() if the request finished cleanly.
+     */
+    public FcpConnection(final FcpSocketPool pool) throws UnknownHostException, IOException {
+        this(pool.checkout(), pool);
+    }
+
+    private FcpConnection(final FcpSocket socket, final FcpSocketPool pool) {
+        fcpSocket = socket;
+        socketPool = pool;
         // EXTREMELY IMPORTANT: use the 90 minute timeout on all socket read() calls,
         // to ensure that we'll stay alive even during very long periods of transfer-inactivity.
         fcpSocket.setNonPersistentTimeout();
     }
 
+    /**
+     * Closes the connection. Pooled sockets whose last request completed cleanly are
+     * returned to their pool instead (which also resets the read timeout).
+     * Calling this more than once has no effect.
+     */
     public void close() {
-        fcpSocket.close();
+        if( isClosed ) {
+            return;
+        }
+        isClosed = true;
+        if( socketPool != null && isReusable ) {
+            socketPool.checkin(fcpSocket);
+        } else {
+            fcpSocket.close();
+        }
     }
 
     protected void sendMessage(final List<String> msg) {
@@ -83,6 +115,8 @@ public class FcpConnection {
 
     /**
      * Retrieves the specified key and saves it to the file specified.
+     * For messages, the targetFile can be null to receive the data into memory;
+     * the data is then returned with the result.
      *
      * @param publicKey  the key to be retrieved
      * @param filename  the filename to which the data should be saved
@@ -106,6 +140,10 @@ public class FcpConnection {
 					"Key =       " + key + "\n" +
 					"KeyType =   " + key.getKeyType());
 
+        if( targetFile == null && (type != FcpHandler.TYPE_MESSAGE || maxSize <= 0) ) {
+            throw new IllegalArgumentException("In-memory downloads need TYPE_MESSAGE and a maxSize");
+        }
+
         final boolean useDDA;
         if( type == FcpHandler.TYPE_MESSAGE ) {
             useDDA = false;
@@ -186,6 +224,8 @@ public class FcpConnection {
         boolean isFatal = false;
         String redirectURI = null;
         String hashMD5 = null; // keeps track of last-seen hash
+        byte[] receivedData = null;
+        isReusable = false;
         while(true) {
             final NodeMessage nodeMsg = NodeMessage.readMessage(fcpSocket.getFcpIn());
             if( nodeMsg == null ) {
@@ -214,6 +254,25 @@ public class FcpConnection {
                 // data follow, first get datalength
                 final long dataLength = nodeMsg.getLongValue("DataLength");
 
+                if( targetFile == null ) {
+                    // receive the (small) data into memory
+                    if( dataLength > maxSize ) {
+                        // the node enforces MaxSize, so this should never happen. the unread data
+                        // makes the socket unusable, close() will throw it away.
+                        logger.severe("Received data is larger than MaxSize: "+dataLength+" > "+maxSize);
+                        break;
+                    }
+                    receivedData = nodeMsg.receiveMessageData(dataLength);
+                    if(Logging.inst().doLogFcp2Messages()) {
+                        System.out.println("*GET** Received "+receivedData.length+" of "+dataLength+" bytes into memory.");
+                    }
+                    if( receivedData.length == dataLength ) {
+                        isSuccess = true;
+                        isReusable = true; // AllData is the last message of the request
+                    }
+                    break;
+                }
+
                 // ensure that the parent directory exists
                 final File parentDir = targetFile.getParentFile();
                 if( parentDir != null ) { // path specified a parent directory
@@ -221,31 +280,19 @@ public class FcpConnection {
                 }
 
                 // write the file to disk
-                long bytesWritten = 0;
+                final long bytesWritten;
                 try (
                     // NOTE: Java 7+ try-with-resources (autocloseable)
                     final FileOutputStream fileOutputStream = new FileOutputStream(targetFile);
-                    final BufferedOutputStream fileOut = new BufferedOutputStream(fileOutputStream);
                 ) {
-                    final byte[] b = new byte[4096];
-                    long bytesLeft = dataLength;
-                    int count;
-                    while( bytesLeft > 0 ) {
-                        count = fcpSocket.getFcpIn().read(b, 0, ((bytesLeft > b.length)?b.length:(int)bytesLeft));
-                        if( count < 0 ) {
-                            break;
-                        } else {
-                            bytesLeft -= count;
-                        }
-                        fileOut.write(b, 0, count);
-                        bytesWritten += count;
-                    }
+                    bytesWritten = nodeMsg.receiveMessageData(dataLength, fileOutputStream.getChannel());
                 }
                 if(Logging.inst().doLogFcp2Messages()) {
                     System.out.println("*GET** Wrote "+bytesWritten+" of "+dataLength+" bytes to file.");
                 }
                 if( bytesWritten == dataLength ) {
                     isSuccess = true;
+                    isReusable = true; // AllData is the last message of the request
                     if( dlItem != null && dlItem.getRequiredBlocks() > 0 ) {
                         dlItem.setFinalized(true);
                         dlItem.setDoneBlocks(dlItem.getRequiredBlocks());
@@ -262,6 +309,7 @@ public class FcpConnection {
             if( useDDA && nodeMsg.isMessageName("DataFound") ) {
                 final long dataLength = nodeMsg.getLongValue("DataLength");
                 isSuccess = true;
+                isReusable = true; // with ReturnType=disk, DataFound is the last message of the request
                 System.out.println("*GET**: DataFound, len="+dataLength);
                 if( dlItem != null && dlItem.getRequiredBlocks() > 0 ) {
                     dlItem.setFinalized(true);
@@ -293,6 +341,7 @@ public class FcpConnection {
                 isFatal = nodeMsg.getBoolValue("Fatal");
                 // NOTE:IMPORTANT: INCOMING FREENET URIS FROM THE NODE ARE ALWAYS URLENCODED, SO WE DECODE THEM!
                 redirectURI = Mixed.rawUrlDecode(nodeMsg.getStringValue("RedirectURI"));
+                isReusable = true; // GetFailed is the last message of the request
                 break;
             }
             if( dlItem != null && nodeMsg.isMessageName("SimpleProgress") ) {
@@ -379,10 +428,13 @@ public class FcpConnection {
 
         if( !isSuccess ) {
             // failure
-            if( targetFile.isFile() ) {
+            if( targetFile != null && targetFile.isFile() ) {
                 targetFile.delete();
             }
             result = new FcpResultGet(false, returnCode, codeDescription, isFatal, redirectURI);
+        } else if( targetFile == null ) {
+            // success, data is in memory
+            result = new FcpResultGet(receivedData);
         } else {
             // success
             result = new FcpResultGet(true);
@@ -572,11 +624,6 @@ public class FcpConnection {
         // means that Freenet will stop handling this request if the user closes Frost (breaks socket connection)
         msg.add("Persistence=connection");
 
-        // NOTE:XXX: EXTREMELY IMPORTANT - this output stream must be closed *last*. we only need it while
-        // writing the file to the socket. but if we use try-with-resources, it'll also autoclose the underlying
-        // socket due to the close() call cascading. so we handle closing this stream separately.
-        BufferedOutputStream dataOutput = null;
-
         if (useDDA) {
             // direct file access
             msg.add("UploadFrom=disk");
@@ -590,8 +637,9 @@ public class FcpConnection {
             msg.add("Data");
             sendMessage(msg);
 
-            // NOTE:XXX: we do not try-with-resources (autoclose) this dataOutput buffer since that would close the socket prematurely
-            dataOutput = new BufferedOutputStream(fcpSocket.getFcpSock().getOutputStream());
+            // NOTE:XXX: we write through the socket's own buffered output stream and never close it here,
+            // since closing it would close the socket (which may still be needed for a pooled connection)
+            final BufferedOutputStream dataOutput = fcpSocket.getFcpRawOut();
 
             // write complete file to socket
             try (
@@ -616,8 +664,8 @@ public class FcpConnection {
         String codeDescription = null;
         boolean isFatal = false;
         String chkKey = null;
+        isReusable = false;
         while(true) {
-            // NOTE:XXX: this is the part that would fail if we'd allowed the dataOutput buffer to cascade its close() call to the socket above
             final NodeMessage nodeMsg = NodeMessage.readMessage(fcpSocket.getFcpIn());
             if( nodeMsg == null ) {
                 break;
@@ -643,6 +691,7 @@ public class FcpConnection {
                 if( ulItem != null && ulItem.getTotalBlocks() > 0 ) {
                     ulItem.setDoneBlocks(ulItem.getTotalBlocks()); // set the progress to 100%
                 }
+                isReusable = true; // PutSuccessful is the last message of the request
                 break;
             }
             if( nodeMsg.isMessageName("PutFailed") ) {
@@ -650,6 +699,7 @@ public class FcpConnection {
                 returnCode = nodeMsg.getIntValue("Code");
                 isFatal = nodeMsg.getBoolValue("Fatal");
                 codeDescription = nodeMsg.getStringValue("CodeDescription");
+                isReusable = true; // PutFailed is the last message of the request
                 break;
             }
 
@@ -692,12 +742,9 @@ public class FcpConnection {
             }
         }
 
-        // NOTE:XXX: now it's finally safe to close the buffer (and underlying socket) we used for this transfer
-        if( dataOutput != null ) {
-            dataOutput.close();
-        }
-
-        close(); // close the socket
+        // NOTE: for key-only calculations we stop reading after URIGenerated, but the node still sends
+        // a PutSuccessful afterwards, so those sockets are never reused (isReusable stays false).
+        close(); // close the socket (or return it to the pool)
 
         if( !isSuccess ) {
             // failure
@@ -756,6 +803,7 @@ public class FcpConnection {
 
         // receive and process node messages
         String[] result = null;
+        isReusable = false;
         while(true) {
             final NodeMessage nodeMsg = NodeMessage.readMessage(fcpSocket.getFcpIn());
             if( nodeMsg == null ) {
@@ -795,6 +843,7 @@ public class FcpConnection {
                 result[0] = insertURI;
                 result[1] = requestURI;
 
+                isReusable = true; // SSKKeypair is the only answer to GenerateSSK
                 break;
             }
             // any other message means error here
@@ -29,6 +29,7 @@ public class FcpFactory {
     private static final Logger logger = Logger.getLogger(FcpFactory.class.getName());
 
     private static NodeAddress freenetNode = null;
+    private static FcpSocketPool socketPool = null;
 
     /**
      * This method creates an instance of FcpConnection and handles errors.
@@ -93,6 +94,17 @@ public class FcpFactory {
             na = new NodeAddress(ia, port, ia.getHostName(), ia.getHostAddress());
         }
         freenetNode = na;
+        if( socketPool != null ) {
+            socketPool.closeAll();
+        }
+        socketPool = new FcpSocketPool(na);
+    }
+
+    /**
+     * @return  the pool of handshaked sockets used for all connections made by this factory
+     */
+    public static FcpSocketPool getSocketPool() {
+        return socketPool;
     }
 
     protected static synchronized FcpConnection getConnection()  throws IOException, Error {
@@ -103,7 +115,8 @@ public class FcpFactory {
 
         logger.info("Using node "+selectedNode.getHost().getHostAddress()+" port "+selectedNode.getPort());
         try {
-            con = new FcpConnection(selectedNode);
+            // reuses an idle, already handshaked socket if there is one
+            con = new FcpConnection(socketPool);
         } catch (final IOException e) {
             throw e;
         }
@@ -541,11 +541,10 @@ public class FcpMultiRequestConnectionFileTransferTools {
                     }
 
                     // write the file to disk
-                    long bytesWritten = 0;
+                    final long bytesWritten;
                     try (
                             // NOTE: Java 7+ try-with-resources (autocloseable)
                             final FileOutputStream fileOutputStream = new FileOutputStream(targetFile);
-                            final BufferedOutputStream fileOut = new BufferedOutputStream(fileOutputStream);
                         )
                     {
                         // boost the socket read() timeout to 10 minutes, so that we give the node
@@ -554,18 +553,8 @@ public class FcpMultiRequestConnectionFileTransferTools {
                         newSocket.setCustomTimeout((10 * 60) * 1000);
 
                         // read the data from the socket and write it to the file
-                        final byte[] b = new byte[4096];
-                        long bytesLeft = dataLength; // avoids reading beyond end of file (other FCP messages etc after file)
-                        while( bytesLeft > 0 ) {
-                            final int count = newSocket.getFcpIn().read(b, 0, ((bytesLeft > b.length)?b.length:(int)bytesLeft));
-                            if( count < 0 ) {
-                                break; // end of socket-stream reached... should never happen
-                            } else {
-                                bytesLeft -= count;
-                            }
-                            fileOut.write(b, 0, count);
-                            bytesWritten += count;
-                        }
+                        // NOTE: reads exactly dataLength bytes, never beyond the end of the file (other FCP messages etc after file)
+                        bytesWritten = nodeMsg.receiveMessageData(dataLength, fileOutputStream.getChannel());
                     } finally {
                         // switch back to the default read()-timeout between requests
                         newSocket.setDefaultTimeout();
@@ -105,7 +105,20 @@ public class FcpRequest {
         return results;
     }
 
-    // used by getFile
+    /**
+     * getData retrieves a small key (like a message) directly into memory.
+     * The data is returned in the FcpResultGet, there is no temp file involved.
+     */
+    public static FcpResultGet getData(
+            final int type,
+            final String key,
+            final int maxSize,
+            final int maxRetries)
+    {
+        return getKey(type, key, null, maxSize, maxRetries, null);
+    }
+
+    // used by getFile and getData (target is null)
     private static FcpResultGet getKey(
             final int type,
             final String key,
@@ -150,6 +163,8 @@ public class FcpRequest {
                     break;
                 }
             }
+            // the request normally closes the connection itself, but not if it threw
+            connection.close();
         }
 
         String printableKey = null;
@@ -168,7 +183,11 @@ public class FcpRequest {
         }
 
         if (Logging.inst().doLogFcp2Messages()) {
-            System.out.println("getKey: file='"+target.getPath()+"' ; len="+target.length());
+            if( target != null ) {
+                System.out.println("getKey: file='"+target.getPath()+"' ; len="+target.length());
+            } else if( results != null && results.getData() != null ) {
+                System.out.println("getKey: memory ; len="+results.getData().length);
+            }
         }
 
         if( results == null ) {
@@ -177,13 +196,15 @@ public class FcpRequest {
             if (Logging.inst().doLogFcp2Messages()) {
                 System.out.println("getKey - Failed, result=null");
             }
-        } else if( results.isSuccess() && target.length() > 0 ) {
+        } else if( results.isSuccess() && ((target != null)?target.length():results.getData().length) > 0 ) {
             logger.info("getKey - Success: " + printableKey );
             if (Logging.inst().doLogFcp2Messages()) {
                 System.out.println("getKey - Success: " + printableKey);
             }
         } else {
-            target.delete();
+            if( target != null ) {
+                target.delete();
+            }
             logger.info("getKey - Failed: " + printableKey + "; rc="+results.getReturnCode()+"; isFatal="+results.isFatal() );
             if (Logging.inst().doLogFcp2Messages()) {
                 System.out.println("getKey - Failed: " + printableKey + "; rc="+results.getReturnCode()+"; isFatal="+results.isFatal());
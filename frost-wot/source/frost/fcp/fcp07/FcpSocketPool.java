@@ -0,0 +1,211 @@
+/*
+  FcpSocketPool.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.fcp.fcp07;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.logging.*;
+
+import frost.fcp.*;
+
+/**
+ * A bounded pool of already handshaked FcpSockets, used by FcpConnection for the short
+ * non-persistent requests (file lists, pointer files, key requests, CHK generation).
+ * Reusing a socket saves the TCP connect and the ClientHello/NodeHello round-trip.
+ *
+ * Sockets are only returned to the pool by FcpConnection after a request has reached
+ * a terminal node message, so the stream is guaranteed to be in sync. Every socket
+ * is health-checked again on checkout, and idle sockets are evicted after a while.
+ */
+public class FcpSocketPool {
+
+    private static final Logger logger = Logger.getLogger(FcpSocketPool.class.getName());
+
+    // maximum number of idle sockets we keep open
+    private static final int MAX_IDLE_SOCKETS = 4;
+    // idle sockets older than this are closed instead of being reused
+    private static final long MAX_IDLE_MILLIS = 2L * 60L * 1000L; // 2 minutes
+    // read timeout used while probing an idle socket for a remote close or stray data
+    private static final int HEALTH_CHECK_TIMEOUT = 1;
+
+    private final NodeAddress nodeAddress;
+
+    // most recently returned socket first
+    private final LinkedList<IdleSocket> idleSockets = new LinkedList<IdleSocket>();
+
+    private long reusedCount = 0;
+    private long createdCount = 0;
+
+    public FcpSocketPool(final NodeAddress na) {
+        nodeAddress = na;
+    }
+
+    public NodeAddress getNodeAddress() {
+        return nodeAddress;
+    }
+
+    /**
+     * Returns a healthy idle socket, or connects and handshakes a new one if none is available.
+     * The caller owns the socket until it is returned with checkin() or closed.
+     */
+    public FcpSocket checkout() throws UnknownHostException, IOException {
+        while( true ) {
+            final FcpSocket fcpSocket;
+            synchronized(this) {
+                evictIdleSockets(System.currentTimeMillis());
+                if( idleSockets.isEmpty() ) {
+                    break;
+                }
+                fcpSocket = idleSockets.removeFirst().getFcpSocket();
+            }
+            if( isHealthy(fcpSocket, true) ) {
+                synchronized(this) {
+                    reusedCount++;
+                }
+                return fcpSocket;
+            }
+            fcpSocket.close();
+        }
+
+        // no usable idle socket, create a new one outside of the lock
+        final FcpSocket fcpSocket = new FcpSocket(nodeAddress);
+        synchronized(this) {
+            createdCount++;
+        }
+        return fcpSocket;
+    }
+
+    /**
+     * Returns a socket to the pool. The request that used it must have been completely
+     * finished, otherwise the remaining node messages would confuse the next user.
+     * Resets the read timeout to the default, since FcpConnection always changes it.
+     */
+    public void checkin(final FcpSocket fcpSocket) {
+        if( !isHealthy(fcpSocket, false) || !fcpSocket.setDefaultTimeout() ) {
+            fcpSocket.close();
+            return;
+        }
+        final FcpSocket socketToClose;
+        synchronized(this) {
+            idleSockets.addFirst(new IdleSocket(fcpSocket, System.currentTimeMillis()));
+            if( idleSockets.size() > MAX_IDLE_SOCKETS ) {
+                socketToClose = idleSockets.removeLast().getFcpSocket();
+            } else {
+                socketToClose = null;
+            }
+        }
+        if( socketToClose != null ) {
+            socketToClose.close();
+        }
+    }
+
+    /**
+     * Closes all idle sockets.
+     */
+    public void closeAll() {
+        final List<IdleSocket> socketsToClose;
+        synchronized(this) {
+            socketsToClose = new ArrayList<IdleSocket>(idleSockets);
+            idleSockets.clear();
+        }
+        for( final IdleSocket idleSocket : socketsToClose ) {
+            idleSocket.getFcpSocket().close();
+        }
+    }
+
+    public synchronized int getIdleCount() {
+        return idleSockets.size();
+    }
+
+    public synchronized long getReusedCount() {
+        return reusedCount;
+    }
+
+    public synchronized long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Closes the idle sockets that are too old. Must be called with the lock held.
+     */
+    private void evictIdleSockets(final long now) {
+        final Iterator<IdleSocket> i = idleSockets.iterator();
+        while( i.hasNext() ) {
+            final IdleSocket idleSocket = i.next();
+            if( now - idleSocket.getIdleSince() > MAX_IDLE_MILLIS ) {
+                i.remove();
+                idleSocket.getFcpSocket().close();
+            }
+        }
+    }
+
+    /**
+     * Checks that the socket is still open and in sync. If probeRead is true, we also do a
+     * very short read() to detect a remote close (EOF) or unexpected leftover node messages.
+     * The read timeout is restored to the default afterwards.
+     */
+    private boolean isHealthy(final FcpSocket fcpSocket, final boolean probeRead) {
+        final Socket sock = fcpSocket.getFcpSock();
+        if( sock == null || sock.isClosed() || !sock.isConnected() || sock.isInputShutdown() || sock.isOutputShutdown() ) {
+            return false;
+        }
+        if( fcpSocket.getFcpIn() == null || fcpSocket.getFcpOut() == null || fcpSocket.getFcpOut().checkError() ) {
+            return false;
+        }
+        try {
+            if( fcpSocket.getFcpIn().available() > 0 ) {
+                return false; // unread data means the stream is out of sync
+            }
+            if( !probeRead ) {
+                return true;
+            }
+            if( !fcpSocket.setCustomTimeout(HEALTH_CHECK_TIMEOUT) ) {
+                return false;
+            }
+            try {
+                fcpSocket.getFcpIn().read();
+                // either EOF (remote close) or a stray byte, both make the socket unusable
+                return false;
+            } catch(final SocketTimeoutException e) {
+                // nothing to read, the connection is alive and idle
+                return fcpSocket.setDefaultTimeout();
+            }
+        } catch(final IOException e) {
+            logger.log(Level.INFO, "Idle FCP socket failed the health check", e);
+            return false;
+        }
+    }
+
+    private static class IdleSocket {
+        private final FcpSocket fcpSocket;
+        private final long idleSince;
+
+        public IdleSocket(final FcpSocket fcpSocket, final long idleSince) {
+            this.fcpSocket = fcpSocket;
+            this.idleSince = idleSince;
+        }
+        public FcpSocket getFcpSocket() {
+            return fcpSocket;
+        }
+        public long getIdleSince() {
+            return idleSince;
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package frost.fcp.fcp07;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
 import java.util.*;
 import java.util.logging.*;
 
@@ -31,15 +34,44 @@ import java.util.logging.*;
  *   EndMessage
  * If binary data is sent, the data length is given in a value, the message
  * ends with Data instead of EndMessage and the binary data follows.
+ *
+ * The parser reads the stream in bulk into a reusable per-thread window and
+ * scans it for lines, instead of reading it byte by byte. It never consumes
+ * anything behind the end marker, so the binary data (and the next message)
+ * stays in the stream for the caller. Well-known field names are shared
+ * constants, and values are only decoded into Strings when they are asked for.
  */
 public class NodeMessage {
 
     private static final Logger logger = Logger.getLogger(NodeMessage.class.getName());
 
+    private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+    private static final int READ_WINDOW_SIZE = 8192;
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024; // paranoia; no node message comes anywhere close
+
+    // every thread reading from an FCP socket gets its own reusable read window
+    private static final ThreadLocal<byte[]> readWindow = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[READ_WINDOW_SIZE];
+        }
+    };
+
+    private static final byte[] END_MESSAGE = { 'E','n','d','M','e','s','s','a','g','e' };
+    private static final byte[] DATA = { 'D','a','t','a' };
+
     private final String messageName;
-    private final HashMap<String,String> items;
     private String messageEndMarker = null;
 
+    // the raw lines of this message; items point into this array with their value offsets
+    private byte[] rawData = null;
+    private int itemCount = 0;
+    private String[] itemKeys = new String[16];
+    private String[] itemValues = new String[16]; // decoded values, filled on first access
+    private int[] itemValueStart = new int[16];
+    private int[] itemValueEnd = new int[16];
+
     // NOTE: we do not own the input stream; it's borrowed from the connection that
     // uses us, so we should NOT try to close this stream after we're done!
     private BufferedInputStream fcpInStream = null;
@@ -64,97 +96,231 @@ public class NodeMessage {
      * Returns null if socket was closed, or a nodemessage.
      */
     public static NodeMessage readMessage(final BufferedInputStream fcpInp) {
+        try {
+            return parseMessage(fcpInp);
+        } catch (final Throwable e) {
+            // NOTE: the most common error here is a SocketTimeoutException,
+            // because there is a bug in Freenet where you open an FCP socket
+            // and send it a message, but it *never* gives any response,
+            // so the read() call above times out. for that reason, it's
+            // extremely important to make sure the socket is set to the
+            // "default timeout" from FcpSocket.java (which it is by default),
+            // before sending any message that requires a socket-response.
+            // otherwise you'll block for a very long time, waiting for a reply.
+            logger.log(Level.SEVERE, "Throwable catched", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads chunks of the stream into the read window and appends them to the raw message
+     * bytes, processing every complete line. When the end marker is found, the stream is
+     * rewound to the byte after it (mark/reset on the BufferedInputStream), so we never
+     * swallow any data that belongs to the payload or to the next message.
+     */
+    private static NodeMessage parseMessage(final BufferedInputStream fcpInp) throws IOException {
+
+        final byte[] window = readWindow.get();
 
         NodeMessage result = null;
-        boolean isfirstline = true;
-        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        byte[] raw = new byte[512];
+        int rawLen = 0;
+        int lineStart = 0; // start of the current (possibly incomplete) line in raw
 
         while(true) {
-            final String tmp = readLine(fcpInp, bytes);
-
-            if (tmp == null) {
+            fcpInp.mark(window.length);
+            final int count = fcpInp.read(window, 0, window.length);
+            if( count < 0 ) {
                 // error, io connection closed
                 return null;
             }
 
-            bytes.reset(); // reset for next run
+            int segmentStart = 0; // first byte of the window which is not yet copied to raw
+            for( int i = 0; i < count; i++ ) {
+                if( window[i] != '\n' ) {
+                    continue;
+                }
+
+                // we have a complete line, copy it to raw (without the newline)
+                final int segmentLen = i - segmentStart;
+                if( rawLen + segmentLen > raw.length ) {
+                    raw = growRaw(raw, rawLen + segmentLen);
+                }
+                System.arraycopy(window, segmentStart, raw, rawLen, segmentLen);
+                rawLen += segmentLen;
+                segmentStart = i + 1;
+
+                final int lineEnd = rawLen;
+                final int thisLineStart = lineStart;
+                lineStart = rawLen;
 
-            if ((tmp.trim()).length() == 0) { continue; } // an empty line
+                if( isBlankLine(raw, thisLineStart, lineEnd) ) {
+                    continue; // an empty line
+                }
+
+                if( result == null ) {
+                    result = new NodeMessage(KnownNames.get(raw, thisLineStart, lineEnd));
+                    continue;
+                }
+
+                final boolean isData = bytesEqual(raw, thisLineStart, lineEnd, DATA);
+                if( isData || bytesEqual(raw, thisLineStart, lineEnd, END_MESSAGE) ) {
+                    if( isData ) {
+                        result.setEnd("Data");
+                        result.fcpInStream = fcpInp; // remember stream for receive of data
+                    } else {
+                        result.setEnd("EndMessage");
+                    }
+                    result.rawData = raw;
+                    // give back everything behind the end marker
+                    fcpInp.reset();
+                    skipFully(fcpInp, i + 1);
+                    return result;
+                }
+
+                int eqPos = -1;
+                for( int j = thisLineStart; j < lineEnd; j++ ) {
+                    if( raw[j] == '=' ) {
+                        eqPos = j;
+                        break;
+                    }
+                }
+                if( eqPos > -1 ) {
+                    result.addRawItem(KnownNames.get(raw, thisLineStart, eqPos), eqPos + 1, lineEnd);
+                } else {
+                    final String tmp = new String(raw, thisLineStart, lineEnd - thisLineStart, UTF8);
+                    logger.severe("ERROR: no '=' in message line. This shouldn't happen. FIXME. : " + tmp + " -> " + tmp.length());
+                    result.addItem("Unknown", tmp);
+                }
+            }
 
-            if (isfirstline) {
-                result = new NodeMessage(tmp);
-                isfirstline = false;
-                continue;
+            // no end marker in this chunk; keep the incomplete line and read more
+            final int restLen = count - segmentStart;
+            if( rawLen + restLen > raw.length ) {
+                raw = growRaw(raw, rawLen + restLen);
             }
+            System.arraycopy(window, segmentStart, raw, rawLen, restLen);
+            rawLen += restLen;
+        }
+    }
 
-            if (tmp.compareTo("Data") == 0) {
-                result.setEnd(tmp);
-                result.fcpInStream = fcpInp; // remember stream for receive of data
-                break;
+    private static byte[] growRaw(final byte[] raw, final int minLength) throws IOException {
+        if( minLength > MAX_MESSAGE_SIZE ) {
+            throw new IOException("Node message exceeds "+MAX_MESSAGE_SIZE+" bytes, stream is probably out of sync");
+        }
+        return Arrays.copyOf(raw, Math.max(minLength, raw.length * 2));
+    }
+
+    private static void skipFully(final InputStream in, long n) throws IOException {
+        while( n > 0 ) {
+            final long skipped = in.skip(n);
+            if( skipped <= 0 ) {
+                throw new EOFException("Could not skip to the end of the node message");
             }
+            n -= skipped;
+        }
+    }
 
-            if (tmp.compareTo("EndMessage") == 0) {
-                result.setEnd(tmp);
-                break;
+    private static boolean isBlankLine(final byte[] b, final int start, final int end) {
+        for( int i = start; i < end; i++ ) {
+            if( (b[i] & 0xff) > ' ' ) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            if (tmp.indexOf("=") > -1) {
-                final String[] tmp2 = tmp.split("=", 2);
-                result.addItem(tmp2[0], tmp2[1]);
-            } else {
-                logger.severe("ERROR: no '=' in message line. This shouldn't happen. FIXME. : " + tmp + " -> " + tmp.length());
-                result.addItem("Unknown", tmp);
+    private static boolean bytesEqual(final byte[] b, final int start, final int end, final byte[] expected) {
+        if( end - start != expected.length ) {
+            return false;
+        }
+        for( int i = 0; i < expected.length; i++ ) {
+            if( b[start + i] != expected[i] ) {
+                return false;
             }
         }
-        return result;
+        return true;
     }
 
+    /**
+     * Receives the binary data which follows a message with end marker "Data".
+     */
     public byte[] receiveMessageData(final long datalen) throws IOException {
-        final ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        final byte[] b = new byte[4096];
-        long bytesLeft = datalen;
-        long bytesWritten = 0;
-        while( bytesLeft > 0 ) {
-            final int count = fcpInStream.read(b, 0, ((bytesLeft > b.length)?b.length:(int)bytesLeft));
+        final byte[] data = new byte[(int)datalen];
+        int bytesRead = 0;
+        while( bytesRead < data.length ) {
+            final int count = fcpInStream.read(data, bytesRead, data.length - bytesRead);
             if( count < 0 ) {
                 break;
-            } else {
-                bytesLeft -= count;
             }
-            byteOut.write(b, 0, count);
-            bytesWritten += count;
+            bytesRead += count;
         }
-        byteOut.close();
-
-        return byteOut.toByteArray();
+        if( bytesRead < data.length ) {
+            return Arrays.copyOf(data, bytesRead);
+        }
+        return data;
     }
 
-    private static String readLine(final BufferedInputStream fcpInp, final ByteArrayOutputStream bytes) {
-        try {
-            while(true) {
-                final int c = fcpInp.read();
-                if( c < 0 ) {
-                    // unexpected socket close in middle of a line
-                    return null;
-                } else if ( c == '\n' ) {
-                    // end of line
-                    return new String(bytes.toByteArray(), "UTF-8");
-                } else {
-                    bytes.write(c);
+    /**
+     * Receives up to datalen bytes of the binary data which follows a message with end marker
+     * "Data" directly into the given buffer, starting at its current position.
+     *
+     * @return  the number of bytes received, which is less than requested if the stream
+     *     ended early or the buffer had not enough room left
+     */
+    public int receiveMessageData(final long datalen, final ByteBuffer target) throws IOException {
+        final int wanted = (int)Math.min(datalen, target.remaining());
+        int bytesRead = 0;
+        if( target.hasArray() ) {
+            final byte[] b = target.array();
+            final int offset = target.arrayOffset() + target.position();
+            while( bytesRead < wanted ) {
+                final int count = fcpInStream.read(b, offset + bytesRead, wanted - bytesRead);
+                if( count < 0 ) {
+                    break;
                 }
+                bytesRead += count;
             }
-        } catch (final Throwable e) {
-            // NOTE: the most common error here is a SocketTimeoutException,
-            // because there is a bug in Freenet where you open an FCP socket
-            // and send it a message, but it *never* gives any response,
-            // so the read() call above times out. for that reason, it's
-            // extremely important to make sure the socket is set to the
-            // "default timeout" from FcpSocket.java (which it is by default),
-            // before sending any message that requires a socket-response.
-            // otherwise you'll block for a very long time, waiting for a reply.
-            logger.log(Level.SEVERE, "Throwable catched", e);
-            return null;
+            target.position(target.position() + bytesRead);
+        } else {
+            final byte[] b = readWindow.get();
+            while( bytesRead < wanted ) {
+                final int count = fcpInStream.read(b, 0, Math.min(b.length, wanted - bytesRead));
+                if( count < 0 ) {
+                    break;
+                }
+                target.put(b, 0, count);
+                bytesRead += count;
+            }
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Streams the binary data which follows a message with end marker "Data" into the given
+     * channel (usually a FileChannel), using the reusable read window of the current thread.
+     *
+     * @return  the number of bytes written, which is less than datalen if the stream ended early
+     */
+    public long receiveMessageData(final long datalen, final WritableByteChannel target) throws IOException {
+        final byte[] b = readWindow.get();
+        final ByteBuffer buf = ByteBuffer.wrap(b);
+        long bytesLeft = datalen;
+        long bytesWritten = 0;
+        while( bytesLeft > 0 ) {
+            final int count = fcpInStream.read(b, 0, ((bytesLeft > b.length)?b.length:(int)bytesLeft));
+            if( count < 0 ) {
+                break;
+            }
+            bytesLeft -= count;
+            buf.clear();
+            buf.limit(count);
+            while( buf.hasRemaining() ) {
+                target.write(buf);
+            }
+            bytesWritten += count;
         }
+        return bytesWritten;
     }
 
     /////////////////////////////////////////////////////////////////////////////////////////
@@ -166,7 +332,6 @@ public class NodeMessage {
      */
     protected NodeMessage(final String name) {
         messageName = name;
-        items = new HashMap<String,String>();
     }
 
     /**
@@ -174,11 +339,15 @@ public class NodeMessage {
      */
     @Override
     public String toString() {
+        final HashMap<String,String> items = new HashMap<String,String>();
+        for( int i = 0; i < itemCount; i++ ) {
+            items.put(itemKeys[i], getItemValue(i));
+        }
         return messageName + " " + items + " " + messageEndMarker;
     }
 
     protected void setItem(final String name, final String value) {
-        items.put(name, value);
+        addItem(name, value);
     }
 
     protected void setEnd(final String em) {
@@ -200,36 +369,218 @@ public class NodeMessage {
         return aName.equalsIgnoreCase(messageName);
     }
     public boolean isValueSet(final String name) {
-        return items.get(name) != null;
+        return findItem(name) > -1;
     }
     public String getStringValue(final String name) {
-        return items.get(name);
+        final int i = findItem(name);
+        if( i < 0 ) {
+            return null;
+        }
+        return getItemValue(i);
     }
     public long getLongValue(final String name) {
-        return Long.parseLong(items.get(name));
+        final int i = findItem(name);
+        if( i > -1 && itemValues[i] == null ) {
+            // parse the digits directly from the raw bytes, without creating a String
+            final long value = parseRawLong(itemValueStart[i], itemValueEnd[i]);
+            if( value != INVALID_NUMBER ) {
+                return value;
+            }
+        }
+        return Long.parseLong(getStringValue(name));
     }
     public long getLongValue(final String name, final long defaultVal) {
         try {
-            return Long.parseLong(items.get(name));
+            return getLongValue(name);
         } catch(final Exception ex) {
             return defaultVal;
         }
     }
     public int getIntValue(final String name) {
-        return Integer.parseInt(items.get(name));
+        final int i = findItem(name);
+        if( i > -1 && itemValues[i] == null ) {
+            final long value = parseRawLong(itemValueStart[i], itemValueEnd[i]);
+            if( value != INVALID_NUMBER && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ) {
+                return (int)value;
+            }
+        }
+        return Integer.parseInt(getStringValue(name));
     }
     public int getIntValue(final String name, final int defaultVal) {
         try {
-            return Integer.parseInt(items.get(name));
+            return getIntValue(name);
         } catch(final Exception ex) {
             return defaultVal;
         }
     }
     public boolean getBoolValue(final String name) {
-        return "true".equalsIgnoreCase(items.get(name));
+        final int i = findItem(name);
+        if( i < 0 ) {
+            return false;
+        }
+        if( itemValues[i] == null ) {
+            final int start = itemValueStart[i];
+            if( itemValueEnd[i] - start != 4 ) {
+                return false;
+            }
+            return (rawData[start] | 0x20) == 't'
+                && (rawData[start+1] | 0x20) == 'r'
+                && (rawData[start+2] | 0x20) == 'u'
+                && (rawData[start+3] | 0x20) == 'e';
+        }
+        return "true".equalsIgnoreCase(itemValues[i]);
     }
 
     public void addItem(final String key, final String value) {
-        items.put(key, value);
+        final int i = appendItem(key);
+        itemValues[i] = value;
+        itemValueStart[i] = -1;
+        itemValueEnd[i] = -1;
+    }
+
+    /**
+     * Adds an item whose value is still undecoded in rawData.
+     */
+    private void addRawItem(final String key, final int valueStart, final int valueEnd) {
+        final int i = appendItem(key);
+        itemValues[i] = null;
+        itemValueStart[i] = valueStart;
+        itemValueEnd[i] = valueEnd;
+    }
+
+    private int appendItem(final String key) {
+        if( itemCount == itemKeys.length ) {
+            final int newLen = itemKeys.length * 2;
+            itemKeys = Arrays.copyOf(itemKeys, newLen);
+            itemValues = Arrays.copyOf(itemValues, newLen);
+            itemValueStart = Arrays.copyOf(itemValueStart, newLen);
+            itemValueEnd = Arrays.copyOf(itemValueEnd, newLen);
+        }
+        itemKeys[itemCount] = key;
+        return itemCount++;
+    }
+
+    /**
+     * Returns the index of the item with the given name, or -1. If a name occurs more than
+     * once, the last occurrence wins (like the old map-based implementation).
+     */
+    private int findItem(final String name) {
+        if( name == null ) {
+            return -1;
+        }
+        // well-known names are shared constants, so the identity check usually hits
+        for( int i = itemCount - 1; i >= 0; i-- ) {
+            if( itemKeys[i] == name ) {
+                return i;
+            }
+        }
+        for( int i = itemCount - 1; i >= 0; i-- ) {
+            if( name.equals(itemKeys[i]) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String getItemValue(final int i) {
+        String value = itemValues[i];
+        if( value == null ) {
+            value = new String(rawData, itemValueStart[i], itemValueEnd[i] - itemValueStart[i], UTF8);
+            itemValues[i] = value;
+        }
+        return value;
+    }
+
+    private static final long INVALID_NUMBER = Long.MIN_VALUE;
+
+    /**
+     * Parses a decimal number from rawData, or returns INVALID_NUMBER if the bytes
+     * are no plain (and reasonably short) decimal number.
+     */
+    private long parseRawLong(final int start, final int end) {
+        int i = start;
+        boolean negative = false;
+        if( i < end && rawData[i] == '-' ) {
+            negative = true;
+            i++;
+        }
+        if( i == end || end - i > 18 ) {
+            return INVALID_NUMBER; // empty or could overflow; let Long.parseLong() decide
+        }
+        long value = 0;
+        for( ; i < end; i++ ) {
+            final int digit = rawData[i] - '0';
+            if( digit < 0 || digit > 9 ) {
+                return INVALID_NUMBER;
+            }
+            value = (value * 10) + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Table of the message and field names we receive all the time. Lookups compare the raw
+     * bytes against the known names, so these never need a new String per message.
+     */
+    private static class KnownNames {
+
+        private static final String[] NAMES = {
+            // message names
+            "SimpleProgress", "AllData", "DataFound", "GetFailed", "PutSuccessful", "PutFailed",
+            "PutFetchable", "URIGenerated", "PersistentGet", "PersistentPut", "PersistentPutDir",
+            "PersistentRequestRemoved", "PersistentRequestModified", "EndListPersistentRequests",
+            "ProtocolError", "IdentifierCollision", "UnknownNodeIdentifier", "UnknownPeerNoteType",
+            "NodeHello", "SSKKeypair", "ExpectedMIME", "ExpectedDataLength", "ExpectedHashes",
+            "CompatibilityMode", "StartedCompression", "FinishedCompression", "SendingToNetwork",
+            "EnterFiniteCooldown", "GeneratedMetadata", "TestDDAReply", "TestDDAComplete",
+            "PluginInfo", "FCPPluginReply", "CloseConnectionDuplicateClientName",
+            // field names
+            "Identifier", "Global", "Code", "CodeDescription", "ExtraDescription", "Fatal",
+            "ShortCodeDescription", "RedirectURI", "URI", "DataLength", "Succeeded", "Required",
+            "Total", "Failed", "FatallyFailed", "FinalizedTotal", "LastProgress", "MinSuccessFetchBlocks",
+            "PriorityClass", "Persistence", "ClientToken", "ReturnType", "Started", "Filename",
+            "TempFilename", "Verbosity", "MaxRetries", "MaxSize", "UploadFrom", "Metadata.ContentType",
+            "ContentType", "Hashes.MD5", "Hashes.SHA256", "Min", "Max", "Definitive", "DontCompress",
+            "CompatibilityMode", "TargetFilename", "Codec", "OrigSize", "CompressedSize", "Fetchable",
+            "BinaryBlob", "RealTime", "NodeLanguage", "Version", "Build", "Revision", "Testnet",
+            "CompressionCodecs", "ConnectionIdentifier", "NodeLanguage", "InsertURI", "RequestURI",
+            "Directory", "ReadFilename", "WriteFilename", "ContentToWrite", "ReadDirectoryAllowed",
+            "WriteDirectoryAllowed", "IsTalkable", "PluginName", "CompletionTime", "StartupTime",
+            "LastActivity", "DisruptionDuration", "Type",
+        };
+
+        private static final int TABLE_SIZE = 512; // power of 2, well above NAMES.length
+        private static final String[] table = new String[TABLE_SIZE];
+        private static final byte[][] tableBytes = new byte[TABLE_SIZE][];
+
+        static {
+            for( final String name : NAMES ) {
+                int slot = name.hashCode() & (TABLE_SIZE - 1);
+                while( table[slot] != null && !table[slot].equals(name) ) {
+                    slot = (slot + 1) & (TABLE_SIZE - 1);
+                }
+                table[slot] = name;
+                tableBytes[slot] = name.getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+
+        /**
+         * Returns the shared String for a known name, or a new String for any other name.
+         */
+        public static String get(final byte[] b, final int start, final int end) {
+            // same hash as String.hashCode() for ASCII
+            int h = 0;
+            for( int i = start; i < end; i++ ) {
+                h = 31 * h + (b[i] & 0xff);
+            }
+            int slot = h & (TABLE_SIZE - 1);
+            while( table[slot] != null ) {
+                if( bytesEqual(b, start, end, tableBytes[slot]) ) {
+                    return table[slot];
+                }
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            return new String(b, start, end - start, UTF8);
+        }
     }
 }
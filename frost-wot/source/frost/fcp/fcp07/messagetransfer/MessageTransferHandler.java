@@ -18,9 +18,8 @@
 */
 package frost.fcp.fcp07.messagetransfer;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -183,28 +182,21 @@ public class MessageTransferHandler implements NodeMessageListener {
         }
         // data follow, first get datalength
         final long dataLength = nm.getLongValue("DataLength");
+
+        if( task.isDownloadToMemory() ) {
+            onAllDataToMemory(task, nm, dataLength);
+            return;
+        }
+
         long bytesWritten = 0;
 
         try (
             // NOTE: Java 7+ try-with-resources (autocloseable)
             final FileOutputStream fileOutputStream = new FileOutputStream(task.getFile());
-            final BufferedOutputStream fileOut = new BufferedOutputStream(fileOutputStream);
         ) {
-            final byte[] b = new byte[4096];
-            long bytesLeft = dataLength;
-            int count;
-            // NOTE: this input stream comes from our parent connection and should not be closed by us!
-            final BufferedInputStream fcpIn = fcpTools.getFcpPersistentConnection().getFcpSocketIn();
-            while( bytesLeft > 0 ) {
-                count = fcpIn.read(b, 0, ((bytesLeft > b.length)?b.length:(int)bytesLeft));
-                if( count < 0 ) {
-                    break;
-                } else {
-                    bytesLeft -= count;
-                }
-                fileOut.write(b, 0, count);
-                bytesWritten += count;
-            }
+            // NOTE: the data is read from the input stream of our parent connection,
+            // which the NodeMessage remembered while parsing
+            bytesWritten = nm.receiveMessageData(dataLength, fileOutputStream.getChannel());
         } catch (final Throwable e) {
             logger.log(Level.SEVERE, "Catched exception", e);
         }
@@ -223,6 +215,47 @@ public class MessageTransferHandler implements NodeMessageListener {
         setTaskFinished(task);
     }
 
+    /**
+     * Receives the data of an AllData message into memory. All data must be consumed
+     * in any case, because the socket is shared with all other message transfers.
+     */
+    private void onAllDataToMemory(final MessageTransferTask task, final NodeMessage nm, final long dataLength) {
+        byte[] data = null;
+        try {
+            if( dataLength <= task.getMaxSize() ) {
+                data = nm.receiveMessageData(dataLength);
+            } else {
+                // the node enforces MaxSize, so this should never happen
+                logger.severe("Received data is larger than MaxSize: "+dataLength+" > "+task.getMaxSize());
+                final ByteBuffer skipBuffer = ByteBuffer.allocate(4096);
+                long bytesLeft = dataLength;
+                while( bytesLeft > 0 ) {
+                    skipBuffer.clear();
+                    final int count = nm.receiveMessageData(bytesLeft, skipBuffer);
+                    if( count <= 0 ) {
+                        break;
+                    }
+                    bytesLeft -= count;
+                }
+            }
+        } catch (final Throwable e) {
+            logger.log(Level.SEVERE, "Catched exception", e);
+        }
+
+        if(Logging.inst().doLogFcp2Messages()) {
+            System.out.println("*GET** Received "+((data!=null)?data.length:0)+" of "+dataLength+" bytes into memory.");
+        }
+        final FcpResultGet result;
+        if( data != null && data.length == dataLength ) {
+            // success
+            result = new FcpResultGet(data);
+        } else {
+            result = new FcpResultGet(false);
+        }
+        task.setFcpResultGet(result);
+        setTaskFinished(task);
+    }
+
     protected void onGetFailed(final MessageTransferTask task, final NodeMessage nm) {
         final int returnCode = nm.getIntValue("Code");
         final String codeDescription = nm.getStringValue("CodeDescription");
@@ -42,7 +42,8 @@ public class MessageTransferTask {
     FcpResultGet getResult = null;
 
     /**
-     * Construct task for DOWNLOAD
+     * Construct task for DOWNLOAD.
+     * If targetFile is null, the data is received into memory and returned with the FcpResultGet.
      */
     public MessageTransferTask(final String id, final String key, final File targetFile, final FreenetPriority prio, final int maxSize, final int maxRetries) {
         transferMode = MODE_DOWNLOAD;
@@ -114,6 +115,9 @@ public class MessageTransferTask {
     public boolean isModeDownload() {
         return transferMode == MODE_DOWNLOAD;
     }
+    public boolean isDownloadToMemory() {
+        return transferMode == MODE_DOWNLOAD && file == null;
+    }
 
     public FcpResultPut getFcpResultPut() {
         return putResult;
@@ -129,7 +133,7 @@ public class MessageTransferTask {
         this.getResult = getResult;
         if( !getResult.isSuccess() ) {
             // failure, delete temp file
-            if( getFile().isFile() ) {
+            if( getFile() != null && getFile().isFile() ) {
                 getFile().delete();
             }
         }
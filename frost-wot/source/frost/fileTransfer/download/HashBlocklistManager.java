@@ -71,6 +71,7 @@ public class HashBlocklistManager
     private volatile boolean fIsEnabled;
     private volatile boolean fIsPopulating = false;
     private volatile DBPtr<HashBlocklistStorageRoot> fDB = null;
+    private volatile boolean fOpenOnDemand = false;
 
     /**
      * Constructor which sets up the "enabled" flag and registers some listeners,
@@ -105,6 +106,7 @@ public class HashBlocklistManager
     {
         if( !fIsEnabled || aHashStr == null )
             return null;
+        ensureOpen();
         final DBPtr<HashBlocklistStorageRoot> db = fDB; // save local reference to avoid changes
         if( db != null && db.isReadyForExternalQuery ) {
             try {
@@ -126,6 +128,7 @@ public class HashBlocklistManager
      */
     public long getMD5HashCount()
     {
+        ensureOpen();
         final DBPtr<HashBlocklistStorageRoot> db = fDB; // save local reference to avoid changes
         if( db != null && db.isReadyForExternalQuery ) {
             final long md5HashCount = string_to_long(readDBSetting(db, "MD5_HASHCOUNT"));
@@ -141,6 +144,7 @@ public class HashBlocklistManager
      */
     public long getLastMD5UpdateTime()
     {
+        ensureOpen();
         final DBPtr<HashBlocklistStorageRoot> db = fDB; // save local reference to avoid changes
         if( db != null && db.isReadyForExternalQuery ) {
             final long md5DatabaseUpdateTime = string_to_long(readDBSetting(db, "MD5_LASTUPDATED"));
@@ -538,6 +542,26 @@ public class HashBlocklistManager
         return openDB();
     }
 
+    /**
+     * Called at Frost's startup instead of initStorage() while the hash manager is disabled.
+     * The database is then opened by the first query, e.g. from the options dialog.
+     */
+    public void initStorageOnDemand() {
+        fOpenOnDemand = true;
+    }
+
+    private void ensureOpen()
+    {
+        if( fOpenOnDemand ) {
+            synchronized(this) {
+                if( fOpenOnDemand ) {
+                    fOpenOnDemand = false;
+                    openDB();
+                }
+            }
+        }
+    }
+
     /**
      * Called whenever the user toggles the "enabled" setting, and simply updates the
      * internal "enabled?" state (which affects several of the outward-facing methods).
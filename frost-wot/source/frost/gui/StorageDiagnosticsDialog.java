@@ -0,0 +1,233 @@
+/*
+ StorageDiagnosticsDialog.java / Frost
+ Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License as
+ published by the Free Software Foundation; either version 2 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.gui;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.text.*;
+import java.util.*;
+import java.util.List;
+
+import javax.swing.*;
+import javax.swing.table.*;
+
+import frost.*;
+import frost.storage.perst.*;
+import frost.util.*;
+import frost.util.gui.translation.*;
+
+/**
+ * Shows the instrumentation counters of the perst storages: page pool activity,
+ * thread transactions with their wait times, and commit latency. Refreshed every few seconds.
+ * Also shows the progress of a running background message expiration, which can be paused here.
+ */
+@SuppressWarnings("serial")
+public class StorageDiagnosticsDialog extends JDialog {
+
+    private static final int REFRESH_INTERVAL = 2000; // millis
+
+    private static final String[] COLUMN_KEYS = {
+        "StorageDiagnosticsDialog.column.storage",
+        "StorageDiagnosticsDialog.column.fileSize",
+        "StorageDiagnosticsDialog.column.freePercent",
+        "StorageDiagnosticsDialog.column.pagePool",
+        "StorageDiagnosticsDialog.column.hitRate",
+        "StorageDiagnosticsDialog.column.objectLoads",
+        "StorageDiagnosticsDialog.column.pageReads",
+        "StorageDiagnosticsDialog.column.pageWrites",
+        "StorageDiagnosticsDialog.column.transactions",
+        "StorageDiagnosticsDialog.column.avgWait",
+        "StorageDiagnosticsDialog.column.maxWait",
+        "StorageDiagnosticsDialog.column.commits",
+        "StorageDiagnosticsDialog.column.avgCommit",
+        "StorageDiagnosticsDialog.column.maxCommit",
+    };
+
+    private final Language language = Language.getInstance();
+    private final NumberFormat nf = NumberFormat.getInstance();
+    private final NumberFormat msFormat = new DecimalFormat("0.00");
+
+    private final StorageTableModel tableModel = new StorageTableModel();
+    private final javax.swing.Timer refreshTimer;
+
+    private final JLabel expirationLabel = new JLabel();
+    private final JLabel keyCacheLabel = new JLabel();
+    private final JButton pauseExpirationButton = new JButton();
+
+    public StorageDiagnosticsDialog(final Frame owner) {
+        super(owner);
+        setTitle(language.getString("StorageDiagnosticsDialog.title"));
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        final JTable table = new JTable(tableModel);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.getColumnModel().getColumn(0).setPreferredWidth(170);
+
+        final JButton resetButton = new JButton(language.getString("StorageDiagnosticsDialog.button.reset"));
+        resetButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                for( final AbstractFrostStorage storage : AbstractFrostStorage.getAllStorages() ) {
+                    storage.getInstrumentation().reset();
+                }
+                tableModel.refresh();
+            }
+        });
+        final JButton closeButton = new JButton(language.getString("StorageDiagnosticsDialog.button.close"));
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                dispose();
+            }
+        });
+
+        pauseExpirationButton.addActionListener(new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                final MessageExpirationThread expiration = MessageExpirationThread.getRunningInstance();
+                if( expiration != null ) {
+                    expiration.setPaused(!expiration.isPaused());
+                }
+                refreshExpiration();
+            }
+        });
+
+        final JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(pauseExpirationButton);
+        buttonPanel.add(resetButton);
+        buttonPanel.add(closeButton);
+
+        final JPanel southPanel = new JPanel(new BorderLayout(5, 5));
+        final JPanel labelPanel = new JPanel(new GridLayout(2, 1));
+        labelPanel.add(keyCacheLabel);
+        labelPanel.add(expirationLabel);
+        southPanel.add(labelPanel, BorderLayout.CENTER);
+        southPanel.add(buttonPanel, BorderLayout.EAST);
+
+        final JPanel contentPane = new JPanel(new BorderLayout(5, 5));
+        contentPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        contentPane.add(new JScrollPane(table), BorderLayout.CENTER);
+        contentPane.add(southPanel, BorderLayout.SOUTH);
+        setContentPane(contentPane);
+
+        refreshTimer = new javax.swing.Timer(REFRESH_INTERVAL, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                tableModel.refresh();
+                refreshKeyCache();
+                refreshExpiration();
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(final WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+
+        setSize(1000, 320);
+        setLocationRelativeTo(owner);
+    }
+
+    public void startDialog() {
+        tableModel.refresh();
+        refreshKeyCache();
+        refreshExpiration();
+        refreshTimer.start();
+        setVisible(true);
+    }
+
+    private void refreshKeyCache() {
+        final RSAPublicKeyCache keyCache = Core.getCrypto().getPublicKeyCache();
+        keyCacheLabel.setText(language.formatMessage(
+                "StorageDiagnosticsDialog.publicKeyCache",
+                nf.format(keyCache.getHitCount()),
+                nf.format(keyCache.getMissCount()),
+                nf.format(keyCache.size())));
+    }
+
+    private void refreshExpiration() {
+        final MessageExpirationThread expiration = MessageExpirationThread.getRunningInstance();
+        if( expiration == null ) {
+            expirationLabel.setText("");
+            pauseExpirationButton.setVisible(false);
+            return;
+        }
+        String boardName = expiration.getCurrentBoardName();
+        if( boardName == null ) {
+            boardName = "";
+        }
+        expirationLabel.setText(language.formatMessage(
+                expiration.isPaused() ? "StorageDiagnosticsDialog.expiration.paused" : "StorageDiagnosticsDialog.expiration.running",
+                new Object[] {
+                    nf.format(expiration.getProcessedBoardCount()),
+                    nf.format(expiration.getBoardCount()),
+                    boardName,
+                    nf.format(expiration.getExpiredMessageCount()) }));
+        pauseExpirationButton.setText(language.getString(
+                expiration.isPaused() ? "StorageDiagnosticsDialog.button.resumeExpiration" : "StorageDiagnosticsDialog.button.pauseExpiration"));
+        pauseExpirationButton.setVisible(true);
+    }
+
+    private class StorageTableModel extends AbstractTableModel {
+
+        private final List<Object[]> rows = new ArrayList<Object[]>();
+
+        public void refresh() {
+            rows.clear();
+            for( final AbstractFrostStorage storage : AbstractFrostStorage.getAllStorages() ) {
+                final StorageStatistics stats = storage.getStorageStatistics();
+                if( stats == null ) {
+                    continue; // not open
+                }
+                final StorageInstrumentation si = storage.getInstrumentation();
+                rows.add(new Object[] {
+                    storage.getStorageFilename(),
+                    nf.format(stats.getFileSize() / 1024L) + " KiB",
+                    stats.getFreePercent() + "%",
+                    nf.format(si.getPagePoolSize() / 1024L) + " KiB",
+                    si.getPagePoolHitRate() + "%",
+                    nf.format(si.getObjectLoads()),
+                    nf.format(si.getPageReads()),
+                    nf.format(si.getPageWrites()),
+                    nf.format(si.getCooperativeTransactions()) + " / " + nf.format(si.getExclusiveTransactions()),
+                    msFormat.format(si.getAverageTransactionWaitMillis()),
+                    msFormat.format(si.getMaxTransactionWaitMillis()),
+                    nf.format(si.getCommits()),
+                    msFormat.format(si.getAverageCommitMillis()),
+                    msFormat.format(si.getMaxCommitMillis()),
+                });
+            }
+            fireTableDataChanged();
+        }
+
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        public int getColumnCount() {
+            return COLUMN_KEYS.length;
+        }
+
+        @Override
+        public String getColumnName(final int column) {
+            return language.getString(COLUMN_KEYS[column]);
+        }
+
+        public Object getValueAt(final int rowIndex, final int columnIndex) {
+            return rows.get(rowIndex)[columnIndex];
+        }
+    }
+}
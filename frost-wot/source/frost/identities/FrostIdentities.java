@@ -19,6 +19,7 @@
 package frost.identities;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import javax.swing.*;
@@ -40,6 +41,11 @@ public class FrostIdentities {
     private Hashtable<String,Identity> identities = null;
     private Hashtable<String,LocalIdentity> localIdentities = null;
 
+    // public key -> unique name of all identities, including the own ones. Built on first use,
+    // because it loads the public keys of all identities
+    private volatile ConcurrentHashMap<String,String> uniqueNamesByPublicKey = null;
+    private final Object publicKeyIndexLock = new Object();
+
     private final Object lockObject = new Object();
 
     Language language = Language.getInstance();
@@ -205,6 +211,7 @@ public class FrostIdentities {
                 return false;
             }
             identities.put(key, id);
+            addToPublicKeyIndex(id);
         } finally {
             if( useLock ) {
                 IdentitiesStorage.inst().endThreadTransaction();
@@ -228,6 +235,7 @@ public class FrostIdentities {
                 return false;
             }
             localIdentities.put(li.getUniqueName(), li);
+            addToPublicKeyIndex(li);
         } finally {
             IdentitiesStorage.inst().endThreadTransaction();
         }
@@ -247,6 +255,7 @@ public class FrostIdentities {
                 return false;
             }
             localIdentities.remove(li.getUniqueName());
+            removeFromPublicKeyIndex(li);
             removed = IdentitiesStorage.inst().removeLocalIdentity(li);
         } finally {
             IdentitiesStorage.inst().endThreadTransaction();
@@ -267,6 +276,7 @@ public class FrostIdentities {
         final boolean removed;
         try {
             identities.remove(li.getUniqueName());
+            removeFromPublicKeyIndex(li);
             removed = IdentitiesStorage.inst().removeIdentity(li);
         } finally {
             IdentitiesStorage.inst().endThreadTransaction();
@@ -377,7 +387,7 @@ public class FrostIdentities {
             // check if the digest matches
             final String given_digest = uName.substring(uName.indexOf("@") + 1, uName.length()).trim();
 
-            String calculatedDigest = Core.getCrypto().digest(puKey.trim()).trim();
+            String calculatedDigest = id.getPublicKeyDigest().trim();
             calculatedDigest = Mixed.makeFilename(calculatedDigest).trim();
 
             // FIX: given_digest must already not contain invalid characters
@@ -402,34 +412,87 @@ public class FrostIdentities {
      */
     public boolean isNewIdentityValid(final Identity id) {
 
-        // check if hash matches the public key
-        if( !isIdentityValid(id) ) {
+        if( id == null || id.getPublicKey() == null ) {
             return false;
         }
 
         // check if the public key is known, maybe someone sends with same pubkey but different names before the @
-        for( final Identity anId : getIdentities() ) {
-            if( id.getPublicKey().equals(anId.getPublicKey())
-                    && !id.getUniqueName().equals(anId.getUniqueName()) )
-            {
+        final String knownUniqueName = getPublicKeyIndex().get(id.getPublicKey());
+        if( knownUniqueName != null ) {
+            if( knownUniqueName.equals(id.getUniqueName()) ) {
+                return true; // a known identity, its hash was checked when it was added
+            }
+            if( isMySelf(knownUniqueName) ) {
+                logger.severe("Rejecting new Identity because its public key is already used by an OWN Identity. "+
+                        "newId='"+id.getUniqueName()+"', oldId='"+knownUniqueName+"'");
+            } else {
                 logger.severe("Rejecting new Identity because its public key is already used by another known Identity. "+
-                        "newId='"+id.getUniqueName()+"', oldId='"+anId.getUniqueName()+"'");
-                return false;
+                        "newId='"+id.getUniqueName()+"', oldId='"+knownUniqueName+"'");
             }
+            return false;
         }
 
-        // for sure, check own identities too
-        for( final Iterator<LocalIdentity> i=getLocalIdentities().iterator(); i.hasNext(); ) {
-            final Identity anId = i.next();
-            if( id.getPublicKey().equals(anId.getPublicKey())
-                    && !id.getUniqueName().equals(anId.getUniqueName()) )
+        // check if hash matches the public key
+        return isIdentityValid(id);
+    }
+
+    /**
+     * Returns the index of the public keys, builds it on first use.
+     */
+    private Map<String,String> getPublicKeyIndex() {
+        ConcurrentHashMap<String,String> index = uniqueNamesByPublicKey;
+        if( index != null ) {
+            return index;
+        }
+        synchronized(publicKeyIndexLock) {
+            if( uniqueNamesByPublicKey == null ) {
+                index = new ConcurrentHashMap<String,String>();
+                // own identities first, they win if another identity uses the same key
+                for( final LocalIdentity li : getLocalIdentities() ) {
+                    if( li.getPublicKey() != null ) {
+                        index.putIfAbsent(li.getPublicKey(), li.getUniqueName());
+                    }
+                }
+                for( final Identity anId : getIdentities() ) {
+                    if( anId.getPublicKey() != null ) {
+                        index.putIfAbsent(anId.getPublicKey(), anId.getUniqueName());
+                    }
+                }
+                uniqueNamesByPublicKey = index;
+            }
+            return uniqueNamesByPublicKey;
+        }
+    }
+
+    private void addToPublicKeyIndex(final Identity id) {
+        synchronized(publicKeyIndexLock) {
+            if( uniqueNamesByPublicKey != null && id.getPublicKey() != null ) {
+                uniqueNamesByPublicKey.putIfAbsent(id.getPublicKey(), id.getUniqueName());
+            }
+        }
+    }
+
+    private void removeFromPublicKeyIndex(final Identity id) {
+        synchronized(publicKeyIndexLock) {
+            if( uniqueNamesByPublicKey == null || id.getPublicKey() == null
+                    || !uniqueNamesByPublicKey.remove(id.getPublicKey(), id.getUniqueName()) )
             {
-                logger.severe("Rejecting new Identity because its public key is already used by an OWN Identity. "+
-                        "newId='"+id.getUniqueName()+"', oldId='"+anId.getUniqueName()+"'");
-                return false;
+                return;
+            }
+            // older databases may contain more identities with the same key, the next one takes over
+            for( final Identity anId : getLocalIdentities() ) {
+                if( id.getPublicKey().equals(anId.getPublicKey()) ) {
+                    uniqueNamesByPublicKey.putIfAbsent(anId.getPublicKey(), anId.getUniqueName());
+                    return;
+                }
+            }
+            for( final Identity anId : getIdentities() ) {
+                if( id.getPublicKey().equals(anId.getPublicKey()) ) {
+                    uniqueNamesByPublicKey.putIfAbsent(anId.getPublicKey(), anId.getUniqueName());
+                    return;
+                }
             }
         }
-        return true;
     }
 
     public Object getLockObject() {
@@ -58,6 +58,8 @@ public class Identity extends Persistent implements XMLizable {
     private int state = NEUTRAL;
 
     private transient String publicKey;
+    // digest of the public key, computed once by getPublicKeyDigest()
+    private transient volatile String publicKeyDigest;
 
     private PerstIdentityPublicKey pPublicKey;
 
@@ -308,6 +310,16 @@ public class Identity extends Persistent implements XMLizable {
         return publicKey;
     }
 
+    /**
+     * @return  the digest of the public key, the part after the '@' of a valid unique name
+     */
+    public String getPublicKeyDigest() {
+        if( publicKeyDigest == null ) {
+            publicKeyDigest = Core.getCrypto().digest(getPublicKey().trim());
+        }
+        return publicKeyDigest;
+    }
+
     public String getUniqueName() {
         return uniqueName;
     }
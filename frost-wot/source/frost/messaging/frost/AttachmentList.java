@@ -21,6 +21,8 @@ package frost.messaging.frost;
 import java.util.*;
 import java.util.logging.*;
 
+import javax.xml.stream.*;
+
 import org.w3c.dom.*;
 import org.xml.sax.*;
 
@@ -105,18 +107,8 @@ public class AttachmentList<T extends Attachment> extends LinkedList<T> implemen
 			// the list, specialized through generics.
 			final T attachment = (T) T.getInstance(current);
 
-			// when we receive new incoming messages, we will ignore the *dead* legacy Frost announce
-			// board, as well as any "no subject" related board attachments, since the latter are only
-			// spammed as message attachments by losers with too much time on their hands.
-			// this ensures that neither of those boards show up as attachments (or color the msg blue either).
-			if( attachment.getType() == Attachment.BOARD ) {
-				final Board b = ((BoardAttachment)attachment).getBoardObj();
-				final String boardName = b.getName();
-				if( boardName != null ) {
-					if( boardName.toLowerCase().equals("frost-announce") || boardName.toLowerCase().contains("no subject") ) {
-						continue;
-					}
-				}
+			if( isIgnoredAttachment(attachment) ) {
+				continue;
 			}
 
 			// the attachment is ok; just add it
@@ -126,4 +118,89 @@ public class AttachmentList<T extends Attachment> extends LinkedList<T> implemen
 			logger.info("empty attachment list upon creation");
 		}
 	}
+
+	/**
+	 * @return true if all attachments can be written with writeXMLStream()
+	 */
+	synchronized public boolean isXMLStreamable() {
+		for( final Attachment current : this ) {
+			if( current.getType() != Attachment.FILE && current.getType() != Attachment.BOARD ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the same XML as getXMLElement(), without building a DOM.
+	 * Only file and board attachments are supported, see isXMLStreamable().
+	 */
+	synchronized public void writeXMLStream(final XMLStreamWriter w) throws XMLStreamException {
+		if( size() == 0 ) {
+			return;
+		}
+		w.writeStartElement("AttachmentList");
+		for( final Attachment current : this ) {
+			if( current.getType() == Attachment.FILE ) {
+				((FileAttachment)current).writeXMLStream(w);
+			} else if( current.getType() == Attachment.BOARD ) {
+				((BoardAttachment)current).writeXMLStream(w);
+			} else {
+				throw new XMLStreamException("Attachment type "+current.getType()+" is not supported");
+			}
+		}
+		w.writeEndElement();
+	}
+
+	/**
+	 * Reads the attachments with a reader positioned on the AttachmentList element,
+	 * like loadXMLElement(). Leaves the reader on the end of that element.
+	 * @return false if the list contains attachments which can only be loaded from a DOM
+	 *     (or invalid ones); the list content is undefined then
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean loadXMLStream(final XMLStreamReader r) throws XMLStreamException {
+		boolean isComplete = true;
+		while( XMLTools.nextChildElement(r) ) {
+			if( !r.getLocalName().equals("Attachment") ) {
+				XMLTools.skipElement(r);
+				continue;
+			}
+			final String type = r.getAttributeValue(null, "type");
+			final Attachment attachment;
+			if( "file".equals(type) ) {
+				attachment = FileAttachment.readXMLStream(r);
+			} else if( "board".equals(type) ) {
+				attachment = BoardAttachment.readXMLStream(r);
+			} else {
+				XMLTools.skipElement(r);
+				attachment = null;
+			}
+			if( attachment == null ) {
+				isComplete = false;
+			} else if( !isIgnoredAttachment(attachment) ) {
+				add((T) attachment);
+			}
+		}
+		return isComplete;
+	}
+
+	/**
+	 * When we receive new incoming messages, we will ignore the *dead* legacy Frost announce
+	 * board, as well as any "no subject" related board attachments, since the latter are only
+	 * spammed as message attachments by losers with too much time on their hands.
+	 * this ensures that neither of those boards show up as attachments (or color the msg blue either).
+	 */
+	private static boolean isIgnoredAttachment(final Attachment attachment) {
+		if( attachment.getType() == Attachment.BOARD ) {
+			final Board b = ((BoardAttachment)attachment).getBoardObj();
+			final String boardName = b.getName();
+			if( boardName != null ) {
+				if( boardName.toLowerCase().equals("frost-announce") || boardName.toLowerCase().contains("no subject") ) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
 }
@@ -18,6 +18,10 @@
 */
 package frost.messaging.frost;
 
+import java.util.*;
+
+import javax.xml.stream.*;
+
 import org.w3c.dom.*;
 import org.xml.sax.*;
 
@@ -80,6 +84,49 @@ public class BoardAttachment extends Attachment {
 		boardObj = new Board(name, pubkey, privkey, description);
 	}
 
+	/**
+	 * Writes the same XML as getXMLElement(), without building a DOM.
+	 */
+	public void writeXMLStream(final XMLStreamWriter w) throws XMLStreamException {
+		w.writeStartElement("Attachment");
+		w.writeAttribute("type", "board");
+		XMLTools.writeCDATAElement(w, "Name", boardObj.getName());
+		if( boardObj.getPublicKey() != null ) {
+			XMLTools.writeCDATAElement(w, "pubKey", boardObj.getPublicKey());
+		}
+		if( boardObj.getPrivateKey() != null ) {
+			XMLTools.writeCDATAElement(w, "privKey", boardObj.getPrivateKey());
+		}
+		if( boardObj.getDescription() != null ) {
+			XMLTools.writeCDATAElement(w, "description", boardObj.getDescription());
+		}
+		w.writeEndElement();
+	}
+
+	/**
+	 * Reads a board attachment with a reader positioned on its Attachment element,
+	 * and leaves the reader on the end of that element.
+	 * @return the attachment, or null if the content is not a valid board attachment
+	 */
+	public static BoardAttachment readXMLStream(final XMLStreamReader r) throws XMLStreamException {
+		final Map<String,String> values = new HashMap<String,String>();
+		while( XMLTools.nextChildElement(r) ) {
+			final String tag = r.getLocalName();
+			if( !values.containsKey(tag) && (tag.equals("Name") || tag.equals("pubKey")
+					|| tag.equals("privKey") || tag.equals("description")) )
+			{
+				values.put(tag, XMLTools.readElementCDATA(r));
+			} else {
+				XMLTools.skipElement(r);
+			}
+		}
+		if( values.get("Name") == null ) {
+			return null;
+		}
+		return new BoardAttachment(new Board(values.get("Name"), values.get("pubKey"),
+				values.get("privKey"), values.get("description")));
+	}
+
 	protected BoardAttachment(Element e) throws SAXException {
 		loadXMLElement(e);
 	}
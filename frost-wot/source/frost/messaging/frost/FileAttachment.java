@@ -20,6 +20,8 @@ package frost.messaging.frost;
 
 import java.io.*;
 
+import javax.xml.stream.*;
+
 import org.w3c.dom.*;
 import org.xml.sax.*;
 
@@ -82,6 +84,60 @@ public class FileAttachment extends Attachment implements CopyToClipboardItem {
         size = new Long(XMLTools.getChildElementsTextValue(_file, "size")).longValue();
 	}
 
+	/**
+	 * Writes the same XML as getXMLElement(), without building a DOM.
+	 */
+	public void writeXMLStream(final XMLStreamWriter w) throws XMLStreamException {
+		w.writeStartElement("Attachment");
+		w.writeAttribute("type", "file");
+		w.writeStartElement("File");
+		XMLTools.writeCDATAElement(w, "name", getFileName());
+		XMLTools.writeTextElement(w, "size", "" + getFileSize());
+		XMLTools.writeTextElement(w, "key", getKey());
+		w.writeEndElement();
+		w.writeEndElement();
+	}
+
+	/**
+	 * Reads a file attachment with a reader positioned on its Attachment element,
+	 * and leaves the reader on the end of that element.
+	 * @return the attachment, or null if the content is not a valid file attachment
+	 */
+	public static FileAttachment readXMLStream(final XMLStreamReader r) throws XMLStreamException {
+		FileAttachment attachment = null;
+		boolean fileSeen = false;
+		while( XMLTools.nextChildElement(r) ) {
+			if( fileSeen || !r.getLocalName().equals("File") ) {
+				XMLTools.skipElement(r);
+				continue;
+			}
+			fileSeen = true;
+			String name = null, key = null, size = null;
+			boolean nameSeen = false, keySeen = false, sizeSeen = false;
+			while( XMLTools.nextChildElement(r) ) {
+				final String tag = r.getLocalName();
+				if( !nameSeen && tag.equals("name") ) {
+					nameSeen = true;
+					name = XMLTools.readElementCDATA(r);
+				} else if( !keySeen && tag.equals("key") ) {
+					keySeen = true;
+					key = XMLTools.readElementText(r);
+				} else if( !sizeSeen && tag.equals("size") ) {
+					sizeSeen = true;
+					size = XMLTools.readElementText(r);
+				} else {
+					XMLTools.skipElement(r);
+				}
+			}
+			try {
+				attachment = new FileAttachment(name, key, Long.parseLong(size));
+			} catch(final NumberFormatException ex) {
+				attachment = null;
+			}
+		}
+		return attachment;
+	}
+
 	/**
 	 * @param e
 	 * @throws SAXException
@@ -52,30 +52,33 @@ public class FrostMessageObject extends AbstractMessageObject implements TableMe
 
     transient private final static ArrayList<String> EMPTY_STRINGLIST = new ArrayList<String>(0);
 
+    // the boolean states are packed into one int, a big board holds many of these objects
+    private static final int FLAG_VALID = 1;
+    private static final int FLAG_DELETED = 1 << 1;
+    private static final int FLAG_NEW = 1 << 2;
+    private static final int FLAG_REPLIED = 1 << 3;
+    private static final int FLAG_JUNK = 1 << 4;
+    private static final int FLAG_FLAGGED = 1 << 5; // !
+    private static final int FLAG_STARRED = 1 << 6; // *
+    private static final int FLAG_HAS_FILE_ATTACHMENTS = 1 << 7;
+    private static final int FLAG_HAS_BOARD_ATTACHMENTS = 1 << 8;
+    private static final int FLAG_DUMMY = 1 << 9;
+
+    // marks an unset dateAndTime
+    private static final long NO_DATE = Long.MIN_VALUE;
+
     // additional variables for use in GUI
-    private boolean isValid = false;
+    private int flags = 0;
     private String invalidReason = null;
 
     private int index = -1;
     private Board board = null;
-    private DateTime dateAndTime = null;
-
-    private boolean isDeleted = false;
-    private boolean isNew = false;
-    private boolean isReplied = false;
-    private boolean isJunk = false;
-    private boolean isFlagged = false; // !
-    private boolean isStarred = false; // *
-
-    private boolean hasFileAttachments = false;
-    private boolean hasBoardAttachments = false;
+    private long dateAndTime = NO_DATE; // millis, UTC
 
     private ArrayList<String> inReplyToList = null;
 
     private String dateAndTimeString = null;
 
-    private boolean isDummy = false;
-
     public static boolean sortThreadRootMsgsAscending;
 
     /**
@@ -377,7 +380,7 @@ public class FrostMessageObject extends AbstractMessageObject implements TableMe
     public String getDateAndTimeString() {
         if( dateAndTimeString == null ) {
             // Build a String of format yyyy.mm.dd hh:mm:ssGMT
-            final DateTime dateTime = new DateTime(getDateAndTime(), DateTimeZone.UTC); // UTC
+            final DateTime dateTime = new DateTime(getDateAndTimeMillis(), DateTimeZone.UTC); // UTC
 
             final String dateStr = DateFun.FORMAT_DATE_EXT.print(dateTime); // "2008.12.24"; at UTC
             final String timeStr = DateFun.FORMAT_TIME_EXT.print(dateTime); // "16:51:28GMT"; at UTC
@@ -398,20 +401,32 @@ public class FrostMessageObject extends AbstractMessageObject implements TableMe
         this.board = board;
     }
 
+    private boolean getFlag(final int flag) {
+        return (flags & flag) != 0;
+    }
+
+    private void setFlag(final int flag, final boolean value) {
+        if( value ) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
+    }
+
     public boolean hasBoardAttachments() {
-        return hasBoardAttachments;
+        return getFlag(FLAG_HAS_BOARD_ATTACHMENTS);
     }
 
     public void setHasBoardAttachments(final boolean hasBoardAttachments) {
-        this.hasBoardAttachments = hasBoardAttachments;
+        setFlag(FLAG_HAS_BOARD_ATTACHMENTS, hasBoardAttachments);
     }
 
     public boolean hasFileAttachments() {
-        return hasFileAttachments;
+        return getFlag(FLAG_HAS_FILE_ATTACHMENTS);
     }
 
     public void setHasFileAttachments(final boolean hasFileAttachments) {
-        this.hasFileAttachments = hasFileAttachments;
+        setFlag(FLAG_HAS_FILE_ATTACHMENTS, hasFileAttachments);
     }
 
     @Override
@@ -439,75 +454,89 @@ public class FrostMessageObject extends AbstractMessageObject implements TableMe
     }
 
     public boolean isReplied() {
-        return isReplied;
+        return getFlag(FLAG_REPLIED);
     }
 
     public void setReplied(final boolean isReplied) {
-        this.isReplied = isReplied;
+        setFlag(FLAG_REPLIED, isReplied);
     }
 
     public boolean isDeleted() {
-        return isDeleted;
+        return getFlag(FLAG_DELETED);
     }
 
     public void setDeleted(final boolean isDeleted) {
-        this.isDeleted = isDeleted;
+        setFlag(FLAG_DELETED, isDeleted);
     }
 
     public boolean isJunk() {
-        return isJunk;
+        return getFlag(FLAG_JUNK);
     }
 
     public void setJunk(final boolean isJunk) {
-        this.isJunk = isJunk;
+        setFlag(FLAG_JUNK, isJunk);
     }
 
     public boolean isFlagged() {
-        return isFlagged;
+        return getFlag(FLAG_FLAGGED);
     }
 
     public void setFlagged(final boolean isFlagged) {
-        this.isFlagged = isFlagged;
+        setFlag(FLAG_FLAGGED, isFlagged);
     }
 
     public boolean isNew() {
-        return isNew;
+        return getFlag(FLAG_NEW);
     }
 
     public void setNew(final boolean isNew) {
-        this.isNew = isNew;
+        setFlag(FLAG_NEW, isNew);
     }
 
     public boolean isStarred() {
-        return isStarred;
+        return getFlag(FLAG_STARRED);
     }
 
     public void setStarred(final boolean isStarred) {
-        this.isStarred = isStarred;
+        setFlag(FLAG_STARRED, isStarred);
     }
 
     public boolean isValid() {
-        return isValid;
+        return getFlag(FLAG_VALID);
     }
 
     public void setValid(final boolean isValid) {
-        this.isValid = isValid;
+        setFlag(FLAG_VALID, isValid);
     }
 
     public void setDateAndTime(final DateTime dt) {
-        dateAndTime = dt;
+        dateAndTime = (dt != null) ? dt.getMillis() : NO_DATE;
+    }
+
+    public void setDateAndTimeMillis(final long millis) {
+        dateAndTime = millis;
     }
 
+    /**
+     * Returns a new DateTime (UTC) for each call, use getDateAndTimeMillis() if possible.
+     */
     public DateTime getDateAndTime() {
+        if( dateAndTime == NO_DATE ) {
+            return null;
+        }
+        return new DateTime(dateAndTime, DateTimeZone.UTC);
+    }
+
+    public long getDateAndTimeMillis() {
         return dateAndTime;
     }
 
     public void setDummy(final boolean v) {
-        isDummy = v;
+        setFlag(FLAG_DUMMY, v);
     }
 
     public boolean isDummy() {
-        return isDummy;
+        return getFlag(FLAG_DUMMY);
     }
 
     private void setDummyInReplyToList(final ArrayList<String> l) {
@@ -519,15 +548,17 @@ public class FrostMessageObject extends AbstractMessageObject implements TableMe
             if( getInReplyTo() == null ) {
                 inReplyToList = EMPTY_STRINGLIST;
             } else {
-                inReplyToList = new ArrayList<String>();
                 final String s = getInReplyTo();
                 final StringTokenizer st = new StringTokenizer(s, ",");
+                final ArrayList<String> l = new ArrayList<String>(st.countTokens());
                 while( st.hasMoreTokens() ) {
                     final String r = st.nextToken().trim();
                     if(r.length() > 0) {
-                        inReplyToList.add(r);
+                        // the ids are shared by all replies of a thread
+                        l.add(r.intern());
                     }
                 }
+                inReplyToList = (l.size() > 0) ? l : EMPTY_STRINGLIST;
             }
         }
         return inReplyToList;
@@ -641,6 +672,20 @@ public class FrostMessageObject extends AbstractMessageObject implements TableMe
         }
     }
 
+    /**
+     * Releases the unused capacity of the children lists of this node and of all nodes below it.
+     * Called after a tree was built, most nodes have only a few children.
+     */
+    public void trimChildren() {
+        final Enumeration<FrostMessageObject> frostMessageObjectEnumeration = depthFirstEnumeration();
+        while( frostMessageObjectEnumeration.hasMoreElements() ) {
+            final FrostMessageObject frostMessageObject = frostMessageObjectEnumeration.nextElement();
+            if( frostMessageObject.children != null ) {
+                frostMessageObject.children.trimToSize();
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     protected List<FrostMessageObject> getChildren() {
         return (List<FrostMessageObject>) children;
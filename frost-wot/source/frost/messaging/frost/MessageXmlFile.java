@@ -21,9 +21,16 @@ package frost.messaging.frost;
 
 import java.io.*;
 import java.util.List; // do not import java.util.*, since its Base64 method clashes with BouncyCastle!
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.*;
 
+import javax.xml.stream.*;
+
 import org.bouncycastle.util.encoders.*;
 import org.joda.time.*;
 import org.w3c.dom.*;
@@ -38,6 +45,13 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
 
     private static final Logger logger = Logger.getLogger(MessageXmlFile.class.getName());
 
+    // the elements that loadXMLElement() reads with getChildElementsCDATAValue() resp. getChildElementsTextValue()
+    private static final Set<String> CDATA_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "MessageId", "InReplyTo", "From", "Subject", "Date", "Time", "pubKey", "recipient",
+            "Board", "Body", "SignatureV2", "signatureStatus", "content"));
+    private static final Set<String> TEXT_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "IdLinePos", "IdLineLen"));
+
 //    private static final char[] evilChars = {'/', '\\', '*', '=', '|', '&', '#', '\"', '<', '>'}; // will be converted to _
 
     private String boardName = "";
@@ -102,6 +116,31 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
         }
     }
 
+    /**
+     * Constructor.
+     * Used to construct an instance for a downloaded message which is held in memory.
+     * @param content  the (maybe encrypted) message XML
+     * @throws MessageCreationException
+     */
+    public MessageXmlFile(final byte[] content) throws MessageCreationException, Throwable {
+
+        if (content == null) {
+            throw new MessageCreationException("Invalid input content for MessageObject. Content is null.");
+        } else if (content.length < 20) { // prolog+needed tags are always > 20, see MessageXmlFile(File)
+            throw new MessageCreationException(
+                            "Info only: Empty input content for MessageObject (size < 20).", true);
+        }
+
+        loadContent(content);
+        // ensure basic contents and formats
+        if( !isValid() ) {
+            throw new MessageCreationException("Message has invalid or missing fields.", MessageCreationException.INVALID_FORMAT);
+        }
+    }
+
+    /**
+     * @return  the underlying file, or null if this message was loaded from memory
+     */
     public File getFile() {
         return file;
     }
@@ -377,6 +416,11 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
      * Parses the XML file and passes the FrostMessage element to XMLize load method.
      */
     protected void loadFile() throws Exception {
+        final byte[] content = FileAccess.readByteArray(this.file);
+        if( content != null && loadXMLStream(content, true) ) {
+            return;
+        }
+
         Document doc = null;
         try {
             doc = XMLTools.parseXmlFile(this.file);
@@ -392,59 +436,72 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
                                 "File name: '" + file.getName() + "'");
         }
 
-        Element rootNode = doc.getDocumentElement();
+        loadDocument(doc);
+    }
+
+    /**
+     * Parses the XML content and passes the FrostMessage element to XMLize load method.
+     * Uses the streaming reader, and only builds a DOM if the streaming reader can't handle the content.
+     */
+    protected void loadContent(final byte[] content) throws Exception {
+        if( loadXMLStream(content, true) ) {
+            return;
+        }
+        loadDocument(parseContent(content));
+    }
+
+    /**
+     * Parses XML content from memory. Invalid content is saved as badmessage.xml, like bad message files.
+     */
+    private Document parseContent(final byte[] content) throws Exception {
+        Document doc = null;
+        try {
+            doc = XMLTools.parseXmlContent(content);
+        } catch(final Exception ex) {  // xml format error
+            final File badMessage = new File("badmessage.xml");
+            if (FileAccess.writeFile(content, badMessage)) {
+                logger.log(Level.SEVERE, "Error - send the file badmessage.xml to a dev for analysis, more details below:", ex);
+            }
+        }
+
+        if( doc == null ) {
+            throw new Exception("Error - MessageObject.loadContent: couldn't parse XML Document");
+        }
+        return doc;
+    }
+
+    /**
+     * Decrypts the document if needed, and passes the FrostMessage element to XMLize load method.
+     */
+    private void loadDocument(final Document doc) throws Exception {
+
+        final Element rootNode = doc.getDocumentElement();
 
         // transparently decrypt and continue load on success
         if( rootNode.getTagName().equals("EncryptedFrostMessage") ) {
-            // get recipient (must be I to continue)
-            setRecipientName(XMLTools.getChildElementsCDATAValue(rootNode, "recipient"));
-            if( getRecipientName() == null ) {
-                // no recipient
-                throw new Exception("Error - encrypted message contains no 'recipient' section.");
-            }
-            final FrostIdentities identities = Core.getIdentities();
-            if( !identities.isMySelf(getRecipientName()) ) {
-                // not for me
-                throw new MessageCreationException("Info: Encrypted message is not for me.",
-                        MessageCreationException.MSG_NOT_FOR_ME);
-            }
-            final String base64enc = XMLTools.getChildElementsCDATAValue(rootNode, "content");
-            if( base64enc == null ) {
-                // no content
-                throw new Exception("Error - encrypted message contains no 'content' section.");
-            }
-            final byte[] base64bytes = base64enc.getBytes("ISO-8859-1");
-            final byte[] encBytes = Base64.decode(base64bytes);
-
-            // decrypt content
-            final LocalIdentity receiverId = identities.getLocalIdentity(getRecipientName());
-            final byte[] decContent = Core.getCrypto().decrypt(encBytes, receiverId.getPrivateKey());
-            if( decContent == null ) {
-                logger.log(Level.SEVERE, "TOFDN: Encrypted message could not be decrypted!");
-                throw new MessageCreationException("Error: Encrypted message could not be decrypted.",
-                        MessageCreationException.DECRYPT_FAILED);
-            }
-            // decContent is an complete XML file, save it to file and load it
-            FileAccess.writeFile(decContent, this.file);
-            // try to load again
-            try {
-                doc = XMLTools.parseXmlFile(this.file);
-            } catch(final Exception ex) {  // xml format error
-                final File badMessage = new File("badmessage.xml");
-                if (file.renameTo(badMessage)) {
-                    logger.log(Level.SEVERE, "Error - send the file badmessage.xml to a dev for analysis, more details below:", ex);
-                }
-            }
+            final byte[] decContent = decryptContent(
+                    XMLTools.getChildElementsCDATAValue(rootNode, "recipient"),
+                    XMLTools.getChildElementsCDATAValue(rootNode, "content"));
+            loadDecryptedContent(decContent);
+            return;
+        }
+        loadFrostMessageElement(rootNode);
+    }
 
-            if( doc == null ) {
-                throw new Exception("Error - MessageObject.loadFile: couldn't parse XML Document - " +
-                                    "File name: '" + file.getName() + "'");
-            }
-            rootNode = doc.getDocumentElement();
+    /**
+     * Loads the complete XML file contained in an EncryptedFrostMessage. It must not be encrypted again.
+     */
+    private void loadDecryptedContent(final byte[] decContent) throws Exception {
+        if( loadXMLStream(decContent, false) ) {
+            return;
         }
+        loadFrostMessageElement(parseContent(decContent).getDocumentElement());
+    }
+
+    private void loadFrostMessageElement(final Element rootNode) throws Exception {
         if( rootNode.getTagName().equals("FrostMessage") == false ) {
             final File badMessage = new File("badmessage.xml");
-            if (file.renameTo(badMessage)) {
+            if (file != null && file.renameTo(badMessage)) {
                 logger.severe("Error - send the file badmessage.xml to a dev for analysis.");
             }
             throw new Exception("Error - invalid message: does not contain the root tag 'FrostMessage'");
@@ -453,6 +510,129 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
         loadXMLElement(rootNode);
     }
 
+    /**
+     * Decrypts the content of an EncryptedFrostMessage, if it is for me.
+     * @return  the decrypted message XML
+     */
+    private byte[] decryptContent(final String recipientName, final String base64enc) throws Exception {
+        // get recipient (must be I to continue)
+        setRecipientName(recipientName);
+        if( getRecipientName() == null ) {
+            // no recipient
+            throw new Exception("Error - encrypted message contains no 'recipient' section.");
+        }
+        final FrostIdentities identities = Core.getIdentities();
+        if( !identities.isMySelf(getRecipientName()) ) {
+            // not for me
+            throw new MessageCreationException("Info: Encrypted message is not for me.",
+                    MessageCreationException.MSG_NOT_FOR_ME);
+        }
+        if( base64enc == null ) {
+            // no content
+            throw new Exception("Error - encrypted message contains no 'content' section.");
+        }
+        final byte[] base64bytes = base64enc.getBytes("ISO-8859-1");
+        final byte[] encBytes = Base64.decode(base64bytes);
+
+        // decrypt content
+        final LocalIdentity receiverId = identities.getLocalIdentity(getRecipientName());
+        final byte[] decContent = Core.getCrypto().decrypt(encBytes, receiverId.getPrivateKey());
+        if( decContent == null ) {
+            logger.log(Level.SEVERE, "TOFDN: Encrypted message could not be decrypted!");
+            throw new MessageCreationException("Error: Encrypted message could not be decrypted.",
+                    MessageCreationException.DECRYPT_FAILED);
+        }
+        // decContent is an complete XML file
+        return decContent;
+    }
+
+    /**
+     * Loads the message with a single pass of a StAX reader, without building a DOM.
+     * Gives the same result as loadXMLElement() for all messages that Frost writes, and
+     * leaves content that loadXMLElement() rejects (like text where it expects CDATA) to the DOM.
+     *
+     * @param allowEncrypted  true to accept (and decrypt) an EncryptedFrostMessage
+     * @return  false if the content is not well-formed, or uses something the streaming reader
+     *     doesn't support (like person attachments). Nothing was loaded then, and the caller
+     *     must use the DOM, which also reports all errors.
+     */
+    private boolean loadXMLStream(final byte[] content, final boolean allowEncrypted) throws Exception {
+        final Map<String,String> values = new HashMap<String,String>();
+        final AttachmentList<Attachment> attachments = new AttachmentList<Attachment>();
+        final String rootName;
+        try {
+            final XMLStreamReader r = XMLTools.createXmlStreamReader(content);
+            try {
+                if( !XMLTools.nextChildElement(r) ) {
+                    return false;
+                }
+                rootName = r.getLocalName();
+                final boolean isEncrypted = rootName.equals("EncryptedFrostMessage");
+                if( !(rootName.equals("FrostMessage") || (isEncrypted && allowEncrypted)) ) {
+                    return false;
+                }
+                boolean attachmentsSeen = false;
+                while( XMLTools.nextChildElement(r) ) {
+                    final String name = r.getLocalName();
+                    if( !isEncrypted && name.equals("AttachmentList") && !attachmentsSeen ) {
+                        // only the first list counts, like for XMLTools.getChildElementsByTagName()
+                        attachmentsSeen = true;
+                        if( !attachments.loadXMLStream(r) ) {
+                            return false;
+                        }
+                    } else if( values.containsKey(name) ) {
+                        XMLTools.skipElement(r);
+                    } else if( CDATA_ELEMENTS.contains(name) ) {
+                        // rejects text content, like the DOM path
+                        values.put(name, XMLTools.readElementCDATA(r));
+                    } else if( TEXT_ELEMENTS.contains(name) ) {
+                        values.put(name, XMLTools.readElementText(r));
+                    } else {
+                        XMLTools.skipElement(r);
+                    }
+                }
+                // the rest of the document must be well-formed too
+                while( r.hasNext() ) {
+                    r.next();
+                }
+            } finally {
+                r.close();
+            }
+        } catch(final XMLStreamException ex) {
+            logger.log(Level.FINE, "Streaming XML reader failed, using the DOM", ex);
+            return false;
+        }
+
+        if( rootName.equals("EncryptedFrostMessage") ) {
+            loadDecryptedContent(decryptContent(values.get("recipient"), values.get("content")));
+            return true;
+        }
+
+        setMessageId(values.get("MessageId"));
+        setInReplyTo(values.get("InReplyTo"));
+        setFromName(values.get("From"));
+        setSubject(values.get("Subject"));
+        dateStr = values.get("Date");
+        timeStr = values.get("Time");
+        setPublicKey(values.get("pubKey"));
+        setRecipientName(values.get("recipient"));
+        setBoardName(values.get("Board"));
+        setContent(values.get("Body"));
+
+        setSignatureV2(values.get("SignatureV2"));
+
+        setIdLinePosLen(values.get("IdLinePos"), values.get("IdLineLen"), ((getContent() != null )?getContent().length():0));
+
+        // this parameter is contained in local XML messages only
+        String sigstat = values.get("signatureStatus");
+        if( sigstat != null && (sigstat=sigstat.trim()).length() > 0 ) {
+            setSignatureStatusFromString(sigstat);
+        }
+
+        getAttachmentList().addAll(attachments);
+        return true;
+    }
+
     /**
      * @see frost.util.XMLizable#loadXMLElement(org.w3c.dom.Element)
      */
@@ -531,9 +711,13 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
         final File tmpFile = new File(f.getPath() + "sav.tmp");
         boolean success = false;
         try {
-            final Document doc = XMLTools.createDomDocument();
-            doc.appendChild(getXMLElement(doc));
-            success = XMLTools.writeXmlFile(doc, tmpFile.getPath());
+            if( getAttachmentList().isXMLStreamable() ) {
+                success = writeXMLStreamFile(tmpFile);
+            } else {
+                final Document doc = XMLTools.createDomDocument();
+                doc.appendChild(getXMLElement(doc));
+                success = XMLTools.writeXmlFile(doc, tmpFile.getPath());
+            }
         } catch (final Exception e) {
             logger.log(Level.SEVERE, "Error while saving message.", e);
         }
@@ -551,6 +735,64 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
         return success;
     }
 
+    /**
+     * Writes the message to the file with a StAX writer, without building a DOM.
+     */
+    private boolean writeXMLStreamFile(final File f) {
+        try (
+            // NOTE: Java 7+ try-with-resources (autocloseable)
+            final FileOutputStream fileOut = new FileOutputStream(f);
+            final BufferedOutputStream out = new BufferedOutputStream(fileOut);
+        ) {
+            final XMLStreamWriter w = XMLTools.createXmlStreamWriter(out);
+            w.writeStartDocument("UTF-8", "1.0");
+            writeXMLStream(w);
+            w.writeEndDocument();
+            w.close(); // does not close the underlying stream
+            return true;
+        } catch (final Exception ex) {
+            logger.log(Level.SEVERE, "Exception thrown in writeXMLStreamFile(File f)", ex);
+        }
+        return false;
+    }
+
+    /**
+     * Writes the same XML as getXMLElement(), without building a DOM.
+     * The attachment list must be streamable, see AttachmentList.isXMLStreamable().
+     */
+    public void writeXMLStream(final XMLStreamWriter w) throws XMLStreamException {
+        w.writeStartElement("FrostMessage");
+
+        if( getMessageId() != null ) {
+            XMLTools.writeCDATAElement(w, "MessageId", sanitizeStringForXML(getMessageId()));
+        }
+        if( getInReplyTo() != null ) {
+            XMLTools.writeCDATAElement(w, "InReplyTo", sanitizeStringForXML(getInReplyTo()));
+        }
+        if( getIdLinePos() > -1 && getIdLineLen() > -1 ) {
+            XMLTools.writeTextElement(w, "IdLinePos", Integer.toString(getIdLinePos()));
+            XMLTools.writeTextElement(w, "IdLineLen", Integer.toString(getIdLineLen()));
+        }
+        XMLTools.writeCDATAElement(w, "From", sanitizeStringForXML(getFromName()));
+        XMLTools.writeCDATAElement(w, "Subject", sanitizeStringForXML(getSubject()));
+        XMLTools.writeCDATAElement(w, "Date", sanitizeStringForXML(getDateStr()));
+        XMLTools.writeCDATAElement(w, "Time", sanitizeStringForXML(getTimeStr()));
+        XMLTools.writeCDATAElement(w, "Body", sanitizeStringForXML(getContent()));
+        XMLTools.writeCDATAElement(w, "Board", sanitizeStringForXML(getBoardName()));
+        if (getPublicKey() != null && getPublicKey().length() > 0) {
+            XMLTools.writeCDATAElement(w, "pubKey", sanitizeStringForXML(getPublicKey()));
+        }
+        if (getRecipientName() != null && getRecipientName().length() > 0) {
+            XMLTools.writeCDATAElement(w, "recipient", sanitizeStringForXML(getRecipientName()));
+        }
+        if (getSignatureV2() != null && getSignatureV2().length() > 0) {
+            XMLTools.writeCDATAElement(w, "SignatureV2", sanitizeStringForXML(getSignatureV2()));
+        }
+        getAttachmentList().writeXMLStream(w);
+
+        w.writeEndElement();
+    }
+
     /**
      * Encrypt the complete XML message file with public key of recipient and
      * create an EncryptedFrostMessage XML file that contains the encryted content
@@ -572,26 +814,24 @@ public class MessageXmlFile extends AbstractMessageObject implements XMLizable {
             return false;
         }
 
-        final Document doc = XMLTools.createDomDocument();
-        final Element el = doc.createElement("EncryptedFrostMessage");
-
-        CDATASection cdata;
-        Element current;
-
-        // recipient
-        current = doc.createElement("recipient");
-        cdata = doc.createCDATASection(sanitizeStringForXML(recipient.getUniqueName()));
-        current.appendChild(cdata);
-        el.appendChild(current);
-
-        // base64 content
-        current = doc.createElement("content");
-        cdata = doc.createCDATASection(sanitizeStringForXML(base64enc));
-        current.appendChild(cdata);
-        el.appendChild(current);
-
-        doc.appendChild(el);
-        return XMLTools.writeXmlFile(doc, targetFile.getPath());
+        try (
+            // NOTE: Java 7+ try-with-resources (autocloseable)
+            final FileOutputStream fileOut = new FileOutputStream(targetFile);
+            final BufferedOutputStream out = new BufferedOutputStream(fileOut);
+        ) {
+            final XMLStreamWriter w = XMLTools.createXmlStreamWriter(out);
+            w.writeStartDocument("UTF-8", "1.0");
+            w.writeStartElement("EncryptedFrostMessage");
+            XMLTools.writeCDATAElement(w, "recipient", sanitizeStringForXML(recipient.getUniqueName()));
+            XMLTools.writeCDATAElement(w, "content", sanitizeStringForXML(base64enc));
+            w.writeEndElement();
+            w.writeEndDocument();
+            w.close(); // does not close the underlying stream
+            return true;
+        } catch (final Exception ex) {
+            logger.log(Level.SEVERE, "Exception thrown in encryptForRecipientAndSaveCopy()", ex);
+        }
+        return false;
     }
 
     /**
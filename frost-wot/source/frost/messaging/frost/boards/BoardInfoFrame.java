@@ -66,6 +66,7 @@ import frost.gui.SortedTable;
 import frost.gui.model.SortedTableModel;
 import frost.gui.model.TableMember;
 import frost.storage.perst.messages.MessageStorage;
+import frost.storage.perst.messages.PerstFrostMessageCounts;
 import frost.util.CopyToClipboard;
 import frost.util.DateFun;
 import frost.util.gui.JSkinnablePopupMenu;
@@ -495,11 +496,14 @@ public class BoardInfoFrame extends JFrame implements BoardUpdateThreadListener
      */
     public BoardInfoTableMember fillInBoardCounts(final Board board, final BoardInfoTableMember row) {
 
-        final int countTodaysMessages  = MessageStorage.inst().getMessageCount(board, 0);
-        final int countAllMessages     = MessageStorage.inst().getMessageCount(board, -1);
-        final int countFlaggedMessages = MessageStorage.inst().getFlaggedMessageCount(board);
-        final int countStarredMessages = MessageStorage.inst().getStarredMessageCount(board);
-        final int countUnreadMessages  = MessageStorage.inst().getUnreadMessageCount(board);
+        final PerstFrostMessageCounts todaysCounts = MessageStorage.inst().getMessageCounts(board, 0);
+        final PerstFrostMessageCounts allCounts = MessageStorage.inst().getMessageCounts(board, -1);
+
+        final int countTodaysMessages  = (todaysCounts != null) ? todaysCounts.getMessageCount() : -1;
+        final int countAllMessages     = (allCounts != null) ? allCounts.getMessageCount() : -1;
+        final int countFlaggedMessages = (allCounts != null) ? allCounts.getFlaggedCount() : 0;
+        final int countStarredMessages = (allCounts != null) ? allCounts.getStarredCount() : 0;
+        final int countUnreadMessages  = (allCounts != null) ? allCounts.getUnreadCount() : -1;
         final DateTime latestMessageTime = MessageStorage.inst().getDateTimeOfLatestMessage(board);
         final String dateStr;
         if (latestMessageTime != null) {
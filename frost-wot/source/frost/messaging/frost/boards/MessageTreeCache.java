@@ -0,0 +1,110 @@
+/*
+  MessageTreeCache.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.messaging.frost.boards;
+
+import java.util.*;
+
+import frost.messaging.frost.*;
+
+/**
+ * Keeps the message trees of the most recently shown boards, so that switching back to a board
+ * does not reload and rebuild all of its messages. Each tree is stored together with a key
+ * of the display settings it was built for, a tree is only returned if the key still matches.
+ *
+ * The trees are the same objects that are shown in the message table, so changes done by the
+ * user (read, flagged, deleted, ...) are kept in the cached trees. TOF adds received messages
+ * to the cached trees of boards which are not shown.
+ *
+ * Not thread-safe, only used by the swing thread.
+ */
+class MessageTreeCache {
+
+    private final int maxSize;
+
+    // least recently used board first
+    private final LinkedHashMap<Board,CachedTree> trees = new LinkedHashMap<Board,CachedTree>();
+
+    public MessageTreeCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the tree of the board if it was built with the same settings key, and marks it
+     * as most recently used. A tree with an outdated key is removed.
+     */
+    public FrostMessageObject get(final Board board, final String settingsKey) {
+        final FrostMessageObject rootNode = peek(board, settingsKey);
+        if( rootNode != null ) {
+            trees.put(board, trees.remove(board));
+        }
+        return rootNode;
+    }
+
+    /**
+     * Like get(), but does not change the order of the trees.
+     */
+    public FrostMessageObject peek(final Board board, final String settingsKey) {
+        final CachedTree cachedTree = trees.get(board);
+        if( cachedTree == null ) {
+            return null;
+        }
+        if( !cachedTree.getSettingsKey().equals(settingsKey) ) {
+            trees.remove(board);
+            return null;
+        }
+        return cachedTree.getRootNode();
+    }
+
+    public void put(final Board board, final String settingsKey, final FrostMessageObject rootNode) {
+        if( maxSize <= 0 ) {
+            return;
+        }
+        trees.remove(board);
+        trees.put(board, new CachedTree(settingsKey, rootNode));
+        while( trees.size() > maxSize ) {
+            final Iterator<Board> i = trees.keySet().iterator();
+            i.next();
+            i.remove();
+        }
+    }
+
+    public void remove(final Board board) {
+        trees.remove(board);
+    }
+
+    public void clear() {
+        trees.clear();
+    }
+
+    private static class CachedTree {
+        private final String settingsKey;
+        private final FrostMessageObject rootNode;
+
+        public CachedTree(final String settingsKey, final FrostMessageObject rootNode) {
+            this.settingsKey = settingsKey;
+            this.rootNode = rootNode;
+        }
+        public String getSettingsKey() {
+            return settingsKey;
+        }
+        public FrostMessageObject getRootNode() {
+            return rootNode;
+        }
+    }
+}
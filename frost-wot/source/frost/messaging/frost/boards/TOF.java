@@ -61,6 +61,13 @@ public class TOF implements PropertyChangeListener {
 
     private final TofTreeModel tofTreeModel;
 
+    // the message trees of the recently shown boards, only used by the swing thread
+    private final MessageTreeCache messageTreeCache;
+
+    // set while the shown board is loaded in pages of threads, only used by the swing thread
+    private MessageThreadPager messageThreadPager = null;
+    private Board messageThreadPagerBoard = null;
+
     private static boolean initialized = false;
 
     private boolean showJunkMessages;
@@ -86,6 +93,7 @@ public class TOF implements PropertyChangeListener {
     private TOF(final TofTreeModel tofTreeModel) {
         super();
         this.tofTreeModel = tofTreeModel;
+        messageTreeCache = new MessageTreeCache(Core.frostSettings.getIntValue(SettingsClass.MESSAGE_TREE_CACHE_SIZE));
         showJunkMessages = Core.frostSettings.getBoolValue(SettingsClass.SHOW_JUNK_MESSAGES);
         Core.frostSettings.addPropertyChangeListener(SettingsClass.SHOW_JUNK_MESSAGES, this);
     }
@@ -183,6 +191,9 @@ public class TOF implements PropertyChangeListener {
                         	logger.severe("error: frostMessageObject not of type FrostMessageObject");
                         }
                     }
+                } else {
+                    // the cached tree of the board still contains the new messages
+                    messageTreeCache.remove(board);
                 }
                 // set for not selected boards too, by 'select folder unread' function
 
@@ -203,8 +214,7 @@ public class TOF implements PropertyChangeListener {
     public void receivedInvalidMessage(final Board b, final DateTime date, final int index, final String reason) {
         // first add to database, then mark slot used. this way its ok if Frost is shut down after add to db but
         // before mark of the slot.
-        final FrostMessageObject invalidMsg = new FrostMessageObject(b, date, index, reason);
-        invalidMsg.setNew(false);
+        final FrostMessageObject invalidMsg = createInvalidMessage(b, date, index, reason);
         try {
             MessageStorage.inst().insertMessage(invalidMsg);
         } catch (final Throwable e) {
@@ -213,10 +223,32 @@ public class TOF implements PropertyChangeListener {
         }
     }
 
+    /**
+     * Creates the database entry for an invalid message, which only marks the slot as used.
+     */
+    public FrostMessageObject createInvalidMessage(final Board b, final DateTime date, final int index, final String reason) {
+        final FrostMessageObject invalidMsg = new FrostMessageObject(b, date, index, reason);
+        invalidMsg.setNew(false);
+        return invalidMsg;
+    }
+
     /**
      * Add new received valid msg to database and maybe to gui.
      */
     public void receivedValidMessage(
+            final MessageXmlFile currentMsg,
+            final Identity owner,
+            final Board board,
+            final int index)
+    {
+        receivedValidMessage(createValidMessage(currentMsg, owner, board, index), board, index);
+    }
+
+    /**
+     * Creates the message object for a received valid msg, and adds its owner to the identities
+     * if the owner is new.
+     */
+    public FrostMessageObject createValidMessage(
             final MessageXmlFile currentMsg,
             Identity owner,
             final Board board,
@@ -253,14 +285,76 @@ public class TOF implements PropertyChangeListener {
             }
         }
 
-        final FrostMessageObject newMsg = new FrostMessageObject(currentMsg, owner, board, index);
-        receivedValidMessage(newMsg, board, index);
+        return new FrostMessageObject(currentMsg, owner, board, index);
     }
+
     /**
      * Add new valid msg to database
      */
     public void receivedValidMessage(final FrostMessageObject newMsg, final Board board, final int index) {
 
+        final boolean isBlocked = prepareValidMessage(newMsg, board);
+
+        if( !insertValidMessage(newMsg, board, index, true) ) {
+            return; // not inserted into database, do not add to gui
+        }
+
+        finishValidMessage(newMsg, board, isBlocked);
+    }
+
+    /**
+     * Adds a batch of received messages to the database with a single commit, and afterwards
+     * adds the valid ones to the gui. The batch contains the objects from createValidMessage()
+     * and createInvalidMessage().
+     */
+    public void receivedMessageBatch(final List<FrostMessageObject> messages) {
+
+        final boolean[] isBlocked = new boolean[messages.size()];
+        final boolean[] isInserted = new boolean[messages.size()];
+        for( int i = 0; i < messages.size(); i++ ) {
+            final FrostMessageObject mo = messages.get(i);
+            if( mo.isValid() ) {
+                isBlocked[i] = prepareValidMessage(mo, mo.getBoard());
+            }
+        }
+
+        if( !MessageStorage.inst().beginInsertBatch() ) {
+            logger.severe("Error inserting message batch into database, storage is not available.");
+            return;
+        }
+        try {
+            for( int i = 0; i < messages.size(); i++ ) {
+                final FrostMessageObject mo = messages.get(i);
+                if( mo.isValid() ) {
+                    isInserted[i] = insertValidMessage(mo, mo.getBoard(), mo.getIndex(), false);
+                } else {
+                    try {
+                        MessageStorage.inst().insertMessage(mo, false);
+                    } catch (final Throwable e) {
+                        // paranoia
+                        logger.log(Level.SEVERE, "Error inserting invalid message into database", e);
+                    }
+                }
+            }
+        } finally {
+            // commits all messages
+            MessageStorage.inst().endInsertBatch();
+        }
+
+        for( int i = 0; i < messages.size(); i++ ) {
+            if( isInserted[i] ) {
+                final FrostMessageObject mo = messages.get(i);
+                finishValidMessage(mo, mo.getBoard(), isBlocked[i]);
+            }
+        }
+    }
+
+    /**
+     * Sets the new state of a received valid msg.
+     * @return  true if the message is blocked
+     */
+    private boolean prepareValidMessage(final FrostMessageObject newMsg, final Board board) {
+
         if( newMsg.isMessageFromME() && Core.frostSettings.getBoolValue(SettingsClass.HANDLE_OWN_MESSAGES_AS_NEW_DISABLED) ) {
             newMsg.setNew(false);
         } else {
@@ -272,10 +366,24 @@ public class TOF implements PropertyChangeListener {
             // if message is blocked, reset new state
             newMsg.setNew(false);
         }
+        return isBlocked;
+    }
+
+    /**
+     * Inserts a received valid msg into the database.
+     * @param useTransaction  false if the caller already holds the insert batch transaction
+     * @return  true if the message was inserted, false if it was a duplicate or the insert failed
+     */
+    private boolean insertValidMessage(
+            final FrostMessageObject newMsg,
+            final Board board,
+            final int index,
+            final boolean useTransaction)
+    {
 
         final int messageInsertedRC;
         try {
-            messageInsertedRC = MessageStorage.inst().insertMessage(newMsg);
+            messageInsertedRC = MessageStorage.inst().insertMessage(newMsg, useTransaction);
         } catch (final Throwable e) {
             // paranoia
             logger.log(
@@ -283,20 +391,27 @@ public class TOF implements PropertyChangeListener {
                     "Error inserting new message into database. Msgid="+newMsg.getMessageId()+
                     "; Board="+board.getName()+"; Date="+newMsg.getDateAndTimeString()+"; "+"Index="+index,
                     e);
-            return;
+            return false;
         }
 
         // don't add msg if it was a duplicate
         if( messageInsertedRC == MessageStorage.INSERT_DUPLICATE ) {
             logger.severe("Duplicate message, not added to storage. Msgid="+newMsg.getMessageId()+
                     "; Board="+board.getName()+"; Date="+newMsg.getDateAndTimeString()+"; "+"Index="+index);
-            return; // not inserted into database, do not add to gui
+            return false;
         }
 
         // don't add msg if insert into database failed
         if( messageInsertedRC != MessageStorage.INSERT_OK ) {
-            return; // not inserted into database, do not add to gui
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * Processes a received valid msg after it was added to the database.
+     */
+    private void finishValidMessage(final FrostMessageObject newMsg, final Board board, final boolean isBlocked) {
 
         if( newMsg.isSignatureStatusVERIFIED() && newMsg.getFromIdentity() != null ) {
             // we received a new unique message, count it
@@ -367,14 +482,20 @@ public class TOF implements PropertyChangeListener {
                 final AbstractNode selectedNode = tofTreeModel.getSelectedNode();
                 // add only if target board is still shown
                 if( selectedNode.isBoard() && selectedNode.getName().equals( board.getName() ) ) {
-                    addNewMessageToModel(message, board);
+                    final FrostMessageObject rootNode = (FrostMessageObject)MainFrame.getInstance().getMessageTreeModel().getRoot();
+                    addNewMessageToTree(rootNode, message, board, true);
                     MainFrame.getInstance().updateMessageCountLabels(board);
+                } else {
+                    // keep the cached tree of the board up to date, it is shown again without a reload
+                    final FrostMessageObject rootNode = messageTreeCache.peek(board, getMessageTreeCacheKey(board.getMaxMessageDisplay()));
+                    if( rootNode != null ) {
+                        addNewMessageToTree(rootNode, message, board, false);
+                    }
                 }
             }
         });
     }
-    private boolean tryToFillDummyMsg(final FrostMessageObject newMessage) {
-        final FrostMessageObject rootNode = (FrostMessageObject)MainFrame.getInstance().getMessageTreeModel().getRoot();
+    private boolean tryToFillDummyMsg(final FrostMessageObject rootNode, final FrostMessageObject newMessage, final boolean isShown) {
         // is there a dummy msg for this msgid?
         final Enumeration<FrostMessageObject> messageObjectEnumeration = rootNode.depthFirstEnumeration();
         while(messageObjectEnumeration.hasMoreElements()){
@@ -390,9 +511,11 @@ public class TOF implements PropertyChangeListener {
             {
                 // previously missing msg arrived, fill dummy with message data
                 frostMessageObject.fillFromOtherMessage(newMessage);
-                final int row = MainFrame.getInstance().getMessageTreeTable().getRowForNode(frostMessageObject);
-                if( row >= 0 ) {
-                    MainFrame.getInstance().getMessageTableModel().fireTableRowsUpdated(row, row);
+                if( isShown ) {
+                    final int row = MainFrame.getInstance().getMessageTreeTable().getRowForNode(frostMessageObject);
+                    if( row >= 0 ) {
+                        MainFrame.getInstance().getMessageTableModel().fireTableRowsUpdated(row, row);
+                    }
                 }
                 return true;
             }
@@ -400,11 +523,14 @@ public class TOF implements PropertyChangeListener {
         return false; // no dummy found
     }
 
-    private void addNewMessageToModel(FrostMessageObject newMessage, final Board board) {
+    /**
+     * Adds a new message to the message tree of the board. If the tree is not shown (a cached tree),
+     * the message is added silently, without table events.
+     */
+    private void addNewMessageToTree(final FrostMessageObject rootNode, FrostMessageObject newMessage, final Board board, final boolean isShown) {
 
-        final FrostMessageObject rootNode = (FrostMessageObject)MainFrame.getInstance().getMessageTreeModel().getRoot();
         final MessageTreeTable treeTable = MainFrame.getInstance().getMessageTreeTable();
-        final boolean expandUnread = Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_SHOW_COLLAPSED_THREADS) && Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_EXPAND_UNREAD_THREADS);
+        final boolean expandUnread = isShown && Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_SHOW_COLLAPSED_THREADS) && Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_EXPAND_UNREAD_THREADS);
 
         final boolean showThreads = Core.frostSettings.getBoolValue(SettingsClass.SHOW_THREADS);
 
@@ -413,12 +539,12 @@ public class TOF implements PropertyChangeListener {
         if( showThreads == false ||
                 newMessage.getMessageId() == null ||
                 newMessage.getInReplyToList().size() == 0 ) {
-            rootNode.add(newMessage, false);
+            rootNode.add(newMessage, !isShown);
             return;
         }
 
         // check if there is a dummy message with this messageid, and if so replace it with the real message contents
-        if( tryToFillDummyMsg(newMessage) == true ) {
+        if( tryToFillDummyMsg(rootNode, newMessage, isShown) == true ) {
             // dummy msg filled
             return;
         }
@@ -440,7 +566,7 @@ public class TOF implements PropertyChangeListener {
                 // current "(possible dummies)->message" tree to that parent and stop looking for further parents
                 if( frostMessageObject.getMessageId() != null &&
                         frostMessageObject.getMessageId().equals(directParentId) ) {
-                    frostMessageObject.add(newMessage, false);
+                    frostMessageObject.add(newMessage, !isShown);
                     if( expandUnread ) {
                         treeTable.expandFirework(newMessage);
                     }
@@ -460,9 +586,15 @@ public class TOF implements PropertyChangeListener {
             newMessage = dummyMsg;
         }
 
+        // a paged tree maybe does not contain the thread of the message yet. the message is in the
+        // database and is shown when the page with its thread is loaded.
+        if( isShown && messageThreadPager != null && !messageThreadPager.isComplete() ) {
+            return;
+        }
+
         // no parent found was anywhere in the hierarchy (not even a dummy one), so insert a brand new
         // tree of all the dummy "in reply to" messages, with the real message at the bottom
-        rootNode.add(newMessage, false);
+        rootNode.add(newMessage, !isShown);
         if (expandUnread) {
             treeTable.expandFirework(newMessage);
         }
@@ -479,6 +611,32 @@ public class TOF implements PropertyChangeListener {
      */
     public void updateTofTable(final Board board, final String prevSelectedMsgId) {
         final int daysToRead = board.getMaxMessageDisplay();
+        final String cacheKey = getMessageTreeCacheKey(daysToRead);
+
+        // a recently shown board is taken from the cache, its tree was kept up to date.
+        // messages deleted by the user are not removed from the tree, they disappear by a reload.
+        final FrostMessageObject cachedRootNode = messageTreeCache.get(board, cacheKey);
+        if( cachedRootNode != null
+                && !Core.frostSettings.getBoolValue(SettingsClass.SHOW_DELETED_MESSAGES)
+                && containsDeletedMessages(cachedRootNode) )
+        {
+            messageTreeCache.remove(board);
+        } else if( cachedRootNode != null ) {
+            // a running or waiting load of another board is not needed anymore
+            if( updateThread != null ) {
+                updateThread.cancel();
+            }
+            nextUpdateThread = null;
+
+            final boolean showThreads = Core.frostSettings.getBoolValue(SettingsClass.SHOW_THREADS);
+            MessageTreeTableSortStateBean.setThreaded(showThreads);
+            if( !showThreads ) {
+                // the flat list could have been sorted by another column meanwhile
+                cachedRootNode.resortChildren();
+            }
+            showMessageTree(board, cachedRootNode, prevSelectedMsgId);
+            return;
+        }
 
         if( updateThread != null ) {
             if( updateThread.toString().equals( board ) ) {
@@ -492,7 +650,7 @@ public class TOF implements PropertyChangeListener {
 
         // start new thread, the thread will set itself to updateThread,
         // but first it waits until the current thread is finished
-        nextUpdateThread = new UpdateTofFilesThread(board, daysToRead, prevSelectedMsgId);
+        nextUpdateThread = new UpdateTofFilesThread(board, daysToRead, cacheKey, prevSelectedMsgId);
         MainFrame.getInstance().activateGlassPane();
         nextUpdateThread.start();
     }
@@ -511,14 +669,31 @@ public class TOF implements PropertyChangeListener {
         Board board;
         int daysToRead;
         boolean isCancelled = false;
+        final String cacheKey;
         final String previousSelectedMsgId;
 
+        // set if the board is loaded in pages of threads
+        MessageThreadPager pager = null;
+        // true if this thread loads the next page of the shown board
+        final boolean isNextPage;
+
         List<FrostMessageObject> markAsReadMsgs = new ArrayList<FrostMessageObject>();
 
-        public UpdateTofFilesThread(final Board board, final int daysToRead, final String prevSelectedMsgId) {
+        public UpdateTofFilesThread(final Board board, final int daysToRead, final String cacheKey, final String prevSelectedMsgId) {
             this.board = board;
             this.daysToRead = daysToRead;
+            this.cacheKey = cacheKey;
             this.previousSelectedMsgId = prevSelectedMsgId;
+            this.isNextPage = false;
+        }
+
+        public UpdateTofFilesThread(final Board board, final int daysToRead, final MessageThreadPager pager) {
+            this.board = board;
+            this.daysToRead = daysToRead;
+            this.cacheKey = null;
+            this.previousSelectedMsgId = null;
+            this.pager = pager;
+            this.isNextPage = true;
         }
 
         public synchronized void cancel() {
@@ -607,24 +782,17 @@ public class TOF implements PropertyChangeListener {
                     }
                 }
 
-                // for threads, check msgrefs and load all existing msgs pointed to by refs
+                // for threads, check msgrefs and load all existing msgs pointed to by refs, and recursively
+                // the msgs pointed to by the loaded msgs (needed when only new msgs are shown and some msgs
+                // have invalid refs, sometimes sent by other clients). all in one storage transaction.
                 final boolean showDeletedMessages = Core.frostSettings.getBoolValue(SettingsClass.SHOW_DELETED_MESSAGES);
-                LinkedList<FrostMessageObject> newLoadedMsgs = new LinkedList<FrostMessageObject>();
-                LinkedList<FrostMessageObject> newLoadedMsgs2 = new LinkedList<FrostMessageObject>();
-
-                loadInReplyToMessages(messageList, messageIds, showDeletedMessages, newLoadedMsgs);
-
-                // load all linked messages, only needed when only new msgs are shown and some msgs have invalid
-                // refs (sometimes sent by other clients)
-                while( loadInReplyToMessages(newLoadedMsgs, messageIds, showDeletedMessages, newLoadedMsgs2) ) {
-                    messageList.addAll(newLoadedMsgs);
-                    newLoadedMsgs = newLoadedMsgs2;
-                    newLoadedMsgs2 = new LinkedList<FrostMessageObject>();
-                }
-                messageList.addAll(newLoadedMsgs);
+                messageList.addAll(MessageStorage.inst().retrieveInReplyToMessages(
+                        board,
+                        messageList,
+                        messageIds,
+                        showDeletedMessages));
 
                 // help the garbage collector
-                newLoadedMsgs = null;
                 messageIds = null;
 
                 // all msgs are loaded and dummies for missing msgs were created, now build the threads
@@ -738,58 +906,6 @@ public class TOF implements PropertyChangeListener {
                     }
                 }
             }
-
-            private boolean loadInReplyToMessages(
-                    final List<FrostMessageObject> messages,
-                    final HashSet<String> messageIds,
-                    final boolean showDeletedMessages,
-                    final LinkedList<FrostMessageObject> newLoadedMsgs)
-            {
-                boolean msgWasMissing = false;
-                for(final FrostMessageObject mo : messages ) {
-                    final List<String> l = mo.getInReplyToList();
-                    if( l.size() == 0 ) {
-                        continue; // no msg refs
-                    }
-
-                    // try to load each referenced msgid, put tried ids into hashset msgIds
-                    for(int x=l.size()-1; x>=0; x--) {
-                        final String anId = l.get(x);
-                        if( anId == null ) {
-                            logger.log(Level.SEVERE, "Should never happen: message id is null! msgId="+mo.getMessageId());
-                            continue;
-                        }
-
-                        if( messageIds.contains(anId) ) {
-                            continue;
-                        }
-
-                        FrostMessageObject fmo = MessageStorage.inst().retrieveMessageByMessageId(
-                                board,
-                                anId,
-                                false,
-                                false,
-                                showDeletedMessages);
-                        if( fmo == null ) {
-                            // for each missing msg create a dummy FrostMessageObject and add it to tree.
-                            // if the missing msg arrives later, replace dummy with true msg in tree
-                            final ArrayList<String> ll = new ArrayList<String>(x);
-                            if( x > 0 ) {
-                                for(int y=0; y < x; y++) {
-                                    ll.add(l.get(y));
-                                }
-                            }
-                            fmo = new FrostMessageObject(anId, board, ll);
-                        }
-                        newLoadedMsgs.add(fmo);
-                        messageIds.add(anId);
-                        if( !msgWasMissing ) {
-                            msgWasMissing = true;
-                        }
-                    }
-                }
-                return msgWasMissing;
-            }
         }
 
         /**
@@ -824,6 +940,34 @@ public class TOF implements PropertyChangeListener {
                     callback);
         }
 
+        /**
+         * Large boards are loaded in pages of threads, if only the default set of messages is shown.
+         */
+        private boolean isPagedBoard() {
+            final int threshold = Core.frostSettings.getIntValue(SettingsClass.MSGTABLE_PAGED_LOADING_THRESHOLD);
+            if( threshold <= 0
+                    || Core.frostSettings.getBoolValue(SettingsClass.SHOW_UNREAD_ONLY)
+                    || Core.frostSettings.getBoolValue(SettingsClass.SHOW_FLAGGED_ONLY)
+                    || Core.frostSettings.getBoolValue(SettingsClass.SHOW_STARRED_ONLY) )
+            {
+                return false;
+            }
+            return MessageStorage.inst().getMessageCount(board, daysToRead) > threshold;
+        }
+
+        /**
+         * Loads the next page of threads.
+         */
+        private void loadMessagePage(final MessageCallback callback) {
+            MessageStorage.inst().retrieveMessageThreadsForShow(
+                    board,
+                    daysToRead,
+                    Core.frostSettings.getBoolValue(SettingsClass.SHOW_DELETED_MESSAGES),
+                    pager,
+                    Core.frostSettings.getIntValue(SettingsClass.MSGTABLE_PAGE_SIZE),
+                    callback);
+        }
+
         @Override
         public void run() {
             while( updateThread != null ) {
@@ -853,13 +997,25 @@ public class TOF implements PropertyChangeListener {
             // update SortStateBean
             MessageTreeTableSortStateBean.setThreaded(loadThreads);
 
+            int pagedUnreadCount = 0;
+            boolean pagedHasFlagged = false;
+            boolean pagedHasStarred = false;
+
             final long l1 = System.currentTimeMillis();
             try {
+                if( loadThreads && !isNextPage && isPagedBoard() ) {
+                    pager = new MessageThreadPager();
+                }
                 if( loadThreads  ) {
                     final ThreadedMessageRetrieval tmr = new ThreadedMessageRetrieval(rootNode);
-                    loadMessages(tmr);
+                    if( pager != null ) {
+                        loadMessagePage(tmr);
+                    } else {
+                        loadMessages(tmr);
+                    }
                     final long l2 = System.currentTimeMillis();
                     tmr.buildThreads();
+                    rootNode.trimChildren();
                     final long l3 = System.currentTimeMillis();
                     // TODO: debug output only!
                     System.out.println("loading board "+board.getName()+" (threaded): diskFetch="+(l2-l1)+"ms, buildThreads+subRetrieve="+(l3-l2)+"ms");
@@ -874,44 +1030,52 @@ public class TOF implements PropertyChangeListener {
                 // finally mark 'new', but blocked messages as unread
                 MessageStorage.inst().setMessagesRead(board, markAsReadMsgs);
 
+                // the first page does not contain all unread, flagged and starred messages
+                if( pager != null && !isNextPage ) {
+                    pagedUnreadCount = MessageStorage.inst().getUnreadMessageCount(board);
+                    pagedHasFlagged = MessageStorage.inst().hasFlaggedMessages(board);
+                    pagedHasStarred = MessageStorage.inst().hasStarredMessages(board);
+                }
             } catch (final Throwable t) {
                 logger.log(Level.SEVERE, "Excpetion during thread load/build", t);
             }
 
-            if( !isCancel() ) {
-                // count new messages and check if board has flagged or starred messages
-                int newMessageCountWork = 0;
-                boolean hasStarredWork = false;
-                boolean hasFlaggedWork = false;
-                
-                final Enumeration<FrostMessageObject> messageObjectEnumeration = rootNode.depthFirstEnumeration();
-                while(messageObjectEnumeration.hasMoreElements()){
-                    final FrostMessageObject frostMessageObject = messageObjectEnumeration.nextElement();
-                    
-                    if( frostMessageObject.isNew() ) {
-                        newMessageCountWork++;
-                    }
-                    if( !hasStarredWork && frostMessageObject.isStarred() ) {
-                        hasStarredWork = true;
-                    }
-                    if( !hasFlaggedWork && frostMessageObject.isFlagged() ) {
-                        hasFlaggedWork = true;
+            if( !isCancel() && isNextPage ) {
+                // add the threads to the shown tree
+                final Board innerTargetBoard = board;
+                final MessageThreadPager innerPager = pager;
+                final int markedAsReadCount = markAsReadMsgs.size();
+                SwingUtilities.invokeLater( new Runnable() {
+                    public void run() {
+                        addMessagePage(innerTargetBoard, innerPager, rootNode, markedAsReadCount);
                     }
-                }
-
-                // set rootnode to gui and update
+                });
+            } else if( !isCancel() ) {
+                // count new messages, set rootnode to gui and update
                 final Board innerTargetBoard = board;
-                final int newMessageCount = newMessageCountWork;
-                final boolean newHasFlagged = hasFlaggedWork;
-                final boolean newHasStarred = hasStarredWork;
+                final MessageThreadPager innerPager = pager;
+                final int innerUnreadCount = pagedUnreadCount;
+                final boolean innerHasFlagged = pagedHasFlagged;
+                final boolean innerHasStarred = pagedHasStarred;
                 isRedrawingGui = true; // means that the messages have not yet been visibly loaded into the GUI
                 SwingUtilities.invokeLater( new Runnable() {
                     public void run() {
                         final long l2 = System.currentTimeMillis();
-                        innerTargetBoard.setUnreadMessageCount(newMessageCount);
-                        innerTargetBoard.setFlaggedMessages(newHasFlagged);
-                        innerTargetBoard.setStarredMessages(newHasStarred);
-                        setNewRootNode(innerTargetBoard, rootNode, previousSelectedMsgId);
+                        if( showMessageTree(innerTargetBoard, rootNode, previousSelectedMsgId) ) {
+                            if( innerPager == null ) {
+                                // from now on received messages are added to this tree, also when it is not shown
+                                messageTreeCache.put(innerTargetBoard, cacheKey, rootNode);
+                            } else {
+                                // paged trees are not cached, the next pages are loaded while the board is shown
+                                messageThreadPager = innerPager;
+                                messageThreadPagerBoard = innerTargetBoard;
+                                innerTargetBoard.setUnreadMessageCount(innerUnreadCount);
+                                innerTargetBoard.setFlaggedMessages(innerHasFlagged);
+                                innerTargetBoard.setStarredMessages(innerHasStarred);
+                                MainFrame.getInstance().updateTofTree(innerTargetBoard);
+                                MainFrame.getInstance().updateMessageCountLabels(innerTargetBoard);
+                            }
+                        }
                         isRedrawingGui = false; // the messages have been loaded into the GUI and are now visible
                         final long l3 = System.currentTimeMillis();
                         System.out.println("finished loading board "+board.getName()+": guiRenderTime="+(l3-l2)+"ms, totalTime="+(l3-l1)+"ms");
@@ -924,71 +1088,241 @@ public class TOF implements PropertyChangeListener {
             // unset us as "updatethread" since we're done with the job!
             updateThread = null;
         }
+    }
 
-        /**
-         * Set rootnode to gui and update.
-         */
-        private void setNewRootNode(final Board innerTargetBoard, final FrostMessageObject rootNode, final String previousSelectedMsgId) {
-            if( tofTreeModel.getSelectedNode().isBoard() &&
-                    tofTreeModel.getSelectedNode().getName().equals( innerTargetBoard.getName() ) )
-            {
-                final MessageTreeTable treeTable = MainFrame.getInstance().getMessageTreeTable();
-
-                // give the treetable a new root node (fires "treeStructureChanged" which in turn fires
-                // "tableDataChanged". this event just takes ~5ms even for big boards.
-                treeTable.setNewRootNode(rootNode);
-                // now expand either all nodes, or the root-level children; this is the thing that's
-                // insanely slow, but uses Kitty's TreeTable performance trick to be super fast. ;-)
-                if( ! Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_SHOW_COLLAPSED_THREADS) ) {
-                    // normal mode: all threads and all replies are expanded
-                    treeTable.expandAll(true);
-                } else {
-                    // collapsed mode: pre-expand replies (optional) and/or expand unread parts of threads (optional)
-                    final boolean preExpandReplies = Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_EXPAND_ROOT_CHILDREN);
-                    final boolean expandUnreadThreads = Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_EXPAND_UNREAD_THREADS);
-                    treeTable.expandRootChildren(preExpandReplies, expandUnreadThreads);
-                }
+    /**
+     * Counts the new messages of the tree and checks if it has flagged or starred messages,
+     * then sets the tree to the gui. Must be called by the swing thread.
+     * @return  false if the board is not selected anymore
+     */
+    private boolean showMessageTree(final Board innerTargetBoard, final FrostMessageObject rootNode, final String previousSelectedMsgId) {
+        int newMessageCount = 0;
+        boolean hasStarred = false;
+        boolean hasFlagged = false;
 
-                MainFrame.getInstance().updateTofTree(innerTargetBoard);
-                MainFrame.getInstance().updateMessageCountLabels(innerTargetBoard);
+        final Enumeration<FrostMessageObject> messageObjectEnumeration = rootNode.depthFirstEnumeration();
+        while(messageObjectEnumeration.hasMoreElements()){
+            final FrostMessageObject frostMessageObject = messageObjectEnumeration.nextElement();
 
-                MainFrame.getInstance().deactivateGlassPane();
+            if( frostMessageObject.isNew() ) {
+                newMessageCount++;
+            }
+            if( !hasStarred && frostMessageObject.isStarred() ) {
+                hasStarred = true;
+            }
+            if( !hasFlagged && frostMessageObject.isFlagged() ) {
+                hasFlagged = true;
+            }
+        }
 
-                // do last: if the user had selected a message before the reload, we'll want to re-select
-                // it as soon as the JTree<->JTable re-syncing activity has settled down. by queueing
-                // an invokeLater job, we'll be sure that all of the insert/expand events have finished
-                // by the time that we fire. that's because the insert/expandThread calls above also fire
-                // invokeLater jobs, so we'll be adding ourselves to the *end* of that queue.
-                if( previousSelectedMsgId != null ) {
-                    // check if a message with the same messageId exists within the new node tree
-                    final Enumeration<FrostMessageObject> messageObjectEnumeration = rootNode.depthFirstEnumeration();
-                    while( messageObjectEnumeration.hasMoreElements() ){
-                        final FrostMessageObject frostMessageObject = messageObjectEnumeration.nextElement();
+        innerTargetBoard.setUnreadMessageCount(newMessageCount);
+        innerTargetBoard.setFlaggedMessages(hasFlagged);
+        innerTargetBoard.setStarredMessages(hasStarred);
+        return setNewRootNode(innerTargetBoard, rootNode, previousSelectedMsgId);
+    }
 
-                        if( frostMessageObject != null && frostMessageObject.getMessageId() != null && frostMessageObject.getMessageId().equals(previousSelectedMsgId) ) {
-                            treeTable.expandFirework(frostMessageObject);
+    /**
+     * Set rootnode to gui and update.
+     * @return  false if the board is not selected anymore
+     */
+    private boolean setNewRootNode(final Board innerTargetBoard, final FrostMessageObject rootNode, final String previousSelectedMsgId) {
+        if( tofTreeModel.getSelectedNode().isBoard() &&
+                tofTreeModel.getSelectedNode().getName().equals( innerTargetBoard.getName() ) )
+        {
+            final MessageTreeTable treeTable = MainFrame.getInstance().getMessageTreeTable();
+
+            // the pages of a previously shown board are not loaded anymore
+            messageThreadPager = null;
+            messageThreadPagerBoard = null;
+
+            // give the treetable a new root node (fires "treeStructureChanged" which in turn fires
+            // "tableDataChanged". this event just takes ~5ms even for big boards.
+            treeTable.setNewRootNode(rootNode);
+            // now expand either all nodes, or the root-level children; this is the thing that's
+            // insanely slow, but uses Kitty's TreeTable performance trick to be super fast. ;-)
+            if( ! Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_SHOW_COLLAPSED_THREADS) ) {
+                // normal mode: all threads and all replies are expanded
+                treeTable.expandAll(true);
+            } else {
+                // collapsed mode: pre-expand replies (optional) and/or expand unread parts of threads (optional)
+                final boolean preExpandReplies = Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_EXPAND_ROOT_CHILDREN);
+                final boolean expandUnreadThreads = Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_EXPAND_UNREAD_THREADS);
+                treeTable.expandRootChildren(preExpandReplies, expandUnreadThreads);
+            }
 
-                            // invokeLater the row-finding, selection and scrolling jobs
-                            // to make sure that the TreeTable will be ready when we query it...
-                            SwingUtilities.invokeLater(new Runnable() {
-                                @Override
-                                public void run() {
-                                    // if the message is at row "-1" it means the message is no longer visible
-                                    int treeRowIdx = treeTable.getRowForNode(frostMessageObject);
-                                    if( treeRowIdx >= 0 ) {
-                                        treeTable.getSelectionModel().setSelectionInterval(treeRowIdx, treeRowIdx);
-                                        // perform an intelligent scroll to the selected row + 3,
-                                        // which still ensures the target row is always in view
-                                        SmartSelection.applySmartScroll(treeTable, treeRowIdx, 3);
-                                    }
+            MainFrame.getInstance().updateTofTree(innerTargetBoard);
+            MainFrame.getInstance().updateMessageCountLabels(innerTargetBoard);
+
+            MainFrame.getInstance().deactivateGlassPane();
+
+            // do last: if the user had selected a message before the reload, we'll want to re-select
+            // it as soon as the JTree<->JTable re-syncing activity has settled down. by queueing
+            // an invokeLater job, we'll be sure that all of the insert/expand events have finished
+            // by the time that we fire. that's because the insert/expandThread calls above also fire
+            // invokeLater jobs, so we'll be adding ourselves to the *end* of that queue.
+            if( previousSelectedMsgId != null ) {
+                // check if a message with the same messageId exists within the new node tree
+                final Enumeration<FrostMessageObject> messageObjectEnumeration = rootNode.depthFirstEnumeration();
+                while( messageObjectEnumeration.hasMoreElements() ){
+                    final FrostMessageObject frostMessageObject = messageObjectEnumeration.nextElement();
+
+                    if( frostMessageObject != null && frostMessageObject.getMessageId() != null && frostMessageObject.getMessageId().equals(previousSelectedMsgId) ) {
+                        treeTable.expandFirework(frostMessageObject);
+
+                        // invokeLater the row-finding, selection and scrolling jobs
+                        // to make sure that the TreeTable will be ready when we query it...
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                // if the message is at row "-1" it means the message is no longer visible
+                                int treeRowIdx = treeTable.getRowForNode(frostMessageObject);
+                                if( treeRowIdx >= 0 ) {
+                                    treeTable.getSelectionModel().setSelectionInterval(treeRowIdx, treeRowIdx);
+                                    // perform an intelligent scroll to the selected row + 3,
+                                    // which still ensures the target row is always in view
+                                    SmartSelection.applySmartScroll(treeTable, treeRowIdx, 3);
                                 }
-                            });
-                            break;
+                            }
+                        });
+                        break;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the key of the settings a board message tree is built with. A cached tree is only
+     * reused if the key is unchanged. The current day is part of the key, older msgs drop out
+     * of the days to show.
+     */
+    private String getMessageTreeCacheKey(final int daysToRead) {
+        return new LocalDate(DateTimeZone.UTC).toString()
+                + "|" + daysToRead
+                + "|" + Core.frostSettings.getBoolValue(SettingsClass.SHOW_THREADS)
+                + "|" + Core.frostSettings.getBoolValue(SettingsClass.SHOW_DELETED_MESSAGES)
+                + "|" + Core.frostSettings.getBoolValue(SettingsClass.SHOW_UNREAD_ONLY)
+                + "|" + Core.frostSettings.getBoolValue(SettingsClass.SHOW_FLAGGED_ONLY)
+                + "|" + Core.frostSettings.getBoolValue(SettingsClass.SHOW_STARRED_ONLY)
+                + "|" + Core.frostSettings.getBoolValue(SettingsClass.SORT_THREADROOTMSGS_ASCENDING)
+                + "|" + showJunkMessages;
+    }
+
+    /**
+     * Loads the next page of threads of the shown board, if the board is loaded in pages. Called when the
+     * message table is scrolled near its end. Must be called by the swing thread.
+     */
+    public void loadNextMessagePage() {
+        if( messageThreadPager == null || messageThreadPager.isComplete() ) {
+            return;
+        }
+        if( tofTreeModel.getSelectedNode() != messageThreadPagerBoard ) {
+            return;
+        }
+        if( updateThread != null || nextUpdateThread != null ) {
+            // a load is running, the table changes after it and we are called again
+            return;
+        }
+        nextUpdateThread = new UpdateTofFilesThread(
+                messageThreadPagerBoard,
+                messageThreadPagerBoard.getMaxMessageDisplay(),
+                messageThreadPager);
+        nextUpdateThread.start();
+    }
+
+    /**
+     * Adds the threads of the next page to the shown tree. Must be called by the swing thread.
+     * @param markedAsReadCount  the number of blocked new msgs which were marked read while loading the page
+     */
+    private void addMessagePage(
+            final Board board,
+            final MessageThreadPager pager,
+            final FrostMessageObject pageRootNode,
+            final int markedAsReadCount)
+    {
+        if( pager != messageThreadPager || tofTreeModel.getSelectedNode() != board ) {
+            return; // another tree is shown meanwhile
+        }
+        final FrostMessageObject rootNode = (FrostMessageObject)MainFrame.getInstance().getMessageTreeModel().getRoot();
+        final MessageTreeTable treeTable = MainFrame.getInstance().getMessageTreeTable();
+
+        final List<FrostMessageObject> threads = new ArrayList<FrostMessageObject>(pageRootNode.getChildCount());
+        for( int x=0; x < pageRootNode.getChildCount(); x++ ) {
+            threads.add((FrostMessageObject)pageRootNode.getChildAt(x));
+        }
+        if( threads.size() > 0 ) {
+            // move the threads silently, then notify the table once about all inserted rows
+            for( final FrostMessageObject thread : threads ) {
+                rootNode.add(thread, true);
+            }
+            final int[] ixs = new int[threads.size()];
+            for( int x=0; x < ixs.length; x++ ) {
+                ixs[x] = rootNode.getIndex(threads.get(x));
+            }
+            Arrays.sort(ixs);
+            MainFrame.getInstance().getMessageTreeModel().nodesWereInserted(rootNode, ixs);
+
+            // expand the new threads like setNewRootNode() does
+            if( ! Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_SHOW_COLLAPSED_THREADS) ) {
+                for( final FrostMessageObject thread : threads ) {
+                    if( thread.getChildCount() > 0 ) {
+                        treeTable.expandNode(thread);
+                    }
+                }
+            } else if( Core.frostSettings.getBoolValue(SettingsClass.MSGTABLE_EXPAND_UNREAD_THREADS) ) {
+                for( final FrostMessageObject thread : threads ) {
+                    final Enumeration<FrostMessageObject> messageObjectEnumeration = thread.depthFirstEnumeration();
+                    while( messageObjectEnumeration.hasMoreElements() ) {
+                        final FrostMessageObject frostMessageObject = messageObjectEnumeration.nextElement();
+                        if( frostMessageObject.isNew() ) {
+                            treeTable.expandFirework(frostMessageObject);
                         }
                     }
                 }
             }
         }
+
+        // the unread count was taken from the database with the first page
+        if( markedAsReadCount > 0 ) {
+            board.setUnreadMessageCount(Math.max(0, board.getUnreadMessageCount() - markedAsReadCount));
+            MainFrame.getInstance().updateTofTree(board);
+        }
+        MainFrame.getInstance().updateMessageCountLabels(board);
+    }
+
+    private boolean containsDeletedMessages(final FrostMessageObject rootNode) {
+        final Enumeration<FrostMessageObject> messageObjectEnumeration = rootNode.depthFirstEnumeration();
+        while( messageObjectEnumeration.hasMoreElements() ) {
+            if( messageObjectEnumeration.nextElement().isDeleted() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops all cached board message trees. Called before a reload because of changed message
+     * filters, the trees must be rebuilt then. Must be called by the swing thread.
+     */
+    public void clearMessageTreeCache() {
+        messageTreeCache.clear();
+    }
+
+    /**
+     * Called by the MessageExpirationThread after messages of the board were archived or deleted.
+     * Drops the cached tree of the board, it may contain the expired messages. If the board is
+     * shown, it is reloaded, because the shown tree can keep expired unread, flagged or starred
+     * messages of any age.
+     * Must be called by the swing thread.
+     */
+    public void messagesExpired(final Board board) {
+        messageTreeCache.remove(board);
+        if( tofTreeModel.getSelectedNode() == board ) {
+            // reselect the current message after the reload, if it still exists
+            MainFrame.getInstance().getFrostMessageTab().boardTree_actionPerformed(true);
+        }
     }
 
     /**
@@ -1165,8 +1499,13 @@ public class TOF implements PropertyChangeListener {
 
         final int beforeMessages = board.getUnreadMessageCount(); // remember old val to track if new msg. arrived
 
+        // one lookup of the per day counters instead of counting the message indices
+        final PerstFrostMessageCounts counts = MessageStorage.inst().getMessageCounts(board, -1);
+
         int newMessages = 0;
-        newMessages = MessageStorage.inst().getUnreadMessageCount(board);
+        if( counts != null ) {
+            newMessages = counts.getUnreadCount();
+        }
 
         // count new messages arrived while processing
         final int arrivedMessages = board.getUnreadMessageCount() - beforeMessages;
@@ -1179,8 +1518,10 @@ public class TOF implements PropertyChangeListener {
         // check for flagged and starred messages in board
         boolean hasFlagged = false;
         boolean hasStarred = false;
-        hasFlagged = MessageStorage.inst().hasFlaggedMessages(board);
-        hasStarred = MessageStorage.inst().hasStarredMessages(board);
+        if( counts != null ) {
+            hasFlagged = (counts.getFlaggedCount() > 0);
+            hasStarred = (counts.getStarredCount() > 0);
+        }
 
         board.setFlaggedMessages(hasFlagged);
         board.setStarredMessages(hasStarred);
@@ -781,6 +781,15 @@ public class MessagePanel extends JPanel implements PropertyChangeListener {
             messageTable.getSelectionModel().addListSelectionListener(listener);
             messageListScrollPane = new JScrollPane(messageTable);
             messageListScrollPane.setWheelScrollingEnabled(true);
+            // boards loaded in pages load their next threads when the table is scrolled near its end
+            messageListScrollPane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+                public void adjustmentValueChanged(final AdjustmentEvent e) {
+                    final BoundedRangeModel m = messageListScrollPane.getVerticalScrollBar().getModel();
+                    if( m.getValue() + 2 * m.getExtent() >= m.getMaximum() ) {
+                        TOF.getInstance().loadNextMessagePage();
+                    }
+                }
+            });
             messageListScrollPane.getViewport().setBackground(messageTable.getBackground());
 
             messageTextPane = new MessageTextPane(mainFrame);
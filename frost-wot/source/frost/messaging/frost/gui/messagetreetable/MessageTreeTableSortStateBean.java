@@ -220,7 +220,7 @@ public class MessageTreeTableSortStateBean {
                     long l1 = 0L, l2 = 0L;
                     switch( fType ) {
                         case DATE:
-                            l1 = msg1.getDateAndTime().getMillis(); l2 = msg2.getDateAndTime().getMillis();
+                            l1 = msg1.getDateAndTimeMillis(); l2 = msg2.getDateAndTimeMillis();
                             break;
                     }
                     result = Mixed.compareLong(l1, l2);
@@ -240,7 +240,7 @@ public class MessageTreeTableSortStateBean {
             // if the values are equal and this isn't the "Date" column, then use Date as tie-breaker
             if( result == 0 && fType != Type.DATE ) {
                 // compare by Date using always-ascending order (by not inverting it)
-                return Mixed.compareLong(msg1.getDateAndTime().getMillis(), msg2.getDateAndTime().getMillis());
+                return Mixed.compareLong(msg1.getDateAndTimeMillis(), msg2.getDateAndTimeMillis());
             } else {
                 // if they want a reverse/descending sort, we'll invert the result
                 return ( fAscending ? result : -result );
@@ -20,6 +20,8 @@
 package frost.messaging.frost.threads;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 import java.lang.Number;
 
@@ -46,6 +48,11 @@ public class MessageThread extends BoardUpdateThreadObject implements BoardUpdat
     private int lastAllDayStarted;
     private volatile boolean stopUpdatingFlag = false;
 
+    // received messages which are not yet committed to the database, see storeSlotProgress()
+    private final List<FrostMessageObject> pendingMessages = new ArrayList<FrostMessageObject>();
+    private long pendingMessagesSince = 0;
+    private long commitIntervalMillis = 0;
+
     private static final Logger logger = Logger.getLogger(MessageThread.class.getName());
 
     public MessageThread(final boolean downloadToday, final Board board, final int maxDaysBack, final int startDay) {
@@ -288,7 +295,6 @@ public class MessageThread extends BoardUpdateThreadObject implements BoardUpdat
         // new run, reset subsequentFailures
         boardUpdateInformation.resetSubsequentInvalidMsgs();
 
-        int index = -1;
         int failures = 0;
         int configMaxFailures = Core.frostSettings.getIntValue(SettingsClass.MAX_MESSAGE_DOWNLOADDATE_FAILURES); // default: 2
         if( configMaxFailures > 5 ) {
@@ -298,131 +304,423 @@ public class MessageThread extends BoardUpdateThreadObject implements BoardUpdat
         }
         final int maxFailures = configMaxFailures; // skip a maximum of 2-5 empty slots at the end of known message indices for that day
 
-        while (failures < maxFailures) {
+        // the probing window determines how many slot requests we keep in flight at the same time.
+        // a window of 1 is identical to the old strictly sequential behavior.
+        int configWindowSize = Core.frostSettings.getIntValue(SettingsClass.MESSAGE_DOWNLOAD_WINDOW_SIZE); // default: 4
+        if( configWindowSize > MAX_PROBE_WINDOW_SIZE ) {
+            configWindowSize = MAX_PROBE_WINDOW_SIZE;
+        } else if( configWindowSize < 1 ) {
+            configWindowSize = 1;
+        }
+        final int windowSize = configWindowSize;
+
+        // received messages are collected and committed together, at most every commitInterval seconds.
+        // an interval of 0 commits each message on its own, like before.
+        final int configCommitInterval = Core.frostSettings.getIntValue(SettingsClass.MESSAGE_DOWNLOAD_COMMIT_INTERVAL); // default: 10
+        commitIntervalMillis = Math.max(0, configCommitInterval) * 1000L;
+
+        final boolean quicklyFailOnAdnf;
+        final int maxRetries;
+        if( Core.frostSettings.getBoolValue(SettingsClass.FCP2_QUICKLY_FAIL_ON_ADNF) ) {
+            quicklyFailOnAdnf = true;
+            maxRetries = 2;
+        } else {
+            // default
+            quicklyFailOnAdnf = false;
+            maxRetries = -1;
+        }
 
-            if( isInterrupted() || isStopUpdatingFlag() ) {
-                break;
-            }
+        // a day that was never downloaded before first gets a quick estimate of its highest used index,
+        // so that the windowed probing below can backfill everything beneath it without being stopped
+        // early by holes, and only applies the maxFailures rule above the estimated frontier.
+        if( gis.isUntouched() && Core.frostSettings.getBoolValue(SettingsClass.MESSAGE_DOWNLOAD_FRONTIER_SEARCH) ) {
+            estimateFrontier(dirDateString, theDate, gis, boardUpdateInformation, maxRetries, quicklyFailOnAdnf);
+        }
 
-            // check if allowed state changed
-            if( !boardUpdateInformation.checkBoardUpdateAllowedState() ) {
-                break;
-            }
+        // the probes are started in ascending index order and are always *processed* in that same order,
+        // so the IndexSlot, the BoardUpdateInformation and the maxFailures stop rule see exactly the same
+        // sequence of results as they would with sequential downloading. when the stop rule triggers, we
+        // stop starting new probes but still process the ones that are in flight; if one of them finds a
+        // message, the failure counter is reset and probing continues, just like it would have sequentially.
+        final ExecutorService probeExecutor = Executors.newFixedThreadPool(windowSize, new SlotProbeThreadFactory(board.getName()));
+        final LinkedList<SlotProbe> probesInFlight = new LinkedList<SlotProbe>();
+        int lastStartedIndex = -1;
 
-            if( index < 0 ) {
-                index = gis.findFirstDownloadSlot();
-            } else {
-                index = gis.findNextDownloadSlot(index);
-            }
+        try {
+            while( true ) {
+
+                if( isInterrupted() || isStopUpdatingFlag() ) {
+                    break;
+                }
+
+                // check if allowed state changed
+                if( !boardUpdateInformation.checkBoardUpdateAllowedState() ) {
+                    break;
+                }
 
-            String logInfo = null;
+                // fill the probing window, unless we've already hit the end of the known indices
+                while( failures < maxFailures && probesInFlight.size() < windowSize ) {
+                    final int newIndex;
+                    if( lastStartedIndex < 0 ) {
+                        newIndex = gis.findFirstDownloadSlot();
+                    } else {
+                        newIndex = gis.findNextDownloadSlot(lastStartedIndex);
+                    }
 
-            try { // we don't want to die for any reason
+                    Mixed.waitRandom(2000 / windowSize); // don't hurt node
 
-                Mixed.waitRandom(2000); // don't hurt node
+                    final String downKey = composeDownKey(newIndex, dirDateString);
+                    final String newLogInfo = new StringBuilder()
+                                .append(" board=")
+                                .append(board.getName())
+                                .append(", key=")
+                                .append(downKey)
+                                .toString();
 
-                final String downKey = composeDownKey(index, dirDateString);
-                logInfo = new StringBuilder()
-                            .append(" board=")
-                            .append(board.getName())
-                            .append(", key=")
-                            .append(downKey)
-                            .toString();
+                    final SlotProbe newProbe = new SlotProbe(newIndex, downKey, maxRetries, newLogInfo);
+                    newProbe.setFuture(probeExecutor.submit(newProbe));
+                    probesInFlight.addLast(newProbe);
+                    lastStartedIndex = newIndex;
+                }
 
-                final boolean quicklyFailOnAdnf;
-                final int maxRetries;
-                if( Core.frostSettings.getBoolValue(SettingsClass.FCP2_QUICKLY_FAIL_ON_ADNF) ) {
-                    quicklyFailOnAdnf = true;
-                    maxRetries = 2;
-                } else {
-                    // default
-                    quicklyFailOnAdnf = false;
-                    maxRetries = -1;
+                if( probesInFlight.isEmpty() ) {
+                    break; // stop rule reached and all probes processed
                 }
 
-                boardUpdateInformation.setCurrentIndex(index);
-                notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+                // always process the lowest outstanding index first
+                final SlotProbe probe = probesInFlight.removeFirst();
+                final int index = probe.getIndex();
+                final String logInfo = probe.getLogInfo();
 
-                final long millisBefore = System.currentTimeMillis();
+                try { // we don't want to die for any reason
 
-                final MessageDownloaderResult mdResult = MessageDownloader.downloadMessage(downKey, index, maxRetries, logInfo);
+                    boardUpdateInformation.setCurrentIndex(index);
+                    notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
 
-                boardUpdateInformation.incCountTriedIndices();
-                boardUpdateInformation.addNodeTime(System.currentTimeMillis() - millisBefore);
+                    final MessageDownloaderResult mdResult;
+                    try {
+                        // first the fetch, then the verification in the download pipeline
+                        mdResult = probe.getFuture().get().get();
+                    } catch(final InterruptedException e) {
+                        // keep the stop request for the day loop and the message upload
+                        interrupt();
+                        break;
+                    }
 
-                if( mdResult == null ) {
-                    // file not found
-                    if( gis.isDownloadIndexBehindLastSetIndex(index) ) {
-                        // we stop if we tried maxFailures indices behind the last known index
+                    final boolean slotUsed = processSlotResult(mdResult, index, probe.getNodeTime(), logInfo,
+                            theDate, gis, boardUpdateInformation, quicklyFailOnAdnf);
+                    if( slotUsed ) {
+                        failures = 0;
+                    } else if( gis.isDownloadIndexBehindLastSetIndex(index) ) {
+                        // file not found; we stop if we tried maxFailures indices behind the last known index
                         failures++;
                     }
-                    boardUpdateInformation.incCountDNF(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
-                    continue;
-                }
 
-                failures = 0;
-
-                if( mdResult.isFailure()
-                        && mdResult.getErrorMessage() != null
-                        && mdResult.getErrorMessage().equals(MessageDownloaderResult.ALLDATANOTFOUND) )
-                {
-                    boardUpdateInformation.incCountADNF(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
-                    if( quicklyFailOnAdnf ) {
-                        System.out.println("TOFDN: Index "+index+" got ADNF, will never try this index again.");
-                        gis.setDownloadSlotUsed(index);
-                        IndexSlotsStorage.inst().storeSlot(gis); // remember each progress
-                    } else {
-                        // don't set slot used, try to retrieve the file again
-                        System.out.println("TOFDN: Skipping index "+index+" for now, will try again later.");
-                    }
-                    continue;
+                } catch(final Throwable t) {
+                    logger.log(Level.SEVERE, "TOFDN: Exception thrown in downloadDate: "+logInfo, t);
+                    // download failed, try next file
                 }
+            } // end-of: while
+        } finally {
+            // we were told to stop (or hit an exception); throw away the results of all
+            // probes that are still running. they'll finish in the background, and their
+            // slots will be probed again during the next update.
+            probesInFlight.clear();
+            probeExecutor.shutdown();
+
+            // commit all collected messages and the slot progress of this day
+            storeSlotProgress(gis, true);
+            MessageDownloadPipeline.inst().logStatistics(board.getName());
+        }
+
+        boardUpdateInformation.setCurrentIndex(-1);
+        boardUpdateInformation.updateBoardUpdateAllowedState();
+        notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
 
+        return boardUpdateInformation;
+    }
+
+    /**
+     * Handles the result of a single slot download: updates the IndexSlot and the
+     * BoardUpdateInformation, and hands valid messages over to the TOF.
+     *
+     * @return  false if the slot was empty (DNF), true if it contained anything at all
+     */
+    private boolean processSlotResult(
+            final MessageDownloaderResult mdResult,
+            final int index,
+            final long nodeTime,
+            final String logInfo,
+            final DateTime theDate,
+            final IndexSlot gis,
+            final BoardUpdateInformation boardUpdateInformation,
+            final boolean quicklyFailOnAdnf)
+    {
+        boardUpdateInformation.incCountTriedIndices();
+        boardUpdateInformation.addNodeTime(nodeTime);
+
+        if( mdResult == null ) {
+            // file not found
+            boardUpdateInformation.incCountDNF(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+            return false;
+        }
+
+        if( mdResult.isFailure()
+                && mdResult.getErrorMessage() != null
+                && mdResult.getErrorMessage().equals(MessageDownloaderResult.ALLDATANOTFOUND) )
+        {
+            boardUpdateInformation.incCountADNF(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+            if( quicklyFailOnAdnf ) {
+                System.out.println("TOFDN: Index "+index+" got ADNF, will never try this index again.");
                 gis.setDownloadSlotUsed(index);
+                storeSlotProgress(gis, false); // remember each progress
+            } else {
+                // don't set slot used, try to retrieve the file again
+                System.out.println("TOFDN: Skipping index "+index+" for now, will try again later.");
+            }
+            return true;
+        }
 
-                if( mdResult.isFailure() ) {
-                    // some error occured, don't try this file again
-                    receivedInvalidMessage(board, theDate, index, mdResult.getErrorMessage());
-                    boardUpdateInformation.incCountInvalid(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
-                } else if( mdResult.getMessage() != null ) {
-                    // message is loaded, delete underlying received file
-                    mdResult.getMessage().getFile().delete();
-                    // basic validation, isValid() of FrostMessageObject was already called during instanciation of MessageXmlFile
-                    if (isValidFormat(mdResult.getMessage(), theDate, board)) {
-                        receivedValidMessage(
-                                mdResult.getMessage(),
-                                mdResult.getOwner(),
-                                board,
-                                index);
-
-                        boardUpdateInformation.incCountValid();
-                        boardUpdateInformation.updateMaxSuccessfulIndex(index);
-
-                        notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
-                    } else {
-                        receivedInvalidMessage(board, theDate, index, MessageDownloaderResult.INVALID_MSG);
-                        logger.warning("TOFDN: Message was dropped, format validation failed: "+logInfo);
-                        boardUpdateInformation.incCountInvalid(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
-                    }
+        gis.setDownloadSlotUsed(index);
+
+        if( mdResult.isFailure() ) {
+            // some error occured, don't try this file again
+            receivedInvalidMessage(board, theDate, index, mdResult.getErrorMessage());
+            boardUpdateInformation.incCountInvalid(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+        } else if( mdResult.getMessage() != null ) {
+            // basic validation, isValid() of FrostMessageObject was already called during instanciation of MessageXmlFile
+            if (isValidFormat(mdResult.getMessage(), theDate, board)) {
+                receivedValidMessage(
+                        mdResult.getMessage(),
+                        mdResult.getOwner(),
+                        board,
+                        index);
+
+                boardUpdateInformation.incCountValid();
+                boardUpdateInformation.updateMaxSuccessfulIndex(index);
+                notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+            } else {
+                receivedInvalidMessage(board, theDate, index, MessageDownloaderResult.INVALID_MSG);
+                logger.warning("TOFDN: Message was dropped, format validation failed: "+logInfo);
+                boardUpdateInformation.incCountInvalid(); notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+            }
+        }
+
+        storeSlotProgress(gis, false); // remember each progress
+        return true;
+    }
+
+    /**
+     * First index probed by the frontier search. Days with fewer messages than this are
+     * cheaper to scan linearly, so the search only costs them one additional DNF.
+     */
+    private static final int FRONTIER_SEARCH_FIRST_INDEX = 8;
+
+    /**
+     * Upper bound for the frontier search, far above any realistic daily message count.
+     */
+    private static final int FRONTIER_SEARCH_MAX_INDEX = 1 << 16;
+
+    /**
+     * Estimates the highest used slot index of a day that was never downloaded before, using
+     * galloping probes (8, 16, 32, ...) until the first empty slot, followed by a binary search
+     * between the last used and the first empty index. This needs O(log n) requests, and every
+     * message found along the way is processed normally. The estimate is stored in the IndexSlot.
+     */
+    private void estimateFrontier(
+            final String dirDateString,
+            final DateTime theDate,
+            final IndexSlot gis,
+            final BoardUpdateInformation boardUpdateInformation,
+            final int maxRetries,
+            final boolean quicklyFailOnAdnf)
+    {
+        int lowestEmpty = -1; // lowest probed index which was empty
+        int highestUsed = -1; // highest probed index which was used
+
+        int index = FRONTIER_SEARCH_FIRST_INDEX;
+        while( true ) {
+            if( isInterrupted() || isStopUpdatingFlag() || !boardUpdateInformation.checkBoardUpdateAllowedState() ) {
+                return; // estimate is incomplete, don't store it
+            }
+
+            if( probeFrontierSlot(index, dirDateString, theDate, gis, boardUpdateInformation, maxRetries, quicklyFailOnAdnf) ) {
+                highestUsed = index;
+            } else {
+                lowestEmpty = index;
+            }
+
+            if( lowestEmpty < 0 ) {
+                // still galloping
+                if( index >= FRONTIER_SEARCH_MAX_INDEX ) {
+                    break;
                 }
+                index *= 2;
+            } else if( highestUsed < 0 ) {
+                // the very first probe was empty; this is a low-volume day
+                break;
+            } else if( lowestEmpty - highestUsed > 1 ) {
+                // bisect between the last used and the first empty index
+                index = highestUsed + ((lowestEmpty - highestUsed) / 2);
+            } else {
+                break;
+            }
+        }
+
+        final int estimatedLength = highestUsed + 1;
+        logger.info("TOFDN: Frontier search for board '" + board.getName() + "', day " + dirDateString + " estimated " + estimatedLength + " used slots.");
+        gis.setFrontierEstimate(estimatedLength);
+        storeSlotProgress(gis, false);
+    }
 
-                IndexSlotsStorage.inst().storeSlot(gis); // remember each progress
+    /**
+     * Downloads and processes a single slot for the frontier search.
+     * @return  true if the slot was used
+     */
+    private boolean probeFrontierSlot(
+            final int index,
+            final String dirDateString,
+            final DateTime theDate,
+            final IndexSlot gis,
+            final BoardUpdateInformation boardUpdateInformation,
+            final int maxRetries,
+            final boolean quicklyFailOnAdnf)
+    {
+        final String downKey = composeDownKey(index, dirDateString);
+        final String logInfo = new StringBuilder()
+                    .append(" board=")
+                    .append(board.getName())
+                    .append(", key=")
+                    .append(downKey)
+                    .toString();
+        try {
+            Mixed.waitRandom(2000); // don't hurt node
+
+            boardUpdateInformation.setCurrentIndex(index);
+            notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+
+            final SlotProbe probe = new SlotProbe(index, downKey, maxRetries, logInfo);
+            final MessageDownloaderResult mdResult = probe.call().get();
+            return processSlotResult(mdResult, index, probe.getNodeTime(), logInfo,
+                    theDate, gis, boardUpdateInformation, quicklyFailOnAdnf);
+        } catch(final Throwable t) {
+            logger.log(Level.SEVERE, "TOFDN: Exception thrown in estimateFrontier: "+logInfo, t);
+            return false;
+        }
+    }
+
+    /**
+     * Upper limit for the number of concurrently probed slot indices per board day.
+     */
+    private static final int MAX_PROBE_WINDOW_SIZE = 16;
+
+    /**
+     * A single in-flight slot download. Runs on the probe executor of downloadDate(), and is
+     * consumed by the MessageThread in ascending index order. The probe only fetches the message,
+     * its result is the Future of the verification in the MessageDownloadPipeline, so the probe
+     * thread can start the next fetch meanwhile.
+     */
+    private static class SlotProbe implements Callable<Future<MessageDownloaderResult>> {
+
+        private final int index;
+        private final String downKey;
+        private final int maxRetries;
+        private final String logInfo;
+
+        private Future<Future<MessageDownloaderResult>> future = null;
+        private long nodeTime = 0;
+
+        public SlotProbe(final int index, final String downKey, final int maxRetries, final String logInfo) {
+            this.index = index;
+            this.downKey = downKey;
+            this.maxRetries = maxRetries;
+            this.logInfo = logInfo;
+        }
 
-            } catch(final Throwable t) {
-                logger.log(Level.SEVERE, "TOFDN: Exception thrown in downloadDate: "+logInfo, t);
-                // download failed, try next file
+        public Future<MessageDownloaderResult> call() {
+            final long millisBefore = System.currentTimeMillis();
+            final Future<MessageDownloaderResult> mdResult = MessageDownloader.downloadMessageAsync(downKey, index, maxRetries, logInfo);
+            synchronized(this) {
+                nodeTime = System.currentTimeMillis() - millisBefore;
             }
-        } // end-of: while
+            return mdResult;
+        }
 
-        boardUpdateInformation.setCurrentIndex(-1);
-        boardUpdateInformation.updateBoardUpdateAllowedState();
-        notifyBoardUpdateInformationChanged(this, boardUpdateInformation);
+        public int getIndex() {
+            return index;
+        }
+        public String getLogInfo() {
+            return logInfo;
+        }
+        public synchronized long getNodeTime() {
+            return nodeTime;
+        }
+        public Future<Future<MessageDownloaderResult>> getFuture() {
+            return future;
+        }
+        public void setFuture(final Future<Future<MessageDownloaderResult>> future) {
+            this.future = future;
+        }
+    }
 
-        return boardUpdateInformation;
+    /**
+     * Creates named daemon threads for the slot probes, so they never keep Frost alive on shutdown.
+     */
+    private static class SlotProbeThreadFactory implements ThreadFactory {
+
+        private final String boardName;
+        private int threadCount = 0;
+
+        public SlotProbeThreadFactory(final String boardName) {
+            this.boardName = boardName;
+        }
+
+        public synchronized Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "SlotProbe-" + boardName + "-" + (++threadCount));
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Maximum number of received messages that are committed to the database together.
+     */
+    private static final int MAX_PENDING_MESSAGES = 100;
+
+    /**
+     * Stores the IndexSlot. If received messages are pending, they are committed first with a single
+     * transaction, and the slot is only stored afterwards. This way a slot is never marked as used
+     * before its message is in the database, even if Frost is shut down in between. Without force,
+     * the commit (and so the slot store) is delayed until the commit interval passed or the batch is full.
+     */
+    private void storeSlotProgress(final IndexSlot gis, final boolean force) {
+        if( !pendingMessages.isEmpty() ) {
+            if( !force
+                    && pendingMessages.size() < MAX_PENDING_MESSAGES
+                    && System.currentTimeMillis() - pendingMessagesSince < commitIntervalMillis )
+            {
+                return; // the slot is stored together with the pending messages
+            }
+            final List<FrostMessageObject> messages = new ArrayList<FrostMessageObject>(pendingMessages);
+            pendingMessages.clear();
+            TOF.getInstance().receivedMessageBatch(messages);
+        }
+        IndexSlotsStorage.inst().storeSlot(gis);
+    }
+
+    private void addPendingMessage(final FrostMessageObject mo) {
+        if( pendingMessages.isEmpty() ) {
+            pendingMessagesSince = System.currentTimeMillis();
+        }
+        pendingMessages.add(mo);
     }
 
     private void receivedInvalidMessage(final Board b, final DateTime calDL, final int index, final String reason) {
-        TOF.getInstance().receivedInvalidMessage(b, calDL.withTimeAtStartOfDay(), index, reason);
+        if( commitIntervalMillis <= 0 ) {
+            TOF.getInstance().receivedInvalidMessage(b, calDL.withTimeAtStartOfDay(), index, reason);
+            return;
+        }
+        addPendingMessage(TOF.getInstance().createInvalidMessage(b, calDL.withTimeAtStartOfDay(), index, reason));
     }
 
     private void receivedValidMessage(
@@ -431,7 +729,11 @@ public class MessageThread extends BoardUpdateThreadObject implements BoardUpdat
             final Board b,
             final int index)
     {
-        TOF.getInstance().receivedValidMessage(mo, owner, b, index);
+        if( commitIntervalMillis <= 0 ) {
+            TOF.getInstance().receivedValidMessage(mo, owner, b, index);
+            return;
+        }
+        addPendingMessage(TOF.getInstance().createValidMessage(mo, owner, b, index));
     }
 
     //////////////////////////////////////////////////
@@ -43,6 +43,9 @@ public class SearchMessagesThread extends Thread implements MessageCallback {
 
     private final TrustStates trustStates = new TrustStates();
 
+    // trigrams which all found msgs must contain, used to query the search index
+    private List<String> searchTerms = null;
+
     private boolean stopRequested = false;
 
     public SearchMessagesThread(final SearchMessagesDialog searchDlg, final SearchMessagesConfig searchCfg) {
@@ -66,6 +69,11 @@ public class SearchMessagesThread extends Thread implements MessageCallback {
 
             final DateRange dateRange = new DateRange();
 
+            searchTerms = MessageSearchIndexStorage.getSearchTerms(
+                    getPatternString(searchConfig.senderPattern),
+                    getPatternString(searchConfig.subjectPattern),
+                    getPatternString(searchConfig.contentPattern));
+
             for( final Board board : boardsToSearch ) {
 
                 if( isStopRequested() ) {
@@ -102,6 +110,10 @@ public class SearchMessagesThread extends Thread implements MessageCallback {
 //System.out.println("endDate="+dr.endDate);
         if( searchConfig.searchInKeypool ) {
             try {
+                if( !searchTerms.isEmpty() ) {
+                    // index the board once, if it was never indexed before
+                    MessageStorage.inst().buildSearchIndex(board);
+                }
                 // if we search displayed messages, we must search all new and flagged/starred too
                 final boolean retrieveDisplayedMessages = (searchConfig.searchDates == SearchMessagesConfig.DATE_DISPLAYED);
                 MessageStorage.inst().retrieveMessagesForSearch(
@@ -112,6 +124,7 @@ public class SearchMessagesThread extends Thread implements MessageCallback {
                         ((searchConfig.contentString==null||searchConfig.contentString.length()==0)?false:true), // withContent
                         false, // withAttachment
                         false, // showDeleted
+                        searchTerms,
                         this);
             } catch(final Throwable e) {
                 logger.log(Level.SEVERE, "Catched exception during getMessageTable().retrieveMessagesForSearch:", e);
@@ -130,6 +143,10 @@ public class SearchMessagesThread extends Thread implements MessageCallback {
         }
     }
 
+    private static String getPatternString(final Pattern p) {
+        return (p != null) ? p.pattern() : null;
+    }
+
     private void searchMessage(final FrostMessageObject mo) {
 
         // check private, flagged, starred, replied only
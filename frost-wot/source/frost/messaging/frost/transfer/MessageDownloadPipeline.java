@@ -0,0 +1,189 @@
+/*
+  MessageDownloadPipeline.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.messaging.frost.transfer;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import frost.fcp.*;
+
+/**
+ * The stages of a message download: the FCP fetch runs on the slot probe threads of the
+ * MessageThread, the parsing, decryption and signature verification run on a bounded pool
+ * of CPU workers shared by all boards, and the MessageThread stores the results in index order.
+ * So the probe threads keep requests in flight while the RSA work of earlier slots is done.
+ *
+ * The work queue of the CPU stage is bounded. When it is full, the probe thread that fetched
+ * the message processes it itself, which slows down the fetching (back-pressure).
+ */
+public class MessageDownloadPipeline {
+
+    private static final Logger logger = Logger.getLogger(MessageDownloadPipeline.class.getName());
+
+    private static final int MAX_QUEUED_MESSAGES = 64;
+
+    private static MessageDownloadPipeline instance = new MessageDownloadPipeline();
+
+    private final ThreadPoolExecutor processingExecutor;
+
+    // fetch stage
+    private final AtomicInteger fetchesInFlight = new AtomicInteger();
+    private final AtomicLong fetchCount = new AtomicLong();
+    // processing stage
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong processingNanos = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+
+    private MessageDownloadPipeline() {
+        final int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        processingExecutor = new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_MESSAGES),
+                new ProcessingThreadFactory(),
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+                        // queue is full, let the fetching thread do the work
+                        callerRunsCount.incrementAndGet();
+                        r.run();
+                    }
+                });
+        processingExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static MessageDownloadPipeline inst() {
+        return instance;
+    }
+
+    void fetchStarted() {
+        fetchesInFlight.incrementAndGet();
+    }
+
+    void fetchFinished() {
+        fetchesInFlight.decrementAndGet();
+        fetchCount.incrementAndGet();
+    }
+
+    /**
+     * Queues the downloaded message for parsing, decryption and verification.
+     */
+    Future<MessageDownloaderResult> process(final FcpResultGet results, final String logInfo) {
+        final FutureTask<MessageDownloaderResult> task = new FutureTask<MessageDownloaderResult>(
+                new Callable<MessageDownloaderResult>() {
+                    public MessageDownloaderResult call() {
+                        final long start = System.nanoTime();
+                        try {
+                            return MessageDownloader.processDownloadedMessage(results, logInfo);
+                        } finally {
+                            processingNanos.addAndGet(System.nanoTime() - start);
+                            processedCount.incrementAndGet();
+                        }
+                    }
+                });
+        processingExecutor.execute(task);
+
+        final int queueDepth = processingExecutor.getQueue().size();
+        int max;
+        while( queueDepth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, queueDepth) ) {
+            // retry
+        }
+        return task;
+    }
+
+    /**
+     * Returns an already finished Future, for results that need no processing.
+     */
+    static Future<MessageDownloaderResult> finished(final MessageDownloaderResult result) {
+        final FutureTask<MessageDownloaderResult> task = new FutureTask<MessageDownloaderResult>(
+                new Callable<MessageDownloaderResult>() {
+                    public MessageDownloaderResult call() {
+                        return result;
+                    }
+                });
+        task.run();
+        return task;
+    }
+
+    public int getFetchesInFlight() {
+        return fetchesInFlight.get();
+    }
+
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    public int getProcessingQueueDepth() {
+        return processingExecutor.getQueue().size();
+    }
+
+    public int getMaxProcessingQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int getActiveProcessingCount() {
+        return processingExecutor.getActiveCount();
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    public double getAverageProcessingMillis() {
+        final long count = processedCount.get();
+        return (count == 0) ? 0 : (processingNanos.get() / 1000000.0) / count;
+    }
+
+    /**
+     * @return  how often the queue was full and a fetching thread processed a message itself
+     */
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+    public void logStatistics(final String boardName) {
+        if( logger.isLoggable(Level.INFO) ) {
+            logger.info(String.format(
+                    "Download pipeline after board %s: fetches in flight=%d, fetched=%d; processing queue=%d (max %d), active=%d, processed=%d, avg=%.1f ms, processed by fetchers=%d",
+                    boardName,
+                    getFetchesInFlight(),
+                    getFetchCount(),
+                    getProcessingQueueDepth(),
+                    getMaxProcessingQueueDepth(),
+                    getActiveProcessingCount(),
+                    getProcessedCount(),
+                    getAverageProcessingMillis(),
+                    getCallerRunsCount()));
+        }
+    }
+
+    private static class ProcessingThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "MessageVerify-"+threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
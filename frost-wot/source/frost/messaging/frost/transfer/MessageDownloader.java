@@ -18,29 +18,27 @@
 */
 package frost.messaging.frost.transfer;
 
-import java.io.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import frost.*;
 import frost.fcp.*;
 import frost.identities.*;
 import frost.messaging.frost.*;
-import frost.util.*;
 
 public class MessageDownloader {
 
     private static final Logger logger = Logger.getLogger(MessageDownloader.class.getName());
 
     /**
-     * Process the downloaded file, decrypt, check sign.
-     * @param tmpFile  downloaded file
-     * @param results  the FcpResults
+     * Process the downloaded message, decrypt, check sign.
+     * @param results  the FcpResults, containing the downloaded message data
      * @param logInfo  info for log output
      * @return  null if unexpected Exception occurred, or results indicating state or error
      */
-    protected static MessageDownloaderResult processDownloadedFile(final File tmpFile, final FcpResultGet results, final String logInfo) {
+    protected static MessageDownloaderResult processDownloadedMessage(final FcpResultGet results, final String logInfo) {
         try {
-            return processDownloadedFile07(tmpFile, results, logInfo);
+            return processDownloadedMessage07(results, logInfo);
         } catch(final Throwable t) {
             logger.log(Level.SEVERE, "Error processing downloaded message", t);
             final MessageDownloaderResult mdResult = new MessageDownloaderResult(MessageDownloaderResult.BROKEN_MSG);
@@ -59,59 +57,80 @@ public class MessageDownloader {
             final int maxRetries,
             final String logInfo) {
 
+        try {
+            return downloadMessageAsync(downKey, targetIndex, maxRetries, logInfo).get();
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch(final ExecutionException e) {
+            logger.log(Level.SEVERE, "TOFDN: Exception thrown in downloadMessage."+logInfo, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Downloads the message in the calling thread, and queues the checkings and decryption
+     * in the MessageDownloadPipeline.
+     *
+     * @return  the Future of the result, which is null if not found, or MessageDownloaderResult if success or error
+     */
+    public static Future<MessageDownloaderResult> downloadMessageAsync(
+            final String downKey,
+            final int targetIndex,
+            final int maxRetries,
+            final String logInfo) {
+
         FcpResultGet results;
-        final File tmpFile = FileAccess.createTempFile("dlMsg_", "-"+targetIndex+".xml.tmp");
 
+        MessageDownloadPipeline.inst().fetchStarted();
         try {
-            results = FcpHandler.inst().getFile(
+            // messages are small, receive them into memory
+            results = FcpHandler.inst().getData(
                     FcpHandler.TYPE_MESSAGE,
                     downKey,
-                    null,
-                    tmpFile,
                     FcpHandler.MAX_MESSAGE_SIZE_07,
                     maxRetries);
         } catch(final Throwable t) {
             logger.log(Level.SEVERE, "TOFDN: Exception thrown in downloadDate part 1."+logInfo, t);
             // download failed
-            tmpFile.delete();
-            return null;
+            return MessageDownloadPipeline.finished(null);
+        } finally {
+            MessageDownloadPipeline.inst().fetchFinished();
         }
 
         if( results == null || results.isSuccess() == false ) {
-        	tmpFile.delete();
         	if(results != null && results.getReturnCode() == 28) {
      	    	logger.warning("TOFDN: All data not found."+logInfo);
      	    	System.out.println("TOFDN: ADNF - Contents of message key partially missing.");
-     	    	return new MessageDownloaderResult(MessageDownloaderResult.ALLDATANOTFOUND);
+     	    	return MessageDownloadPipeline.finished(new MessageDownloaderResult(MessageDownloaderResult.ALLDATANOTFOUND));
             } else if(results != null && results.getReturnCode() == 21) {
                     logger.severe("TOFDN: Message file too big."+logInfo);
                     System.out.println("TOFDN: Message file too big.");
-                    return new MessageDownloaderResult(MessageDownloaderResult.MSG_TOO_BIG);
+                    return MessageDownloadPipeline.finished(new MessageDownloaderResult(MessageDownloaderResult.MSG_TOO_BIG));
         	} else {
-        		return null;
+        		return MessageDownloadPipeline.finished(null);
         	}
         }
 
-        return processDownloadedFile(tmpFile, results, logInfo);
+        return MessageDownloadPipeline.inst().process(results, logInfo);
     }
 
     /**
-     * Process the downloaded file, decrypt, check sign.
-     * @param tmpFile  downloaded file
-     * @param results  the FcpResults
+     * Process the downloaded message, decrypt, check sign.
+     * @param results  the FcpResults, containing the downloaded message data
      * @param logInfo  info for log output
      * @return  null if unexpected Exception occurred, or results indicating state or error
      */
-    protected static MessageDownloaderResult processDownloadedFile07(final File tmpFile, final FcpResultGet results, final String logInfo) {
+    protected static MessageDownloaderResult processDownloadedMessage07(final FcpResultGet results, final String logInfo) {
 
         try { // we don't want to die for any reason
 
-            // a file was downloaded
+            // a message was downloaded
 
             final MessageXmlFile currentMsg;
 
             try {
-                currentMsg = new MessageXmlFile(tmpFile);
+                currentMsg = new MessageXmlFile(results.getData());
 
             } catch (final MessageCreationException ex) {
                 final String errorMessage;
@@ -131,13 +150,11 @@ public class MessageDownloader {
                     logger.log(Level.WARNING, "TOFDN: Exception catched."+logInfo, ex);
                     errorMessage = MessageDownloaderResult.BROKEN_MSG;
                 }
-                tmpFile.delete();
                 return new MessageDownloaderResult(errorMessage);
 
             } catch (final Throwable ex) {
                 logger.log(Level.SEVERE, "TOFDN: Exception catched."+logInfo, ex);
                 // file could not be read, mark it invalid not to confuse gui
-                tmpFile.delete();
                 return new MessageDownloaderResult(MessageDownloaderResult.BROKEN_MSG);
             }
 
@@ -155,7 +172,6 @@ public class MessageDownloader {
                     // invalid, drop message
                     logger.severe("TOFDN: unsigned message has an invalid fromName (contains an @: '"+
                             currentMsg.getFromName()+"'), message dropped."+logInfo);
-                    tmpFile.delete();
                     return new MessageDownloaderResult(MessageDownloaderResult.INVALID_MSG);
                 }
 
@@ -169,7 +185,6 @@ public class MessageDownloader {
             if( !Core.getIdentities().isNewIdentityValid(owner) ) {
                 // hash of public key does not match the unique name
                 logger.severe("TOFDN: identity failed verification, message dropped." + logInfo);
-                tmpFile.delete();
                 return new MessageDownloaderResult(MessageDownloaderResult.INVALID_MSG);
             }
 
@@ -180,7 +195,6 @@ public class MessageDownloader {
             // then check if the signature was ok
             if (!sigIsValid) {
                 logger.severe("TOFDN: message failed verification, message dropped."+logInfo);
-                tmpFile.delete();
                 return new MessageDownloaderResult(MessageDownloaderResult.INVALID_MSG);
             }
 
@@ -196,7 +210,6 @@ public class MessageDownloader {
             logger.log(Level.SEVERE, "TOFDN: Exception catched."+logInfo, t);
             // index is already increased for next try
         }
-        tmpFile.delete();
         return null;
     }
 }
@@ -20,9 +20,14 @@ package frost.storage.perst;
 
 import java.io.*;
 import java.text.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 import java.util.logging.*;
 
 import org.garret.perst.*;
+import org.garret.perst.impl.*;
 
 import frost.*;
 
@@ -30,14 +35,69 @@ public abstract class AbstractFrostStorage {
 
     private static final Logger logger = Logger.getLogger(AbstractFrostStorage.class.getName());
 
+    // max. time the cutover of an online compaction waits for the running transactions
+    private static final long CUTOVER_LOCK_TIMEOUT = 10; // seconds
+
+    // all storage instances, for the instrumentation
+    private static final List<AbstractFrostStorage> allStorages = new CopyOnWriteArrayList<AbstractFrostStorage>();
+
+    private final StorageInstrumentation instrumentation = new StorageInstrumentation();
+
     private Storage storage = null;
 
-    protected AbstractFrostStorage() {}
+    // set by initStorageOnDemand(), the storage is opened on the first access
+    private volatile boolean openOnDemand = false;
+
+    // thread transactions hold the read lock, the cutover of an online compaction the write lock
+    private final ReentrantReadWriteLock cutoverLock = new ReentrantReadWriteLock();
+
+    // counts the stored, deleted and new objects, an online compaction is dropped if it changes
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    protected AbstractFrostStorage() {
+        allStorages.add(this);
+    }
+
+    public static List<AbstractFrostStorage> getAllStorages() {
+        return Collections.unmodifiableList(allStorages);
+    }
+
+    public StorageInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    public boolean isOpened() {
+        return getStorage() != null;
+    }
 
     public abstract String getStorageFilename();
 
     public abstract boolean initStorage();
 
+    /**
+     * Defers the opening of a rarely used storage until its first access,
+     * the storage must call ensureStorageOpen() before each access.
+     */
+    public void initStorageOnDemand() {
+        openOnDemand = true;
+    }
+
+    /**
+     * Opens the storage if its opening was deferred by initStorageOnDemand().
+     */
+    protected void ensureStorageOpen() {
+        if( openOnDemand ) {
+            synchronized(this) {
+                if( openOnDemand ) {
+                    openOnDemand = false;
+                    final long start = System.currentTimeMillis();
+                    initStorage();
+                    logger.info("Opened storage "+getStorageFilename()+" on demand in "+(System.currentTimeMillis() - start)+" ms");
+                }
+            }
+        }
+    }
+
     protected void open(
             final String databaseFilePath,
             final long pagePoolSize,
@@ -59,7 +119,16 @@ public abstract class AbstractFrostStorage {
         if( serializeTransientObjects ) {
             storage.setProperty("perst.serialize.transient.objects", Boolean.TRUE);
         }
-        storage.open(databaseFilePath, pagePoolSize);
+        storage.setListener(new StorageEventListener());
+        instrumentation.setPagePoolSize(pagePoolSize);
+        // same file as used by storage.open(path, size), but counts the page reads and writes
+        final IFile file = new InstrumentedFile(new OSFile(databaseFilePath, false, false), instrumentation);
+        try {
+            storage.open(file, pagePoolSize);
+        } catch(final RuntimeException e) {
+            file.close();
+            throw e;
+        }
     }
 
     public void exportToXml() throws Exception {
@@ -89,6 +158,9 @@ public abstract class AbstractFrostStorage {
         logger.warning("Finished XML export of storage file "+getStorageFilename()+" into "+xmlFile.getPath());
     }
 
+    /**
+     * Offline compaction at startup, the storage must not be open.
+     */
     public long compactStorage() throws Exception {
         final File storageFile = new File( buildStoragePath(getStorageFilename()) );
         final File bakFile = new File( buildStoragePath(getStorageFilename()+".bak") );
@@ -118,7 +190,114 @@ public abstract class AbstractFrostStorage {
         // close storage
         close();
 
-        // make backup version to current version, delete old storage
+        replaceStorageFile(storageFile, bakFile, oldFile);
+
+        final long afterStorageSize = storageFile.length();
+
+        final long savedBytes = beforeStorageSize - afterStorageSize;
+
+        final NumberFormat nf = NumberFormat.getInstance();
+        logger.warning("Finished compacting storage file "+getStorageFilename()+", released "+nf.format(savedBytes)+" bytes.");
+
+        return savedBytes;
+    }
+
+    /**
+     * Returns true if the storage can be compacted while it is in use. This requires that all
+     * accesses to the storage are done in thread transactions or in methods that are synchronized
+     * on the storage instance, and that no persistent objects are handed out to callers, because
+     * the storage is closed and reopened during the cutover.
+     */
+    public boolean isOnlineCompactionSupported() {
+        return false;
+    }
+
+    /**
+     * @return  the size statistics of the open storage, or null if the storage is not open
+     */
+    public StorageStatistics getStorageStatistics() {
+        final Storage s = getStorage();
+        if( s == null ) {
+            return null;
+        }
+        final File storageFile = new File( buildStoragePath(getStorageFilename()) );
+        return new StorageStatistics(getStorageFilename(), storageFile.length(), s.getDatabaseSize(), s.getUsedSize());
+    }
+
+    /**
+     * Compacts the storage while it is in use. The backup is written without blocking the users
+     * of the storage, limited to bytesPerSecond. Only the cutover to the compacted file runs
+     * exclusively, and it is skipped if the storage was changed during the backup.
+     * @param bytesPerSecond  the write limit for the backup, 0 for no limit
+     * @return  the released bytes, or -1 if the storage was changed or closed during the backup
+     */
+    public long compactStorageOnline(final long bytesPerSecond) throws Exception {
+        if( !isOnlineCompactionSupported() ) {
+            throw new UnsupportedOperationException(getStorageFilename()+" can't be compacted while it is in use");
+        }
+        final File storageFile = new File( buildStoragePath(getStorageFilename()) );
+        final File bakFile = new File( buildStoragePath(getStorageFilename()+".bak") );
+        final File oldFile = new File( buildStoragePath(getStorageFilename()+".old") );
+
+        final Storage backupStorage = getStorage();
+        if( backupStorage == null ) {
+            return -1;
+        }
+        final long modificationsBefore = modificationCount.get();
+
+        // write the compacted copy of the last committed state, without any locks
+        try (
+            final FileOutputStream fileOutputStream = new FileOutputStream(bakFile);
+            final OutputStream bakStream = new ThrottledOutputStream(new BufferedOutputStream(fileOutputStream), bytesPerSecond);
+        ) {
+            backupStorage.backup(bakStream);
+        } catch(final Exception t) {
+            bakFile.delete();
+            if( getStorage() != backupStorage ) {
+                return -1; // closed during the backup
+            }
+            throw t;
+        }
+
+        // short exclusive cutover
+        if( !cutoverLock.writeLock().tryLock(CUTOVER_LOCK_TIMEOUT, TimeUnit.SECONDS) ) {
+            bakFile.delete();
+            return -1;
+        }
+        try {
+            synchronized(this) {
+                if( getStorage() != backupStorage ) {
+                    bakFile.delete();
+                    return -1;
+                }
+                // store pending changes, then the copy is only valid if nothing changed
+                backupStorage.commit();
+                if( modificationCount.get() != modificationsBefore ) {
+                    bakFile.delete();
+                    return -1;
+                }
+
+                final long beforeStorageSize = storageFile.length();
+
+                backupStorage.close();
+                storage = null;
+                try {
+                    replaceStorageFile(storageFile, bakFile, oldFile);
+                } finally {
+                    // reopen the compacted storage, or the original storage if the renaming failed
+                    initStorage();
+                }
+                return beforeStorageSize - storageFile.length();
+            }
+        } finally {
+            cutoverLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the backup version to the current version and deletes the old storage.
+     */
+    private void replaceStorageFile(final File storageFile, final File bakFile, final File oldFile) throws Exception {
         if( !storageFile.renameTo(oldFile) ) {
             throw new Exception("Failed to rename '"+storageFile.getPath()+"' into '"+oldFile.getPath()+"'!");
         }
@@ -131,17 +310,8 @@ public abstract class AbstractFrostStorage {
             }
         }
 
-        final long afterStorageSize = storageFile.length();
-
         // all went well, delete old file
         oldFile.delete();
-
-        final long savedBytes = beforeStorageSize - afterStorageSize;
-
-        final NumberFormat nf = NumberFormat.getInstance();
-        logger.warning("Finished compacting storage file "+getStorageFilename()+", released "+nf.format(savedBytes)+" bytes.");
-
-        return savedBytes;
     }
 
     protected Storage getStorage() {
@@ -149,35 +319,60 @@ public abstract class AbstractFrostStorage {
     }
 
     public boolean beginCooperativeThreadTransaction() {
-        if( getStorage() != null ) {
-            getStorage().beginThreadTransaction(Storage.COOPERATIVE_TRANSACTION);
-            return true;
-        }
-        return false;
+        return beginThreadTransaction(Storage.COOPERATIVE_TRANSACTION);
     }
 
     public boolean beginExclusiveThreadTransaction() {
-        if( getStorage() != null ) {
-            getStorage().beginThreadTransaction(Storage.EXCLUSIVE_TRANSACTION);
-            return true;
+        return beginThreadTransaction(Storage.EXCLUSIVE_TRANSACTION);
+    }
+
+    private boolean beginThreadTransaction(final int mode) {
+        cutoverLock.readLock().lock();
+        try {
+            if( getStorage() != null ) {
+                final long start = System.nanoTime();
+                getStorage().beginThreadTransaction(mode);
+                instrumentation.transactionStarted(mode == Storage.EXCLUSIVE_TRANSACTION, System.nanoTime() - start);
+                return true;
+            }
+        } catch(final RuntimeException e) {
+            cutoverLock.readLock().unlock();
+            throw e;
         }
+        cutoverLock.readLock().unlock();
         return false;
     }
 
     public boolean endThreadTransaction() {
-        if( getStorage() != null ) {
-            getStorage().endThreadTransaction();
-            return true;
+        try {
+            if( getStorage() != null ) {
+                final long start = System.nanoTime();
+                getStorage().endThreadTransaction();
+                instrumentation.committed(System.nanoTime() - start);
+                return true;
+            }
+            return false;
+        } finally {
+            releaseCutoverLock();
         }
-        return false;
     }
 
     public boolean rollbackTransaction() {
-        if( getStorage() != null ) {
-            getStorage().rollbackThreadTransaction();
-            return true;
+        try {
+            if( getStorage() != null ) {
+                getStorage().rollbackThreadTransaction();
+                return true;
+            }
+            return false;
+        } finally {
+            releaseCutoverLock();
+        }
+    }
+
+    private void releaseCutoverLock() {
+        if( cutoverLock.getReadHoldCount() > 0 ) {
+            cutoverLock.readLock().unlock();
         }
-        return false;
     }
 
     public int gc() {
@@ -190,25 +385,37 @@ public abstract class AbstractFrostStorage {
 
     public synchronized void commit() {
         if( storage != null ) {
+            final long start = System.nanoTime();
             storage.commit();
+            instrumentation.committed(System.nanoTime() - start);
         }
     }
 
     public void close() {
-        if( storage != null ) {
-            beginExclusiveThreadTransaction();
-            storage.close();
-            storage = null;
-        } else {
-            System.out.println("Storage is already closed!");
+        cutoverLock.readLock().lock();
+        try {
+            if( storage != null ) {
+                storage.beginThreadTransaction(Storage.EXCLUSIVE_TRANSACTION);
+                storage.close();
+                storage = null;
+            } else if( !openOnDemand ) {
+                System.out.println("Storage is already closed!");
+            }
+            openOnDemand = false;
+        } finally {
+            cutoverLock.readLock().unlock();
         }
     }
 
     /**
      * Retrieves the configured page pool size for the provided key (in KiB),
-     * returns the value in bytes.
+     * returns the value in bytes. In the adaptive mode, the size comes from the PagePoolBudget.
      */
     protected long getPagePoolSize(final String configKey) {
+        final long adaptivePagePoolSize = PagePoolBudget.inst().getPagePoolSize(getStorageFilename());
+        if( adaptivePagePoolSize > 0 ) {
+            return adaptivePagePoolSize;
+        }
         long pagePoolSize = Core.frostSettings.getLongValue(configKey);
         if( pagePoolSize <= 0 ) {
             pagePoolSize = 1024;
@@ -224,4 +431,110 @@ public abstract class AbstractFrostStorage {
         final String storeDir = Core.frostSettings.getValue(SettingsClass.DIR_STORE);
         return storeDir + filename; // path to the database file
     }
+
+    /**
+     * Counts the changes of the storage for the online compaction, and the loaded objects.
+     */
+    private class StorageEventListener extends StorageListener {
+        @Override
+        public void onObjectLoad(final Object obj) {
+            instrumentation.objectLoaded();
+        }
+        @Override
+        public void onObjectStore(final Object obj) {
+            modificationCount.incrementAndGet();
+        }
+        @Override
+        public void onObjectDelete(final Object obj) {
+            modificationCount.incrementAndGet();
+        }
+        @Override
+        public void onObjectAssignOid(final Object obj) {
+            modificationCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts the page reads and writes of the storage file, each read is a page pool miss.
+     */
+    private static class InstrumentedFile implements IFile {
+
+        private final IFile file;
+        private final StorageInstrumentation instrumentation;
+
+        public InstrumentedFile(final IFile file, final StorageInstrumentation instrumentation) {
+            this.file = file;
+            this.instrumentation = instrumentation;
+        }
+        public void write(final long pos, final byte[] buf) {
+            instrumentation.pageWritten();
+            file.write(pos, buf);
+        }
+        public int read(final long pos, final byte[] buf) {
+            instrumentation.pageRead();
+            return file.read(pos, buf);
+        }
+        public void sync() {
+            file.sync();
+        }
+        public boolean tryLock(final boolean shared) {
+            return file.tryLock(shared);
+        }
+        public void lock(final boolean shared) {
+            file.lock(shared);
+        }
+        public void unlock() {
+            file.unlock();
+        }
+        public void close() {
+            file.close();
+        }
+        public long length() {
+            return file.length();
+        }
+    }
+
+    /**
+     * Limits the write rate of the online compaction, so the backup does not slow down the other disk accesses.
+     */
+    private static class ThrottledOutputStream extends FilterOutputStream {
+
+        private final long bytesPerSecond;
+        private final long startMillis = System.currentTimeMillis();
+        private long writtenBytes = 0;
+
+        public ThrottledOutputStream(final OutputStream out, final long bytesPerSecond) {
+            super(out);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            throttle(1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            throttle(len);
+        }
+
+        private void throttle(final int len) throws IOException {
+            if( bytesPerSecond <= 0 ) {
+                return;
+            }
+            writtenBytes += len;
+            final long expectedMillis = writtenBytes * 1000L / bytesPerSecond;
+            final long sleepMillis = expectedMillis - (System.currentTimeMillis() - startMillis);
+            if( sleepMillis > 0 ) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch(final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
 }
@@ -33,6 +33,12 @@ public class IndexSlot extends Persistent {
     private BitSet wasDownloaded;
     private BitSet wasUploaded;
 
+    // estimated number of used slots for this day (the highest used index plus one),
+    // as found by a galloping search on a day that was never downloaded before.
+    // 0 means that no estimate exists.
+    private int frontierEstimate;
+    private boolean wasFrontierProbed;
+
     public IndexSlot() {}
 
     public IndexSlot(final int newIndexName, final long newMsgDate) {
@@ -83,7 +89,7 @@ public class IndexSlot extends Persistent {
     }
     // check if this index is behind all known indices
     public boolean isDownloadIndexBehindLastSetIndex(final int index) {
-        final int indexBehindLastIndex = Math.max(wasDownloaded.length(), wasUploaded.length());
+        final int indexBehindLastIndex = Math.max(Math.max(wasDownloaded.length(), wasUploaded.length()), frontierEstimate);
         if( index >= indexBehindLastIndex ) {
             return true;
         } else {
@@ -91,6 +97,26 @@ public class IndexSlot extends Persistent {
         }
     }
 
+    // check if no slot of this day was ever downloaded, uploaded or probed
+    public boolean isUntouched() {
+        return wasDownloaded.isEmpty() && wasUploaded.isEmpty() && !wasFrontierProbed;
+    }
+
+    /**
+     * Remembers the result of the frontier search for this day.
+     * @param estimatedLength  the highest index known to be in use plus one, or 0 if the search found nothing
+     */
+    public void setFrontierEstimate(final int estimatedLength) {
+        this.frontierEstimate = estimatedLength;
+        this.wasFrontierProbed = true;
+    }
+    public int getFrontierEstimate() {
+        return frontierEstimate;
+    }
+    public boolean wasFrontierProbed() {
+        return wasFrontierProbed;
+    }
+
     // find first unused
     public int findFirstUploadSlot() {
         // find last set index in ul and dl list
@@ -0,0 +1,201 @@
+/*
+  PagePoolBudget.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+
+import frost.*;
+import frost.storage.*;
+
+/**
+ * Adaptive page pool sizing (perst.pagepoolAdaptive). A global budget, a percentage of the max.
+ * heap, is split across the storages in proportion to their file size and to their access rate
+ * during the previous runs. The access rates (loaded objects per hour) are measured by the
+ * StorageInstrumentation and saved at exit, blended with the rates of the runs before.
+ * The access rates are saved in both modes, so the adaptive mode has data when it is enabled.
+ */
+public class PagePoolBudget implements ExitSavable {
+
+    private static final Logger logger = Logger.getLogger(PagePoolBudget.class.getName());
+
+    private static final String STATS_FILENAME = "storageAccessRates.properties";
+
+    private static final long MIN_POOL_SIZE = 512L * 1024L;
+    private static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+    // weight of the current run in the saved access rates
+    private static final double CURRENT_RUN_WEIGHT = 0.5;
+
+    private static PagePoolBudget instance = new PagePoolBudget();
+
+    // storage filename -> page pool size in bytes, empty if the adaptive mode is off
+    private final Map<String,Long> poolSizes = new HashMap<String,Long>();
+    private final Properties accessRates = new Properties();
+
+    private PagePoolBudget() {}
+
+    public static PagePoolBudget inst() {
+        return instance;
+    }
+
+    /**
+     * @return  the page pool size for the storage, or 0 if the adaptive mode is off
+     */
+    public synchronized long getPagePoolSize(final String storageFilename) {
+        final Long size = poolSizes.get(storageFilename);
+        return (size == null) ? 0 : size.longValue();
+    }
+
+    /**
+     * Loads the access rates of the previous runs, and splits the budget if the adaptive mode is on.
+     * Must be called before the storages are opened.
+     */
+    public synchronized void initialize(final List<AbstractFrostStorage> storages) {
+        loadAccessRates();
+        if( !Core.frostSettings.getBoolValue(SettingsClass.PERST_PAGEPOOL_ADAPTIVE) ) {
+            return;
+        }
+
+        final int budgetPercent = Math.max(1, Math.min(75, Core.frostSettings.getIntValue(SettingsClass.PERST_PAGEPOOL_BUDGET_PERCENT)));
+        final long budget = Runtime.getRuntime().maxMemory() / 100L * budgetPercent;
+
+        final Map<String,Long> fileSizes = new LinkedHashMap<String,Long>();
+        long totalFileSize = 0;
+        double totalRate = 0;
+        for( final AbstractFrostStorage storage : storages ) {
+            final String name = storage.getStorageFilename();
+            final long fileSize = new File(storage.buildStoragePath(name)).length();
+            fileSizes.put(name, fileSize);
+            totalFileSize += fileSize;
+            totalRate += getAccessRate(name);
+        }
+        if( fileSizes.isEmpty() ) {
+            return;
+        }
+
+        // each storage gets the minimum, the rest is split by weight, half file size, half access rate
+        long remaining = budget - MIN_POOL_SIZE * fileSizes.size();
+        if( remaining < 0 ) {
+            remaining = 0;
+        }
+        final Map<String,Double> weights = new HashMap<String,Double>();
+        for( final Map.Entry<String,Long> e : fileSizes.entrySet() ) {
+            final double sizeShare = (totalFileSize > 0) ? (double)e.getValue() / totalFileSize : 1.0 / fileSizes.size();
+            final double rateShare = (totalRate > 0) ? getAccessRate(e.getKey()) / totalRate : sizeShare;
+            weights.put(e.getKey(), 0.5 * sizeShare + 0.5 * rateShare);
+        }
+
+        // a pool larger than the file is wasted, give the surplus to the other storages
+        final Set<String> capped = new HashSet<String>();
+        boolean changed = true;
+        while( changed ) {
+            changed = false;
+            double openWeight = 0;
+            long openBudget = remaining;
+            for( final String name : fileSizes.keySet() ) {
+                if( capped.contains(name) ) {
+                    openBudget -= poolSizes.get(name).longValue() - MIN_POOL_SIZE;
+                } else {
+                    openWeight += weights.get(name);
+                }
+            }
+            for( final Map.Entry<String,Long> e : fileSizes.entrySet() ) {
+                final String name = e.getKey();
+                if( capped.contains(name) ) {
+                    continue;
+                }
+                long size = MIN_POOL_SIZE;
+                if( openWeight > 0 ) {
+                    size += (long)(openBudget * (weights.get(name) / openWeight));
+                }
+                final long maxSize = Math.max(MIN_POOL_SIZE, e.getValue());
+                if( size > maxSize ) {
+                    size = maxSize;
+                    capped.add(name);
+                    changed = true;
+                }
+                poolSizes.put(name, size);
+            }
+        }
+
+        for( final Map.Entry<String,Long> e : poolSizes.entrySet() ) {
+            logger.info("Adaptive page pool for "+e.getKey()+": "+(e.getValue() / 1024L)+" KiB");
+        }
+    }
+
+    private double getAccessRate(final String storageFilename) {
+        try {
+            return Double.parseDouble(accessRates.getProperty(storageFilename, "0"));
+        } catch(final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private File getStatsFile() {
+        return new File(Core.frostSettings.getValue(SettingsClass.DIR_STORE) + STATS_FILENAME);
+    }
+
+    private void loadAccessRates() {
+        final File statsFile = getStatsFile();
+        if( !statsFile.isFile() ) {
+            return;
+        }
+        try (
+            final InputStream in = new FileInputStream(statsFile);
+        ) {
+            accessRates.load(in);
+        } catch(final IOException e) {
+            logger.log(Level.WARNING, "Error reading "+statsFile.getPath(), e);
+        }
+    }
+
+    /**
+     * Saves the access rates of this run, must run before the storages are closed.
+     */
+    public synchronized void exitSave() throws StorageException {
+        final long now = System.currentTimeMillis();
+        for( final AbstractFrostStorage storage : AbstractFrostStorage.getAllStorages() ) {
+            if( !storage.isOpened() ) {
+                continue;
+            }
+            final StorageInstrumentation si = storage.getInstrumentation();
+            final long millis = now - si.getSinceMillis();
+            if( millis < MILLIS_PER_HOUR / 6 ) {
+                continue; // too short to be representative
+            }
+            final double currentRate = (double)si.getObjectLoads() * MILLIS_PER_HOUR / millis;
+            final String name = storage.getStorageFilename();
+            final double rate;
+            if( accessRates.containsKey(name) ) {
+                rate = CURRENT_RUN_WEIGHT * currentRate + (1 - CURRENT_RUN_WEIGHT) * getAccessRate(name);
+            } else {
+                rate = currentRate;
+            }
+            accessRates.setProperty(name, Long.toString(Math.round(rate)));
+        }
+        try (
+            final OutputStream out = new FileOutputStream(getStatsFile());
+        ) {
+            accessRates.store(out, "Loaded objects per hour of each storage, used by the adaptive page pool sizing");
+        } catch(final IOException e) {
+            logger.log(Level.WARNING, "Error writing the storage access rates", e);
+        }
+    }
+}
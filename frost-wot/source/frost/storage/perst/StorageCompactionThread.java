@@ -0,0 +1,99 @@
+/*
+  StorageCompactionThread.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst;
+
+import java.text.*;
+import java.util.*;
+import java.util.logging.*;
+
+import frost.*;
+import frost.util.*;
+
+/**
+ * Compacts the fragmented storages while Frost is running. Periodically checks the free space
+ * of each storage and compacts the ones above the configured limits with a throttled online
+ * backup, see AbstractFrostStorage.compactStorageOnline(). A compaction that was invalidated
+ * by concurrent changes is retried a few times and then postponed to the next round.
+ */
+public class StorageCompactionThread extends Thread {
+
+    private static final Logger logger = Logger.getLogger(StorageCompactionThread.class.getName());
+
+    private static final int MAX_TRIES = 3;
+    private static final int RETRY_DELAY = 60 * 1000; // millis
+
+    private final List<AbstractFrostStorage> storages;
+
+    /**
+     * @param storages  the storages to compact, must support the online compaction
+     */
+    public StorageCompactionThread(final AbstractFrostStorage... storages) {
+        super("StorageCompaction");
+        this.storages = Arrays.asList(storages);
+        setDaemon(true);
+        setPriority(Thread.MIN_PRIORITY);
+    }
+
+    @Override
+    public void run() {
+        while( true ) {
+            final int intervalMinutes = Core.frostSettings.getIntValue(SettingsClass.PERST_ONLINE_COMPACT_INTERVAL);
+            if( intervalMinutes <= 0 ) {
+                return; // disabled
+            }
+            Mixed.wait(intervalMinutes * 60 * 1000);
+
+            for( final AbstractFrostStorage storage : storages ) {
+                try {
+                    compactIfFragmented(storage);
+                } catch(final Throwable t) {
+                    logger.log(Level.SEVERE, "Exception during the online compaction of "+storage.getStorageFilename(), t);
+                }
+            }
+        }
+    }
+
+    private void compactIfFragmented(final AbstractFrostStorage storage) throws Exception {
+        final StorageStatistics stats = storage.getStorageStatistics();
+        if( stats == null || !isWorthCompacting(stats) ) {
+            return;
+        }
+        logger.info("Compacting fragmented storage: "+stats);
+
+        final long bytesPerSecond = Core.frostSettings.getLongValue(SettingsClass.PERST_ONLINE_COMPACT_IO_LIMIT) * 1024L;
+        for( int tries = 1; tries <= MAX_TRIES; tries++ ) {
+            final long savedBytes = storage.compactStorageOnline(bytesPerSecond);
+            if( savedBytes >= 0 ) {
+                final NumberFormat nf = NumberFormat.getInstance();
+                logger.warning("Online compaction of "+storage.getStorageFilename()+" released "+nf.format(savedBytes)+" bytes.");
+                return;
+            }
+            if( tries < MAX_TRIES ) {
+                Mixed.wait(RETRY_DELAY);
+            }
+        }
+        logger.info("Storage "+storage.getStorageFilename()+" was changed during each compaction, trying again later.");
+    }
+
+    private static boolean isWorthCompacting(final StorageStatistics stats) {
+        final long minFreeBytes = Core.frostSettings.getLongValue(SettingsClass.PERST_ONLINE_COMPACT_MIN_FREE) * 1024L;
+        final int minFreePercent = Core.frostSettings.getIntValue(SettingsClass.PERST_ONLINE_COMPACT_MIN_FREE_PERCENT);
+        return stats.getFreeSize() >= minFreeBytes && stats.getFreePercent() >= minFreePercent;
+    }
+}
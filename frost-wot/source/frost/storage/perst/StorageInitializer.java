@@ -0,0 +1,163 @@
+/*
+  StorageInitializer.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * Opens the perst storages at startup concurrently on a small thread pool.
+ * A storage is only opened after the storages it depends on, all others are independent
+ * files and are opened in parallel, so the startup takes as long as the slowest storage.
+ */
+public class StorageInitializer {
+
+    private static final Logger logger = Logger.getLogger(StorageInitializer.class.getName());
+
+    public interface ProgressListener {
+        /**
+         * Called in the thread that runs openAll(), after each opened storage.
+         */
+        void storageOpened(String name, long millis, int openedCount, int totalCount);
+    }
+
+    private final List<InitTask> tasks = new ArrayList<InitTask>();
+    private final Map<String,InitTask> tasksByName = new HashMap<String,InitTask>();
+    private final BlockingQueue<InitTask> finishedTasks = new LinkedBlockingQueue<InitTask>();
+
+    private ExecutorService executor = null;
+
+    /**
+     * @param dependencies  names of the storages that must be opened before, they must be added before
+     */
+    public void addStorage(final AbstractFrostStorage storage, final String... dependencies) {
+        addStorage(storage.getStorageFilename(), new Runnable() {
+            public void run() {
+                storage.initStorage();
+            }
+        }, dependencies);
+    }
+
+    /**
+     * @param dependencies  names of the storages that must be opened before, they must be added before
+     */
+    public void addStorage(final String name, final Runnable opener, final String... dependencies) {
+        if( tasksByName.containsKey(name) ) {
+            throw new IllegalArgumentException("Storage "+name+" was already added");
+        }
+        final InitTask task = new InitTask(name, opener);
+        for( final String dependency : dependencies ) {
+            final InitTask dependencyTask = tasksByName.get(dependency);
+            if( dependencyTask == null ) {
+                throw new IllegalArgumentException("Unknown dependency "+dependency+" of storage "+name);
+            }
+            dependencyTask.dependents.add(task);
+            task.pendingDependencies++;
+        }
+        tasks.add(task);
+        tasksByName.put(name, task);
+    }
+
+    /**
+     * Opens all added storages and waits until they are open.
+     * @throws Exception  the first error that occurred while opening a storage
+     */
+    public void openAll(final ProgressListener listener) throws Exception {
+        final int threadCount = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(threadCount, new InitThreadFactory());
+        final long startMillis = System.currentTimeMillis();
+        try {
+            synchronized(this) {
+                for( final InitTask task : tasks ) {
+                    if( task.pendingDependencies == 0 ) {
+                        executor.execute(task);
+                    }
+                }
+            }
+            for( int openedCount = 1; openedCount <= tasks.size(); openedCount++ ) {
+                final InitTask task = finishedTasks.take();
+                if( task.failure != null ) {
+                    logger.log(Level.SEVERE, "Error opening storage "+task.name, task.failure);
+                    if( task.failure instanceof Exception ) {
+                        throw (Exception)task.failure;
+                    }
+                    throw new Exception("Error opening storage "+task.name, task.failure);
+                }
+                logger.info("Opened storage "+task.name+" in "+task.millis+" ms");
+                if( listener != null ) {
+                    listener.storageOpened(task.name, task.millis, openedCount, tasks.size());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor = null;
+        }
+        logger.info("Opened "+tasks.size()+" storages in "+(System.currentTimeMillis() - startMillis)+" ms");
+    }
+
+    /**
+     * Starts the dependents of a successfully opened storage, if all their other dependencies are open too.
+     */
+    private synchronized void dependencyFinished(final InitTask task) {
+        for( final InitTask dependent : task.dependents ) {
+            dependent.pendingDependencies--;
+            if( dependent.pendingDependencies == 0 ) {
+                executor.execute(dependent);
+            }
+        }
+    }
+
+    private class InitTask implements Runnable {
+        private final String name;
+        private final Runnable opener;
+        private final List<InitTask> dependents = new ArrayList<InitTask>();
+        private int pendingDependencies = 0;
+        private long millis = 0;
+        private Throwable failure = null;
+
+        public InitTask(final String name, final Runnable opener) {
+            this.name = name;
+            this.opener = opener;
+        }
+
+        public void run() {
+            final long start = System.currentTimeMillis();
+            try {
+                opener.run();
+                millis = System.currentTimeMillis() - start;
+                dependencyFinished(this);
+            } catch(final Throwable t) {
+                failure = t; // the dependents are never started, openAll() fails
+            }
+            finishedTasks.add(this);
+        }
+    }
+
+    private static class InitThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "StorageInit-"+threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
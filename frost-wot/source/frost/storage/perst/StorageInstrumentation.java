@@ -0,0 +1,181 @@
+/*
+  StorageInstrumentation.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counters of one perst storage: thread transactions and the time spent waiting for them,
+ * commit latency, and the page pool activity. The page pool of perst has no hit counter,
+ * so the hit rate is estimated from the loaded objects and the pages read from the file.
+ * All values are cumulative since the start or the last reset().
+ */
+public class StorageInstrumentation {
+
+    private static final long NANOS_PER_MILLI = 1000L * 1000L;
+
+    private final AtomicLong cooperativeTransactions = new AtomicLong();
+    private final AtomicLong exclusiveTransactions = new AtomicLong();
+    private final AtomicLong transactionWaitNanos = new AtomicLong();
+    private final AtomicLong maxTransactionWaitNanos = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final AtomicLong objectLoads = new AtomicLong();
+    private final AtomicLong pageReads = new AtomicLong();
+    private final AtomicLong pageWrites = new AtomicLong();
+
+    private volatile long pagePoolSize = 0;
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    void transactionStarted(final boolean exclusive, final long waitNanos) {
+        if( exclusive ) {
+            exclusiveTransactions.incrementAndGet();
+        } else {
+            cooperativeTransactions.incrementAndGet();
+        }
+        transactionWaitNanos.addAndGet(waitNanos);
+        updateMax(maxTransactionWaitNanos, waitNanos);
+    }
+
+    void committed(final long nanos) {
+        commits.incrementAndGet();
+        commitNanos.addAndGet(nanos);
+        updateMax(maxCommitNanos, nanos);
+    }
+
+    void objectLoaded() {
+        objectLoads.incrementAndGet();
+    }
+
+    void pageRead() {
+        pageReads.incrementAndGet();
+    }
+
+    void pageWritten() {
+        pageWrites.incrementAndGet();
+    }
+
+    void setPagePoolSize(final long bytes) {
+        pagePoolSize = bytes;
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while( value > current && !max.compareAndSet(current, value) ) {
+            current = max.get();
+        }
+    }
+
+    public void reset() {
+        cooperativeTransactions.set(0);
+        exclusiveTransactions.set(0);
+        transactionWaitNanos.set(0);
+        maxTransactionWaitNanos.set(0);
+        commits.set(0);
+        commitNanos.set(0);
+        maxCommitNanos.set(0);
+        objectLoads.set(0);
+        pageReads.set(0);
+        pageWrites.set(0);
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    public long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    public long getPagePoolSize() {
+        return pagePoolSize;
+    }
+
+    public long getCooperativeTransactions() {
+        return cooperativeTransactions.get();
+    }
+
+    public long getExclusiveTransactions() {
+        return exclusiveTransactions.get();
+    }
+
+    public long getTransactions() {
+        return getCooperativeTransactions() + getExclusiveTransactions();
+    }
+
+    public double getAverageTransactionWaitMillis() {
+        final long count = getTransactions();
+        return (count == 0) ? 0 : (double)transactionWaitNanos.get() / count / NANOS_PER_MILLI;
+    }
+
+    public double getMaxTransactionWaitMillis() {
+        return (double)maxTransactionWaitNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public double getAverageCommitMillis() {
+        final long count = getCommits();
+        return (count == 0) ? 0 : (double)commitNanos.get() / count / NANOS_PER_MILLI;
+    }
+
+    public double getMaxCommitMillis() {
+        return (double)maxCommitNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public long getObjectLoads() {
+        return objectLoads.get();
+    }
+
+    public long getPageReads() {
+        return pageReads.get();
+    }
+
+    public long getPageWrites() {
+        return pageWrites.get();
+    }
+
+    /**
+     * @return  the estimated page pool hit rate in percent, 100 if nothing was loaded yet
+     */
+    public int getPagePoolHitRate() {
+        final long loads = getObjectLoads();
+        if( loads == 0 ) {
+            return 100;
+        }
+        return (int)Math.max(0, 100L - (getPageReads() * 100L / loads));
+    }
+
+    public static String getCsvHeader() {
+        return "time;storage;pagePoolKiB;cooperativeTx;exclusiveTx;avgTxWaitMs;maxTxWaitMs;"+
+                "commits;avgCommitMs;maxCommitMs;objectLoads;pageReads;pageWrites;hitRatePercent";
+    }
+
+    public String toCsv(final long time, final String storageName) {
+        return time+";"+storageName+";"+(getPagePoolSize()/1024L)+";"+
+                getCooperativeTransactions()+";"+getExclusiveTransactions()+";"+
+                format(getAverageTransactionWaitMillis())+";"+format(getMaxTransactionWaitMillis())+";"+
+                getCommits()+";"+format(getAverageCommitMillis())+";"+format(getMaxCommitMillis())+";"+
+                getObjectLoads()+";"+getPageReads()+";"+getPageWrites()+";"+getPagePoolHitRate();
+    }
+
+    private static String format(final double millis) {
+        return String.format(java.util.Locale.US, "%.2f", millis);
+    }
+}
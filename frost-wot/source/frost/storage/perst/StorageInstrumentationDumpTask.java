@@ -0,0 +1,86 @@
+/*
+  StorageInstrumentationDumpTask.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+
+import frost.*;
+import frost.util.*;
+
+/**
+ * Periodically logs the instrumentation counters of all open storages and appends
+ * them to a CSV file in the store directory. The counters of the public key cache
+ * are appended to a second CSV file.
+ */
+public class StorageInstrumentationDumpTask extends TimerTask {
+
+    private static final Logger logger = Logger.getLogger(StorageInstrumentationDumpTask.class.getName());
+
+    private static final String CSV_FILENAME = "storageStatistics.csv";
+    private static final String KEY_CACHE_CSV_FILENAME = "publicKeyCacheStatistics.csv";
+
+    @Override
+    public void run() {
+        final long now = System.currentTimeMillis();
+        dumpStorages(now);
+        dumpPublicKeyCache(now);
+    }
+
+    private void dumpStorages(final long now) {
+        final File csvFile = new File(Core.frostSettings.getValue(SettingsClass.DIR_STORE) + CSV_FILENAME);
+        final boolean writeHeader = !csvFile.isFile();
+        try (
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(csvFile, true), "UTF-8"));
+        ) {
+            if( writeHeader ) {
+                out.println(StorageInstrumentation.getCsvHeader());
+            }
+            for( final AbstractFrostStorage storage : AbstractFrostStorage.getAllStorages() ) {
+                if( !storage.isOpened() ) {
+                    continue;
+                }
+                final String line = storage.getInstrumentation().toCsv(now, storage.getStorageFilename());
+                out.println(line);
+                logger.info("Storage statistics: "+line);
+            }
+        } catch(final IOException e) {
+            logger.log(Level.WARNING, "Error writing the storage statistics to "+csvFile.getPath(), e);
+        }
+    }
+
+    private void dumpPublicKeyCache(final long now) {
+        final RSAPublicKeyCache keyCache = Core.getCrypto().getPublicKeyCache();
+        final File csvFile = new File(Core.frostSettings.getValue(SettingsClass.DIR_STORE) + KEY_CACHE_CSV_FILENAME);
+        final boolean writeHeader = !csvFile.isFile();
+        try (
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(csvFile, true), "UTF-8"));
+        ) {
+            if( writeHeader ) {
+                out.println("time;hits;misses;size");
+            }
+            final String line = now+";"+keyCache.getHitCount()+";"+keyCache.getMissCount()+";"+keyCache.size();
+            out.println(line);
+            logger.info("Public key cache statistics: "+line);
+        } catch(final IOException e) {
+            logger.log(Level.WARNING, "Error writing the public key cache statistics to "+csvFile.getPath(), e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+  StorageStatistics.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst;
+
+/**
+ * Size and free space of a perst storage, used to decide if a storage is worth compacting.
+ */
+public class StorageStatistics {
+
+    private final String storageFilename;
+    private final long fileSize;
+    private final long databaseSize;
+    private final long usedSize;
+
+    public StorageStatistics(final String storageFilename, final long fileSize, final long databaseSize, final long usedSize) {
+        this.storageFilename = storageFilename;
+        this.fileSize = fileSize;
+        this.databaseSize = databaseSize;
+        this.usedSize = usedSize;
+    }
+
+    public String getStorageFilename() {
+        return storageFilename;
+    }
+
+    /**
+     * @return  the size of the storage file on disk
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return  the allocated size of the database, including the free space inside the file
+     */
+    public long getDatabaseSize() {
+        return databaseSize;
+    }
+
+    /**
+     * @return  the size of all live objects
+     */
+    public long getUsedSize() {
+        return usedSize;
+    }
+
+    /**
+     * @return  the bytes that a compaction would release
+     */
+    public long getFreeSize() {
+        return Math.max(0, Math.max(fileSize, databaseSize) - usedSize);
+    }
+
+    /**
+     * @return  the free space in percent of the file size
+     */
+    public int getFreePercent() {
+        final long size = Math.max(fileSize, databaseSize);
+        if( size <= 0 ) {
+            return 0;
+        }
+        return (int)(getFreeSize() * 100L / size);
+    }
+
+    @Override
+    public String toString() {
+        return storageFilename+": file="+fileSize+", database="+databaseSize+", used="+usedSize+", free="+getFreePercent()+"%";
+    }
+}
@@ -18,10 +18,12 @@
 */
 package frost.storage.perst.messagearchive;
 
+import java.io.*;
 import java.util.*;
 import java.util.logging.*;
 
 import org.garret.perst.*;
+import org.joda.time.*;
 
 import frost.*;
 import frost.messaging.frost.*;
@@ -29,17 +31,24 @@ import frost.messaging.frost.boards.*;
 import frost.storage.*;
 import frost.storage.perst.*;
 
+/**
+ * The message archive. Messages of the current year are kept in the perst storage, older
+ * years are sealed into read-only segment files per board and year (see ArchiveSegmentStore),
+ * so the perst storage stays small and searching old messages does not use its page pool.
+ */
 public class ArchiveMessageStorage extends AbstractFrostStorage implements ExitSavable {
 
     private static final Logger logger = Logger.getLogger(ArchiveMessageStorage.class.getName());
 
     private static final String STORAGE_FILENAME = "messageArchive.dbs";
+    private static final String SEGMENTS_DIRNAME = "messageArchive";
 
     public static final int INSERT_OK        = 1;
     public static final int INSERT_DUPLICATE = 2;
     public static final int INSERT_ERROR     = 3;
 
     private ArchiveMessageStorageRoot storageRoot = null;
+    private ArchiveSegmentStore segmentStore = null;
 
     private static ArchiveMessageStorage instance = new ArchiveMessageStorage();
 
@@ -70,22 +79,33 @@ public class ArchiveMessageStorage extends AbstractFrostStorage implements ExitS
             getStorage().setRoot(storageRoot);
             commit(); // commit transaction
         }
+        segmentStore = new ArchiveSegmentStore(new File(buildStoragePath(SEGMENTS_DIRNAME)));
         return true;
     }
 
     public void exitSave() {
         close();
+        closeSegmentStore();
         storageRoot = null;
         System.out.println("INFO: MessageArchiveStorage closed.");
     }
 
     public void silentClose() {
         close();
+        closeSegmentStore();
         storageRoot = null;
     }
 
+    private void closeSegmentStore() {
+        if( segmentStore != null ) {
+            segmentStore.close();
+            segmentStore = null;
+        }
+    }
+
     public int getMessageCount() {
-        int msgCount = 0;
+        ensureStorageOpen();
+        int msgCount = segmentStore.getMessageCount();
         for(final PerstFrostArchiveBoardObject bo : storageRoot.getBoardsByName()) {
             if( bo.getMessageIndex() != null ) {
                 msgCount += bo.getMessageIndex().size();
@@ -130,6 +150,8 @@ public class ArchiveMessageStorage extends AbstractFrostStorage implements ExitS
      */
     public synchronized int insertMessage(final FrostMessageObject mo, final String boardName) {
 
+        ensureStorageOpen();
+
         if( !mo.isValid() ) {
             return INSERT_OK; // ignore invalid msgs
         }
@@ -178,20 +200,106 @@ public class ArchiveMessageStorage extends AbstractFrostStorage implements ExitS
             final long endDate,
             final MessageCallback mc)
     {
-        final PerstFrostArchiveBoardObject bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
-        if( bo == null ) {
-            // this board does not exist in the archive
-            return;
+        ensureStorageOpen();
+        // the messages not sealed yet, searched first: while a year is sealed, its messages
+        // might then be found twice, but never missed
+        final List<FrostMessageObject> messages = new ArrayList<FrostMessageObject>();
+        synchronized(this) {
+            final PerstFrostArchiveBoardObject bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
+            if( bo != null ) {
+                // normal messages in date range
+                final Iterator<PerstFrostArchiveMessageObject> i = bo.getMessageIndex().iterator(startDate, endDate, GenericIndex.ASCENT_ORDER);
+                while(i.hasNext()) {
+                    messages.add(i.next().toFrostMessageObject(board));
+                }
+            }
         }
-        // normal messages in date range
-        final Iterator<PerstFrostArchiveMessageObject> i = bo.getMessageIndex().iterator(startDate, endDate, GenericIndex.ASCENT_ORDER);
-        while(i.hasNext()) {
-            final PerstFrostArchiveMessageObject p = i.next();
-            final FrostMessageObject mo = p.toFrostMessageObject(board);
+        for( final FrostMessageObject mo : messages ) {
             final boolean shouldStop = mc.messageRetrieved(mo);
             if( shouldStop ) {
+                return;
+            }
+        }
+        segmentStore.retrieveMessages(board, startDate, endDate, mc);
+    }
+
+    /**
+     * Moves the messages of all years before the current year from the perst storage into
+     * the segment files. Called by cleanup after the expired messages were archived.
+     */
+    public synchronized void sealExpiredPeriods() {
+        ensureStorageOpen();
+        final long currentYearStart = new DateTime(DateTimeZone.UTC).withDayOfYear(1).withTimeAtStartOfDay().getMillis();
+        int sealedCount = 0;
+
+        for( final PerstFrostArchiveBoardObject bo : new ArrayList<PerstFrostArchiveBoardObject>(storageRoot.getBoardsByName()) ) {
+            final List<PerstFrostArchiveMessageObject> batch = new ArrayList<PerstFrostArchiveMessageObject>();
+            // the index is modified by sealing, so each year starts a new iteration
+            int year;
+            while( (year = collectOldestYear(bo, currentYearStart, batch)) != 0 ) {
+                if( !sealBatch(bo, year, batch) ) {
+                    break; // keep the messages of this board in perst, try again on next cleanup
+                }
+                sealedCount += batch.size();
+                batch.clear();
+            }
+        }
+        if( sealedCount > 0 ) {
+            logger.warning("INFO: Sealed "+sealedCount+" archived messages into segment files.");
+        }
+    }
+
+    /**
+     * Collects the messages of the oldest year before endDate.
+     * @return  the year, or 0 if there are no messages before endDate
+     */
+    private int collectOldestYear(final PerstFrostArchiveBoardObject bo, final long endDate, final List<PerstFrostArchiveMessageObject> batch) {
+        int batchYear = 0;
+        final Iterator<PerstFrostArchiveMessageObject> i = bo.getMessageIndex().iterator(Long.MIN_VALUE, endDate - 1, GenericIndex.ASCENT_ORDER);
+        while( i.hasNext() ) {
+            final PerstFrostArchiveMessageObject p = i.next();
+            final int year = new DateTime(p.dateAndTime, DateTimeZone.UTC).getYear();
+            if( batchYear != 0 && year != batchYear ) {
                 break;
             }
+            batchYear = year;
+            batch.add(p);
         }
+        return batchYear;
+    }
+
+    /**
+     * Writes the messages into the segment of the year, then removes them from the perst storage.
+     */
+    private boolean sealBatch(final PerstFrostArchiveBoardObject bo, final int year, final List<PerstFrostArchiveMessageObject> batch) {
+        final List<ArchiveSegment.Record> records = new ArrayList<ArchiveSegment.Record>(batch.size());
+        for( final PerstFrostArchiveMessageObject p : batch ) {
+            records.add(new ArchiveSegment.Record(p));
+        }
+        try {
+            segmentStore.sealRecords(bo.getBoardName(), year, records);
+        } catch(final IOException e) {
+            logger.log(Level.SEVERE, "Error sealing the archive of board "+bo.getBoardName()+", year "+year, e);
+            return false;
+        }
+        for( final PerstFrostArchiveMessageObject p : batch ) {
+            bo.getMessageIndex().remove(new Key(p.dateAndTime), p);
+            if( p.messageId != null ) {
+                bo.getMessageIdIndex().remove(new Key(p.messageId), p);
+            }
+            if( p.fileAttachments != null ) {
+                for( final PerstFrostArchiveFileAttachment a : p.fileAttachments ) {
+                    a.deallocate();
+                }
+            }
+            if( p.boardAttachments != null ) {
+                for( final PerstFrostArchiveBoardAttachment a : p.boardAttachments ) {
+                    a.deallocate();
+                }
+            }
+            p.deallocate();
+        }
+        commit();
+        return true;
     }
 }
@@ -0,0 +1,491 @@
+/*
+  ArchiveSegment.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messagearchive;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import org.joda.time.*;
+
+import frost.messaging.frost.*;
+import frost.messaging.frost.boards.*;
+
+/**
+ * A sealed, read-only segment of the message archive, holding the messages of one board and one year.
+ * The file is memory-mapped, so reading it does not use the perst page pool.
+ *
+ * The layout is columnar, all records are sorted by date:
+ *   header:  magic, version, recordCount, columnCount, minDate, maxDate, offset of each column
+ *   fixed size columns (date, index, flags, ...): one value per record
+ *   variable size columns (strings, attachments): start offset and length per record, then the data
+ * A date range is found by a binary search in the date column, without touching the other columns.
+ */
+class ArchiveSegment {
+
+    private static final int MAGIC = 0x46415347; // "FASG"
+    private static final int VERSION = 1;
+
+    private static final int COL_DATE = 0;
+    private static final int COL_MSG_INDEX = 1;
+    private static final int COL_FLAGS = 2;
+    private static final int COL_SIGNATURE_STATUS = 3;
+    private static final int COL_ID_LINE_POS = 4;
+    private static final int COL_ID_LINE_LEN = 5;
+    private static final int COL_MESSAGE_ID = 6;
+    private static final int COL_IN_REPLY_TO = 7;
+    private static final int COL_FROM_NAME = 8;
+    private static final int COL_SUBJECT = 9;
+    private static final int COL_RECIPIENT_NAME = 10;
+    private static final int COL_PUBLIC_KEY = 11;
+    private static final int COL_CONTENT = 12;
+    private static final int COL_ATTACHMENTS = 13;
+    private static final int COLUMN_COUNT = 14;
+
+    private static final int FLAG_REPLIED = 1;
+    private static final int FLAG_FLAGGED = 2;
+    private static final int FLAG_STARRED = 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final long minDate;
+    private final long maxDate;
+    private final int[] columnOffsets = new int[COLUMN_COUNT];
+
+    /**
+     * Maps the segment file and validates its header.
+     */
+    public ArchiveSegment(final File file) throws IOException {
+        this.file = file;
+        try (
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            final FileChannel channel = raf.getChannel();
+        ) {
+            if( channel.size() > Integer.MAX_VALUE ) {
+                throw new IOException("Archive segment too large: "+file.getPath());
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if( buffer.capacity() < getHeaderSize() || buffer.getInt(0) != MAGIC ) {
+            throw new IOException("Not an archive segment: "+file.getPath());
+        }
+        if( buffer.getInt(4) != VERSION || buffer.getInt(12) != COLUMN_COUNT ) {
+            throw new IOException("Unsupported archive segment version: "+file.getPath());
+        }
+        recordCount = buffer.getInt(8);
+        minDate = buffer.getLong(16);
+        maxDate = buffer.getLong(24);
+        for( int x = 0; x < COLUMN_COUNT; x++ ) {
+            columnOffsets[x] = (int)buffer.getLong(32 + x * 8);
+        }
+    }
+
+    private static int getHeaderSize() {
+        return 32 + COLUMN_COUNT * 8;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public boolean overlaps(final long startDate, final long endDate) {
+        return recordCount > 0 && minDate <= endDate && maxDate >= startDate;
+    }
+
+    /**
+     * @return  all records with startDate <= date <= endDate, sorted by date
+     */
+    public List<Record> getRecords(final long startDate, final long endDate) {
+        final List<Record> records = new ArrayList<Record>();
+        if( !overlaps(startDate, endDate) ) {
+            return records;
+        }
+        final ByteBuffer buf = buffer.duplicate();
+        for( int row = findFirstRow(startDate); row < recordCount; row++ ) {
+            if( getDate(row) > endDate ) {
+                break;
+            }
+            records.add(readRecord(buf, row));
+        }
+        return records;
+    }
+
+    /**
+     * @return  the first row with a date >= startDate, or recordCount
+     */
+    private int findFirstRow(final long startDate) {
+        int low = 0;
+        int high = recordCount;
+        while( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if( getDate(mid) < startDate ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long getDate(final int row) {
+        return buffer.getLong(columnOffsets[COL_DATE] + row * 8);
+    }
+
+    private int getInt(final int column, final int row) {
+        return buffer.getInt(columnOffsets[column] + row * 4);
+    }
+
+    private byte[] getBytes(final ByteBuffer buf, final int column, final int row) {
+        final int base = columnOffsets[column];
+        final int length = buf.getInt(base + (recordCount + row) * 4);
+        if( length < 0 ) {
+            return null;
+        }
+        final int start = buf.getInt(base + row * 4);
+        final byte[] data = new byte[length];
+        buf.position(base + recordCount * 8 + start);
+        buf.get(data);
+        return data;
+    }
+
+    private String getString(final ByteBuffer buf, final int column, final int row) {
+        final byte[] data = getBytes(buf, column, row);
+        return (data == null) ? null : new String(data, UTF8);
+    }
+
+    private Record readRecord(final ByteBuffer buf, final int row) {
+        final Record r = new Record();
+        r.dateAndTime = getDate(row);
+        r.msgIndex = getInt(COL_MSG_INDEX, row);
+        final byte flags = buf.get(columnOffsets[COL_FLAGS] + row);
+        r.isReplied = (flags & FLAG_REPLIED) != 0;
+        r.isFlagged = (flags & FLAG_FLAGGED) != 0;
+        r.isStarred = (flags & FLAG_STARRED) != 0;
+        r.signatureStatus = getInt(COL_SIGNATURE_STATUS, row);
+        r.idLinePos = getInt(COL_ID_LINE_POS, row);
+        r.idLineLen = getInt(COL_ID_LINE_LEN, row);
+        r.messageId = getString(buf, COL_MESSAGE_ID, row);
+        r.inReplyTo = getString(buf, COL_IN_REPLY_TO, row);
+        r.fromName = getString(buf, COL_FROM_NAME, row);
+        r.subject = getString(buf, COL_SUBJECT, row);
+        r.recipientName = getString(buf, COL_RECIPIENT_NAME, row);
+        r.publicKey = getString(buf, COL_PUBLIC_KEY, row);
+        r.content = getString(buf, COL_CONTENT, row);
+        final byte[] attachments = getBytes(buf, COL_ATTACHMENTS, row);
+        if( attachments != null ) {
+            try {
+                r.readAttachments(new DataInputStream(new ByteArrayInputStream(attachments)));
+            } catch(final IOException e) {
+                // can't happen for a byte array, the data was written by write()
+                throw new IllegalStateException(e);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Writes the records, which must be sorted by date, into a new segment file.
+     */
+    public static void write(final File file, final List<Record> records) throws IOException {
+        final int count = records.size();
+        final byte[][] columns = new byte[COLUMN_COUNT][];
+
+        final ByteBuffer dates = ByteBuffer.allocate(count * 8);
+        final ByteBuffer msgIndices = ByteBuffer.allocate(count * 4);
+        final byte[] flags = new byte[count];
+        final ByteBuffer signatureStates = ByteBuffer.allocate(count * 4);
+        final ByteBuffer idLinePositions = ByteBuffer.allocate(count * 4);
+        final ByteBuffer idLineLengths = ByteBuffer.allocate(count * 4);
+        for( int row = 0; row < count; row++ ) {
+            final Record r = records.get(row);
+            dates.putLong(r.dateAndTime);
+            msgIndices.putInt(r.msgIndex);
+            flags[row] = (byte)((r.isReplied ? FLAG_REPLIED : 0) | (r.isFlagged ? FLAG_FLAGGED : 0) | (r.isStarred ? FLAG_STARRED : 0));
+            signatureStates.putInt(r.signatureStatus);
+            idLinePositions.putInt(r.idLinePos);
+            idLineLengths.putInt(r.idLineLen);
+        }
+        columns[COL_DATE] = dates.array();
+        columns[COL_MSG_INDEX] = msgIndices.array();
+        columns[COL_FLAGS] = flags;
+        columns[COL_SIGNATURE_STATUS] = signatureStates.array();
+        columns[COL_ID_LINE_POS] = idLinePositions.array();
+        columns[COL_ID_LINE_LEN] = idLineLengths.array();
+
+        final byte[][] values = new byte[count][];
+        for( int column = COL_MESSAGE_ID; column < COLUMN_COUNT; column++ ) {
+            for( int row = 0; row < count; row++ ) {
+                values[row] = records.get(row).getBytes(column);
+            }
+            columns[column] = buildVariableColumn(values);
+        }
+
+        final long[] offsets = new long[COLUMN_COUNT];
+        long offset = getHeaderSize();
+        for( int x = 0; x < COLUMN_COUNT; x++ ) {
+            offsets[x] = offset;
+            offset += columns[x].length;
+        }
+        if( offset > Integer.MAX_VALUE ) {
+            throw new IOException("Archive segment too large: "+file.getPath());
+        }
+
+        try (
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        ) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(COLUMN_COUNT);
+            out.writeLong((count > 0) ? records.get(0).dateAndTime : 0);
+            out.writeLong((count > 0) ? records.get(count - 1).dateAndTime : 0);
+            for( final long o : offsets ) {
+                out.writeLong(o);
+            }
+            for( final byte[] column : columns ) {
+                out.write(column);
+            }
+        }
+    }
+
+    /**
+     * Start offsets, then lengths (-1 for null), then the data of all rows.
+     */
+    private static byte[] buildVariableColumn(final byte[][] values) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        int start = 0;
+        for( final byte[] value : values ) {
+            out.writeInt(start);
+            if( value != null ) {
+                start += value.length;
+            }
+        }
+        for( final byte[] value : values ) {
+            out.writeInt((value == null) ? -1 : value.length);
+        }
+        for( final byte[] value : values ) {
+            if( value != null ) {
+                out.write(value);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * One archived message, the same fields as in PerstFrostArchiveMessageObject.
+     */
+    static class Record {
+
+        String messageId;
+        String inReplyTo;
+        long dateAndTime;
+        int msgIndex;
+        String fromName;
+        String subject;
+        String recipientName;
+        int signatureStatus;
+        boolean isReplied;
+        boolean isFlagged;
+        boolean isStarred;
+        int idLinePos;
+        int idLineLen;
+        String content;
+        String publicKey;
+        List<FileAttachment> fileAttachments;
+        List<Board> boardAttachments;
+
+        Record() {}
+
+        Record(final PerstFrostArchiveMessageObject p) {
+            messageId = p.messageId;
+            inReplyTo = p.inReplyTo;
+            dateAndTime = p.dateAndTime;
+            msgIndex = p.msgIndex;
+            fromName = p.fromName;
+            subject = p.subject;
+            recipientName = p.recipientName;
+            signatureStatus = p.signatureStatus;
+            isReplied = p.isReplied;
+            isFlagged = p.isFlagged;
+            isStarred = p.isStarred;
+            idLinePos = p.idLinePos;
+            idLineLen = p.idLineLen;
+            content = p.content;
+            publicKey = p.publicKey;
+            if( p.fileAttachments != null ) {
+                fileAttachments = new ArrayList<FileAttachment>();
+                for( final PerstFrostArchiveFileAttachment a : p.fileAttachments ) {
+                    fileAttachments.add(new FileAttachment(a.name, a.chkKey, a.size));
+                }
+            }
+            if( p.boardAttachments != null ) {
+                boardAttachments = new ArrayList<Board>();
+                for( final PerstFrostArchiveBoardAttachment a : p.boardAttachments ) {
+                    boardAttachments.add(new Board(a.name, a.pubKey, a.privKey, a.description));
+                }
+            }
+        }
+
+        byte[] getBytes(final int column) throws IOException {
+            switch( column ) {
+                case COL_MESSAGE_ID: return toBytes(messageId);
+                case COL_IN_REPLY_TO: return toBytes(inReplyTo);
+                case COL_FROM_NAME: return toBytes(fromName);
+                case COL_SUBJECT: return toBytes(subject);
+                case COL_RECIPIENT_NAME: return toBytes(recipientName);
+                case COL_PUBLIC_KEY: return toBytes(publicKey);
+                case COL_CONTENT: return toBytes(content);
+                case COL_ATTACHMENTS: return writeAttachments();
+                default: throw new IllegalArgumentException("Not a variable column: "+column);
+            }
+        }
+
+        private static byte[] toBytes(final String s) {
+            return (s == null) ? null : s.getBytes(UTF8);
+        }
+
+        private byte[] writeAttachments() throws IOException {
+            if( fileAttachments == null && boardAttachments == null ) {
+                return null;
+            }
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt((fileAttachments == null) ? -1 : fileAttachments.size());
+            if( fileAttachments != null ) {
+                for( final FileAttachment fa : fileAttachments ) {
+                    writeString(out, fa.getFileName());
+                    writeString(out, fa.getKey());
+                    out.writeLong(fa.getFileSize());
+                }
+            }
+            out.writeInt((boardAttachments == null) ? -1 : boardAttachments.size());
+            if( boardAttachments != null ) {
+                for( final Board b : boardAttachments ) {
+                    writeString(out, b.getName());
+                    writeString(out, b.getPublicKey());
+                    writeString(out, b.getPrivateKey());
+                    writeString(out, b.getDescription());
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        void readAttachments(final DataInputStream in) throws IOException {
+            final int fileCount = in.readInt();
+            if( fileCount >= 0 ) {
+                fileAttachments = new ArrayList<FileAttachment>(fileCount);
+                for( int x = 0; x < fileCount; x++ ) {
+                    final String name = readString(in);
+                    final String key = readString(in);
+                    fileAttachments.add(new FileAttachment(name, key, in.readLong()));
+                }
+            }
+            final int boardCount = in.readInt();
+            if( boardCount >= 0 ) {
+                boardAttachments = new ArrayList<Board>(boardCount);
+                for( int x = 0; x < boardCount; x++ ) {
+                    final String name = readString(in);
+                    final String pubKey = readString(in);
+                    final String privKey = readString(in);
+                    boardAttachments.add(new Board(name, pubKey, privKey, readString(in)));
+                }
+            }
+        }
+
+        private static void writeString(final DataOutputStream out, final String s) throws IOException {
+            final byte[] data = toBytes(s);
+            out.writeInt((data == null) ? -1 : data.length);
+            if( data != null ) {
+                out.write(data);
+            }
+        }
+
+        private static String readString(final DataInputStream in) throws IOException {
+            final int length = in.readInt();
+            if( length < 0 ) {
+                return null;
+            }
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            return new String(data, UTF8);
+        }
+
+        /**
+         * Same as PerstFrostArchiveMessageObject.toFrostMessageObject().
+         */
+        FrostMessageObject toFrostMessageObject(final Board board) {
+            final FrostMessageObject mo = new FrostMessageObject();
+
+            mo.setBoard(board);
+
+            mo.setValid(true);
+
+            mo.setNew(false);
+            mo.setJunk(false);
+            mo.setDeleted(false);
+
+            mo.setMessageId(messageId);
+            mo.setInReplyTo(inReplyTo);
+            mo.setDateAndTime(new DateTime(dateAndTime, DateTimeZone.UTC));
+            mo.setIndex(msgIndex);
+            mo.setFromName(fromName);
+            mo.setSubject(subject);
+            mo.setRecipientName((recipientName != null && recipientName.length() == 0) ? null : recipientName);
+            mo.setSignatureStatus(signatureStatus);
+
+            mo.setReplied(isReplied);
+            mo.setFlagged(isFlagged);
+            mo.setStarred(isStarred);
+
+            mo.setContent(content);
+            mo.setPublicKey(publicKey);
+
+            mo.setHasFileAttachments( fileAttachments != null );
+            mo.setHasBoardAttachments( boardAttachments != null );
+
+            mo.setIdLinePos(idLinePos); // idlinepos
+            mo.setIdLineLen(idLineLen); // idlinelen
+
+            if( fileAttachments != null ) {
+                for( final FileAttachment fa : fileAttachments ) {
+                    mo.addAttachment(fa);
+                }
+            }
+            if( boardAttachments != null ) {
+                for( final Board b : boardAttachments ) {
+                    mo.addAttachment(new BoardAttachment(b));
+                }
+            }
+            return mo;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+  ArchiveSegmentStore.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messagearchive;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import frost.messaging.frost.boards.*;
+import frost.storage.*;
+
+/**
+ * Manages the sealed archive segments, one directory per board and one segment file per year:
+ *   messageArchive/&lt;board&gt;/&lt;year&gt;.&lt;generation&gt;.seg
+ * A segment is never modified. Sealing more messages into a year writes a new generation,
+ * the older generations are deleted when they are no longer mapped (or at the next start).
+ */
+class ArchiveSegmentStore {
+
+    private static final Logger logger = Logger.getLogger(ArchiveSegmentStore.class.getName());
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private final File baseDir;
+
+    // escaped board name -> year -> newest segment, the boards are loaded on first access
+    private final Map<String,TreeMap<Integer,ArchiveSegment>> segmentsByBoard = new HashMap<String,TreeMap<Integer,ArchiveSegment>>();
+    private final Map<ArchiveSegment,Integer> generations = new HashMap<ArchiveSegment,Integer>();
+    // old generations whose files could not be deleted yet
+    private final List<File> obsoleteFiles = new ArrayList<File>();
+
+    private ExecutorService searchExecutor = null;
+    private final int searchThreadCount;
+
+    public ArchiveSegmentStore(final File baseDir) {
+        this.baseDir = baseDir;
+        searchThreadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Board names may contain any character, keep only the ones that are safe on all file systems.
+     */
+    private static String escapeBoardName(final String boardName) {
+        final StringBuilder sb = new StringBuilder();
+        for( final char c : boardName.toCharArray() ) {
+            if( (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_' ) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(Integer.toHexString(c | 0x10000).substring(1));
+            }
+        }
+        return sb.toString();
+    }
+
+    private synchronized TreeMap<Integer,ArchiveSegment> getBoardSegments(final String escapedBoardName) {
+        TreeMap<Integer,ArchiveSegment> segments = segmentsByBoard.get(escapedBoardName);
+        if( segments != null ) {
+            return segments;
+        }
+        segments = new TreeMap<Integer,ArchiveSegment>();
+        segmentsByBoard.put(escapedBoardName, segments);
+
+        final File[] files = new File(baseDir, escapedBoardName).listFiles();
+        if( files == null ) {
+            return segments;
+        }
+        // keep the newest generation of each year
+        final Map<Integer,File> newestFiles = new HashMap<Integer,File>();
+        final Map<Integer,Integer> newestGenerations = new HashMap<Integer,Integer>();
+        for( final File f : files ) {
+            final String name = f.getName();
+            if( name.endsWith(TEMP_EXTENSION) ) {
+                f.delete(); // incomplete write
+                continue;
+            }
+            if( !name.endsWith(SEGMENT_EXTENSION) ) {
+                continue;
+            }
+            final String[] parts = name.substring(0, name.length() - SEGMENT_EXTENSION.length()).split("\\.");
+            final int year;
+            final int generation;
+            try {
+                year = Integer.parseInt(parts[0]);
+                generation = Integer.parseInt(parts[1]);
+            } catch(final RuntimeException e) {
+                continue;
+            }
+            final Integer newest = newestGenerations.get(year);
+            if( newest == null || newest.intValue() < generation ) {
+                if( newest != null ) {
+                    newestFiles.get(year).delete();
+                }
+                newestFiles.put(year, f);
+                newestGenerations.put(year, generation);
+            } else {
+                f.delete();
+            }
+        }
+        for( final Map.Entry<Integer,File> e : newestFiles.entrySet() ) {
+            try {
+                final ArchiveSegment segment = new ArchiveSegment(e.getValue());
+                segments.put(e.getKey(), segment);
+                generations.put(segment, newestGenerations.get(e.getKey()));
+            } catch(final IOException ex) {
+                logger.log(Level.SEVERE, "Error opening archive segment "+e.getValue().getPath(), ex);
+            }
+        }
+        return segments;
+    }
+
+    private synchronized List<ArchiveSegment> getSegments(final String boardName, final long startDate, final long endDate) {
+        final List<ArchiveSegment> result = new ArrayList<ArchiveSegment>();
+        for( final ArchiveSegment segment : getBoardSegments(escapeBoardName(boardName)).values() ) {
+            if( segment.overlaps(startDate, endDate) ) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return  the count of messages in all segments, this opens all segments
+     */
+    public synchronized int getMessageCount() {
+        int count = 0;
+        final String[] boardDirs = baseDir.list();
+        if( boardDirs != null ) {
+            for( final String boardDir : boardDirs ) {
+                for( final ArchiveSegment segment : getBoardSegments(boardDir).values() ) {
+                    count += segment.getRecordCount();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Merges the records into the segment of the year, duplicate message ids are dropped.
+     */
+    public synchronized void sealRecords(final String boardName, final int year, final List<ArchiveSegment.Record> records) throws IOException {
+        final String escapedBoardName = escapeBoardName(boardName);
+        final TreeMap<Integer,ArchiveSegment> segments = getBoardSegments(escapedBoardName);
+        final ArchiveSegment oldSegment = segments.get(year);
+
+        final List<ArchiveSegment.Record> allRecords = new ArrayList<ArchiveSegment.Record>();
+        final Set<String> messageIds = new HashSet<String>();
+        if( oldSegment != null ) {
+            for( final ArchiveSegment.Record r : oldSegment.getRecords(Long.MIN_VALUE, Long.MAX_VALUE) ) {
+                if( r.messageId == null || messageIds.add(r.messageId) ) {
+                    allRecords.add(r);
+                }
+            }
+        }
+        for( final ArchiveSegment.Record r : records ) {
+            if( r.messageId == null || messageIds.add(r.messageId) ) {
+                allRecords.add(r);
+            }
+        }
+        // stable sort, messages with equal dates keep their order
+        Collections.sort(allRecords, new Comparator<ArchiveSegment.Record>() {
+            public int compare(final ArchiveSegment.Record r1, final ArchiveSegment.Record r2) {
+                return Long.compare(r1.dateAndTime, r2.dateAndTime);
+            }
+        });
+
+        final File boardDir = new File(baseDir, escapedBoardName);
+        if( !boardDir.isDirectory() && !boardDir.mkdirs() ) {
+            throw new IOException("Could not create directory "+boardDir.getPath());
+        }
+        final int generation = (oldSegment == null) ? 1 : generations.get(oldSegment).intValue() + 1;
+        final File segmentFile = new File(boardDir, year+"."+generation+SEGMENT_EXTENSION);
+        final File tempFile = new File(boardDir, segmentFile.getName()+TEMP_EXTENSION);
+        ArchiveSegment.write(tempFile, allRecords);
+        if( !tempFile.renameTo(segmentFile) ) {
+            tempFile.delete();
+            throw new IOException("Could not rename "+tempFile.getPath());
+        }
+
+        final ArchiveSegment newSegment = new ArchiveSegment(segmentFile);
+        segments.put(year, newSegment);
+        generations.put(newSegment, generation);
+        if( oldSegment != null ) {
+            generations.remove(oldSegment);
+            // a running search may still read the old segment, deleting a mapped file fails on Windows
+            obsoleteFiles.add(oldSegment.getFile());
+        }
+        deleteObsoleteFiles();
+    }
+
+    private void deleteObsoleteFiles() {
+        for( final Iterator<File> i = obsoleteFiles.iterator(); i.hasNext(); ) {
+            final File f = i.next();
+            if( !f.exists() || f.delete() ) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Searches the segments of the board in parallel. The messages are passed to the callback
+     * in the calling thread, ordered by segment.
+     * @return  true if the callback requested to stop
+     */
+    public boolean retrieveMessages(final Board board, final long startDate, final long endDate, final MessageCallback mc) {
+        final List<ArchiveSegment> segments = getSegments(board.getNameLowerCase(), startDate, endDate);
+        if( segments.isEmpty() ) {
+            return false;
+        }
+        final ExecutorService executor = getSearchExecutor();
+
+        // read ahead at most one segment per search thread
+        final LinkedList<Future<List<ArchiveSegment.Record>>> pending = new LinkedList<Future<List<ArchiveSegment.Record>>>();
+        final Iterator<ArchiveSegment> segmentIterator = segments.iterator();
+        try {
+            while( true ) {
+                while( pending.size() < searchThreadCount && segmentIterator.hasNext() ) {
+                    final ArchiveSegment segment = segmentIterator.next();
+                    pending.add(executor.submit(new Callable<List<ArchiveSegment.Record>>() {
+                        public List<ArchiveSegment.Record> call() {
+                            return segment.getRecords(startDate, endDate);
+                        }
+                    }));
+                }
+                if( pending.isEmpty() ) {
+                    return false;
+                }
+                final List<ArchiveSegment.Record> records;
+                try {
+                    records = pending.removeFirst().get();
+                } catch(final ExecutionException e) {
+                    logger.log(Level.SEVERE, "Error reading archive segment", e.getCause());
+                    continue;
+                }
+                for( final ArchiveSegment.Record r : records ) {
+                    if( mc.messageRetrieved(r.toFrostMessageObject(board)) ) {
+                        return true;
+                    }
+                }
+            }
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } finally {
+            for( final Future<List<ArchiveSegment.Record>> f : pending ) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getSearchExecutor() {
+        if( searchExecutor == null ) {
+            searchExecutor = Executors.newFixedThreadPool(searchThreadCount, new SearchThreadFactory());
+        }
+        return searchExecutor;
+    }
+
+    public synchronized void close() {
+        if( searchExecutor != null ) {
+            searchExecutor.shutdownNow();
+            searchExecutor = null;
+        }
+        segmentsByBoard.clear();
+        generations.clear();
+        deleteObsoleteFiles();
+    }
+
+    private static class SearchThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "ArchiveSearch-"+threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+  ContentDictionaryTrainer.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Builds the preset deflate dictionary of the MessageContentStorage from a sample of the local
+ * message contents. The dictionary is made of the lines and words that occur in many messages
+ * (quote headers, greetings, signatures, common words), the most valuable ones are placed at
+ * the end of the dictionary because deflate encodes near matches with fewer bits.
+ */
+class ContentDictionaryTrainer {
+
+    // deflate can only reference the last 32 KiB of the dictionary
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MIN_LINE_LENGTH = 8;
+    private static final int MAX_LINE_LENGTH = 200;
+    private static final int MIN_WORD_LENGTH = 4;
+    private static final int MAX_WORD_LENGTH = 40;
+
+    private static final int MIN_LINE_OCCURRENCES = 2;
+    private static final int MIN_WORD_OCCURRENCES = 3;
+
+    private final Map<String,Integer> lineCounts = new HashMap<String,Integer>();
+    private final Map<String,Integer> wordCounts = new HashMap<String,Integer>();
+    private int sampleCount = 0;
+
+    /**
+     * Adds one message content to the training set. Each line and word is counted once per message.
+     */
+    public void addSample(final String content) {
+        if( content == null ) {
+            return;
+        }
+        sampleCount++;
+        final Set<String> lines = new HashSet<String>();
+        final Set<String> words = new HashSet<String>();
+        for( final String line : content.split("\\r?\\n") ) {
+            if( line.length() >= MIN_LINE_LENGTH && line.length() <= MAX_LINE_LENGTH ) {
+                lines.add(line);
+            }
+            for( final String word : line.split("\\s+") ) {
+                if( word.length() >= MIN_WORD_LENGTH && word.length() <= MAX_WORD_LENGTH ) {
+                    words.add(word);
+                }
+            }
+        }
+        addCounts(lineCounts, lines);
+        addCounts(wordCounts, words);
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    private static void addCounts(final Map<String,Integer> counts, final Set<String> values) {
+        for( final String value : values ) {
+            final Integer count = counts.get(value);
+            counts.put(value, (count == null) ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * @return  the trained dictionary, or null if the samples contain no repeated text
+     */
+    public byte[] buildDictionary() {
+        final List<Candidate> candidates = new ArrayList<Candidate>();
+        addCandidates(candidates, lineCounts, MIN_LINE_OCCURRENCES, "\n");
+        addCandidates(candidates, wordCounts, MIN_WORD_OCCURRENCES, " ");
+        if( candidates.isEmpty() ) {
+            return null;
+        }
+        // best candidates first, until the dictionary is full
+        Collections.sort(candidates);
+        final List<byte[]> selected = new ArrayList<byte[]>();
+        int size = 0;
+        for( final Candidate c : candidates ) {
+            if( size + c.bytes.length > MAX_DICTIONARY_SIZE ) {
+                continue;
+            }
+            selected.add(c.bytes);
+            size += c.bytes.length;
+        }
+        // ... and placed at the end of the dictionary
+        final byte[] dictionary = new byte[size];
+        int pos = size;
+        for( final byte[] b : selected ) {
+            pos -= b.length;
+            System.arraycopy(b, 0, dictionary, pos, b.length);
+        }
+        return dictionary;
+    }
+
+    private static void addCandidates(
+            final List<Candidate> candidates,
+            final Map<String,Integer> counts,
+            final int minOccurrences,
+            final String separator)
+    {
+        for( final Map.Entry<String,Integer> e : counts.entrySet() ) {
+            if( e.getValue() >= minOccurrences ) {
+                final byte[] bytes = (e.getKey() + separator).getBytes(UTF8);
+                candidates.add(new Candidate(bytes, (long)e.getValue() * bytes.length));
+            }
+        }
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final byte[] bytes;
+        private final long score; // saved bytes if each occurrence was matched completely
+
+        public Candidate(final byte[] bytes, final long score) {
+            this.bytes = bytes;
+            this.score = score;
+        }
+        public int compareTo(final Candidate other) {
+            return (score > other.score) ? -1 : ((score < other.score) ? 1 : 0);
+        }
+    }
+}
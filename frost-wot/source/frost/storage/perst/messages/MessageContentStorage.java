@@ -18,15 +18,44 @@
 */
 package frost.storage.perst.messages;
 
+import java.util.*;
+import java.util.logging.*;
+
+import org.garret.perst.*;
+
 import frost.*;
 import frost.messaging.frost.*;
+import frost.messaging.frost.boards.*;
 import frost.storage.*;
 import frost.storage.perst.*;
+import frost.util.*;
 
+/**
+ * Stores the contents, public keys, signatures and attachments of the messages in the MessageStorage.
+ * The contents are deflated with a preset dictionary that is trained on the local messages,
+ * and each public key is stored only once in a shared key table that the messages reference.
+ * Storages of older versions are converted by a background migration, until then the
+ * uncompressed entries are still read.
+ */
 public class MessageContentStorage extends AbstractFrostStorage implements ExitSavable {
 
+    private static final Logger logger = Logger.getLogger(MessageContentStorage.class.getName());
+
+    // the dictionary is trained from the newest contents, once enough messages are stored
+    private static final int MIN_TRAINING_SAMPLES = 500;
+    private static final int MAX_TRAINING_SAMPLES = 2000;
+
+    // the migration moves this many entries per transaction and pauses between the transactions
+    private static final int MIGRATION_BATCH_SIZE = 200;
+    private static final int MIGRATION_BATCH_PAUSE = 250; // millis
+
     private MessageContentStorageRoot storageRoot = null;
 
+    // cached from the storage root, never changes once it was set
+    private volatile byte[] contentDictionary = null;
+
+    private ContentMigrationThread migrationThread = null;
+
     private static final String STORAGE_FILENAME = "messagesContents.dbs";
 
     private static MessageContentStorage instance = new MessageContentStorage();
@@ -58,23 +87,105 @@ public class MessageContentStorage extends AbstractFrostStorage implements ExitS
             getStorage().setRoot(storageRoot);
             commit(); // commit transaction
         }
+
+        // storages created by older versions have no compressed content tables yet,
+        // the existing entries are moved by the background migration
+        if( storageRoot.getCompressedContentByMsgOid() == null ) {
+            storageRoot.createCompressedTables(getStorage());
+            logger.warning("Created the compressed content and shared public key tables.");
+            commit(); // commit transaction
+        }
+        contentDictionary = storageRoot.getContentDictionary();
+        return true;
+    }
+
+    /**
+     * Starts the background thread that trains the content dictionary and moves the
+     * uncompressed contents and public keys of older versions into the new tables.
+     */
+    public synchronized void startBackgroundMigration() {
+        if( storageRoot == null || migrationThread != null ) {
+            return;
+        }
+        if( contentDictionary != null
+                && storageRoot.getContentByMsgOid().size() == 0
+                && storageRoot.getPublickeyByMsgOid().size() == 0 )
+        {
+            return; // nothing to do
+        }
+        migrationThread = new ContentMigrationThread();
+        migrationThread.start();
+    }
+
+    private void stopBackgroundMigration() {
+        final ContentMigrationThread t;
+        synchronized(this) {
+            t = migrationThread;
+            migrationThread = null;
+        }
+        if( t != null ) {
+            t.requestStop();
+            try {
+                t.join(10L * 1000L); // a batch is short, it finishes before we close the storage
+            } catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * All accesses are synchronized or run in thread transactions, and only return copies of the values.
+     */
+    @Override
+    public boolean isOnlineCompactionSupported() {
         return true;
     }
 
     public void exitSave() {
+        stopBackgroundMigration();
         close();
         storageRoot = null;
         System.out.println("INFO: MessagesContentStorage closed.");
     }
 
     protected synchronized boolean addContentForOid(final int oid, final String content) {
-        final PerstString ps = new PerstString(content);
-        return storageRoot.getContentByMsgOid().put(oid, ps);
+        final PerstCompressedString pcs = new PerstCompressedString(content, contentDictionary);
+        return storageRoot.getCompressedContentByMsgOid().put(oid, pcs);
     }
 
     protected synchronized boolean addPublickeyForOid(final int oid, final String content) {
-        final PerstString ps = new PerstString(content);
-        return storageRoot.getPublickeyByMsgOid().put(oid, ps);
+        if( storageRoot.getPublicKeyRefByMsgOid().get(oid) != null ) {
+            return false;
+        }
+        final PerstPublicKey pk = getSharedPublicKey(content);
+        storageRoot.getPublicKeyRefByMsgOid().put(oid, pk);
+        pk.incRefCount();
+        return true;
+    }
+
+    /**
+     * Returns the entry of the shared key table for this public key, a new entry is added if needed.
+     */
+    private PerstPublicKey getSharedPublicKey(final String publicKey) {
+        final long hash = PerstPublicKey.computeHash(publicKey);
+        for( final PerstPublicKey pk : storageRoot.getPublicKeysByHash().getList(hash, hash) ) {
+            if( pk.getValue().equals(publicKey) ) {
+                return pk;
+            }
+        }
+        final PerstPublicKey pk = new PerstPublicKey(publicKey);
+        storageRoot.getPublicKeysByHash().put(hash, pk);
+        return pk;
+    }
+
+    /**
+     * Drops one reference to the shared public key, the key is removed when no message uses it anymore.
+     */
+    private void releaseSharedPublicKey(final PerstPublicKey pk) {
+        if( pk.decRefCount() <= 0 ) {
+            storageRoot.getPublicKeysByHash().remove(PerstPublicKey.computeHash(pk.getValue()), pk);
+            pk.deallocate();
+        }
     }
 
     protected synchronized boolean addSignatureForOid(final int oid, final String content) {
@@ -91,6 +202,11 @@ public class MessageContentStorage extends AbstractFrostStorage implements ExitS
 	}
 
     protected synchronized String getContentForOid(final int oid) {
+        final PerstCompressedString pcs = storageRoot.getCompressedContentByMsgOid().get(oid);
+        if( pcs != null ) {
+            return pcs.getValue(contentDictionary);
+        }
+        // not migrated yet
         final PerstString ps = storageRoot.getContentByMsgOid().get(oid);
         if( ps != null ) {
             return ps.getValue();
@@ -99,6 +215,11 @@ public class MessageContentStorage extends AbstractFrostStorage implements ExitS
     }
 
     protected synchronized String getPublickeyForOid(final int oid) {
+        final PerstPublicKey pk = storageRoot.getPublicKeyRefByMsgOid().get(oid);
+        if( pk != null ) {
+            return pk.getValue();
+        }
+        // not migrated yet
         final PerstString ps = storageRoot.getPublickeyByMsgOid().get(oid);
         if( ps != null ) {
             return ps.getValue();
@@ -114,12 +235,41 @@ public class MessageContentStorage extends AbstractFrostStorage implements ExitS
         return null;
     }
 
-    protected synchronized PerstAttachments getAttachmentsForOid(final int oid) {
+    /**
+     * Adds the stored attachments to the message. The persistent attachment objects are not
+     * handed out, because the storage may be reopened by an online compaction.
+     */
+    protected synchronized void retrieveAttachmentsForOid(final int oid, final FrostMessageObject mo) {
         final PerstAttachments pa = storageRoot.getAttachmentsByMsgOid().get(oid);
-        return pa;
+        if( pa != null ) {
+            if( pa.getBoardAttachments() != null ) {
+                for( final PerstBoardAttachment p : pa.getBoardAttachments() ) {
+                    final Board b = new Board(p.name, p.pubKey, p.privKey, p.description);
+                    final BoardAttachment ba = new BoardAttachment(b);
+                    mo.addAttachment(ba);
+                }
+            }
+            if( pa.getFileAttachments() != null ) {
+                for( final PerstFileAttachment p : pa.getFileAttachments() ) {
+                    final FileAttachment fa = new FileAttachment(p.name, p.chkKey, p.size);
+                    mo.addAttachment(fa);
+                }
+            }
+        }
     }
 
     protected synchronized void deallocateForOid(final int oid) {
+        final PerstCompressedString pcs = storageRoot.getCompressedContentByMsgOid().get(oid);
+        if( pcs != null ) {
+            storageRoot.getCompressedContentByMsgOid().removeKey(oid);
+            pcs.deallocate();
+        }
+        final PerstPublicKey pk = storageRoot.getPublicKeyRefByMsgOid().get(oid);
+        if( pk != null ) {
+            storageRoot.getPublicKeyRefByMsgOid().removeKey(oid);
+            releaseSharedPublicKey(pk);
+        }
+
         PerstString ps;
         ps = storageRoot.getContentByMsgOid().get(oid);
         if( ps != null ) {
@@ -143,4 +293,162 @@ public class MessageContentStorage extends AbstractFrostStorage implements ExitS
             pa.deallocate();
         }
     }
+
+    /**
+     * Collects the newest contents of the storage, uncompressed contents of older versions are preferred.
+     * @return  null if there are not enough messages yet to train a useful dictionary
+     */
+    private synchronized ContentDictionaryTrainer collectTrainingSamples() {
+        final ContentDictionaryTrainer trainer = new ContentDictionaryTrainer();
+        for( final PerstString ps : storageRoot.getContentByMsgOid().iterator(null, null, GenericIndex.DESCENT_ORDER) ) {
+            if( trainer.getSampleCount() >= MAX_TRAINING_SAMPLES ) {
+                break;
+            }
+            trainer.addSample(ps.getValue());
+        }
+        for( final PerstCompressedString pcs : storageRoot.getCompressedContentByMsgOid().iterator(null, null, GenericIndex.DESCENT_ORDER) ) {
+            if( trainer.getSampleCount() >= MAX_TRAINING_SAMPLES ) {
+                break;
+            }
+            trainer.addSample(pcs.getValue(contentDictionary));
+        }
+        if( trainer.getSampleCount() < MIN_TRAINING_SAMPLES ) {
+            return null;
+        }
+        return trainer;
+    }
+
+    /**
+     * Moves up to maxCount uncompressed contents into the compressed content table.
+     * @return  the number of moved contents, 0 if all contents are migrated
+     */
+    private synchronized int migrateContents(final int maxCount) {
+        final Index<PerstString> oldIndex = storageRoot.getContentByMsgOid();
+        final List<Map.Entry<Object,PerstString>> batch = new ArrayList<Map.Entry<Object,PerstString>>(maxCount);
+        for( final Map.Entry<Object,PerstString> e : oldIndex.entryIterator() ) {
+            if( batch.size() >= maxCount ) {
+                break;
+            }
+            batch.add(e);
+        }
+        for( final Map.Entry<Object,PerstString> e : batch ) {
+            final int oid = ((Integer)e.getKey()).intValue();
+            final PerstString ps = e.getValue();
+            oldIndex.removeKey(oid);
+            if( storageRoot.getCompressedContentByMsgOid().get(oid) == null ) {
+                storageRoot.getCompressedContentByMsgOid().put(oid, new PerstCompressedString(ps.getValue(), contentDictionary));
+            }
+            ps.deallocate();
+        }
+        return batch.size();
+    }
+
+    /**
+     * Replaces up to maxCount public keys of messages by references into the shared key table.
+     * @return  the number of replaced keys, 0 if all keys are migrated
+     */
+    private synchronized int migratePublickeys(final int maxCount) {
+        final Index<PerstString> oldIndex = storageRoot.getPublickeyByMsgOid();
+        final List<Map.Entry<Object,PerstString>> batch = new ArrayList<Map.Entry<Object,PerstString>>(maxCount);
+        for( final Map.Entry<Object,PerstString> e : oldIndex.entryIterator() ) {
+            if( batch.size() >= maxCount ) {
+                break;
+            }
+            batch.add(e);
+        }
+        for( final Map.Entry<Object,PerstString> e : batch ) {
+            final int oid = ((Integer)e.getKey()).intValue();
+            final PerstString ps = e.getValue();
+            oldIndex.removeKey(oid);
+            addPublickeyForOid(oid, ps.getValue());
+            ps.deallocate();
+        }
+        return batch.size();
+    }
+
+    /**
+     * Trains the content dictionary if there is none yet, and moves the entries of older
+     * versions into the new tables. Each batch runs in its own EXCLUSIVE transaction,
+     * so message inserts and board loads are only delayed for a short moment.
+     */
+    private class ContentMigrationThread extends Thread {
+
+        private volatile boolean stopRequested = false;
+
+        public ContentMigrationThread() {
+            super("MessageContentMigration");
+            setDaemon(true);
+            setPriority(Thread.MIN_PRIORITY);
+        }
+
+        public void requestStop() {
+            stopRequested = true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if( contentDictionary == null ) {
+                    trainDictionary();
+                }
+                final int keyCount = runBatches(true);
+                final int contentCount = runBatches(false);
+                if( keyCount > 0 || contentCount > 0 ) {
+                    logger.warning("Migrated "+contentCount+" message contents and "+keyCount+" public keys.");
+                }
+            } catch(final Throwable t) {
+                if( !stopRequested ) {
+                    logger.log(Level.SEVERE, "Exception during the message content migration", t);
+                }
+            }
+        }
+
+        private void trainDictionary() {
+            if( !beginCooperativeThreadTransaction() ) {
+                return;
+            }
+            final ContentDictionaryTrainer trainer;
+            try {
+                trainer = collectTrainingSamples();
+            } finally {
+                endThreadTransaction();
+            }
+            if( trainer == null || stopRequested ) {
+                return; // next time
+            }
+            final byte[] dictionary = trainer.buildDictionary();
+            if( dictionary == null || !beginExclusiveThreadTransaction() ) {
+                return;
+            }
+            storageRoot.setContentDictionary(dictionary);
+            endThreadTransaction();
+            // only use the dictionary after it was committed
+            contentDictionary = dictionary;
+            logger.warning("Trained the message content dictionary ("+dictionary.length+" bytes) on "+
+                    trainer.getSampleCount()+" messages.");
+        }
+
+        private int runBatches(final boolean publicKeys) {
+            int total = 0;
+            while( !stopRequested ) {
+                if( !beginExclusiveThreadTransaction() ) {
+                    break;
+                }
+                final int count;
+                try {
+                    count = publicKeys ? migratePublickeys(MIGRATION_BATCH_SIZE) : migrateContents(MIGRATION_BATCH_SIZE);
+                } catch(final RuntimeException e) {
+                    rollbackTransaction();
+                    throw e;
+                }
+                endThreadTransaction();
+                if( count == 0 ) {
+                    break;
+                }
+                total += count;
+                Mixed.wait(MIGRATION_BATCH_PAUSE);
+            }
+            return total;
+        }
+    }
 }
@@ -24,10 +24,16 @@ import frost.storage.perst.*;
 
 public class MessageContentStorageRoot extends Persistent {
 
+    // uncompressed contents and public keys of older storages, moved by the background migration
     private Index<PerstString> contentByMsgOid;
     private Index<PerstString> publickeyByMsgOid;
     private Index<PerstString> signatureByMsgOid;
     private Index<PerstAttachments> attachmentsByMsgOid;
+
+    private Index<PerstCompressedString> compressedContentByMsgOid;
+    private Index<PerstPublicKey> publicKeysByHash; // the shared key table
+    private Index<PerstPublicKey> publicKeyRefByMsgOid;
+    private byte[] contentDictionary; // null until it was trained
     
     public MessageContentStorageRoot() {}
     
@@ -36,6 +42,18 @@ public class MessageContentStorageRoot extends Persistent {
         publickeyByMsgOid = storage.createIndex(int.class, true);
         signatureByMsgOid = storage.createIndex(int.class, true);
         attachmentsByMsgOid = storage.createIndex(int.class, true);
+        createCompressedTables(storage);
+    }
+
+    /**
+     * Creates the indices for the compressed contents and the shared public keys,
+     * called for storages created by older versions.
+     */
+    public void createCompressedTables(final Storage storage) {
+        compressedContentByMsgOid = storage.createIndex(int.class, true);
+        publicKeysByHash = storage.createIndex(long.class, false);
+        publicKeyRefByMsgOid = storage.createIndex(int.class, true);
+        modify();
     }
 
     public Index<PerstString> getContentByMsgOid() {
@@ -53,4 +71,25 @@ public class MessageContentStorageRoot extends Persistent {
     public Index<PerstAttachments> getAttachmentsByMsgOid() {
         return attachmentsByMsgOid;
     }
+
+    public Index<PerstCompressedString> getCompressedContentByMsgOid() {
+        return compressedContentByMsgOid;
+    }
+
+    public Index<PerstPublicKey> getPublicKeysByHash() {
+        return publicKeysByHash;
+    }
+
+    public Index<PerstPublicKey> getPublicKeyRefByMsgOid() {
+        return publicKeyRefByMsgOid;
+    }
+
+    public byte[] getContentDictionary() {
+        return contentDictionary;
+    }
+
+    public void setContentDictionary(final byte[] dictionary) {
+        contentDictionary = dictionary;
+        modify();
+    }
 }
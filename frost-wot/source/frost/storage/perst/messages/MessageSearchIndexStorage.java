@@ -0,0 +1,282 @@
+/*
+  MessageSearchIndexStorage.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import java.util.*;
+
+import org.garret.perst.*;
+
+import frost.*;
+import frost.storage.*;
+import frost.storage.perst.*;
+
+/**
+ * Trigram index of the sender, subject and content of the messages in the MessageStorage,
+ * used by the message search to find the candidate messages before the regex matching.
+ * The postings are kept per board and per day, and contain the oids of the PerstFrostMessageObjects.
+ *
+ * Like the MessageContentStorage, this storage is maintained inside the transactions of the
+ * MessageStorage, which also commits it.
+ */
+public class MessageSearchIndexStorage extends AbstractFrostStorage implements ExitSavable {
+
+    public static final char FIELD_SENDER = 'n';
+    public static final char FIELD_SUBJECT = 's';
+    public static final char FIELD_CONTENT = 'c';
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+    private static final int MAX_DAY = 0xFFFF;
+
+    private MessageSearchIndexStorageRoot storageRoot = null;
+
+    private static final String STORAGE_FILENAME = "messagesSearchIndex.dbs";
+
+    private static MessageSearchIndexStorage instance = new MessageSearchIndexStorage();
+
+    protected MessageSearchIndexStorage() {
+        super();
+    }
+
+    public static MessageSearchIndexStorage inst() {
+        return instance;
+    }
+
+    @Override
+    public String getStorageFilename() {
+        return STORAGE_FILENAME;
+    }
+
+    @Override
+    public boolean initStorage() {
+        final String databaseFilePath = buildStoragePath(getStorageFilename()); // path to the database file
+        final long pagePoolSize = getPagePoolSize(SettingsClass.PERST_PAGEPOOLSIZE_MESSAGESEARCHINDEX);
+
+        open(databaseFilePath, pagePoolSize, true, false, false);
+
+        storageRoot = (MessageSearchIndexStorageRoot)getStorage().getRoot();
+        if (storageRoot == null) {
+            // Storage was not initialized yet
+            storageRoot = new MessageSearchIndexStorageRoot(getStorage());
+            getStorage().setRoot(storageRoot);
+            commit(); // commit transaction
+        }
+        return true;
+    }
+
+    /**
+     * All accesses are synchronized and only return oids.
+     */
+    @Override
+    public boolean isOnlineCompactionSupported() {
+        return true;
+    }
+
+    public void exitSave() {
+        close();
+        storageRoot = null;
+        System.out.println("INFO: MessageSearchIndexStorage closed.");
+    }
+
+    /**
+     * Returns the index terms (field and trigram) that all messages matching the search patterns contain.
+     * The patterns may be null. If the list is empty, the index can't be used for this search.
+     */
+    public static List<String> getSearchTerms(final String senderRegex, final String subjectRegex, final String contentRegex) {
+        final List<String> terms = new ArrayList<String>();
+        addTerms(FIELD_SENDER, MessageSearchTerms.getPatternTrigrams(senderRegex), terms);
+        addTerms(FIELD_SUBJECT, MessageSearchTerms.getPatternTrigrams(subjectRegex), terms);
+        addTerms(FIELD_CONTENT, MessageSearchTerms.getPatternTrigrams(contentRegex), terms);
+        return terms;
+    }
+
+    private static void addTerms(final char field, final Set<String> trigrams, final List<String> terms) {
+        for( final String trigram : trigrams ) {
+            terms.add(field + trigram);
+        }
+    }
+
+    protected synchronized void addMessage(
+            final int boardId,
+            final int messageOid,
+            final long dateAndTime,
+            final String sender,
+            final String subject,
+            final String content)
+    {
+        if( storageRoot == null ) {
+            return;
+        }
+        final Index<PerstSearchPostings> postingsByTerm = storageRoot.getPostingsByTerm();
+        for( final String key : buildTermKeys(boardId, dateAndTime, sender, subject, content) ) {
+            final PerstSearchPostings postings = postingsByTerm.get(key);
+            if( postings == null ) {
+                postingsByTerm.put(key, new PerstSearchPostings(messageOid));
+            } else {
+                postings.add(messageOid);
+            }
+        }
+    }
+
+    protected synchronized void removeMessage(
+            final int boardId,
+            final int messageOid,
+            final long dateAndTime,
+            final String sender,
+            final String subject,
+            final String content)
+    {
+        if( storageRoot == null ) {
+            return;
+        }
+        final Index<PerstSearchPostings> postingsByTerm = storageRoot.getPostingsByTerm();
+        for( final String key : buildTermKeys(boardId, dateAndTime, sender, subject, content) ) {
+            final PerstSearchPostings postings = postingsByTerm.get(key);
+            if( postings != null && postings.remove(messageOid) && postings.isEmpty() ) {
+                postingsByTerm.removeKey(key);
+                postings.deallocate();
+            }
+        }
+    }
+
+    /**
+     * Removes all postings of the board.
+     */
+    protected synchronized void removeBoard(final int boardId) {
+        if( storageRoot == null ) {
+            return;
+        }
+        final Index<PerstSearchPostings> postingsByTerm = storageRoot.getPostingsByTerm();
+        final String boardPrefix = buildBoardPrefix(boardId);
+        // all field chars are lower than '~'
+        final Iterator<Map.Entry<Object,PerstSearchPostings>> i =
+            postingsByTerm.entryIterator(new Key(boardPrefix), new Key(boardPrefix + "~"), GenericIndex.ASCENT_ORDER);
+        final List<String> keys = new ArrayList<String>();
+        while( i.hasNext() ) {
+            keys.add((String)i.next().getKey());
+        }
+        for( final String key : keys ) {
+            final PerstSearchPostings postings = postingsByTerm.removeKey(key);
+            if( postings != null ) {
+                postings.deallocate();
+            }
+        }
+    }
+
+    /**
+     * Returns the oids of the messages of the board and date range that contain all terms.
+     * @return  the oids, or null if the storage is not available
+     */
+    protected synchronized Set<Integer> getCandidateMessageOids(
+            final int boardId,
+            final List<String> terms,
+            final long startDate,
+            final long endDate)
+    {
+        if( storageRoot == null ) {
+            return null;
+        }
+        final Index<PerstSearchPostings> postingsByTerm = storageRoot.getPostingsByTerm();
+        final int startDay = getDay(startDate);
+        final int endDay = getDay(endDate);
+
+        Set<Integer> candidates = null;
+        for( final String term : terms ) {
+            final Set<Integer> termOids = new HashSet<Integer>();
+            final Iterator<PerstSearchPostings> i = postingsByTerm.iterator(
+                    buildTermKey(boardId, term, startDay),
+                    buildTermKey(boardId, term, endDay),
+                    GenericIndex.ASCENT_ORDER);
+            while( i.hasNext() ) {
+                i.next().addAllTo(termOids);
+            }
+            if( candidates == null ) {
+                candidates = termOids;
+            } else {
+                candidates.retainAll(termOids);
+            }
+            if( candidates.isEmpty() ) {
+                break; // no message contains all terms
+            }
+        }
+        if( candidates == null ) {
+            candidates = new HashSet<Integer>();
+        }
+        return candidates;
+    }
+
+    private static Set<String> buildTermKeys(
+            final int boardId,
+            final long dateAndTime,
+            final String sender,
+            final String subject,
+            final String content)
+    {
+        final int day = getDay(dateAndTime);
+        final Set<String> keys = new HashSet<String>();
+        for( final String trigram : MessageSearchTerms.getTextTrigrams(sender) ) {
+            keys.add(buildTermKey(boardId, FIELD_SENDER + trigram, day));
+        }
+        for( final String trigram : MessageSearchTerms.getTextTrigrams(subject) ) {
+            keys.add(buildTermKey(boardId, FIELD_SUBJECT + trigram, day));
+        }
+        for( final String trigram : MessageSearchTerms.getTextTrigrams(content) ) {
+            keys.add(buildTermKey(boardId, FIELD_CONTENT + trigram, day));
+        }
+        return keys;
+    }
+
+    /**
+     * Days since 1970 (UTC), limited to 4 hex digits.
+     */
+    private static int getDay(final long dateAndTime) {
+        final long day = Math.floorDiv(dateAndTime, MILLIS_PER_DAY);
+        if( day < 0 ) {
+            return 0;
+        }
+        if( day > MAX_DAY ) {
+            return MAX_DAY;
+        }
+        return (int)day;
+    }
+
+    private static String buildBoardPrefix(final int boardId) {
+        return toHex(boardId, 8);
+    }
+
+    /**
+     * The key is the board id (8 hex digits), the term (field char and trigram) and the day
+     * (4 hex digits). All postings of a term of a board are adjacent and sorted by day.
+     */
+    private static String buildTermKey(final int boardId, final String term, final int day) {
+        return new StringBuilder(16)
+            .append(buildBoardPrefix(boardId))
+            .append(term)
+            .append(toHex(day, 4))
+            .toString();
+    }
+
+    private static String toHex(final int value, final int digits) {
+        final String hex = Integer.toHexString(value);
+        final StringBuilder sb = new StringBuilder(digits);
+        for( int x = hex.length(); x < digits; x++ ) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+}
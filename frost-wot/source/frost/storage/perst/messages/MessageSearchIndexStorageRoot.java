@@ -0,0 +1,37 @@
+/*
+  MessageSearchIndexStorageRoot.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import org.garret.perst.*;
+
+public class MessageSearchIndexStorageRoot extends Persistent {
+
+    // key is boardId, field, trigram and day, see MessageSearchIndexStorage.buildTermKey()
+    private Index<PerstSearchPostings> postingsByTerm;
+
+    public MessageSearchIndexStorageRoot() {}
+
+    public MessageSearchIndexStorageRoot(final Storage storage) {
+        postingsByTerm = storage.createIndex(String.class, true);
+    }
+
+    public Index<PerstSearchPostings> getPostingsByTerm() {
+        return postingsByTerm;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+  MessageSearchTerms.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import java.util.*;
+
+/**
+ * Builds the terms of the message search index. A term is a trigram (3 consecutive chars) of
+ * the case folded text, so the index can answer the substring matches of the regex search.
+ *
+ * For a search pattern only the trigrams are returned that every match of the pattern must
+ * contain. Everything that is not a plain literal (classes, groups, optional chars, ...) just
+ * ends a literal run, and patterns with alternations, inline flags or unknown escapes give no
+ * trigrams at all. An empty result means the index can't narrow down the search.
+ */
+public final class MessageSearchTerms {
+
+    private static final int TRIGRAM_LENGTH = 3;
+
+    private MessageSearchTerms() {}
+
+    /**
+     * Folds the case like the CASE_INSENSITIVE|UNICODE_CASE regex matching does.
+     */
+    public static char fold(final char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Returns all distinct trigrams of the text.
+     */
+    public static Set<String> getTextTrigrams(final String text) {
+        final Set<String> trigrams = new HashSet<String>();
+        if( text != null ) {
+            addTrigrams(text, trigrams);
+        }
+        return trigrams;
+    }
+
+    /**
+     * Returns the trigrams which are contained in all texts that match the regex.
+     */
+    public static Set<String> getPatternTrigrams(final String regex) {
+        final Set<String> trigrams = new HashSet<String>();
+        if( regex == null || regex.indexOf('|') >= 0 || regex.contains("(?") || regex.contains("\\Q") ) {
+            return trigrams;
+        }
+        final StringBuilder run = new StringBuilder();
+        final int len = regex.length();
+        int i = 0;
+        while( i < len ) {
+            final char c = regex.charAt(i);
+            if( c == '\\' ) {
+                if( i + 1 >= len ) {
+                    return new HashSet<String>();
+                }
+                final char e = regex.charAt(i + 1);
+                if( !Character.isLetterOrDigit(e) ) {
+                    run.append(e); // escaped meta char, e.g. \.
+                } else if( "bBsSdDwWtnrfae".indexOf(e) >= 0 ) {
+                    addTrigrams(run, trigrams); // boundary, predefined class or control char
+                } else {
+                    return new HashSet<String>(); // escape with arguments or a back reference
+                }
+                i += 2;
+                continue;
+            }
+            switch( c ) {
+                case '[':
+                    addTrigrams(run, trigrams);
+                    i = skipClass(regex, i);
+                    break;
+                case '(':
+                    addTrigrams(run, trigrams);
+                    i = skipGroup(regex, i);
+                    break;
+                case '{':
+                    // the quantified char is optional (or repeated), end the run before it
+                    removeLastChar(run);
+                    addTrigrams(run, trigrams);
+                    i = regex.indexOf('}', i);
+                    break;
+                case '*':
+                case '?':
+                    removeLastChar(run);
+                    addTrigrams(run, trigrams);
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    addTrigrams(run, trigrams);
+                    break;
+                case ')':
+                case ']':
+                case '}':
+                    return new HashSet<String>(); // unbalanced, don't guess
+                default:
+                    run.append(c);
+            }
+            if( i < 0 ) {
+                return new HashSet<String>();
+            }
+            i++;
+        }
+        addTrigrams(run, trigrams);
+        return trigrams;
+    }
+
+    private static void removeLastChar(final StringBuilder run) {
+        if( run.length() > 0 ) {
+            run.setLength(run.length() - 1);
+        }
+    }
+
+    /**
+     * Adds the trigrams of the run and clears the run.
+     */
+    private static void addTrigrams(final CharSequence run, final Set<String> trigrams) {
+        final int len = run.length();
+        final char[] folded = new char[len];
+        for( int x = 0; x < len; x++ ) {
+            folded[x] = fold(run.charAt(x));
+        }
+        int validChars = 0; // number of consecutive chars usable for a trigram
+        for( int x = 0; x < len; x++ ) {
+            if( Character.isSurrogate(folded[x]) ) {
+                validChars = 0;
+                continue;
+            }
+            validChars++;
+            if( validChars >= TRIGRAM_LENGTH ) {
+                trigrams.add(new String(folded, x - TRIGRAM_LENGTH + 1, TRIGRAM_LENGTH));
+            }
+        }
+        if( run instanceof StringBuilder ) {
+            ((StringBuilder)run).setLength(0);
+        }
+    }
+
+    /**
+     * @return  the index of the closing ']' of the class starting at start, or -1
+     */
+    private static int skipClass(final String regex, final int start) {
+        int depth = 0;
+        int i = start;
+        while( i < regex.length() ) {
+            final char c = regex.charAt(i);
+            if( c == '\\' ) {
+                i += 2;
+                continue;
+            }
+            if( c == '[' ) {
+                depth++;
+                // a ']' directly after '[' or '[^' is a literal
+                if( i + 1 < regex.length() && regex.charAt(i + 1) == '^' ) {
+                    i++;
+                }
+                if( i + 1 < regex.length() && regex.charAt(i + 1) == ']' ) {
+                    i++;
+                }
+            } else if( c == ']' ) {
+                depth--;
+                if( depth == 0 ) {
+                    return i;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return  the index of the closing ')' of the group starting at start, or -1
+     */
+    private static int skipGroup(final String regex, final int start) {
+        int depth = 0;
+        int i = start;
+        while( i < regex.length() ) {
+            final char c = regex.charAt(i);
+            if( c == '\\' ) {
+                i += 2;
+                continue;
+            }
+            if( c == '[' ) {
+                i = skipClass(regex, i);
+                if( i < 0 ) {
+                    return -1;
+                }
+            } else if( c == '(' ) {
+                depth++;
+            } else if( c == ')' ) {
+                depth--;
+                if( depth == 0 ) {
+                    return i;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+}
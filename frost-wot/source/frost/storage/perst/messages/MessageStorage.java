@@ -81,20 +81,48 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
             getStorage().setRoot(storageRoot);
             commit(); // commit transaction
         }
+
+        // boards created by older versions have no message counters yet, count their messages once
+        boolean countersCreated = false;
+        for( final PerstFrostBoardObject bo : storageRoot.getBoardsByName() ) {
+            if( bo.getMessageCountsIndex() == null ) {
+                bo.createMessageCounts(getStorage());
+                countersCreated = true;
+            }
+        }
+        if( countersCreated ) {
+            logger.warning("Created the message counters of all boards.");
+            commit(); // commit transaction
+        }
+
+        // same for the thread index
+        boolean threadIndexCreated = false;
+        for( final PerstFrostBoardObject bo : storageRoot.getBoardsByName() ) {
+            if( bo.getThreadIndex() == null ) {
+                bo.createThreadIndex(getStorage());
+                threadIndexCreated = true;
+            }
+        }
+        if( threadIndexCreated ) {
+            logger.warning("Created the thread index of all boards.");
+            commit(); // commit transaction
+        }
         return true;
     }
 
     @Override
     public synchronized void commit() {
-        // also commit the MessageContentStorage
+        // also commit the MessageContentStorage and the MessageSearchIndexStorage
         MessageContentStorage.inst().commit();
+        MessageSearchIndexStorage.inst().commit();
         super.commit();
     }
 
     @Override
     public boolean endThreadTransaction() {
-        // also commit the MessageContentStorage, its part of the transaction
+        // also commit the MessageContentStorage and the MessageSearchIndexStorage, they are part of the transaction
         MessageContentStorage.inst().commit();
+        MessageSearchIndexStorage.inst().commit();
         return super.endThreadTransaction();
     }
 
@@ -247,6 +275,8 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
             boardToRemove.getUnsentMessagesList().clear();
             removeAll(boardToRemove.getDraftMessagesList().iterator());
             boardToRemove.getDraftMessagesList().clear();
+            MessageSearchIndexStorage.inst().removeBoard(boardToRemove.getBoardId());
+
             storageRoot.getBoardsByName().remove(boardToRemove);
             storageRoot.getBoardsById().remove(boardToRemove);
             boardToRemove.deallocate();
@@ -308,8 +338,10 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
     }
 
     /**
-     * Returns count of all msgs AND all unread msgs (no matter how old they are).
+     * Returns the count of all valid msgs of the last maxDaysBack days, read or unread,
+     * summed from the day counters of the board.
      * If maxDaysBack is < 0 then ALL msgs for this board are counted.
+     * @return  the count, or -1 if the board is not in the storage
      */
     public int getMessageCount(final Board board, final int maxDaysBack) {
         if( !beginCooperativeThreadTransaction() ) {
@@ -327,20 +359,34 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
             final DateTime xDaysAgo = new DateTime(DateTimeZone.UTC).minusDays(maxDaysBack);
             final long minDateTime = xDaysAgo.withTimeAtStartOfDay().getMillis();
 
-            // normal messages in date range
-            final Iterator<PerstFrostMessageObject> i1 = bo.getMessageIndex().iterator(minDateTime, Long.MAX_VALUE, GenericIndex.ASCENT_ORDER);
-            // unread messages in range
-            final Iterator<PerstFrostMessageObject> i2 = bo.getUnreadMessageIndex().iterator(minDateTime, Long.MAX_VALUE, GenericIndex.ASCENT_ORDER);
-            // join all results
-            final Iterator i = getStorage().join( new Iterator[] {i1, i2} );
-
-            int count = 0;
+            // unread messages are in the messageIndex too, so the day counters already contain them
+            return bo.sumMessageCounts(minDateTime).getMessageCount();
+        } finally {
+            endThreadTransaction();
+        }
+    }
 
-            while(i.hasNext()) {
-                ((PersistentIterator)i).nextOid();
-                count++;
+    /**
+     * Returns the summed message counters of the board: count of all, unread, flagged and starred msgs.
+     * If maxDaysBack is < 0 then ALL msgs for this board are counted.
+     * @return  the counters, or null if the board is not in the storage
+     */
+    public PerstFrostMessageCounts getMessageCounts(final Board board, final int maxDaysBack) {
+        if( !beginCooperativeThreadTransaction() ) {
+            return null;
+        }
+        try {
+            final PerstFrostBoardObject bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
+            if( bo == null ) {
+                return null;
             }
-            return count;
+            final long minDateTime;
+            if( maxDaysBack < 0 ) {
+                minDateTime = Long.MIN_VALUE;
+            } else {
+                minDateTime = new DateTime(DateTimeZone.UTC).minusDays(maxDaysBack).withTimeAtStartOfDay().getMillis();
+            }
+            return bo.sumMessageCounts(minDateTime);
         } finally {
             endThreadTransaction();
         }
@@ -403,6 +449,35 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
         return (getStarredMessageCount(board) > 0);
     }
 
+    /**
+     * Starts an EXCLUSIVE transaction for inserting many messages with one commit.
+     * The transaction covers the MessageContentStorage too, the messages must be inserted
+     * with insertMessage(mo, false) until endInsertBatch() is called.
+     * @return  false if the storages are not available
+     */
+    public boolean beginInsertBatch() {
+        if( !beginExclusiveThreadTransaction() ) {
+            return false;
+        }
+        if( !MessageContentStorage.inst().beginExclusiveThreadTransaction() ) {
+            endThreadTransaction();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Commits all messages inserted since beginInsertBatch(). The contents are committed
+     * before the message indices, so an index never references a missing content.
+     */
+    public void endInsertBatch() {
+        try {
+            MessageContentStorage.inst().endThreadTransaction();
+        } finally {
+            endThreadTransaction();
+        }
+    }
+
     /**
      * Insert the message with an enclosing EXCLUSIVE transaction.
      */
@@ -461,6 +536,7 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 mo.setPerstFrostMessageObject(pmo);
 
                 bo.getMessageIndex().put(mo.getDateAndTime().getMillis(), pmo);
+                bo.addToThreadIndex(pmo);
                 if( pmo.isNew ) {
                     bo.getUnreadMessageIndex().put(mo.getDateAndTime().getMillis(), pmo);
                 }
@@ -470,6 +546,10 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 if( pmo.isStarred ) {
                     bo.getStarredMessageIndex().put(mo.getDateAndTime().getMillis(), pmo);
                 }
+                bo.updateMessageCounts(getStorage(), pmo.dateAndTime, 1, pmo.isNew?1:0, pmo.isFlagged?1:0, pmo.isStarred?1:0);
+
+                MessageSearchIndexStorage.inst().addMessage(
+                        bo.getBoardId(), pmo.getOid(), pmo.dateAndTime, pmo.fromName, pmo.subject, mo.getContent());
 
                 // add to id, maybe create id for this msg
                 if( AbstractMessageStatusProvider.isSignatureStatusVERIFIED(pmo.signatureStatus) ) {
@@ -519,6 +599,63 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
         }
     }
 
+    /**
+     * Loads all msgs referenced by the inReplyTo lists of the msgs, and of the loaded msgs, within one
+     * transaction. For each referenced msg that is not in the storage (or is deleted and showDeleted is false)
+     * a dummy msg is created, which gets the refs in front of the missing id as its own inReplyTo list.
+     * @param messageIds  the ids of the already loaded msgs, the ids of the returned msgs are added
+     * @return  the loaded and dummy msgs
+     */
+    public List<FrostMessageObject> retrieveInReplyToMessages(
+            final Board board,
+            final List<FrostMessageObject> messages,
+            final Set<String> messageIds,
+            final boolean showDeleted)
+    {
+        final List<FrostMessageObject> loadedMessages = new ArrayList<FrostMessageObject>();
+        if( !beginCooperativeThreadTransaction() ) {
+            return loadedMessages;
+        }
+        try {
+            final PerstFrostBoardObject bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
+
+            // the loaded msgs are checked too, their refs may point to msgs which are not yet loaded
+            final LinkedList<FrostMessageObject> messagesToCheck = new LinkedList<FrostMessageObject>(messages);
+            while( !messagesToCheck.isEmpty() ) {
+                final FrostMessageObject mo = messagesToCheck.removeFirst();
+                final List<String> l = mo.getInReplyToList();
+
+                // try to load each referenced msgid, put tried ids into messageIds
+                for(int x=l.size()-1; x>=0; x--) {
+                    final String anId = l.get(x);
+                    if( anId == null ) {
+                        logger.log(Level.SEVERE, "Should never happen: message id is null! msgId="+mo.getMessageId());
+                        continue;
+                    }
+                    if( !messageIds.add(anId) ) {
+                        continue; // already loaded or tried
+                    }
+
+                    FrostMessageObject fmo = null;
+                    final PerstFrostMessageObject p = (bo != null) ? bo.getMessageIdIndex().get(anId) : null;
+                    if( p != null && (showDeleted || !p.isDeleted) ) {
+                        fmo = p.toFrostMessageObject(board, false, false);
+                    } else {
+                        // for each missing msg create a dummy FrostMessageObject and add it to tree.
+                        // if the missing msg arrives later, replace dummy with true msg in tree
+                        final ArrayList<String> ll = new ArrayList<String>(l.subList(0, x));
+                        fmo = new FrostMessageObject(anId, board, ll);
+                    }
+                    loadedMessages.add(fmo);
+                    messagesToCheck.add(fmo);
+                }
+            }
+            return loadedMessages;
+        } finally {
+            endThreadTransaction();
+        }
+    }
+
     public void retrieveMessageContent(final FrostMessageObject mo) {
         if( mo.getPerstFrostMessageObject() != null ) {
             mo.getPerstFrostMessageObject().retrieveMessageContent(mo);
@@ -544,25 +681,78 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
     }
 
     /**
-     * Runs during startup only, does not need transaction locking.
+     * Returns the date of the oldest valid or invalid message of the board with
+     * startDate <= date < endDate, or -1 if there is none.
+     * Used by the MessageExpirationThread to find the next day to expire.
+     */
+    public long getOldestMessageDate(final Board board, final long startDate, final long endDate) {
+        if( !beginCooperativeThreadTransaction() ) {
+            return -1;
+        }
+        try {
+            final PerstFrostBoardObject bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
+            if( bo == null ) {
+                return -1;
+            }
+            long oldestDate = -1;
+            final Iterator<PerstFrostMessageObject> i = bo.getMessageIndex().iterator(startDate, endDate - 1, GenericIndex.ASCENT_ORDER);
+            if( i.hasNext() ) {
+                oldestDate = i.next().dateAndTime;
+            }
+            final Iterator<PerstFrostMessageObject> ii = bo.getInvalidMessagesIndex().iterator(startDate, endDate - 1, GenericIndex.ASCENT_ORDER);
+            if( ii.hasNext() ) {
+                final long invalidDate = ii.next().dateAndTime;
+                if( oldestDate < 0 || invalidDate < oldestDate ) {
+                    oldestDate = invalidDate;
+                }
+            }
+            return oldestDate;
+        } finally {
+            endThreadTransaction();
+        }
+    }
+
+    /**
+     * Passes the messages of the board with startDate <= date < endDate to the callback, which
+     * decides if they are deleted. Invalid messages in the range are always deleted.
+     * Runs in one EXCLUSIVE transaction that covers the MessageContentStorage too, so the
+     * MessageExpirationThread processes small date ranges to keep the transactions short.
+     * @return  the count of deleted valid messages, or -1 if the storages are not available
      */
-    public void retrieveMessagesForArchive(
+    public int expireMessages(
             final Board board,
-            final int maxDaysOld,
+            final long startDate,
+            final long endDate,
             final boolean archiveKeepUnread,
             final boolean archiveKeepFlaggedAndStarred,
             final MessageArchivingCallback mc)
     {
-        final DateTime xDaysAgo = new DateTime(DateTimeZone.UTC).minusDays(maxDaysOld);
-        final long maxDateTime = xDaysAgo.withTimeAtStartOfDay().getMillis();
+        if( !beginInsertBatch() ) {
+            return -1;
+        }
+        try {
+            return expireMessagesInTransaction(board, startDate, endDate, archiveKeepUnread, archiveKeepFlaggedAndStarred, mc);
+        } finally {
+            endInsertBatch();
+        }
+    }
 
+    private int expireMessagesInTransaction(
+            final Board board,
+            final long startDate,
+            final long endDate,
+            final boolean archiveKeepUnread,
+            final boolean archiveKeepFlaggedAndStarred,
+            final MessageArchivingCallback mc)
+    {
         final PerstFrostBoardObject bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
         if( bo == null ) {
             logger.severe("error: no perst board for archive");
-            return;
+            return 0;
         }
+        int deletedCount = 0;
         // normal messages in date range
-        final Iterator<PerstFrostMessageObject> i = bo.getMessageIndex().iterator(Long.MIN_VALUE, maxDateTime, GenericIndex.ASCENT_ORDER);
+        final Iterator<PerstFrostMessageObject> i = bo.getMessageIndex().iterator(startDate, endDate - 1, GenericIndex.ASCENT_ORDER);
         while(i.hasNext()) {
             final PerstFrostMessageObject p = i.next();
             if( archiveKeepUnread && p.isNew) {
@@ -574,7 +764,7 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
             final FrostMessageObject mo = p.toFrostMessageObject(board, false, false);
             final int mode = mc.messageRetrieved(mo);
             if( mode == MessageArchivingCallback.STOP_ERROR ) {
-                return;
+                return deletedCount;
             } else if( mode == MessageArchivingCallback.DELETE_MESSAGE ) {
                 // delete msg and internal perst objs, also remove from indices and maybe remove empty identitiesMessages
 
@@ -589,6 +779,7 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 if( p.isStarred ) {
                     bo.getStarredMessageIndex().remove(p.dateAndTime, p);
                 }
+                bo.updateMessageCounts(getStorage(), p.dateAndTime, -1, p.isNew?-1:0, p.isFlagged?-1:0, p.isStarred?-1:0);
 
                 if( mo.isSignatureStatusVERIFIED() ) {
                     final PerstIdentitiesMessages pim = storageRoot.getIdentitiesMessages().get(p.fromName);
@@ -604,20 +795,80 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 if( p.messageId != null ) {
                     bo.getMessageIdIndex().remove(p.messageId);
                 }
+                bo.removeFromThreadIndex(p);
+
+                MessageSearchIndexStorage.inst().removeMessage(
+                        bo.getBoardId(),
+                        p.getOid(),
+                        p.dateAndTime,
+                        p.fromName,
+                        p.subject,
+                        MessageContentStorage.inst().getContentForOid(p.getOid()));
 
                 p.deallocate();
+                deletedCount++;
             }
         }
 
         // delete invalid messages in date range
-        final Iterator<PerstFrostMessageObject> ii = bo.getInvalidMessagesIndex().iterator(Long.MIN_VALUE, maxDateTime, GenericIndex.ASCENT_ORDER);
+        final Iterator<PerstFrostMessageObject> ii = bo.getInvalidMessagesIndex().iterator(startDate, endDate - 1, GenericIndex.ASCENT_ORDER);
         while(ii.hasNext()) {
             final PerstFrostMessageObject p = ii.next();
             ii.remove();
             p.deallocate();
         }
+        return deletedCount;
+    }
+
+    /**
+     * Adds all valid msgs of the board to the MessageSearchIndexStorage, if this was not done before.
+     * Needed once for boards of older Frost versions, new msgs are indexed on insert.
+     */
+    public void buildSearchIndex(final Board board) {
+        if( !beginCooperativeThreadTransaction() ) {
+            return;
+        }
+        final PerstFrostBoardObject bo;
+        try {
+            bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
+            if( bo == null || bo.isSearchIndexComplete() ) {
+                return;
+            }
+            logger.warning("Building the search index of board '"+board.getName()+"'...");
+            int count = 0;
+            for( final PerstFrostMessageObject pmo : bo.getMessageIndex() ) {
+                MessageSearchIndexStorage.inst().addMessage(
+                        bo.getBoardId(),
+                        pmo.getOid(),
+                        pmo.dateAndTime,
+                        pmo.fromName,
+                        pmo.subject,
+                        MessageContentStorage.inst().getContentForOid(pmo.getOid()));
+                count++;
+                if( count % 500 == 0 ) {
+                    MessageSearchIndexStorage.inst().commit();
+                }
+            }
+        } finally {
+            endThreadTransaction();
+        }
+
+        if( !beginExclusiveThreadTransaction() ) {
+            return;
+        }
+        try {
+            // msgs inserted in the meantime were indexed by insertMessage()
+            bo.setSearchIndexComplete(true);
+        } finally {
+            endThreadTransaction();
+        }
     }
 
+    /**
+     * Retrieves the msgs of the board for the search. If searchTerms are provided and the board is in the
+     * search index, only the msgs which contain all terms are retrieved (see MessageSearchIndexStorage.getSearchTerms()),
+     * otherwise all msgs in the date range.
+     */
     public void retrieveMessagesForSearch(
             final Board board,
             final long startDate,
@@ -626,6 +877,7 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
             final boolean withContent,
             final boolean withAttachments,
             final boolean showDeleted,
+            final List<String> searchTerms,
             final MessageCallback mc)
     {
         if( !beginCooperativeThreadTransaction() ) {
@@ -638,6 +890,24 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 return;
             }
 
+            if( searchTerms != null && !searchTerms.isEmpty() && bo.isSearchIndexComplete() ) {
+                final List<PerstFrostMessageObject> candidates =
+                    retrieveSearchCandidates(bo, startDate, endDate, searchInDisplayedMessages, searchTerms);
+                if( candidates != null ) {
+                    for( final PerstFrostMessageObject p : candidates ) {
+                        if(!showDeleted && p.isDeleted) {
+                            continue;
+                        }
+                        final FrostMessageObject mo = p.toFrostMessageObject(board, withContent, withAttachments);
+                        final boolean shouldStop = mc.messageRetrieved(mo);
+                        if( shouldStop ) {
+                            break;
+                        }
+                    }
+                    return;
+                }
+            }
+
             final Iterator i;
 
             // normal messages in date range
@@ -672,6 +942,103 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
         }
     }
 
+    /**
+     * Returns the msgs of the board which contain all searchTerms according to the search index,
+     * sorted by date. The caller must hold a transaction.
+     * @return  the msgs, or null if the search index is not available
+     */
+    private List<PerstFrostMessageObject> retrieveSearchCandidates(
+            final PerstFrostBoardObject bo,
+            final long startDate,
+            final long endDate,
+            final boolean searchInDisplayedMessages,
+            final List<String> searchTerms)
+    {
+        // displayed msgs include all unread, flagged and starred msgs, also those which are not in date range
+        final Set<Integer> oids = MessageSearchIndexStorage.inst().getCandidateMessageOids(
+                bo.getBoardId(),
+                searchTerms,
+                searchInDisplayedMessages ? Long.MIN_VALUE : startDate,
+                searchInDisplayedMessages ? Long.MAX_VALUE : endDate);
+        if( oids == null ) {
+            return null;
+        }
+
+        final List<PerstFrostMessageObject> candidates = new ArrayList<PerstFrostMessageObject>(oids.size());
+        for( final Integer oid : oids ) {
+            final Object obj;
+            try {
+                obj = getStorage().getObjectByOID(oid.intValue());
+            } catch(final StorageError e) {
+                continue; // outdated index entry, msg was deleted
+            }
+            if( !(obj instanceof PerstFrostMessageObject) ) {
+                continue;
+            }
+            final PerstFrostMessageObject p = (PerstFrostMessageObject)obj;
+            final boolean inDateRange = (p.dateAndTime >= startDate && p.dateAndTime <= endDate);
+            if( !inDateRange && !(searchInDisplayedMessages && (p.isNew || p.isFlagged || p.isStarred)) ) {
+                continue;
+            }
+            if( !isInMessageIndex(bo, p) ) {
+                continue; // outdated index entry, oid was reused
+            }
+            candidates.add(p);
+        }
+
+        Collections.sort(candidates, new Comparator<PerstFrostMessageObject>() {
+            public int compare(final PerstFrostMessageObject p1, final PerstFrostMessageObject p2) {
+                return Long.compare(p1.dateAndTime, p2.dateAndTime);
+            }
+        });
+        return candidates;
+    }
+
+    /**
+     * Returns the stored object of the message, or null if the message is not in the storage anymore.
+     * The shown messages are kept while the MessageExpirationThread archives or deletes messages,
+     * so the PerstFrostMessageObject referenced by the message could already be deallocated.
+     */
+    private PerstFrostMessageObject findStoredMessage(final PerstFrostBoardObject bo, final FrostMessageObject mo) {
+        final PerstFrostMessageObject p = mo.getPerstFrostMessageObject();
+        final int oid = p.getOid();
+        if( oid == 0 ) {
+            return null; // deallocated
+        }
+        PerstFrostMessageObject stored = findInIndex(bo.getMessageIndex(), p.dateAndTime, oid);
+        if( stored == null ) {
+            stored = findInIndex(bo.getInvalidMessagesIndex(), p.dateAndTime, oid);
+        }
+        if( stored != null && stored != p ) {
+            mo.setPerstFrostMessageObject(stored);
+        }
+        return stored;
+    }
+
+    private static PerstFrostMessageObject findInIndex(final Index<PerstFrostMessageObject> ix, final long dateAndTime, final int oid) {
+        if( ix == null ) {
+            return null;
+        }
+        final Iterator<PerstFrostMessageObject> i = ix.iterator(dateAndTime, dateAndTime, GenericIndex.ASCENT_ORDER);
+        while( i.hasNext() ) {
+            final PerstFrostMessageObject candidate = i.next();
+            if( candidate.getOid() == oid ) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean isInMessageIndex(final PerstFrostBoardObject bo, final PerstFrostMessageObject p) {
+        final Iterator<PerstFrostMessageObject> i = bo.getMessageIndex().iterator(p.dateAndTime, p.dateAndTime, GenericIndex.ASCENT_ORDER);
+        while( i.hasNext() ) {
+            if( ((PersistentIterator)i).nextOid() == p.getOid() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public DateTime getDateTimeOfLatestMessage(final Board board) {
         if( !beginCooperativeThreadTransaction() ) {
             return null;
@@ -754,6 +1121,127 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
         }
     }
 
+    /**
+     * Loads the next page of msg threads of the board, for the paged threaded view of large boards.
+     * The threads are found by walking the msgs from the newest to the oldest one. Each found thread is
+     * loaded completely through the thread index, its root msg and all replies which are shown (the same
+     * msgs as for retrieveMessagesForShow() with SHOW_DEFAULT). Referenced msgs which are not shown are
+     * loaded later by retrieveInReplyToMessages().
+     * @param maxThreads  the number of threads to load
+     */
+    public void retrieveMessageThreadsForShow(
+            final Board board,
+            final int maxDaysBack,
+            final boolean showDeleted,
+            final MessageThreadPager pager,
+            final int maxThreads,
+            final MessageCallback mc)
+    {
+        final DateTime xDaysAgo = new DateTime(DateTimeZone.UTC).minusDays(maxDaysBack);
+        final long minDateTime = xDaysAgo.withTimeAtStartOfDay().getMillis();
+
+        if( !beginCooperativeThreadTransaction() ) {
+            return;
+        }
+        try {
+            final PerstFrostBoardObject bo = storageRoot.getBoardsByName().get(board.getNameLowerCase());
+            if( bo == null ) {
+                logger.severe("error: no perst board for show");
+                pager.setComplete();
+                return;
+            }
+
+            // the walk restarts at the date of the last walked msg, msgs of loaded threads are skipped
+            final Iterator<PerstFrostMessageObject> i =
+                bo.getMessageIndex().iterator(Long.MIN_VALUE, pager.getNextDateTime(), GenericIndex.DESCENT_ORDER);
+            final Set<Integer> loadedOids = new HashSet<Integer>();
+            int threadCount = 0;
+            while( threadCount < maxThreads ) {
+                if( !i.hasNext() ) {
+                    pager.setComplete();
+                    break;
+                }
+                final PerstFrostMessageObject p = i.next();
+                if( !isShownMessage(p, minDateTime, showDeleted) ) {
+                    continue;
+                }
+                pager.setNextDateTime(p.dateAndTime);
+
+                if( p.messageId == null ) {
+                    // old msg, a thread of its own
+                    if( pager.addThreadId("#" + p.getOid()) ) {
+                        threadCount++;
+                        if( mc.messageRetrieved(p.toFrostMessageObject(board, false, false)) ) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+
+                final String threadId = getThreadRootId(bo, p);
+                if( !pager.addThreadId(threadId) ) {
+                    continue; // loaded with its thread
+                }
+                threadCount++;
+
+                final PerstFrostMessageObject root = bo.getMessageIdIndex().get(threadId);
+                if( root != null && isShownMessage(root, minDateTime, showDeleted) && loadedOids.add(root.getOid()) ) {
+                    if( mc.messageRetrieved(root.toFrostMessageObject(board, false, false)) ) {
+                        return;
+                    }
+                }
+
+                // the replies of the root, and the replies to msgs with incomplete inReplyTo lists
+                final LinkedList<String> parentIds = new LinkedList<String>();
+                final Set<String> visitedIds = new HashSet<String>();
+                parentIds.add(threadId);
+                visitedIds.add(threadId);
+                while( !parentIds.isEmpty() ) {
+                    final String parentId = parentIds.removeFirst();
+                    for( final PerstFrostMessageObject reply : bo.getThreadIndex().getList(parentId, parentId) ) {
+                        if( reply.messageId != null && visitedIds.add(reply.messageId) ) {
+                            parentIds.add(reply.messageId);
+                        }
+                        if( isShownMessage(reply, minDateTime, showDeleted) && loadedOids.add(reply.getOid()) ) {
+                            if( mc.messageRetrieved(reply.toFrostMessageObject(board, false, false)) ) {
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            endThreadTransaction();
+        }
+    }
+
+    /**
+     * Same selection as retrieveMessagesForShow() with SHOW_DEFAULT: msgs in date range,
+     * and all unread, flagged and starred msgs.
+     */
+    private boolean isShownMessage(final PerstFrostMessageObject p, final long minDateTime, final boolean showDeleted) {
+        if( !showDeleted && p.isDeleted ) {
+            return false;
+        }
+        return p.dateAndTime >= minDateTime || p.isNew || p.isFlagged || p.isStarred;
+    }
+
+    /**
+     * Follows the first inReplyTo ids up to the thread root, the lists sent by some clients are incomplete.
+     * The root msg itself may be missing.
+     */
+    private String getThreadRootId(final PerstFrostBoardObject bo, final PerstFrostMessageObject p) {
+        String threadRootId = p.messageId;
+        String firstId = p.getFirstInReplyToId();
+        final Set<String> visitedIds = new HashSet<String>();
+        while( firstId != null && visitedIds.add(firstId) ) {
+            threadRootId = firstId;
+            final PerstFrostMessageObject parent = bo.getMessageIdIndex().get(firstId);
+            firstId = (parent != null) ? parent.getFirstInReplyToId() : null;
+        }
+        return threadRootId;
+    }
+
     public void setAllMessagesRead(final Board board) {
         if( !beginExclusiveThreadTransaction() ) {
             return;
@@ -771,6 +1259,7 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 pmo.modify();
             }
             bo.getUnreadMessageIndex().clear();
+            bo.clearUnreadMessageCounts();
         } finally {
             endThreadTransaction();
         }
@@ -791,16 +1280,20 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
             }
 
             for( final FrostMessageObject mo : msgs ) {
-                final PerstFrostMessageObject pmo = mo.getPerstFrostMessageObject();
-                if( pmo == null ) {
+                if( mo.getPerstFrostMessageObject() == null ) {
                     logger.severe("error: no perst obj in msg");
                     continue;
                 }
+                final PerstFrostMessageObject pmo = findStoredMessage(bo, mo);
+                if( pmo == null ) {
+                    continue; // expired meanwhile
+                }
                 if( pmo.isNew ) {
                     // was unread, is read now -> remove from unreadIndex
                     mo.setNew(false);
                     pmo.isNew = false;
                     bo.getUnreadMessageIndex().remove(pmo.dateAndTime, pmo);
+                    bo.updateMessageCounts(getStorage(), pmo.dateAndTime, 0, -1, 0, 0);
                     pmo.modify();
                 }
             }
@@ -829,7 +1322,11 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 return;
             }
 
-            final PerstFrostMessageObject p = mo.getPerstFrostMessageObject();
+            final PerstFrostMessageObject p = findStoredMessage(bo, mo);
+            if( p == null ) {
+                logger.info("Message was expired meanwhile, update skipped");
+                return;
+            }
 
             if( p.isNew && !mo.isNew() ) {
                 // was unread, is read now -> remove from unreadIndex
@@ -855,6 +1352,13 @@ public class MessageStorage extends AbstractFrostStorage implements ExitSavable
                 bo.getStarredMessageIndex().put(p.dateAndTime, p);
             }
 
+            final int unreadDelta = (mo.isNew()?1:0) - (p.isNew?1:0);
+            final int flaggedDelta = (mo.isFlagged()?1:0) - (p.isFlagged?1:0);
+            final int starredDelta = (mo.isStarred()?1:0) - (p.isStarred?1:0);
+            if( unreadDelta != 0 || flaggedDelta != 0 || starredDelta != 0 ) {
+                bo.updateMessageCounts(getStorage(), p.dateAndTime, 0, unreadDelta, flaggedDelta, starredDelta);
+            }
+
             p.isDeleted = mo.isDeleted();
             p.isNew = mo.isNew();
             p.isReplied = mo.isReplied();
@@ -0,0 +1,63 @@
+/*
+  MessageThreadPager.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import java.util.*;
+
+/**
+ * The position of the paged loading of the msg threads of a board, see
+ * MessageStorage.retrieveMessageThreadsForShow(). The threads are found by walking the msgs
+ * from the newest to the oldest one, each thread is loaded once with all of its msgs.
+ */
+public class MessageThreadPager {
+
+    // date of the last walked msg, the next page continues there
+    private long nextDateTime = Long.MAX_VALUE;
+
+    // ids of the loaded threads; a msg without messageId is a thread of its own, with the id "#oid"
+    private final Set<String> loadedThreadIds = new HashSet<String>();
+
+    private volatile boolean complete = false;
+
+    public long getNextDateTime() {
+        return nextDateTime;
+    }
+
+    public void setNextDateTime(final long nextDateTime) {
+        this.nextDateTime = nextDateTime;
+    }
+
+    /**
+     * @return  false if the thread was already loaded
+     */
+    public boolean addThreadId(final String threadId) {
+        return loadedThreadIds.add(threadId);
+    }
+
+    /**
+     * @return  true if all threads were loaded
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete() {
+        complete = true;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+  PerstCompressedString.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.zip.*;
+
+import org.garret.perst.*;
+
+/**
+ * A message content, stored as deflated UTF-8 bytes. Contents are compressed with the preset
+ * dictionary of the MessageContentStorage once it was trained, and stored uncompressed if
+ * deflating does not make them smaller.
+ */
+public class PerstCompressedString extends Persistent {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte FORMAT_PLAIN = 0;
+    private static final byte FORMAT_DEFLATE = 1;
+    private static final byte FORMAT_DEFLATE_DICTIONARY = 2;
+
+    private byte format;
+    private int length; // length of the uncompressed UTF-8 bytes
+    private byte[] data;
+
+    public PerstCompressedString() {}
+
+    /**
+     * @param dictionary  the preset dictionary, or null if none was trained yet
+     */
+    public PerstCompressedString(final String value, final byte[] dictionary) {
+        final byte[] bytes = value.getBytes(UTF8);
+        length = bytes.length;
+
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if( dictionary != null ) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            final byte[] buf = new byte[4096];
+            while( !deflater.finished() && out.size() < bytes.length ) {
+                final int len = deflater.deflate(buf);
+                out.write(buf, 0, len);
+            }
+            if( deflater.finished() && out.size() < bytes.length ) {
+                format = (dictionary != null) ? FORMAT_DEFLATE_DICTIONARY : FORMAT_DEFLATE;
+                data = out.toByteArray();
+            } else {
+                format = FORMAT_PLAIN;
+                data = bytes;
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public boolean isCompressedWithDictionary() {
+        return format == FORMAT_DEFLATE_DICTIONARY;
+    }
+
+    public int getStoredLength() {
+        return data.length;
+    }
+
+    /**
+     * @param dictionary  the preset dictionary of the storage, required if the content was compressed with it
+     */
+    public String getValue(final byte[] dictionary) {
+        if( format == FORMAT_PLAIN ) {
+            return new String(data, UTF8);
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            final byte[] bytes = new byte[length];
+            int pos = 0;
+            while( pos < length ) {
+                final int len = inflater.inflate(bytes, pos, length - pos);
+                if( len == 0 ) {
+                    if( inflater.needsDictionary() ) {
+                        if( dictionary == null ) {
+                            throw new StorageError(StorageError.DATABASE_CORRUPTED, "Missing dictionary of compressed content");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else {
+                        break; // finished, or input is missing
+                    }
+                }
+                pos += len;
+            }
+            if( pos != length ) {
+                throw new StorageError(StorageError.DATABASE_CORRUPTED, "Truncated compressed content");
+            }
+            return new String(bytes, UTF8);
+        } catch(final DataFormatException e) {
+            throw new StorageError(StorageError.DATABASE_CORRUPTED, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public boolean recursiveLoading() {
+        return false;
+    }
+}
@@ -18,6 +18,8 @@
 */
 package frost.storage.perst.messages;
 
+import java.util.*;
+
 import org.garret.perst.*;
 
 import frost.messaging.frost.boards.*;
@@ -34,6 +36,7 @@ public class PerstFrostBoardObject extends Persistent {
 
     private Index<PerstFrostMessageObject> messageIndex; // key is msgdatetime; only valid msgs
     private Index<PerstFrostMessageObject> messageIdIndex; // key is messageId, only valid msgs
+    private Index<PerstFrostMessageObject> threadIndex; // key is the first inReplyTo id, only valid msgs which are replies
 
     // key is msgdatetime; only valid msgs; only unread msgs; msgs are in messageIndex too!
     private Index<PerstFrostMessageObject> unreadMessageIndex;
@@ -43,6 +46,12 @@ public class PerstFrostBoardObject extends Persistent {
 
     private Index<PerstFrostMessageObject> invalidMessagesIndex; // key is msgdatetime; only invalid msgs if stored
 
+    // key is start of the msg day; counters of the msgs in the indices above, maintained by MessageStorage
+    private Index<PerstFrostMessageCounts> messageCountsIndex;
+
+    // true if all valid msgs are in the MessageSearchIndexStorage; false for boards of older versions until indexed
+    private boolean searchIndexComplete;
+
     private IPersistentList<PerstFrostMessageObject> sentMessagesList;
     private IPersistentList<PerstFrostUnsentMessageObject> unsentMessagesList;
     private IPersistentList<PerstFrostUnsentMessageObject> draftMessagesList;
@@ -61,8 +70,13 @@ public class PerstFrostBoardObject extends Persistent {
         flaggedMessageIndex = storage.createIndex(long.class, false);
         starredMessageIndex = storage.createIndex(long.class, false);
 
+        messageCountsIndex = storage.createIndex(long.class, true);
+
+        searchIndexComplete = true; // no msgs yet
+
         // index of unique message ids, messages without messageId are NOT in this index
         messageIdIndex = storage.createIndex(String.class, true);
+        threadIndex = storage.createIndex(String.class, false);
 
         sentMessagesList = storage.createScalableList();
         unsentMessagesList = storage.createScalableList();
@@ -95,6 +109,17 @@ public class PerstFrostBoardObject extends Persistent {
             messageIdIndex.deallocate();
             messageIdIndex = null;
         }
+        if( threadIndex != null ) {
+            threadIndex.deallocate();
+            threadIndex = null;
+        }
+        if( messageCountsIndex != null ) {
+            for( final PerstFrostMessageCounts counts : messageCountsIndex ) {
+                counts.deallocate();
+            }
+            messageCountsIndex.deallocate();
+            messageCountsIndex = null;
+        }
         if( sentMessagesList != null ) {
             sentMessagesList.deallocate();
             sentMessagesList = null;
@@ -152,6 +177,113 @@ public class PerstFrostBoardObject extends Persistent {
         return messageIdIndex;
     }
 
+    /**
+     * Index of the replies by the first id of their inReplyTo list, which is the thread root msg.
+     * Is null for boards created by an older Frost version until createThreadIndex() was called.
+     */
+    public Index<PerstFrostMessageObject> getThreadIndex() {
+        return threadIndex;
+    }
+
+    /**
+     * Creates the thread index from the message index, for boards created before the thread index existed.
+     */
+    public void createThreadIndex(final Storage storage) {
+        threadIndex = storage.createIndex(String.class, false);
+        for( final PerstFrostMessageObject pmo : messageIndex ) {
+            addToThreadIndex(pmo);
+        }
+        modify();
+    }
+
+    public void addToThreadIndex(final PerstFrostMessageObject pmo) {
+        final String threadRootId = pmo.getFirstInReplyToId();
+        if( threadRootId != null ) {
+            threadIndex.put(threadRootId, pmo);
+        }
+    }
+
+    public void removeFromThreadIndex(final PerstFrostMessageObject pmo) {
+        final String threadRootId = pmo.getFirstInReplyToId();
+        if( threadRootId != null ) {
+            threadIndex.remove(threadRootId, pmo);
+        }
+    }
+
+    /**
+     * Per day counters of all valid msgs, key is the start of the day (UTC).
+     * Is null for boards created by an older Frost version until createMessageCounts() was called.
+     */
+    public Index<PerstFrostMessageCounts> getMessageCountsIndex() {
+        return messageCountsIndex;
+    }
+
+    /**
+     * Creates the per day counters from the message indices, for boards created before the counters existed.
+     */
+    public void createMessageCounts(final Storage storage) {
+        messageCountsIndex = storage.createIndex(long.class, true);
+        for( final PerstFrostMessageObject pmo : messageIndex ) {
+            updateMessageCounts(storage, pmo.dateAndTime, 1, pmo.isNew?1:0, pmo.isFlagged?1:0, pmo.isStarred?1:0);
+        }
+        modify();
+    }
+
+    /**
+     * Adds the deltas to the counters of the day of the msg.
+     */
+    public void updateMessageCounts(
+            final Storage storage,
+            final long dateAndTime,
+            final int messages,
+            final int unread,
+            final int flagged,
+            final int starred)
+    {
+        final long day = PerstFrostMessageCounts.getDayOf(dateAndTime);
+        PerstFrostMessageCounts counts = messageCountsIndex.get(day);
+        if( counts == null ) {
+            counts = new PerstFrostMessageCounts(day);
+            counts.makePersistent(storage);
+            messageCountsIndex.put(day, counts);
+        }
+        counts.add(messages, unread, flagged, starred);
+        counts.modify();
+    }
+
+    /**
+     * Sets the unread counters of all days to 0.
+     */
+    public void clearUnreadMessageCounts() {
+        for( final PerstFrostMessageCounts counts : messageCountsIndex ) {
+            if( counts.getUnreadCount() != 0 ) {
+                counts.clearUnreadCount();
+                counts.modify();
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the counters of all days starting with minDay.
+     */
+    public PerstFrostMessageCounts sumMessageCounts(final long minDay) {
+        final PerstFrostMessageCounts sum = new PerstFrostMessageCounts(minDay);
+        final Iterator<PerstFrostMessageCounts> i = messageCountsIndex.iterator(minDay, Long.MAX_VALUE, GenericIndex.ASCENT_ORDER);
+        while( i.hasNext() ) {
+            sum.add(i.next());
+        }
+        return sum;
+    }
+
+    public boolean isSearchIndexComplete() {
+        return searchIndexComplete;
+    }
+
+    public void setSearchIndexComplete(final boolean complete) {
+        searchIndexComplete = complete;
+        modify();
+    }
+
     public IPersistentList<PerstFrostMessageObject> getSentMessagesList() {
         return sentMessagesList;
     }
@@ -0,0 +1,84 @@
+/*
+  PerstFrostMessageCounts.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import org.garret.perst.*;
+
+/**
+ * Message counters of one board for one day (UTC). Only valid messages are counted,
+ * the counters always match the message indices of the PerstFrostBoardObject.
+ * Unpersisted instances are used to return the sum of several days.
+ */
+public class PerstFrostMessageCounts extends Persistent {
+
+    public static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    private long day; // start of the day, UTC
+    private int messageCount;
+    private int unreadCount;
+    private int flaggedCount;
+    private int starredCount;
+
+    public PerstFrostMessageCounts() {}
+
+    public PerstFrostMessageCounts(final long day) {
+        this.day = day;
+    }
+
+    /**
+     * Returns the start of the UTC day of the message datetime, the key of the day counters.
+     */
+    public static long getDayOf(final long dateAndTime) {
+        return dateAndTime - Math.floorMod(dateAndTime, MILLIS_PER_DAY);
+    }
+
+    /**
+     * Adds the deltas to the counters, does not call modify().
+     */
+    public void add(final int messages, final int unread, final int flagged, final int starred) {
+        messageCount += messages;
+        unreadCount += unread;
+        flaggedCount += flagged;
+        starredCount += starred;
+    }
+
+    public void add(final PerstFrostMessageCounts counts) {
+        add(counts.messageCount, counts.unreadCount, counts.flaggedCount, counts.starredCount);
+    }
+
+    public void clearUnreadCount() {
+        unreadCount = 0;
+    }
+
+    public long getDay() {
+        return day;
+    }
+    public int getMessageCount() {
+        return messageCount;
+    }
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+    public int getFlaggedCount() {
+        return flaggedCount;
+    }
+    public int getStarredCount() {
+        return starredCount;
+    }
+}
@@ -18,6 +18,8 @@
 */
 package frost.storage.perst.messages;
 
+import java.util.*;
+
 import org.garret.perst.*;
 import org.joda.time.*;
 
@@ -68,6 +70,23 @@ public class PerstFrostMessageObject extends Persistent {
         return false;
     }
 
+    /**
+     * Returns the first id of the inReplyTo list, the id of the thread root msg, or null if this msg is no reply.
+     */
+    public String getFirstInReplyToId() {
+        if( inReplyTo == null ) {
+            return null;
+        }
+        final StringTokenizer st = new StringTokenizer(inReplyTo, ",");
+        while( st.hasMoreTokens() ) {
+            final String r = st.nextToken().trim();
+            if( r.length() > 0 ) {
+                return r;
+            }
+        }
+        return null;
+    }
+
     public PerstFrostMessageObject() {}
 
     public PerstFrostMessageObject(final FrostMessageObject mo, final Storage store, final boolean useTransaction) {
@@ -153,22 +172,7 @@ public class PerstFrostMessageObject extends Persistent {
     }
 
     public void retrieveAttachments(final FrostMessageObject mo) {
-        final PerstAttachments pa = MessageContentStorage.inst().getAttachmentsForOid(getOid());
-        if( pa != null ) {
-            if( pa.getBoardAttachments() != null ) {
-                for( final PerstBoardAttachment p : pa.getBoardAttachments() ) {
-                    final Board b = new Board(p.name, p.pubKey, p.privKey, p.description);
-                    final BoardAttachment ba = new BoardAttachment(b);
-                    mo.addAttachment(ba);
-                }
-            }
-            if( pa.getFileAttachments() != null ) {
-                for( final PerstFileAttachment p : pa.getFileAttachments() ) {
-                    final FileAttachment fa = new FileAttachment(p.name, p.chkKey, p.size);
-                    mo.addAttachment(fa);
-                }
-            }
-        }
+        MessageContentStorage.inst().retrieveAttachmentsForOid(getOid(), mo);
     }
 
     public DateTime getDateTime() {
@@ -196,9 +200,10 @@ public class PerstFrostMessageObject extends Persistent {
 
         mo.setMessageId(messageId);
         mo.setInReplyTo(inReplyTo);
-        mo.setDateAndTime(getDateTime());
+        mo.setDateAndTimeMillis(dateAndTime);
         mo.setIndex(msgIndex);
-        mo.setFromName(fromName);
+        // the sender names are shared by all msgs of a sender
+        mo.setFromName((fromName != null) ? fromName.intern() : null);
         mo.setSubject(subject);
         if( recipientName != null && recipientName.length() == 0 ) {
             recipientName = null;
@@ -0,0 +1,78 @@
+/*
+  PerstPublicKey.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import org.garret.perst.*;
+
+/**
+ * A public key in the shared key table of the MessageContentStorage.
+ * Each identity's key is stored only once and referenced by all messages signed with it.
+ */
+public class PerstPublicKey extends Persistent {
+
+    private String value;
+    private int refCount;
+
+    public PerstPublicKey() {}
+
+    public PerstPublicKey(final String v) {
+        value = v;
+        refCount = 0;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void incRefCount() {
+        refCount++;
+        modify();
+    }
+
+    /**
+     * @return  the remaining number of references
+     */
+    public int decRefCount() {
+        refCount--;
+        modify();
+        return refCount;
+    }
+
+    /**
+     * Hash of a public key, the key of the shared key table.
+     * 64-bit FNV-1a, collisions are resolved by comparing the values.
+     */
+    public static long computeHash(final String publicKey) {
+        long h = 0xcbf29ce484222325L;
+        for( int i = 0; i < publicKey.length(); i++ ) {
+            h ^= publicKey.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean recursiveLoading() {
+        return false;
+    }
+}
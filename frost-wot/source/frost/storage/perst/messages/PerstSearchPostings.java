@@ -0,0 +1,92 @@
+/*
+  PerstSearchPostings.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.storage.perst.messages;
+
+import java.util.*;
+
+import org.garret.perst.*;
+
+/**
+ * The message oids of one search index term (board, field, trigram and day).
+ */
+public class PerstSearchPostings extends Persistent {
+
+    private int[] messageOids;
+    private int count;
+
+    public PerstSearchPostings() {}
+
+    public PerstSearchPostings(final int messageOid) {
+        messageOids = new int[] { messageOid };
+        count = 1;
+    }
+
+    /**
+     * @return  false if the oid was already contained
+     */
+    public boolean add(final int messageOid) {
+        if( indexOf(messageOid) >= 0 ) {
+            return false;
+        }
+        if( count == messageOids.length ) {
+            messageOids = Arrays.copyOf(messageOids, count * 2);
+        }
+        messageOids[count++] = messageOid;
+        modify();
+        return true;
+    }
+
+    /**
+     * @return  false if the oid was not contained
+     */
+    public boolean remove(final int messageOid) {
+        final int pos = indexOf(messageOid);
+        if( pos < 0 ) {
+            return false;
+        }
+        count--;
+        messageOids[pos] = messageOids[count];
+        modify();
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void addAllTo(final Set<Integer> oids) {
+        for( int x = 0; x < count; x++ ) {
+            oids.add(messageOids[x]);
+        }
+    }
+
+    private int indexOf(final int messageOid) {
+        for( int x = 0; x < count; x++ ) {
+            if( messageOids[x] == messageOid ) {
+                return x;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean recursiveLoading() {
+        return false;
+    }
+}
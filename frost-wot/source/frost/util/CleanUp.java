@@ -24,17 +24,15 @@ import java.util.logging.*;
 
 import frost.*;
 import frost.gui.*;
-import frost.messaging.frost.*;
 import frost.messaging.frost.boards.*;
 import frost.storage.*;
 import frost.storage.perst.*;
 import frost.storage.perst.filelist.*;
-import frost.storage.perst.messagearchive.*;
-import frost.storage.perst.messages.*;
 
 /**
  * Expire messages and cleans several database tables.
- * Is only called during startup of frost, never during runtime.
+ * Is only called during startup of frost, never during runtime. The messages are expired
+ * afterwards by the MessageExpirationThread, so they do not delay the startup.
  */
 public class CleanUp {
 
@@ -51,11 +49,11 @@ public class CleanUp {
     private static Splashscreen splashScreen;
 
     /**
-     * Expire messages during startup of Frost.
-     * Clean indexslot tables and file tables.
+     * Clean indexslot tables and file tables during startup of Frost.
      * Gets the mode to use from settings.
+     * @return  the message expiration to start after the startup, or null if it is not due
      */
-    public static void runExpirationTasks(final Splashscreen sp, final List<Board> boardList) {
+    public static MessageExpirationThread runExpirationTasks(final Splashscreen sp, final List<Board> boardList) {
 
         splashScreen = sp;
 
@@ -71,11 +69,16 @@ public class CleanUp {
         final long intervalMillis = (cleanupDatabaseInterval) * 24L * 60L * 60L * 1000L; // interval days into millis
 
         // when last cleanup was before the chosen interval days then run cleanup and archiving
-        if( forceCleanupThisStartup || (timeSinceCleanup > intervalMillis) ) {
-            cleanStorages(boardList);
+        if( !forceCleanupThisStartup && (timeSinceCleanup <= intervalMillis) ) {
+            return null;
+        }
+        final MessageExpirationThread messageExpiration = cleanStorages(boardList);
+        if( messageExpiration == null ) {
+            // the background expiration updates these when it is finished
             Core.frostSettings.setValue(SettingsClass.DB_CLEANUP_LASTRUN, now);
             Core.frostSettings.setValue(SettingsClass.DB_CLEANUP_FORCESTART, false); // we've executed a cleanup
         }
+        return messageExpiration;
     }
 
     private static void cleanPerstStorages(final List<Board> boardList) {
@@ -86,7 +89,7 @@ public class CleanUp {
         cleanupSharedCHKKeyStorage();
     }
 
-    private static void cleanStorages(final List<Board> boardList) {
+    private static MessageExpirationThread cleanStorages(final List<Board> boardList) {
         int mode;
 
         final String strMode = Core.frostSettings.getValue(SettingsClass.MESSAGE_EXPIRATION_MODE);
@@ -100,15 +103,19 @@ public class CleanUp {
             mode = KEEP_MESSAGES;
         }
 
-        processExpiredMessages(boardList, mode);
-
         splashScreen.setText("Cleaning file list owners");
         cleanupFileListFileOwners();
         splashScreen.setText("Cleaning file list files");
         cleanupFileListFiles();
+
+        return createMessageExpiration(boardList, mode);
     }
 
-    private static void processExpiredMessages(final List<Board> boardList, final int mode) {
+    /**
+     * Logs the expiration mode and returns the background expiration for it.
+     * @return  null if the messages are kept
+     */
+    private static MessageExpirationThread createMessageExpiration(final List<Board> boardList, final int mode) {
 
         if( mode == ARCHIVE_MESSAGES ) {
             logger.info("Expiration mode is ARCHIVE_MESSAGES.");
@@ -118,87 +125,14 @@ public class CleanUp {
             logger.info("Expiration mode is KEEP_MESSAGES.");
         } else {
             logger.severe("ERROR: invalid MODE specified: "+mode);
-            return;
+            return null;
         }
 
         if( mode == KEEP_MESSAGES ) {
             // nothing to do here
-            return;
-        }
-
-        // take maximum
-        int defaultDaysOld = Core.frostSettings.getIntValue(SettingsClass.MESSAGE_EXPIRE_DAYS) + 1;
-
-        if( defaultDaysOld < Core.frostSettings.getIntValue(SettingsClass.MAX_MESSAGE_DISPLAY) ) {
-            defaultDaysOld = Core.frostSettings.getIntValue(SettingsClass.MAX_MESSAGE_DISPLAY) + 1;
-        }
-        if( defaultDaysOld < Core.frostSettings.getIntValue(SettingsClass.MAX_MESSAGE_DOWNLOAD) ) {
-            defaultDaysOld = Core.frostSettings.getIntValue(SettingsClass.MAX_MESSAGE_DOWNLOAD) + 1;
-        }
-
-        for( final Board board : boardList ) {
-
-            int currentDaysOld = defaultDaysOld;
-            if( board.isConfigured() ) {
-                currentDaysOld = Math.max(board.getMaxMessageDisplay(), currentDaysOld);
-                currentDaysOld = Math.max(board.getMaxMessageDownload(), currentDaysOld);
-            }
-
-            final boolean archiveKeepUnread = Core.frostSettings.getBoolValue(SettingsClass.ARCHIVE_KEEP_UNREAD);
-            final boolean archiveKeepFlaggedAndStarred = Core.frostSettings.getBoolValue(SettingsClass.ARCHIVE_KEEP_FLAGGED_AND_STARRED);
-
-            splashScreen.setText("Archiving messages in board: "+board.getName());
-
-            final MessageTableCallback mtCallback = new MessageTableCallback(mode);
-            try {
-                MessageStorage.inst().retrieveMessagesForArchive(
-                        board,
-                        currentDaysOld,
-                        archiveKeepUnread,
-                        archiveKeepFlaggedAndStarred,
-                        mtCallback);
-            } catch(final Throwable t) {
-                logger.log(Level.SEVERE, "Exception during retrieveMessagesForArchive", t);
-                continue;
-            }
-            if( mtCallback.getCount() > 0 ) {
-                logger.warning("INFO: Processed "+mtCallback.getCount()+" expired messages for board "+board.getName());
-            }
-
-            MessageStorage.inst().commit();
-            ArchiveMessageStorage.inst().commit();
-        }
-        MessageStorage.inst().commit();
-        ArchiveMessageStorage.inst().commit();
-
-        logger.info("Finished to process expired messages.");
-    }
-
-    /**
-     * Callback that gets each expired message and tries to insert it into MessageArchive.
-     */
-    private static class MessageTableCallback implements MessageArchivingCallback {
-        int mode;
-        int count = 0;
-        public MessageTableCallback(final int m) { mode = m; }
-        public int messageRetrieved(final FrostMessageObject mo) {
-            // mode is either ARCHIVE or DELETE
-            if( count%100 == 0 ) {
-                MessageStorage.inst().commit();
-                ArchiveMessageStorage.inst().commit();
-            }
-            if( mode == ARCHIVE_MESSAGES ) {
-                // maybe insert into archive
-                final int rc = ArchiveMessageStorage.inst().insertMessage(mo);
-                if( rc == ArchiveMessageStorage.INSERT_ERROR ) {
-                    return MessageArchivingCallback.KEEP_MESSAGE;
-                }
-            }
-            // for ARCHIVE or DELETE delete the message from keypool
-            count++;
-            return MessageArchivingCallback.DELETE_MESSAGE;
+            return null;
         }
-        public int getCount() { return count; }
+        return new MessageExpirationThread(boardList, mode);
     }
 
     /**
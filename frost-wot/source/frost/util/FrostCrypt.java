@@ -41,32 +41,50 @@ import org.bouncycastle.util.encoders.*;
 
 /**
  * Implementation of the crypto layer.
+ *
+ * All methods are thread-safe without a global lock, so the board update threads can verify
+ * signatures in parallel. The stateful signer, ciphers and key generator are kept per thread,
+ * everything else is created per call. The SecureRandom is thread-safe by itself.
  */
 public final class FrostCrypt {
 
     private static final Logger logger = Logger.getLogger(FrostCrypt.class.getName());
 
-    private PSSSigner signer;
-    private SecureRandom secureRandom = null;
+    private static final int PUBLIC_KEY_CACHE_SIZE = 4096;
 
-    private KeyGenerator keyGeneratorAES = null;
+    private final SecureRandom secureRandom;
+
+    // parsed public keys of the identities, used to verify and to encrypt
+    private final RSAPublicKeyCache publicKeyCache = new RSAPublicKeyCache(PUBLIC_KEY_CACHE_SIZE);
+
+    private final ThreadLocal<PSSSigner> signers = new ThreadLocal<PSSSigner>() {
+        @Override
+        protected PSSSigner initialValue() {
+            return new PSSSigner(new RSAEngine(), new SHA1Digest(), 16);
+        }
+    };
+    private final ThreadLocal<KeyGenerator> keyGeneratorsAES = new ThreadLocal<KeyGenerator>();
+    private final ThreadLocal<Cipher> ciphersAES = new ThreadLocal<Cipher>();
+    private final ThreadLocal<Cipher> ciphersRSA = new ThreadLocal<Cipher>();
+    private final ThreadLocal<KeyFactory> keyFactoriesRSA = new ThreadLocal<KeyFactory>();
 
     public FrostCrypt() {
         Security.addProvider(new BouncyCastleProvider());
 
-        signer = new PSSSigner(new RSAEngine(), new SHA1Digest(), 16);
+        SecureRandom random;
         try {
-            secureRandom = SecureRandom.getInstance("SHA1PRNG");
+            random = SecureRandom.getInstance("SHA1PRNG");
         } catch (NoSuchAlgorithmException e) {
-            secureRandom = new SecureRandom();
+            random = new SecureRandom();
         }
+        secureRandom = random;
     }
 
     /**
      * Generate a new RSA 1024 bit key pair.
      * @return String[0] is private key; String[1] is public key
      */
-    public synchronized String[] generateKeys() {
+    public String[] generateKeys() {
 
         RSAKeyPairGenerator keygen = new RSAKeyPairGenerator();
         keygen.init(
@@ -118,7 +136,7 @@ public final class FrostCrypt {
     /**
      * Computes the SHA-1 checksum of given message.
      */
-    public synchronized String digest(String message) {
+    public String digest(String message) {
         try {
             SHA1Digest stomach = new SHA1Digest();
             stomach.reset();
@@ -136,7 +154,7 @@ public final class FrostCrypt {
     /**
      * Computes the SHA-1 checksum of given file.
      */
-    public synchronized String digest(File file) {
+    public String digest(File file) {
         try (
             // NOTE: Java 7+ try-with-resources (autocloseable)
             final FileInputStream fileInputStream = new FileInputStream(file);
@@ -165,7 +183,7 @@ public final class FrostCrypt {
         return null;
     }
 
-    public synchronized String encrypt(String what, String publicKey) {
+    public String encrypt(String what, String publicKey) {
         try {
             byte[] whatBytes = what.getBytes("UTF-8");
             byte[] encryptedBytes = encrypt(whatBytes, publicKey);
@@ -189,7 +207,7 @@ public final class FrostCrypt {
      *
      *  @return null if anything failed.
      */
-    public synchronized byte[] encrypt(byte[] what, String publicKey) {
+    public byte[] encrypt(byte[] what, String publicKey) {
 
         byte[] aesKeyBytes = null;
         Cipher cipherAES = null;
@@ -210,14 +228,11 @@ public final class FrostCrypt {
 
         // prepare RSA, we only need chiperRSA
         try {
-            StringTokenizer keycutter = new StringTokenizer(publicKey, ":");
-            BigInteger Exponent = new BigInteger(Base64.decode(keycutter.nextToken()));
-            BigInteger Modulus = new BigInteger(Base64.decode(keycutter.nextToken()));
-            RSAPublicKeySpec pubKeySpec = new RSAPublicKeySpec(Modulus, Exponent);
+            RSAKeyParameters keyParameters = publicKeyCache.get(publicKey);
+            RSAPublicKeySpec pubKeySpec = new RSAPublicKeySpec(keyParameters.getModulus(), keyParameters.getExponent());
 
-            KeyFactory fact = KeyFactory.getInstance("RSA", "BC");
-            PublicKey pubKey = fact.generatePublic(pubKeySpec);
-            cipherRSA = Cipher.getInstance("RSA/ECB/PKCS1Padding", "BC");
+            PublicKey pubKey = getKeyFactoryRSA().generatePublic(pubKeySpec);
+            cipherRSA = getCipherRSA();
             cipherRSA.init(Cipher.ENCRYPT_MODE, pubKey);
             cipherRSAinSize = cipherRSA.getBlockSize();
             cipherRSAoutSize = cipherRSA.getOutputSize(cipherRSAinSize);
@@ -268,7 +283,7 @@ public final class FrostCrypt {
         return plainOut.toByteArray();
     }
 
-    public synchronized String decrypt(String what, String privateKey) {
+    public String decrypt(String what, String privateKey) {
         try {
             byte[] encBytes = Base64.decode(what.getBytes("ISO-8859-1"));
             byte[] decBytes = decrypt(encBytes, privateKey);
@@ -285,7 +300,7 @@ public final class FrostCrypt {
      * The first 128 byte in array must be the RSA encrypted AES key,
      * remaining data is the AES data. See encrypt().
      */
-    public synchronized byte[] decrypt(byte[] what, String privateKey) {
+    public byte[] decrypt(byte[] what, String privateKey) {
 
         Cipher cipherAES = null;
         Cipher cipherRSA = null;
@@ -306,9 +321,8 @@ public final class FrostCrypt {
                     new BigInteger(Base64.decode(keycutter.nextToken())),
                     new BigInteger(Base64.decode(keycutter.nextToken())));
 
-            KeyFactory fact = KeyFactory.getInstance("RSA", "BC");
-            PrivateKey privKey = fact.generatePrivate(privKeySpec);
-            cipherRSA = Cipher.getInstance("RSA/ECB/PKCS1Padding", "BC");
+            PrivateKey privKey = getKeyFactoryRSA().generatePrivate(privKeySpec);
+            cipherRSA = getCipherRSA();
             cipherRSA.init(Cipher.DECRYPT_MODE, privKey);
             cipherRSAinSize = cipherRSA.getBlockSize();
             cipherRSAoutSize = cipherRSA.getOutputSize(cipherRSAinSize);
@@ -368,7 +382,7 @@ public final class FrostCrypt {
         return plainOut.toByteArray();
     }
 
-    public synchronized String detachedSign(String message, String key){
+    public String detachedSign(String message, String key){
         try {
             byte[] msgBytes = message.getBytes("UTF-8");
             return detachedSign(msgBytes, key);
@@ -377,7 +391,7 @@ public final class FrostCrypt {
         }
         return null;
     }
-    public synchronized String detachedSign(byte[] message, String key) {
+    public String detachedSign(byte[] message, String key) {
 
         StringTokenizer keycutter = new StringTokenizer(key, ":");
         RSAPrivateCrtKeyParameters privKey =
@@ -391,6 +405,7 @@ public final class FrostCrypt {
                 new BigInteger(Base64.decode(keycutter.nextToken())),
                 new BigInteger(Base64.decode(keycutter.nextToken())));
 
+        final PSSSigner signer = signers.get();
         signer.init(true, privKey);
         signer.update(message, 0, message.length);
 
@@ -410,7 +425,7 @@ public final class FrostCrypt {
         return null;
     }
 
-    public synchronized boolean detachedVerify(String message, String key, String sig){
+    public boolean detachedVerify(String message, String key, String sig){
         try {
             byte[] msgBytes = message.getBytes("UTF-8");
             return detachedVerify(msgBytes, key, sig);
@@ -419,15 +434,12 @@ public final class FrostCrypt {
         }
         return false;
     }
-    public synchronized boolean detachedVerify(byte[] message, String key, String _sig) {
+    public boolean detachedVerify(byte[] message, String key, String _sig) {
         try {
             byte[] sig = Base64.decode(_sig.getBytes("ISO-8859-1"));
 
-            StringTokenizer keycutter = new StringTokenizer(key, ":");
-            BigInteger Exponent = new BigInteger(Base64.decode(keycutter.nextToken()));
-            BigInteger Modulus = new BigInteger(Base64.decode(keycutter.nextToken()));
-
-            signer.init(false, new RSAKeyParameters(true, Modulus, Exponent));
+            final PSSSigner signer = signers.get();
+            signer.init(false, publicKeyCache.get(key));
 
             signer.update(message, 0, message.length);
             boolean result = signer.verifySignature(sig);
@@ -439,7 +451,11 @@ public final class FrostCrypt {
         return false;
     }
 
-    public synchronized SecureRandom getSecureRandom() {
+    public RSAPublicKeyCache getPublicKeyCache() {
+        return publicKeyCache;
+    }
+
+    public SecureRandom getSecureRandom() {
         return secureRandom;
     }
 
@@ -465,12 +481,12 @@ public final class FrostCrypt {
 
     /**
      * Called by encrypt() to generate a new random session key for AES.
-     * Must be called synchronized (we use a global object)!
-     * Currently only called by synchronized encrypt().
+     * Uses the KeyGenerator of the calling thread.
      *
      * @return the new session key or null.
      */
     private byte[] generateAESSessionKey() {
+        KeyGenerator keyGeneratorAES = keyGeneratorsAES.get();
         if( keyGeneratorAES == null ) {
             try {
                 keyGeneratorAES = KeyGenerator.getInstance("AES");
@@ -479,6 +495,7 @@ public final class FrostCrypt {
                 return null;
             }
             keyGeneratorAES.init(128); // 192 and 256 bits may not be available!
+            keyGeneratorsAES.set(keyGeneratorAES);
         }
         SecretKey skey = keyGeneratorAES.generateKey();
         byte[] keyBytes = skey.getEncoded(); // 16 bytes
@@ -486,7 +503,8 @@ public final class FrostCrypt {
     }
 
     /**
-     * Builds and returns a new Cipher for AES.
+     * Initializes and returns the AES Cipher of the calling thread.
+     * It is valid until the next call of this method in the same thread.
      */
     private Cipher buildCipherAES(int mode, byte[] aesKey) {
         Cipher cipherAES = null;
@@ -495,7 +513,11 @@ public final class FrostCrypt {
                 return null;
             }
             SecretKeySpec sessionKey = new SecretKeySpec(aesKey, "AES");
-            cipherAES = Cipher.getInstance("AES", "BC");
+            cipherAES = ciphersAES.get();
+            if( cipherAES == null ) {
+                cipherAES = Cipher.getInstance("AES", "BC");
+                ciphersAES.set(cipherAES);
+            }
             cipherAES.init(mode, sessionKey);
 
         } catch(Throwable t) {
@@ -505,6 +527,27 @@ public final class FrostCrypt {
         return cipherAES;
     }
 
+    /**
+     * Returns the RSA Cipher of the calling thread, it must be initialized before each use.
+     */
+    private Cipher getCipherRSA() throws GeneralSecurityException {
+        Cipher cipherRSA = ciphersRSA.get();
+        if( cipherRSA == null ) {
+            cipherRSA = Cipher.getInstance("RSA/ECB/PKCS1Padding", "BC");
+            ciphersRSA.set(cipherRSA);
+        }
+        return cipherRSA;
+    }
+
+    private KeyFactory getKeyFactoryRSA() throws GeneralSecurityException {
+        KeyFactory keyFactory = keyFactoriesRSA.get();
+        if( keyFactory == null ) {
+            keyFactory = KeyFactory.getInstance("RSA", "BC");
+            keyFactoriesRSA.set(keyFactory);
+        }
+        return keyFactory;
+    }
+
     /**
      * Computes the SHA256 checksum of utf-8 string.
      */
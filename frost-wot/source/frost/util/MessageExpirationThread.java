@@ -0,0 +1,244 @@
+/*
+  MessageExpirationThread.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.util;
+
+import java.util.*;
+import java.util.logging.*;
+
+import javax.swing.*;
+
+import org.joda.time.*;
+
+import frost.*;
+import frost.messaging.frost.*;
+import frost.messaging.frost.boards.*;
+import frost.storage.*;
+import frost.storage.perst.messagearchive.*;
+import frost.storage.perst.messages.*;
+
+/**
+ * Archives or deletes the expired messages in the background, started by CleanUp when
+ * the cleanup is due. Each board is processed one day at a time, each day in its own short
+ * transaction, with a pause between the days. The expiration can be paused and resumed,
+ * and it continues at the next startup if Frost is closed before it finished.
+ */
+public class MessageExpirationThread extends Thread implements ExitSavable {
+
+    private static final Logger logger = Logger.getLogger(MessageExpirationThread.class.getName());
+
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+    private static final int SLICE_DELAY = 250; // millis between two days
+
+    private static MessageExpirationThread runningInstance = null;
+
+    private final List<Board> boardList;
+    private final int mode;
+
+    private volatile boolean paused = false;
+    private volatile boolean stopRequested = false;
+
+    private volatile int processedBoardCount = 0;
+    private volatile String currentBoardName = null;
+    private volatile int expiredMessageCount = 0;
+
+    /**
+     * @param mode  CleanUp.ARCHIVE_MESSAGES or CleanUp.DELETE_MESSAGES
+     */
+    public MessageExpirationThread(final List<Board> boardList, final int mode) {
+        super("MessageExpiration");
+        this.boardList = new ArrayList<Board>(boardList);
+        this.mode = mode;
+        setDaemon(true);
+        setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * @return  the running expiration, or null if there is none
+     */
+    public static synchronized MessageExpirationThread getRunningInstance() {
+        return runningInstance;
+    }
+
+    private static synchronized void setRunningInstance(final MessageExpirationThread t) {
+        runningInstance = t;
+    }
+
+    public synchronized void setPaused(final boolean paused) {
+        this.paused = paused;
+        notifyAll();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public int getBoardCount() {
+        return boardList.size();
+    }
+
+    public int getProcessedBoardCount() {
+        return processedBoardCount;
+    }
+
+    public String getCurrentBoardName() {
+        return currentBoardName;
+    }
+
+    public int getExpiredMessageCount() {
+        return expiredMessageCount;
+    }
+
+    /**
+     * Stops the expiration before the storages are closed. The transaction of the current day
+     * is completed, the remaining days are expired at the next startup.
+     */
+    public void exitSave() {
+        synchronized(this) {
+            stopRequested = true;
+            notifyAll();
+        }
+        try {
+            join(10 * 1000);
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        setRunningInstance(this);
+        try {
+            logger.info("Started the background expiration of "+boardList.size()+" boards.");
+            for( final Board board : boardList ) {
+                currentBoardName = board.getName();
+                if( !expireBoard(board) ) {
+                    return; // stopped, the cleanup is still due at the next startup
+                }
+                processedBoardCount++;
+            }
+            currentBoardName = null;
+
+            if( mode == CleanUp.ARCHIVE_MESSAGES ) {
+                // move the archived messages of past years into the read-only segment files
+                ArchiveMessageStorage.inst().sealExpiredPeriods();
+            }
+            Core.frostSettings.setValue(SettingsClass.DB_CLEANUP_LASTRUN, System.currentTimeMillis());
+            Core.frostSettings.setValue(SettingsClass.DB_CLEANUP_FORCESTART, false); // we've executed a cleanup
+            logger.warning("INFO: Finished the background expiration, processed "+expiredMessageCount+" expired messages.");
+        } catch(final Throwable t) {
+            logger.log(Level.SEVERE, "Exception during the background expiration", t);
+        } finally {
+            setRunningInstance(null);
+        }
+    }
+
+    /**
+     * @return  false if the expiration was stopped
+     */
+    private boolean expireBoard(final Board board) {
+        // take maximum
+        int daysOld = Core.frostSettings.getIntValue(SettingsClass.MESSAGE_EXPIRE_DAYS) + 1;
+        daysOld = Math.max(Core.frostSettings.getIntValue(SettingsClass.MAX_MESSAGE_DISPLAY) + 1, daysOld);
+        daysOld = Math.max(Core.frostSettings.getIntValue(SettingsClass.MAX_MESSAGE_DOWNLOAD) + 1, daysOld);
+        if( board.isConfigured() ) {
+            daysOld = Math.max(board.getMaxMessageDisplay(), daysOld);
+            daysOld = Math.max(board.getMaxMessageDownload(), daysOld);
+        }
+        final long maxDateTime = new DateTime(DateTimeZone.UTC).minusDays(daysOld).withTimeAtStartOfDay().getMillis();
+
+        final boolean archiveKeepUnread = Core.frostSettings.getBoolValue(SettingsClass.ARCHIVE_KEEP_UNREAD);
+        final boolean archiveKeepFlaggedAndStarred = Core.frostSettings.getBoolValue(SettingsClass.ARCHIVE_KEEP_FLAGGED_AND_STARRED);
+
+        final ExpirationCallback callback = new ExpirationCallback();
+        int deletedCount = 0;
+        long startDate = Long.MIN_VALUE;
+        while( true ) {
+            if( !waitWhilePaused() ) {
+                return false;
+            }
+            // skip the days without messages
+            final long oldestDate = MessageStorage.inst().getOldestMessageDate(board, startDate, maxDateTime + 1);
+            if( oldestDate < 0 ) {
+                break;
+            }
+            final long dayStart = new DateTime(oldestDate, DateTimeZone.UTC).withTimeAtStartOfDay().getMillis();
+            final long dayEnd = Math.min(dayStart + DAY_MILLIS, maxDateTime + 1);
+
+            final int count = MessageStorage.inst().expireMessages(
+                    board,
+                    Math.max(startDate, dayStart),
+                    dayEnd,
+                    archiveKeepUnread,
+                    archiveKeepFlaggedAndStarred,
+                    callback);
+            if( count < 0 ) {
+                return false; // storages are closed
+            }
+            ArchiveMessageStorage.inst().commit();
+            deletedCount += count;
+            startDate = dayEnd;
+
+            Mixed.wait(SLICE_DELAY);
+        }
+
+        if( deletedCount > 0 ) {
+            logger.warning("INFO: Processed "+deletedCount+" expired messages for board "+board.getName());
+            // a cached message tree of the board may still contain the expired messages
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    TOF.getInstance().messagesExpired(board);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * @return  false if a stop was requested
+     */
+    private synchronized boolean waitWhilePaused() {
+        while( paused && !stopRequested ) {
+            try {
+                wait();
+            } catch(final InterruptedException e) {
+                return false;
+            }
+        }
+        return !stopRequested;
+    }
+
+    /**
+     * Gets each expired message and tries to insert it into the MessageArchive.
+     */
+    private class ExpirationCallback implements MessageArchivingCallback {
+        public int messageRetrieved(final FrostMessageObject mo) {
+            // mode is either ARCHIVE or DELETE
+            if( mode == CleanUp.ARCHIVE_MESSAGES ) {
+                // maybe insert into archive
+                final int rc = ArchiveMessageStorage.inst().insertMessage(mo);
+                if( rc == ArchiveMessageStorage.INSERT_ERROR ) {
+                    return MessageArchivingCallback.KEEP_MESSAGE;
+                }
+            }
+            // for ARCHIVE or DELETE delete the message from keypool
+            expiredMessageCount++;
+            return MessageArchivingCallback.DELETE_MESSAGE;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+  RSAPublicKeyCache.java / Frost
+  Copyright (C) 2016  Frost Project <jtcfrost.sourceforge.net>
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License as
+  published by the Free Software Foundation; either version 2 of
+  the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+*/
+package frost.util;
+
+import java.math.*;
+import java.util.LinkedHashMap; // do not import java.util.*, since its Base64 method clashes with BouncyCastle!
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.*;
+
+import org.bouncycastle.crypto.params.*;
+import org.bouncycastle.util.encoders.*;
+
+/**
+ * Bounded LRU cache of parsed RSA public keys, keyed by the "exponent:modulus" key string.
+ * The same few thousand identities sign everything, so parsing their Base64 keys for each
+ * signature verification or encryption is wasted work.
+ */
+public class RSAPublicKeyCache {
+
+    private final int maxSize;
+
+    // access ordered, the least recently used key first
+    private final LinkedHashMap<String,RSAKeyParameters> keys;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public RSAPublicKeyCache(final int maxSize) {
+        this.maxSize = maxSize;
+        keys = new LinkedHashMap<String,RSAKeyParameters>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String,RSAKeyParameters> eldest) {
+                return size() > RSAPublicKeyCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the parsed public key, parses and caches it if it is not cached yet.
+     * Throws a RuntimeException if the key string is invalid, invalid keys are not cached.
+     */
+    public RSAKeyParameters get(final String publicKey) {
+        synchronized(keys) {
+            final RSAKeyParameters keyParameters = keys.get(publicKey);
+            if( keyParameters != null ) {
+                hitCount.incrementAndGet();
+                return keyParameters;
+            }
+        }
+        missCount.incrementAndGet();
+        // parse outside of the lock, another thread may parse the same key meanwhile
+        final RSAKeyParameters keyParameters = parse(publicKey);
+        synchronized(keys) {
+            keys.put(publicKey, keyParameters);
+        }
+        return keyParameters;
+    }
+
+    private static RSAKeyParameters parse(final String publicKey) {
+        final StringTokenizer keycutter = new StringTokenizer(publicKey, ":");
+        final BigInteger exponent = new BigInteger(Base64.decode(keycutter.nextToken()));
+        final BigInteger modulus = new BigInteger(Base64.decode(keycutter.nextToken()));
+        // flagged as private like before the cache, so BouncyCastle does not run its (slow) public modulus validation
+        return new RSAKeyParameters(true, modulus, exponent);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int size() {
+        synchronized(keys) {
+            return keys.size();
+        }
+    }
+
+    public void clear() {
+        synchronized(keys) {
+            keys.clear();
+        }
+    }
+}
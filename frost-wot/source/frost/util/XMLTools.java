@@ -23,6 +23,7 @@ import java.util.*;
 import java.util.logging.*;
 
 import javax.xml.parsers.*;
+import javax.xml.stream.*;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.*;
 import javax.xml.transform.stream.*;
@@ -50,6 +51,23 @@ public class XMLTools {
         nonValidatingFactory.setValidating(false);
     }
 
+    private static final String REPORT_CDATA_EVENT = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private static final XMLInputFactory streamInputFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory streamOutputFactory = XMLOutputFactory.newInstance();
+
+    static {
+        streamInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        streamInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        streamInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        streamInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        // the JDK reader reports CDATA sections as CHARACTERS by default, but readElementCDATA()
+        // must tell them apart from text. Without this, all CDATA values fall back to the DOM.
+        if( streamInputFactory.isPropertySupported(REPORT_CDATA_EVENT) ) {
+            streamInputFactory.setProperty(REPORT_CDATA_EVENT, Boolean.TRUE);
+        }
+    }
+
     /**
      * creates a document containing a single element - the one
      * returned by getXMLElement of the argument
@@ -111,6 +129,31 @@ public class XMLTools {
         return null;
     }
 
+    /**
+     * Parses XML content from memory and returns a DOM document.
+     * Returns null if the content could not be read, and throws an
+     * IllegalArgumentException if the xml content is not valid.
+     */
+    public static Document parseXmlContent(final byte[] content)
+        throws IllegalArgumentException {
+        try {
+            DocumentBuilder builder;
+            synchronized (nonValidatingFactory) {
+                builder = nonValidatingFactory.newDocumentBuilder();
+            }
+            return builder.parse(new ByteArrayInputStream(content));
+        } catch (final SAXException e) {
+            // A parsing error occurred; the xml input is not valid
+            logger.log(Level.SEVERE, "Parsing of xml content failed", e);
+            throw new IllegalArgumentException();
+        } catch (final ParserConfigurationException e) {
+            logger.log(Level.SEVERE, "Exception thrown in parseXmlContent(byte[] content)", e);
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, "Exception thrown in parseXmlContent(byte[] content)", e);
+        }
+        return null;
+    }
+
     /**
      * This method writes a DOM document to a file.
      */
@@ -239,6 +282,147 @@ public class XMLTools {
         return sb.toString();
     }
 
+    /**
+     * Creates a StAX reader for XML content in memory. DTDs and external entities are not
+     * supported, like for the DOM parser. Adjacent text and CDATA sections are reported
+     * separately; use readElementCDATA() or readElementText() to get the complete value of an element.
+     */
+    public static XMLStreamReader createXmlStreamReader(final byte[] content) throws XMLStreamException {
+        synchronized (streamInputFactory) {
+            return streamInputFactory.createXMLStreamReader(new ByteArrayInputStream(content));
+        }
+    }
+
+    /**
+     * Creates a StAX writer which writes UTF-8 encoded XML to the given stream.
+     */
+    public static XMLStreamWriter createXmlStreamWriter(final OutputStream out) throws XMLStreamException {
+        synchronized (streamOutputFactory) {
+            return streamOutputFactory.createXMLStreamWriter(out, "UTF-8");
+        }
+    }
+
+    /**
+     * Moves the reader to the next child element of the current element.
+     * The reader must be positioned on the start of the parent element, or on the end of
+     * the previous child element (where readElementCDATA(), readElementText() and skipElement() stop).
+     * @return  true if the reader is on the start of a child element, false if the end of
+     *     the parent element (or of the document) was reached
+     */
+    public static boolean nextChildElement(final XMLStreamReader reader) throws XMLStreamException {
+        while( reader.hasNext() ) {
+            final int event = reader.next();
+            if( event == XMLStreamConstants.START_ELEMENT ) {
+                return true;
+            } else if( event == XMLStreamConstants.END_ELEMENT ) {
+                return false;
+            } else if( event == XMLStreamConstants.DTD ) {
+                // like the DOM parser, we don't accept any doctype declaration
+                throw new XMLStreamException("DOCTYPE is not allowed", reader.getLocation());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the concatenated CDATA sections of the current element, and leaves the reader on its end.
+     * Like getChildElementsCDATAValue(), this accepts CDATA sections only: any text (even whitespace),
+     * comment or nested element is rejected.
+     * @return  the content, or null if the element is empty
+     * @throws XMLStreamException  if the element contains anything else than CDATA sections
+     */
+    public static String readElementCDATA(final XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = null;
+        while( reader.hasNext() ) {
+            final int event = reader.next();
+            if( event == XMLStreamConstants.CDATA ) {
+                if( sb == null ) {
+                    sb = new StringBuilder(reader.getTextLength());
+                }
+                sb.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            } else if( event == XMLStreamConstants.END_ELEMENT ) {
+                break;
+            } else {
+                throw new XMLStreamException("Element content is not CDATA only", reader.getLocation());
+            }
+        }
+        return (sb == null) ? null : sb.toString();
+    }
+
+    /**
+     * Reads the concatenated text and CDATA content of the current element, and leaves the
+     * reader on its end. Nested elements are skipped. This is more lenient than
+     * getChildElementsTextValue(), use it only for elements with a text value.
+     * @return  the content, or null if the element contained no text or CDATA at all
+     */
+    public static String readElementText(final XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = null;
+        while( reader.hasNext() ) {
+            final int event = reader.next();
+            if( event == XMLStreamConstants.CHARACTERS
+                    || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE )
+            {
+                if( sb == null ) {
+                    sb = new StringBuilder(reader.getTextLength());
+                }
+                sb.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            } else if( event == XMLStreamConstants.START_ELEMENT ) {
+                skipElement(reader);
+            } else if( event == XMLStreamConstants.END_ELEMENT ) {
+                break;
+            }
+        }
+        return (sb == null) ? null : sb.toString();
+    }
+
+    /**
+     * Skips the current element including all its content, and leaves the reader on its end.
+     */
+    public static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while( depth > 0 && reader.hasNext() ) {
+            final int event = reader.next();
+            if( event == XMLStreamConstants.START_ELEMENT ) {
+                depth++;
+            } else if( event == XMLStreamConstants.END_ELEMENT ) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Writes an element with a text value. A null value writes an empty element.
+     */
+    public static void writeTextElement(final XMLStreamWriter writer, final String name, final String value)
+        throws XMLStreamException {
+        writer.writeStartElement(name);
+        if( value != null ) {
+            writer.writeCharacters(value);
+        }
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes an element with a CDATA value. A null value writes an empty element.
+     * Any "]]>" in the value is split into two CDATA sections, like the DOM serializer does,
+     * and getChildElementsCDATAValue() and readElementCDATA() join them again.
+     */
+    public static void writeCDATAElement(final XMLStreamWriter writer, final String name, final String value)
+        throws XMLStreamException {
+        writer.writeStartElement(name);
+        if( value != null ) {
+            int start = 0;
+            int pos;
+            while( (pos = value.indexOf("]]>", start)) > -1 ) {
+                writer.writeCData(value.substring(start, pos + 2)); // ends with "]]"
+                start = pos + 2; // next section starts with ">"
+            }
+            writer.writeCData(value.substring(start));
+        }
+        writer.writeEndElement();
+    }
+
 //    public static void main(String[] args) {
 //
 //        Document d = createDomDocument();